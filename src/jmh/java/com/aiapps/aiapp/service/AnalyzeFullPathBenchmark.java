@@ -0,0 +1,64 @@
+package com.aiapps.aiapp.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 入力値チェックから Gemini API の呼び出し・応答の解析までを通したベンチマーク
+ * Gemini API はローカルのスタブサーバーで代替し、用意した応答を順に返す
+ *
+ * @author AiApp
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AnalyzeFullPathBenchmark {
+
+	private static final String INPUT = "日銀が政策金利の据え置きを決定した";
+
+	private HttpServer server;
+	private AiService aiService;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = BenchmarkFixtures.startStubGemini();
+		aiService = BenchmarkFixtures.aiService("http://127.0.0.1:" + server.getAddress().getPort());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Benchmark
+	public String analyze() {
+		if (!aiService.getInputErrorMessage(INPUT).isEmpty()) {
+			throw new IllegalStateException("入力エラー");
+		}
+		return aiService.callGeminiApi(INPUT);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public String analyzeConcurrent() {
+		return analyze();
+	}
+}
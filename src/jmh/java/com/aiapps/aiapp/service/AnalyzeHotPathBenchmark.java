@@ -0,0 +1,89 @@
+package com.aiapps.aiapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 1リクエストごとに実行される処理（リクエストボディの作成・応答の解析・入力値チェック）のベンチマーク
+ * リクエストボディの作成と応答の解析は、以前の実装（文字列置換と JsonNode のツリー）と比較する
+ *
+ * @author AiApp
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzeHotPathBenchmark {
+
+	// 分析対象の文章（エスケープが必要な文字を含むものと含まないもの）
+	@Param({ "日本代表がワールドカップ予選で勝利した", "新型の\"AIチップ\"を発表\n性能は前世代の2倍" })
+	public String input;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private String prompt;
+	private byte[] response;
+	private AiService aiService;
+
+	@Setup
+	public void setUp() {
+		prompt = AnalysisPrompts.single(input);
+		response = BenchmarkFixtures.geminiResponse("スポーツ").getBytes(StandardCharsets.UTF_8);
+		aiService = BenchmarkFixtures.aiService("http://127.0.0.1:9");
+	}
+
+	@Benchmark
+	public byte[] buildRequestBody() {
+		return GeminiJsonCodec.encodeRequest(prompt, AnalysisPrompts.SYSTEM_INSTRUCTION, 16, 0);
+	}
+
+	@Benchmark
+	public byte[] buildRequestBodyLegacy() {
+		// 以前の実装：テキストブロックの formatted と置換で作成し、送信時にUTF-8に変換
+		return """
+				{
+				    "contents": [{
+				        "parts": [{
+				            "text": "%s"
+				        }]
+				    }]
+				}
+				""".formatted(prompt.replace("\"", "\\\"").replace("\n", "\\n")).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public String parseResponse() {
+		return GeminiJsonCodec.decodeText(response);
+	}
+
+	@Benchmark
+	public String parseResponseLegacy() throws Exception {
+		// 以前の実装：UTF-8の文字列に変換してからツリー全体を構築
+		return MAPPER.readTree(new String(response, StandardCharsets.UTF_8))
+				.path("candidates").get(0)
+				.path("content")
+				.path("parts").get(0)
+				.path("text").asText();
+	}
+
+	@Benchmark
+	public String validateInput() {
+		return aiService.getInputErrorMessage(input);
+	}
+}
@@ -0,0 +1,114 @@
+package com.aiapps.aiapp.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * ベンチマーク用の部品を組み立てるクラス
+ * Spring を起動せずに、本番と同じ構成のサービスをスタブの Gemini API に接続する
+ *
+ * @author AiApp
+ */
+final class BenchmarkFixtures {
+
+	// 分類結果の候補（スタブの応答で順に返す）
+	private static final List<String> CATEGORIES = List.of("スポーツ", "テクノロジー", "政治", "経済", "その他");
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * Gemini API の正常応答を作成する
+	 *
+	 * @param text 生成テキスト
+	 * @return 応答本文
+	 */
+	static String geminiResponse(String text) {
+		return """
+				{
+				  "candidates": [{
+				    "content": {
+				      "parts": [{ "text": "%s" }],
+				      "role": "model"
+				    },
+				    "finishReason": "STOP",
+				    "index": 0
+				  }],
+				  "usageMetadata": {
+				    "promptTokenCount": 152,
+				    "candidatesTokenCount": 2,
+				    "totalTokenCount": 154
+				  },
+				  "modelVersion": "gemini-2.5-flash"
+				}
+				""".formatted(text);
+	}
+
+	/**
+	 * 用意した応答を順に返すスタブの Gemini API を起動する
+	 *
+	 * @return 起動したサーバー（ポートは空きポートを自動で割り当て）
+	 * @throws IOException サーバーの起動に失敗した場合
+	 */
+	static HttpServer startStubGemini() throws IOException {
+		List<byte[]> responses = CATEGORIES.stream()
+				.map(category -> geminiResponse(category).getBytes(StandardCharsets.UTF_8))
+				.toList();
+		AtomicInteger next = new AtomicInteger();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			// リクエストボディは読み捨てる
+			exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+			byte[] body = responses.get(Math.floorMod(next.getAndIncrement(), responses.size()));
+			exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.start();
+		return server;
+	}
+
+	/**
+	 * スタブの Gemini API に接続するAIサービスを組み立てる
+	 * 毎回 Gemini API まで到達するよう、キャッシュ・相乗り・前段分類・永続化は無効にする
+	 *
+	 * @param baseUrl スタブの Gemini API のベースURL
+	 * @return AIサービス
+	 */
+	static AiService aiService(String baseUrl) {
+		AnalysisMetrics metrics = new AnalysisMetrics(new SimpleMeterRegistry());
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(64, 1, 256, 1000, Duration.ofSeconds(10));
+		UpstreamCallGuard guard = new UpstreamCallGuard(limiter, metrics, 1, Duration.ofMillis(10),
+				Duration.ofMillis(10), Duration.ZERO, Duration.ofSeconds(30), false, 0.95, Duration.ZERO, 0.0);
+		// スタブは平文の HTTP/1.1 のため、事前の接続確立と仮想スレッドの設定は使用しない
+		UpstreamHttpClient http = new UpstreamHttpClient(HttpClient.Version.HTTP_1_1, Duration.ofSeconds(10), false,
+				Duration.ofMinutes(5), 0, Duration.ZERO);
+		GeminiClient geminiClient = new GeminiClient(guard, http, metrics, "benchmark", baseUrl, 16, 0);
+		AnalysisResultCache cache = new AnalysisResultCache(false, 0, Duration.ZERO);
+		LocalPreClassifier preClassifier = new LocalPreClassifier(false, 1.0, Long.MAX_VALUE, 0);
+		NearDuplicateIndex nearDuplicates = new NearDuplicateIndex(false, 0.9, 1, 3, 4);
+		ClassificationStore store = new ClassificationStore(cache, nearDuplicates, preClassifier, false,
+				Path.of("target", "benchmark.db"), Duration.ZERO, Duration.ofHours(1), 0);
+		return new AiService(geminiClient, new AnalysisBatcher(geminiClient, false, Duration.ofMillis(20), 16), cache,
+				new SharedResultCache(new InMemorySharedStateStore(Duration.ofMinutes(1)), false, Duration.ZERO),
+				new InFlightRequestCoalescer(false), nearDuplicates, preClassifier, store, guard,
+				new UserQuotaLimiter(false, 1, Duration.ofSeconds(1), false, null, Duration.ofMinutes(10)),
+				new FairShareScheduler(limiter, false, 0, "", 1), metrics, Duration.ofSeconds(35));
+	}
+}
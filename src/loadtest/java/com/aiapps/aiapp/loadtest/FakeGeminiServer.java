@@ -0,0 +1,201 @@
+package com.aiapps.aiapp.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.aiapps.aiapp.service.AnalysisPrompts;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 負荷試験用のローカルの Gemini API
+ * generateContent・streamGenerateContent（alt=sse）・モデル情報の取得に Gemini と同じ形式で応答する
+ * 応答時間は対数正規分布（中央値と99パーセンタイルで指定）、失敗は指定した割合で発生させる
+ *
+ * @author AiApp
+ */
+final class FakeGeminiServer implements AutoCloseable {
+
+	// 標準正規分布の99パーセンタイル
+	private static final double Z_99 = 2.326;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	// 応答時間の中央値（ミリ秒）
+	private final double medianMillis;
+	// 応答時間の対数の標準偏差
+	private final double sigma;
+	// 失敗させる割合と、失敗時に返すステータスコード
+	private final double errorRate;
+	private final int errorStatus;
+	// 応答時間・失敗・カテゴリーの乱数（シードを指定すると再現可能）
+	private final Random random;
+
+	// 統計用カウンタ
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder injectedErrors = new LongAdder();
+
+	/**
+	 * 空きポートでサーバーを起動する
+	 *
+	 * @param latencyMedian 応答時間の中央値
+	 * @param latencyP99    応答時間の99パーセンタイル
+	 * @param errorRate     失敗させる割合（0.0～1.0）
+	 * @param errorStatus   失敗時に返すステータスコード
+	 * @param seed          乱数のシード
+	 * @throws IOException サーバーの起動に失敗した場合
+	 */
+	FakeGeminiServer(Duration latencyMedian, Duration latencyP99, double errorRate, int errorStatus, long seed)
+			throws IOException {
+		this.medianMillis = Math.max(0, latencyMedian.toMillis());
+		double ratio = Math.max(1.0, (double) latencyP99.toMillis() / Math.max(1, latencyMedian.toMillis()));
+		this.sigma = Math.log(ratio) / Z_99;
+		this.errorRate = errorRate;
+		this.errorStatus = errorStatus;
+		this.random = new Random(seed);
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/**
+	 * サーバーのベースURLを取得する（aiapp.gemini.base-url に指定する）
+	 *
+	 * @return ベースURL
+	 */
+	String baseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * 統計情報を取得する
+	 *
+	 * @return 受け付けた件数・失敗させた件数
+	 */
+	Stats stats() {
+		return new Stats(requests.sum(), injectedErrors.sum());
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * リクエストを処理する（応答時間の経過まで仮想スレッドで待機する）
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			requests.increment();
+			byte[] request;
+			try (InputStream in = exchange.getRequestBody()) {
+				request = in.readAllBytes();
+			}
+			// 接続確立のためのモデル情報の取得には待たずに応答する
+			if ("GET".equals(exchange.getRequestMethod())) {
+				send(exchange, 200, "application/json", "{\"name\":\"models/loadtest\"}");
+				return;
+			}
+
+			long delayMillis = Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+			boolean fail = random.nextDouble() < errorRate;
+			TimeUnit.MILLISECONDS.sleep(delayMillis);
+			if (fail) {
+				injectedErrors.increment();
+				send(exchange, errorStatus, "application/json", """
+						{"error":{"code":%d,"message":"injected by load test","status":"UNAVAILABLE"}}"""
+						.formatted(errorStatus));
+				return;
+			}
+
+			String body = objectMapper.writeValueAsString(response(reply(promptOf(request))));
+			if (exchange.getRequestURI().getPath().endsWith(":streamGenerateContent")) {
+				send(exchange, 200, "text/event-stream", "data: " + body + "\r\n\r\n");
+			} else {
+				send(exchange, 200, "application/json", body);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * リクエストボディから最後の contents のテキスト（プロンプト）を取り出す
+	 */
+	private String promptOf(byte[] request) throws IOException {
+		JsonNode contents = objectMapper.readTree(request).path("contents");
+		return contents.path(Math.max(0, contents.size() - 1)).path("parts").path(0).path("text").asText("");
+	}
+
+	/**
+	 * 入力ごとにカテゴリーを選び、Gemini と同じ形式の生成テキストを作る
+	 *
+	 * @param prompt 受け取ったプロンプト
+	 * @return 単一入力の場合はカテゴリー、複数の場合は "<番号>. <カテゴリー>" の行
+	 */
+	private String reply(String prompt) {
+		List<String> inputs = AnalysisPrompts.inputsOf(prompt);
+		List<String> labels = AnalysisPrompts.LABELS;
+		if (inputs.size() <= 1) {
+			return labels.get(random.nextInt(labels.size()));
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < inputs.size(); i++) {
+			sb.append(i + 1).append(". ").append(labels.get(random.nextInt(labels.size()))).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * generateContent の応答を組み立てる
+	 */
+	private JsonNode response(String text) {
+		var root = objectMapper.createObjectNode();
+		var candidate = root.putArray("candidates").addObject();
+		var content = candidate.putObject("content");
+		content.putArray("parts").addObject().put("text", text);
+		content.put("role", "model");
+		candidate.put("finishReason", "STOP");
+		candidate.put("index", 0);
+		root.putObject("usageMetadata")
+				.put("promptTokenCount", 152)
+				.put("candidatesTokenCount", 2)
+				.put("totalTokenCount", 154);
+		root.put("modelVersion", "loadtest");
+		return root;
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", contentType + "; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * ローカルの Gemini API の統計情報
+	 *
+	 * @param requests       受け付けた件数（再試行・ヘッジを含む）
+	 * @param injectedErrors 失敗させた件数
+	 */
+	record Stats(long requests, long injectedErrors) {
+	}
+}
@@ -0,0 +1,37 @@
+package com.aiapps.aiapp.loadtest;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * 負荷試験用の疑似ログインのセキュリティ設定
+ * /loadtest/** だけを対象にしたフィルターチェーンを、アプリケーションのフィルターチェーンより先に適用する
+ * aiapp.loadtest.enabled=true の場合（負荷試験の実行時）のみ有効になる
+ *
+ * @author AiApp
+ */
+@Configuration
+@ConditionalOnProperty(name = "aiapp.loadtest.enabled", havingValue = "true")
+public class LoadTestLoginConfig {
+
+	/**
+	 * 疑似ログインのエンドポイントを認証なしで公開する
+	 *
+	 * @param http HttpSecurityオブジェクト
+	 * @return 構成済みのSecurityFilterChainオブジェクト
+	 * @throws Exception セキュリティ設定の構築中に発生する可能性のある例外
+	 */
+	@Bean
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	public SecurityFilterChain loadTestLoginFilterChain(HttpSecurity http) throws Exception {
+		http.securityMatcher("/loadtest/**")
+				.authorizeHttpRequests(auth -> auth.anyRequest().permitAll())
+				.csrf(csrf -> csrf.disable());
+		return http.build();
+	}
+}
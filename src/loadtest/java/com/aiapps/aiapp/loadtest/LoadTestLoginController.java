@@ -0,0 +1,102 @@
+package com.aiapps.aiapp.loadtest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
+import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
+import org.springframework.security.web.csrf.XorCsrfTokenRequestAttributeHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 負荷試験用の疑似ログインのコントローラー
+ * Google に接続せずに、OAuth2 でログインした場合と同じ認証情報・認可済みクライアントをセッションに保存する
+ * 画面のフォーム送信に必要な CSRF トークンもあわせて返す
+ * aiapp.loadtest.enabled=true の場合（負荷試験の実行時）のみ有効になる
+ *
+ * @author AiApp
+ */
+@RestController
+@ConditionalOnProperty(name = "aiapp.loadtest.enabled", havingValue = "true")
+public class LoadTestLoginController {
+
+	// OAuth2 のクライアント登録ID
+	private static final String REGISTRATION_ID = "google";
+	// 疑似ログインのアクセストークンの有効期間
+	private static final Duration TOKEN_TTL = Duration.ofHours(1);
+
+	private final ClientRegistrationRepository clientRegistrations;
+	private final OAuth2AuthorizedClientRepository authorizedClients;
+	private final SecurityContextRepository securityContexts = new HttpSessionSecurityContextRepository();
+	private final CsrfTokenRepository csrfTokens = new HttpSessionCsrfTokenRepository();
+
+	/**
+	 * コンストラクタ：OAuth2 のクライアント登録と認可済みクライアントの保存先を注入
+	 *
+	 * @param clientRegistrations クライアント登録
+	 * @param authorizedClients   認可済みクライアントの保存先
+	 */
+	public LoadTestLoginController(ClientRegistrationRepository clientRegistrations,
+			OAuth2AuthorizedClientRepository authorizedClients) {
+		this.clientRegistrations = clientRegistrations;
+		this.authorizedClients = authorizedClients;
+	}
+
+	/**
+	 * 利用者IDでログインしたセッションを作成する
+	 *
+	 * @param user     利用者ID
+	 * @param request  HTTPリクエスト
+	 * @param response HTTPレスポンス（セッションCookieを発行）
+	 * @return CSRF トークンのパラメーター名と値
+	 */
+	@PostMapping("/loadtest/login")
+	public Map<String, String> login(@RequestParam("user") String user, HttpServletRequest request,
+			HttpServletResponse response) {
+		List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList("OAUTH2_USER");
+		DefaultOAuth2User principal = new DefaultOAuth2User(authorities,
+				Map.of("sub", user, "name", user, "email", user + "@loadtest.invalid"), "sub");
+		OAuth2AuthenticationToken authentication =
+				new OAuth2AuthenticationToken(principal, authorities, REGISTRATION_ID);
+
+		request.getSession(true);
+		SecurityContext context = SecurityContextHolder.createEmptyContext();
+		context.setAuthentication(authentication);
+		securityContexts.saveContext(context, request, response);
+
+		Instant now = Instant.now();
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+				"loadtest-" + user, now, now.plus(TOKEN_TTL));
+		authorizedClients.saveAuthorizedClient(new OAuth2AuthorizedClient(
+				clientRegistrations.findByRegistrationId(REGISTRATION_ID), user, accessToken),
+				authentication, request, response);
+
+		// 画面のフォームと同じく、セッションのトークンをマスクした値を返す
+		CsrfToken token = csrfTokens.generateToken(request);
+		csrfTokens.saveToken(token, request, response);
+		new XorCsrfTokenRequestAttributeHandler().handle(request, response, () -> token);
+		CsrfToken masked = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+		return Map.of("parameterName", masked.getParameterName(), "token", masked.getToken());
+	}
+}
@@ -0,0 +1,360 @@
+package com.aiapps.aiapp.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.aiapps.aiapp.AiAppApplication;
+import com.aiapps.aiapp.loadtest.OpenLoadGenerator.Endpoint;
+import com.aiapps.aiapp.loadtest.OpenLoadGenerator.EndpointResult;
+import com.aiapps.aiapp.loadtest.OpenLoadGenerator.RunResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * /analyze と JSON API の負荷試験を実行するエントリーポイント
+ * ローカルの Gemini API と疑似ログインでアプリケーションを起動し、到着率を段階的に上げながら負荷をかける
+ * 段階ごとのスループット・応答時間のパーセンタイル（HdrHistogram）・失敗率・ヒープと GC の状況を JSON に出力し、
+ * ビルド間で比較できるようにする（HdrHistogram の分布は .hgrm ファイルにも出力する）
+ *
+ * 実行：mvn -Ploadtest verify -Dloadtest.args="--rates=50,100,200 --duration=30s"
+ * アプリケーションの設定は --app.&lt;プロパティ名&gt;=&lt;値&gt; で上書きできる（例：--app.aiapp.limiter.max-limit=64）
+ *
+ * 負荷生成器とアプリケーションは同じ JVM で動作するため、ヒープと GC の値は両方を含む
+ *
+ * @author AiApp
+ */
+public final class LoadTestMain {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(LoadTestMain.class);
+
+	// アプリケーションの設定を上書きする引数の接頭辞
+	private static final String APP_PREFIX = "app.";
+	// 出力するパーセンタイル
+	private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+	// 既定の設定値
+	private static final Map<String, String> DEFAULTS = Map.ofEntries(
+			Map.entry("rates", "20,50,100"),
+			Map.entry("duration", "30s"),
+			Map.entry("warmup", "10s"),
+			Map.entry("mix", "analyze:1,api:1"),
+			Map.entry("users", "20"),
+			Map.entry("max-in-flight", "2000"),
+			Map.entry("request-timeout", "40s"),
+			Map.entry("cache-hit-ratio", "0.0"),
+			Map.entry("seed", "42"),
+			Map.entry("gemini-latency-median", "300ms"),
+			Map.entry("gemini-latency-p99", "1500ms"),
+			Map.entry("gemini-error-rate", "0.0"),
+			Map.entry("gemini-error-status", "503"),
+			Map.entry("report-dir", "target/loadtest"));
+
+	private LoadTestMain() {
+	}
+
+	/**
+	 * 負荷試験を実行する
+	 *
+	 * @param args --&lt;設定名&gt;=&lt;値&gt; 形式の引数
+	 * @throws Exception 起動・実行・出力に失敗した場合
+	 */
+	public static void main(String[] args) throws Exception {
+		// アプリケーションと同じくタイムゾーンを日本に設定
+		TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+		Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+		Map<String, Object> appOverrides = new LinkedHashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("引数は --<設定名>=<値> の形式で指定してください: " + arg);
+			}
+			String key = arg.substring(2, arg.indexOf('='));
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (key.startsWith(APP_PREFIX)) {
+				appOverrides.put(key.substring(APP_PREFIX.length()), value);
+			} else if (DEFAULTS.containsKey(key)) {
+				options.put(key, value);
+			} else {
+				throw new IllegalArgumentException("不明な設定です: " + key);
+			}
+		}
+
+		String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+		Path reportDir = Path.of(options.get("report-dir"));
+		Files.createDirectories(reportDir);
+
+		try (FakeGeminiServer gemini = new FakeGeminiServer(duration(options, "gemini-latency-median"),
+				duration(options, "gemini-latency-p99"), Double.parseDouble(options.get("gemini-error-rate")),
+				Integer.parseInt(options.get("gemini-error-status")), Long.parseLong(options.get("seed")))) {
+
+			Map<String, Object> properties = new HashMap<>(appProperties(gemini, reportDir));
+			properties.putAll(appOverrides);
+			try (ConfigurableApplicationContext app = new SpringApplicationBuilder(AiAppApplication.class)
+					.properties(properties)
+					.run();
+					OpenLoadGenerator generator = new OpenLoadGenerator(
+							URI.create("http://127.0.0.1:" + ((WebServerApplicationContext) app).getWebServer().getPort()),
+							mix(options.get("mix")), duration(options, "request-timeout"),
+							Integer.parseInt(options.get("max-in-flight")),
+							Double.parseDouble(options.get("cache-hit-ratio")), Long.parseLong(options.get("seed")))) {
+
+				generator.login(Integer.parseInt(options.get("users")));
+				double[] rates = Arrays.stream(options.get("rates").split(",")).map(String::strip)
+						.mapToDouble(Double::parseDouble).toArray();
+
+				// 最初の到着率でウォームアップする（JIT・接続の確立。結果は出力しない）
+				Duration warmup = duration(options, "warmup");
+				if (!warmup.isZero()) {
+					logger.info("ウォームアップを開始します。到着率: {}/s, 時間: {}", rates[0], warmup);
+					generator.run(rates[0], warmup);
+				}
+
+				ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+				ObjectNode report = objectMapper.createObjectNode();
+				report.put("timestamp", timestamp);
+				report.put("javaVersion", System.getProperty("java.version"));
+				report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+				report.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+				ObjectNode settings = report.putObject("options");
+				options.forEach(settings::put);
+				appOverrides.forEach((key, value) -> settings.put(APP_PREFIX + key, String.valueOf(value)));
+				var runs = report.putArray("runs");
+
+				Duration duration = duration(options, "duration");
+				for (double rate : rates) {
+					logger.info("負荷試験を開始します。到着率: {}/s, 時間: {}", rate, duration);
+					JvmSnapshot before = JvmSnapshot.take();
+					FakeGeminiServer.Stats geminiBefore = gemini.stats();
+					RunResult result = generator.run(rate, duration);
+					JvmSnapshot after = JvmSnapshot.take();
+					FakeGeminiServer.Stats geminiAfter = gemini.stats();
+
+					ObjectNode run = runs.addObject();
+					writeRun(run, result);
+					run.putObject("gemini")
+							.put("requests", geminiAfter.requests() - geminiBefore.requests())
+							.put("injectedErrors", geminiAfter.injectedErrors() - geminiBefore.injectedErrors());
+					writeJvm(run.putObject("jvm"), before, after, result.elapsedNanos());
+					writeHistograms(reportDir, timestamp, result);
+					logger.info("到着率 {}/s の結果: {}", rate, run.path("total"));
+				}
+
+				Path reportFile = reportDir.resolve("report-" + timestamp + ".json");
+				objectMapper.writeValue(reportFile.toFile(), report);
+				logger.info("負荷試験の結果を出力しました: {}", reportFile.toAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * 負荷試験用のアプリケーションの設定
+	 * ローカルの Gemini API に接続し、疑似ログインを有効にする
+	 * 利用回数の制限（利用者ごとの上限で飽和点が分からなくなる）と永続化（ファイルの書き込み）は無効にする
+	 */
+	private static Map<String, Object> appProperties(FakeGeminiServer gemini, Path reportDir) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("server.port", "0");
+		properties.put("management.server.port", "0");
+		properties.put("aiapp.loadtest.enabled", "true");
+		properties.put("aiapp.provider", "gemini");
+		properties.put("aiapp.gemini.base-url", gemini.baseUrl());
+		properties.put("aiapp.http.version", "HTTP_1_1");
+		properties.put("google.api.key", "loadtest");
+		properties.put("spring.security.oauth2.client.registration.google.client-id", "loadtest");
+		properties.put("spring.security.oauth2.client.registration.google.client-secret", "loadtest");
+		properties.put("aiapp.quota.enabled", "false");
+		properties.put("aiapp.store.enabled", "false");
+		properties.put("aiapp.state.store", "memory");
+		properties.put("logging.file.name", reportDir.resolve("app.log").toString());
+		properties.put("logging.level.com.aiapps.aiapp", "WARN");
+		return properties;
+	}
+
+	/**
+	 * 1回の実行の結果を出力する
+	 */
+	private static void writeRun(ObjectNode run, RunResult result) {
+		double elapsedSeconds = result.elapsedNanos() / 1e9;
+		double dispatchSeconds = result.dispatchNanos() / 1e9;
+		run.put("targetRate", result.rate());
+		run.put("dispatchSeconds", dispatchSeconds);
+		run.put("elapsedSeconds", elapsedSeconds);
+		run.put("unfinished", result.unfinished());
+
+		Histogram total = null;
+		long sent = 0;
+		long notSent = 0;
+		long succeeded = 0;
+		Map<String, Long> errors = new LinkedHashMap<>();
+		ObjectNode endpoints = run.putObject("endpoints");
+		for (Map.Entry<Endpoint, EndpointResult> entry : result.endpoints().entrySet()) {
+			EndpointResult endpoint = entry.getValue();
+			writeEndpoint(endpoints.putObject(entry.getKey().name().toLowerCase(Locale.ROOT)), endpoint,
+					endpoint.latency(), dispatchSeconds, elapsedSeconds);
+			sent += endpoint.sent();
+			notSent += endpoint.notSent();
+			succeeded += endpoint.succeeded();
+			endpoint.errors().forEach((key, count) -> errors.merge(key, count, Long::sum));
+			if (total == null) {
+				total = endpoint.latency().copy();
+			} else {
+				total.add(endpoint.latency());
+			}
+		}
+		writeEndpoint(run.putObject("total"), new EndpointResult(sent, notSent, succeeded, errors, total),
+				total, dispatchSeconds, elapsedSeconds);
+	}
+
+	/**
+	 * エンドポイントごとの件数・スループット・失敗率・応答時間を出力する
+	 */
+	private static void writeEndpoint(ObjectNode node, EndpointResult result, Histogram latency,
+			double dispatchSeconds, double elapsedSeconds) {
+		long failed = result.errors().values().stream().mapToLong(Long::longValue).sum();
+		node.put("sent", result.sent());
+		node.put("notSent", result.notSent());
+		node.put("succeeded", result.succeeded());
+		node.put("failed", failed);
+		node.put("errorRate", result.sent() == 0 ? 0.0 : (double) failed / result.sent());
+		node.put("offeredRate", dispatchSeconds == 0 ? 0.0 : (result.sent() + result.notSent()) / dispatchSeconds);
+		node.put("throughput", elapsedSeconds == 0 ? 0.0 : result.succeeded() / elapsedSeconds);
+		ObjectNode errors = node.putObject("errors");
+		result.errors().forEach(errors::put);
+		ObjectNode millis = node.putObject("latencyMillis");
+		if (latency != null && latency.getTotalCount() > 0) {
+			millis.put("min", latency.getMinValue() / 1000.0);
+			millis.put("mean", latency.getMean() / 1000.0);
+			for (double percentile : PERCENTILES) {
+				millis.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", "_"),
+						latency.getValueAtPercentile(percentile) / 1000.0);
+			}
+			millis.put("max", latency.getMaxValue() / 1000.0);
+		}
+	}
+
+	/**
+	 * 実行前後のヒープと GC の状況を出力する
+	 */
+	private static void writeJvm(ObjectNode node, JvmSnapshot before, JvmSnapshot after, long elapsedNanos) {
+		long gcMillis = after.gcMillis() - before.gcMillis();
+		node.put("heapUsedBeforeBytes", before.heapUsed());
+		node.put("heapUsedAfterBytes", after.heapUsed());
+		node.put("heapPeakBytes", after.heapPeak());
+		node.put("heapCommittedBytes", after.heapCommitted());
+		node.put("gcCount", after.gcCount() - before.gcCount());
+		node.put("gcMillis", gcMillis);
+		node.put("gcTimeRatio", elapsedNanos == 0 ? 0.0 : (double) TimeUnit.MILLISECONDS.toNanos(gcMillis) / elapsedNanos);
+		node.put("threads", after.threads());
+		ObjectNode collectors = node.putObject("collectors");
+		after.collectors().forEach((name, counts) -> {
+			long[] previous = before.collectors().getOrDefault(name, new long[2]);
+			collectors.putObject(name)
+					.put("count", counts[0] - previous[0])
+					.put("millis", counts[1] - previous[1]);
+		});
+	}
+
+	/**
+	 * エンドポイントごとの応答時間の分布を HdrHistogram の形式（ミリ秒）で出力する
+	 */
+	private static void writeHistograms(Path reportDir, String timestamp, RunResult result) throws IOException {
+		String rate = String.valueOf(result.rate()).replace(".0", "");
+		for (Map.Entry<Endpoint, EndpointResult> entry : result.endpoints().entrySet()) {
+			Path file = reportDir.resolve("latency-" + timestamp + "-" + rate + "rps-"
+					+ entry.getKey().name().toLowerCase(Locale.ROOT) + ".hgrm");
+			try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+				entry.getValue().latency().outputPercentileDistribution(out, 1000.0);
+			}
+		}
+	}
+
+	/**
+	 * エンドポイントごとの重みを解析する（例：analyze:1,api:1）
+	 */
+	private static Map<Endpoint, Integer> mix(String value) {
+		Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+		for (String part : value.split(",")) {
+			String[] pair = part.strip().split(":");
+			int weight = pair.length > 1 ? Integer.parseInt(pair[1].strip()) : 1;
+			if (weight > 0) {
+				mix.put(Endpoint.valueOf(pair[0].strip().toUpperCase(Locale.ROOT)), weight);
+			}
+		}
+		if (mix.isEmpty()) {
+			throw new IllegalArgumentException("mix にエンドポイントを1つ以上指定してください: " + value);
+		}
+		return mix;
+	}
+
+	private static Duration duration(Map<String, String> options, String key) {
+		return DurationStyle.detectAndParse(options.get(key));
+	}
+
+	/**
+	 * ヒープと GC の状況
+	 *
+	 * @param heapUsed      ヒープの使用量
+	 * @param heapCommitted ヒープの確保量
+	 * @param heapPeak      ヒープの使用量の最大値（前回の取得以降）
+	 * @param gcCount       GC の回数（全コレクターの合計）
+	 * @param gcMillis      GC の時間（全コレクターの合計）
+	 * @param threads       スレッド数（プラットフォームスレッド）
+	 * @param collectors    コレクターごとの回数と時間
+	 */
+	private record JvmSnapshot(long heapUsed, long heapCommitted, long heapPeak, long gcCount, long gcMillis,
+			int threads, Map<String, long[]> collectors) {
+
+		static JvmSnapshot take() {
+			MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+			long peak = 0;
+			List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+			for (MemoryPoolMXBean pool : pools) {
+				if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+					peak += pool.getPeakUsage().getUsed();
+					pool.resetPeakUsage();
+				}
+			}
+			long count = 0;
+			long millis = 0;
+			Map<String, long[]> collectors = new LinkedHashMap<>();
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				long c = Math.max(0, gc.getCollectionCount());
+				long t = Math.max(0, gc.getCollectionTime());
+				count += c;
+				millis += t;
+				collectors.put(gc.getName(), new long[] { c, t });
+			}
+			return new JvmSnapshot(heap.getUsed(), heap.getCommitted(), peak, count, millis,
+					ManagementFactory.getThreadMXBean().getThreadCount(), collectors);
+		}
+	}
+}
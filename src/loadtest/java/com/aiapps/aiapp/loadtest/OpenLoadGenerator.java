@@ -0,0 +1,315 @@
+package com.aiapps.aiapp.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 一定の到着率（オープンモデル）でリクエストを送信する負荷生成器
+ * 応答を待たずに予定時刻どおりに送信し、応答時間は予定時刻から計測する（送信の遅れも応答時間に含める）
+ * 応答待ちの件数が上限に達した場合は送信せず、未送信として数える
+ *
+ * @author AiApp
+ */
+final class OpenLoadGenerator implements AutoCloseable {
+
+	// 画面の分析結果の要素（エラー画面と区別する）
+	private static final String RESULT_MARKER = "id=\"serverResult\"";
+	// 入力に使用する文字（分析結果キャッシュ・類似入力の索引に当たらないよう、ランダムな文字列を作る）
+	private static final String INPUT_CHARS = "あいうえおかきくけこさしすせそたちつてとなにぬねのはひふへほまみむめもやゆよらりるれろわ";
+	// キャッシュに当てる場合に使用する入力
+	private static final List<String> HOT_INPUTS = List.of(
+			"日銀が政策金利の据え置きを決定した", "日本代表がワールドカップ予選で勝利した",
+			"新しいスマートフォンに生成AIが搭載された", "国会で来年度予算案が可決された");
+
+	/**
+	 * 負荷をかけるエンドポイント
+	 */
+	enum Endpoint {
+		/** 画面のフォーム送信（POST /analyze） */
+		ANALYZE,
+		/** JSON API（POST /api/analyze） */
+		API
+	}
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final HttpClient client;
+	private final URI baseUri;
+	private final Duration requestTimeout;
+	private final int maxInFlight;
+	private final double cacheHitRatio;
+	// エンドポイントの重み（累積）
+	private final Endpoint[] endpoints;
+	private final int[] cumulativeWeights;
+	private final SplittableRandom random;
+
+	// ログイン済みのセッション
+	private final List<Session> sessions = new ArrayList<>();
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param baseUri        アプリケーションのベースURI
+	 * @param mix            エンドポイントごとの重み
+	 * @param requestTimeout 1件の応答の待ち時間の上限
+	 * @param maxInFlight    応答待ちの件数の上限
+	 * @param cacheHitRatio  キャッシュに当たる入力を送信する割合
+	 * @param seed           入力・エンドポイントの選択の乱数のシード
+	 */
+	OpenLoadGenerator(URI baseUri, Map<Endpoint, Integer> mix, Duration requestTimeout, int maxInFlight,
+			double cacheHitRatio, long seed) {
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(10))
+				.executor(executor)
+				.build();
+		this.baseUri = baseUri;
+		this.requestTimeout = requestTimeout;
+		this.maxInFlight = maxInFlight;
+		this.cacheHitRatio = cacheHitRatio;
+		this.endpoints = mix.keySet().toArray(Endpoint[]::new);
+		this.cumulativeWeights = new int[endpoints.length];
+		int sum = 0;
+		for (int i = 0; i < endpoints.length; i++) {
+			sum += mix.get(endpoints[i]);
+			cumulativeWeights[i] = sum;
+		}
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * 疑似ログインで利用者ごとのセッションを作成する
+	 *
+	 * @param users 利用者数
+	 * @throws IOException          ログインに失敗した場合
+	 * @throws InterruptedException 待機中に割り込まれた場合
+	 */
+	void login(int users) throws IOException, InterruptedException {
+		for (int i = 0; i < users; i++) {
+			String user = "loadtest-user-" + i;
+			HttpResponse<String> response = client.send(HttpRequest.newBuilder(baseUri.resolve("/loadtest/login"))
+					.header("Content-Type", "application/x-www-form-urlencoded")
+					.POST(HttpRequest.BodyPublishers.ofString("user=" + user))
+					.build(), HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() != 200) {
+				throw new IOException("疑似ログインに失敗しました: " + response.statusCode());
+			}
+			String cookie = response.headers().allValues("Set-Cookie").stream()
+					.map(value -> value.split(";", 2)[0])
+					.reduce((a, b) -> a + "; " + b)
+					.orElseThrow(() -> new IOException("セッションCookieが発行されませんでした"));
+			JsonNode csrf = objectMapper.readTree(response.body());
+			sessions.add(new Session(cookie, csrf.path("parameterName").asText(), csrf.path("token").asText()));
+		}
+	}
+
+	/**
+	 * 一定の到着率でリクエストを送信し、すべての応答（または待ち時間の上限）まで待機する
+	 *
+	 * @param rate     1秒あたりの送信件数
+	 * @param duration 送信する時間
+	 * @return エンドポイントごとの結果
+	 * @throws InterruptedException 待機中に割り込まれた場合
+	 */
+	RunResult run(double rate, Duration duration) throws InterruptedException {
+		Map<Endpoint, EndpointRecorder> recorders = new EnumMap<>(Endpoint.class);
+		for (Endpoint endpoint : endpoints) {
+			recorders.put(endpoint, new EndpointRecorder());
+		}
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicLong lastCompletion = new AtomicLong();
+		long intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / rate));
+		long total = Math.max(1, Math.round(rate * duration.toNanos() / TimeUnit.SECONDS.toNanos(1)));
+
+		long start = System.nanoTime();
+		lastCompletion.set(start);
+		for (long i = 0; i < total; i++) {
+			long intended = start + i * intervalNanos;
+			long wait = intended - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			Endpoint endpoint = nextEndpoint();
+			EndpointRecorder recorder = recorders.get(endpoint);
+			if (inFlight.get() >= maxInFlight) {
+				recorder.notSent.increment();
+				continue;
+			}
+			inFlight.incrementAndGet();
+			recorder.sent.increment();
+			send(endpoint, sessions.get((int) (i % sessions.size())), nextInput()).whenComplete((outcome, ex) -> {
+				long now = System.nanoTime();
+				recorder.record(now - intended, ex != null ? exceptionName(ex) : outcome);
+				lastCompletion.accumulateAndGet(now, Math::max);
+				inFlight.decrementAndGet();
+			});
+		}
+		long dispatchEnd = System.nanoTime();
+
+		// 応答待ちのリクエストが完了するまで待機する
+		long drainDeadline = dispatchEnd + requestTimeout.toNanos() + TimeUnit.SECONDS.toNanos(5);
+		while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+
+		Map<Endpoint, EndpointResult> results = new EnumMap<>(Endpoint.class);
+		recorders.forEach((endpoint, recorder) -> results.put(endpoint, recorder.result()));
+		return new RunResult(rate, dispatchEnd - start, lastCompletion.get() - start, inFlight.get(), results);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * リクエストを送信する
+	 *
+	 * @return 成功の場合はnull、失敗の場合は失敗の種類（ステータスコードなど）を受け取るFuture
+	 */
+	private CompletableFuture<String> send(Endpoint endpoint, Session session, String input) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder().timeout(requestTimeout).header("Cookie", session.cookie);
+		HttpRequest request = switch (endpoint) {
+			case ANALYZE -> builder.uri(baseUri.resolve("/analyze"))
+					.header("Content-Type", "application/x-www-form-urlencoded")
+					.POST(HttpRequest.BodyPublishers.ofString("aiInput=" + encode(input)
+							+ "&" + encode(session.csrfParameter) + "=" + encode(session.csrfToken)))
+					.build();
+			case API -> builder.uri(baseUri.resolve("/api/analyze"))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString("{\"input\":\"" + input + "\"}"))
+					.build();
+		};
+		return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+			if (response.statusCode() != 200) {
+				return "status_" + response.statusCode();
+			}
+			// 画面はエラー時もエラー画面を HTTP 200 で返すため、分析結果の有無で判定する
+			if (endpoint == Endpoint.ANALYZE && !response.body().contains(RESULT_MARKER)) {
+				return "error_page";
+			}
+			return null;
+		});
+	}
+
+	private Endpoint nextEndpoint() {
+		int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < endpoints.length; i++) {
+			if (r < cumulativeWeights[i]) {
+				return endpoints[i];
+			}
+		}
+		return endpoints[endpoints.length - 1];
+	}
+
+	/**
+	 * 入力を作成する（指定した割合でキャッシュに当たる入力、それ以外はランダムな20文字）
+	 */
+	private String nextInput() {
+		if (random.nextDouble() < cacheHitRatio) {
+			return HOT_INPUTS.get(random.nextInt(HOT_INPUTS.size()));
+		}
+		StringBuilder sb = new StringBuilder(20);
+		for (int i = 0; i < 20; i++) {
+			sb.append(INPUT_CHARS.charAt(random.nextInt(INPUT_CHARS.length())));
+		}
+		return sb.toString();
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+
+	private static String exceptionName(Throwable ex) {
+		Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+		return cause.getClass().getSimpleName();
+	}
+
+	/**
+	 * ログイン済みのセッション
+	 */
+	private record Session(String cookie, String csrfParameter, String csrfToken) {
+	}
+
+	/**
+	 * エンドポイントごとの計測
+	 */
+	private static final class EndpointRecorder {
+
+		// 成功した応答の応答時間（マイクロ秒）
+		final Recorder latency = new Recorder(3);
+		final LongAdder sent = new LongAdder();
+		final LongAdder notSent = new LongAdder();
+		final LongAdder succeeded = new LongAdder();
+		// 失敗の種類ごとの件数
+		final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+		void record(long nanos, String error) {
+			if (error == null) {
+				succeeded.increment();
+				latency.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+			} else {
+				errors.computeIfAbsent(error, key -> new LongAdder()).increment();
+			}
+		}
+
+		EndpointResult result() {
+			Map<String, Long> errorCounts = new TreeMap<>();
+			errors.forEach((key, count) -> errorCounts.put(key, count.sum()));
+			return new EndpointResult(sent.sum(), notSent.sum(), succeeded.sum(), errorCounts,
+					latency.getIntervalHistogram());
+		}
+	}
+
+	/**
+	 * エンドポイントごとの結果
+	 *
+	 * @param sent      送信した件数
+	 * @param notSent   応答待ちの件数が上限に達したため送信しなかった件数
+	 * @param succeeded 成功した件数
+	 * @param errors    失敗の種類ごとの件数
+	 * @param latency   成功した応答の応答時間（マイクロ秒）
+	 */
+	record EndpointResult(long sent, long notSent, long succeeded, Map<String, Long> errors, Histogram latency) {
+	}
+
+	/**
+	 * 1回の実行の結果
+	 *
+	 * @param rate          1秒あたりの送信件数（目標）
+	 * @param dispatchNanos 送信にかかった時間
+	 * @param elapsedNanos  最後の応答までの時間
+	 * @param unfinished    待ち時間の上限までに応答がなかった件数
+	 * @param endpoints     エンドポイントごとの結果
+	 */
+	record RunResult(double rate, long dispatchNanos, long elapsedNanos, int unfinished,
+			Map<Endpoint, EndpointResult> endpoints) {
+	}
+}
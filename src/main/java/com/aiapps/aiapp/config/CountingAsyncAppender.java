@@ -0,0 +1,51 @@
+package com.aiapps.aiapp.config;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+
+/**
+ * 破棄したログの件数を数える Logback の非同期アペンダー
+ * リクエストのスレッドはキューに積むだけで、ファイル・標準出力への書き込みは専用のスレッドで行う
+ * キューが埋まりかけた場合は INFO 以下のログを破棄し（discardingThreshold）、満杯の場合は待たずに破棄する（neverBlock）
+ * ただし ERROR のログは失わないよう、満杯の場合に限り呼び出し元のスレッドで直接書き込む
+ *
+ * Logback が Spring の管理外で生成するため、件数は static のカウンタで保持する
+ *
+ * @author AiApp
+ */
+public class CountingAsyncAppender extends AsyncAppender {
+
+    // 破棄したログの件数
+    private static final LongAdder DROPPED = new LongAdder();
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        int remaining = getRemainingCapacity();
+        if (remaining == 0 && event.getLevel().isGreaterOrEqual(Level.ERROR)) {
+            // 満杯でも ERROR は呼び出し元のスレッドで書き込む（書き込み先のアペンダーは排他制御済み）
+            Iterator<Appender<ILoggingEvent>> appenders = iteratorForAppenders();
+            while (appenders.hasNext()) {
+                appenders.next().doAppend(event);
+            }
+            return;
+        }
+        if (remaining == 0 || (remaining < getDiscardingThreshold() && isDiscardable(event))) {
+            DROPPED.increment();
+        }
+        super.append(event);
+    }
+
+    /**
+     * 起動後に破棄したログの件数を取得する
+     *
+     * @return 破棄したログの件数
+     */
+    public static long dropped() {
+        return DROPPED.sum();
+    }
+}
@@ -0,0 +1,49 @@
+package com.aiapps.aiapp.config;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * 間引き対象のリクエストの INFO 以下のログを出力しない Logback のフィルター
+ * 間引きの判定は {@link RequestCorrelationFilter} が MDC に設定する。WARN 以上のログと、
+ * リクエスト外（起動処理や非同期処理のスレッドなど）のログは常に出力する
+ * ログのイベントを作成する前に判定するため、間引いたログはメッセージの組み立ても行わない
+ *
+ * Logback が Spring の管理外で生成するため、件数は static のカウンタで保持する
+ *
+ * @author AiApp
+ */
+public class LogSamplingFilter extends TurboFilter {
+
+    // 間引いたログの件数
+    private static final LongAdder SAMPLED_OUT = new LongAdder();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params,
+            Throwable t) {
+        if (level == null || level.isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        if ("false".equals(MDC.get(RequestCorrelationFilter.MDC_SAMPLED)) && logger.isEnabledFor(level)) {
+            SAMPLED_OUT.increment();
+            return FilterReply.DENY;
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    /**
+     * 起動後に間引いたログの件数を取得する
+     *
+     * @return 間引いたログの件数
+     */
+    public static long sampledOut() {
+        return SAMPLED_OUT.sum();
+    }
+}
@@ -0,0 +1,199 @@
+package com.aiapps.aiapp.config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.aiapps.aiapp.service.AdaptiveConcurrencyLimiter;
+import com.aiapps.aiapp.service.AnalysisResultCache;
+import com.aiapps.aiapp.service.FairShareScheduler;
+import com.aiapps.aiapp.service.InFlightRequestCoalescer;
+import com.aiapps.aiapp.service.NearDuplicateIndex;
+import com.aiapps.aiapp.service.SharedResultCache;
+import com.aiapps.aiapp.service.UpstreamCallGuard;
+import com.aiapps.aiapp.service.UpstreamHttpClient;
+import com.aiapps.aiapp.service.UserQuotaLimiter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * メトリクスの設定を管理する構成クラス
+ * 分析結果キャッシュ・共有キャッシュ・相乗り処理・類似入力の索引・同時実行制御・呼び出し保護・外部APIとの通信・利用回数の制限・
+ * 公平な割り当ての状態をゲージとして公開
+ *
+ * @author AiApp
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * 分析処理の各コンポーネントの状態をメトリクスに登録する
+     *
+     * @param resultCache  分析結果キャッシュ
+     * @param sharedCache  共有キャッシュ
+     * @param coalescer    相乗り処理
+     * @param near         類似入力の索引
+     * @param limiter      同時実行制御
+     * @param guard        呼び出し保護
+     * @param http         外部APIとの通信
+     * @param quotaLimiter 利用回数の制限
+     * @param scheduler    公平な割り当て
+     * @return メトリクスの登録処理
+     */
+    @Bean
+    public MeterBinder analysisComponentMetrics(AnalysisResultCache resultCache, SharedResultCache sharedCache,
+            InFlightRequestCoalescer coalescer, NearDuplicateIndex near, AdaptiveConcurrencyLimiter limiter,
+            UpstreamCallGuard guard, UpstreamHttpClient http, UserQuotaLimiter quotaLimiter,
+            FairShareScheduler scheduler) {
+        return registry -> {
+            // 分析結果キャッシュ
+            Gauge.builder("aiapp.cache.size", resultCache, cache -> cache.stats().size())
+                    .description("分析結果キャッシュの件数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.cache.requests", resultCache, cache -> cache.stats().hits())
+                    .description("分析結果キャッシュの検索件数")
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.cache.requests", resultCache, cache -> cache.stats().misses())
+                    .description("分析結果キャッシュの検索件数")
+                    .tag("result", "miss")
+                    .register(registry);
+
+            // 共有キャッシュ
+            FunctionCounter.builder("aiapp.cache.shared.requests", sharedCache, cache -> cache.stats().hits())
+                    .description("共有キャッシュの検索件数")
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.cache.shared.requests", sharedCache, cache -> cache.stats().misses())
+                    .description("共有キャッシュの検索件数")
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.cache.shared.errors", sharedCache, cache -> cache.stats().errors())
+                    .description("共有キャッシュの保存先に接続できなかった回数")
+                    .register(registry);
+
+            // 類似入力の索引
+            Gauge.builder("aiapp.near.size", near, n -> n.stats().size())
+                    .description("類似入力の索引の件数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.near.requests", near, n -> n.stats().nearHits())
+                    .description("類似入力の索引の検索件数")
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.near.requests", near, n -> n.stats().lookups() - n.stats().nearHits())
+                    .description("類似入力の索引の検索件数")
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.near.evictions", near, n -> n.stats().evictions())
+                    .description("件数の上限を超えて類似入力の索引から追い出した件数")
+                    .register(registry);
+            FunctionTimer.builder("aiapp.near.lookup", near, n -> n.stats().lookups(),
+                    n -> n.stats().lookupNanos(), TimeUnit.NANOSECONDS)
+                    .description("類似入力の索引の検索時間")
+                    .register(registry);
+
+            // 相乗り処理
+            Gauge.builder("aiapp.coalescer.in.flight", coalescer, c -> c.stats().inFlight())
+                    .description("Gemini API の呼び出しを共有している入力の件数")
+                    .register(registry);
+
+            // 同時実行制御
+            Gauge.builder("aiapp.gemini.in.flight", limiter, l -> l.stats().inFlight())
+                    .description("実行中の Gemini API 呼び出し数")
+                    .register(registry);
+            Gauge.builder("aiapp.gemini.limit", limiter, l -> l.stats().limit())
+                    .description("Gemini API の同時呼び出し数の上限")
+                    .register(registry);
+            Gauge.builder("aiapp.gemini.queued", limiter, l -> l.stats().queued())
+                    .description("同時呼び出し数の空きを待っている件数")
+                    .register(registry);
+
+            // 呼び出し保護（時間切れ・応答期限・ヘッジ）
+            FunctionCounter.builder("aiapp.gemini.timeouts", guard, g -> g.stats().timeouts())
+                    .description("1回の試行の待ち時間の上限を超えた件数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.gemini.deadline.exceeded", guard, g -> g.stats().deadlineExceeded())
+                    .description("応答期限を過ぎたため試行・再試行しなかった件数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.gemini.hedges", guard, g -> g.stats().hedges())
+                    .description("ヘッジの件数")
+                    .tag("result", "fired")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.gemini.hedges", guard, g -> g.stats().hedgeWins())
+                    .description("ヘッジの件数")
+                    .tag("result", "won")
+                    .register(registry);
+            Gauge.builder("aiapp.gemini.hedge.delay", guard, g -> g.stats().hedgeDelayMillis())
+                    .description("ヘッジを送信するまでの現在の待ち時間（ミリ秒、記録が足りない場合は-1）")
+                    .register(registry);
+
+            // 外部APIとの通信（接続の再利用率は connections / requests で求める）
+            FunctionCounter.builder("aiapp.http.requests", http, h -> h.stats().requests())
+                    .description("外部APIへのリクエスト数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.http.connections", http, h -> h.stats().connections())
+                    .description("外部APIとの間で新しく確立した TLS 接続数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.http.responses.http2", http, h -> h.stats().http2Responses())
+                    .description("HTTP/2 で受け取った応答数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.http.warmups", http, h -> h.stats().warmUps())
+                    .description("接続の確立・維持のために送ったリクエスト数")
+                    .register(registry);
+
+            // 利用回数の制限
+            Gauge.builder("aiapp.quota.users", quotaLimiter, q -> q.stats().users())
+                    .description("利用履歴のある利用者数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.quota.requests", quotaLimiter, q -> q.stats().used())
+                    .description("利用回数の制限の判定件数")
+                    .tag("result", "allowed")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.quota.requests", quotaLimiter, q -> q.stats().rejected())
+                    .description("利用回数の制限の判定件数")
+                    .tag("result", "rejected")
+                    .register(registry);
+
+            // 公平な割り当て
+            Gauge.builder("aiapp.fair.in.flight", scheduler, s -> s.stats().inFlight())
+                    .description("公平な割り当てで実行中の分析依頼の件数")
+                    .register(registry);
+            Gauge.builder("aiapp.fair.queued", scheduler, s -> s.stats().queued())
+                    .description("公平な割り当てで順番を待っている分析依頼の件数")
+                    .register(registry);
+            Gauge.builder("aiapp.fair.users", scheduler, s -> s.stats().users())
+                    .description("実行中・待機中の分析依頼がある利用者数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.fair.rejected", scheduler, s -> s.stats().rejected())
+                    .description("利用者ごとの待機数の上限に達したため拒否した件数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.fair.expired", scheduler, s -> s.stats().expired())
+                    .description("順番待ちの間に応答期限を過ぎた件数")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * ログの間引き・破棄の件数をメトリクスに登録する（async-logging プロファイルの場合に加算される）
+     *
+     * @return メトリクスの登録処理
+     */
+    @Bean
+    public MeterBinder loggingMetrics() {
+        return registry -> {
+            FunctionCounter.builder("aiapp.logging.sampled.out", LogSamplingFilter.class,
+                    c -> LogSamplingFilter.sampledOut())
+                    .description("間引き対象のリクエストのため出力しなかった INFO 以下のログの件数")
+                    .register(registry);
+            FunctionCounter.builder("aiapp.logging.dropped", CountingAsyncAppender.class,
+                    c -> CountingAsyncAppender.dropped())
+                    .description("非同期アペンダーのキューが埋まっていたため破棄したログの件数")
+                    .register(registry);
+        };
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.aiapps.aiapp.config;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * リクエストごとの相関IDとログの間引きの判定を MDC に設定するフィルター
+ * 相関IDは X-Request-Id ヘッダー（ロードバランサーなどが付与したもの）を引き継ぎ、ない場合は生成してレスポンスにも返す
+ * 間引きの判定はリクエスト単位で行い、対象外のリクエストの INFO 以下のログは {@link LogSamplingFilter} で出力しない
+ * （1件のリクエストのログは全部出るか、WARN 以上だけ出るかのどちらかになる）
+ *
+ * @author AiApp
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class RequestCorrelationFilter extends OncePerRequestFilter {
+
+    /** 相関IDのヘッダー名 */
+    public static final String HEADER_REQUEST_ID = "X-Request-Id";
+    /** 相関IDの MDC のキー */
+    public static final String MDC_REQUEST_ID = "requestId";
+    /** 間引きの判定の MDC のキー（"false" の場合は INFO 以下のログを出力しない） */
+    public static final String MDC_SAMPLED = "sampled";
+
+    // 引き継ぐ相関IDの形式（ログへの不正な文字列の混入を防ぐ）
+    private static final Pattern REQUEST_ID_PATTERN = Pattern.compile("[A-Za-z0-9._:-]{1,64}");
+
+    // INFO 以下のログを出力するリクエストの割合
+    private final double sampleRate;
+
+    /**
+     * コンストラクタ：application.properties の設定値を注入
+     *
+     * @param sampleRate INFO 以下のログを出力するリクエストの割合（1.0 の場合はすべて出力）
+     */
+    public RequestCorrelationFilter(@Value("${aiapp.logging.sample-rate:1.0}") double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        String requestId = request.getHeader(HEADER_REQUEST_ID);
+        if (requestId == null || !REQUEST_ID_PATTERN.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
+        }
+        boolean sampled = sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        response.setHeader(HEADER_REQUEST_ID, requestId);
+        MDC.put(MDC_REQUEST_ID, requestId);
+        MDC.put(MDC_SAMPLED, String.valueOf(sampled));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(MDC_REQUEST_ID);
+            MDC.remove(MDC_SAMPLED);
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package com.aiapps.aiapp.config;
 
+import java.time.Duration;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.SavedRequestAwareAuthenticationSuccessHandler;
+import org.springframework.security.web.savedrequest.NullRequestCache;
+
+import com.aiapps.aiapp.controller.AuthExpiryHints;
+import com.aiapps.aiapp.service.SharedStateStore;
+
+import jakarta.servlet.http.HttpServletResponse;
 
 /**
  * アプリケーションのセキュリティ設定を管理する構成クラス
@@ -20,41 +33,86 @@ public class SecurityConfig {
     // ロガーの定義
     private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
 
+    /**
+     * OAuth2 の認可済みクライアントの保存先
+     * トークンのみを共有状態の保存先に保存し、複数台で共有する
+     *
+     * @param store               共有状態の保存先
+     * @param clientRegistrations クライアント登録
+     * @param timeout             保存する有効期間（セッションの有効期間と同じ）
+     * @return 認可済みクライアントの保存先
+     */
+    @Bean
+    public OAuth2AuthorizedClientRepository authorizedClientRepository(SharedStateStore store,
+            ClientRegistrationRepository clientRegistrations,
+            @Value("${server.servlet.session.timeout:30m}") Duration timeout) {
+        return new SharedAuthorizedClientRepository(store, clientRegistrations, timeout);
+    }
+
     /**
      * セキュリティフィルターチェーンの設定
      * 
-     * @param http HttpSecurityオブジェクト
+     * @param http                       HttpSecurityオブジェクト
+     * @param authExpiryHints            認証の有効期限の確認（ログイン時にヒントCookieを発行）
+     * @param authorizedClientRepository 認可済みクライアントの保存先
      * @return 構成済みのSecurityFilterChainオブジェクト
      * @throws Exception セキュリティ設定の構築中に発生する可能性のある例外
      */
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, AuthExpiryHints authExpiryHints,
+            OAuth2AuthorizedClientRepository authorizedClientRepository) throws Exception {
 
         logger.debug("CsecurityFilterChainの設定を開始します。");
 
+        // 認証成功後のリダイレクト先（常に分析画面へ）
+        SavedRequestAwareAuthenticationSuccessHandler successRedirect =
+                new SavedRequestAwareAuthenticationSuccessHandler();
+        successRedirect.setDefaultTargetUrl("/aiAnalysis");
+        successRedirect.setAlwaysUseDefaultTargetUrl(true);
+
         // URLパスごとのアクセス権限設定
         http.authorizeHttpRequests(auth -> auth
-                .requestMatchers("/", "/login", "/css/**", "/js/aiapp-script.js", "/favicon.ico",
+                .requestMatchers("/", "/login", "/css/**", "/js/**", "/favicon.ico",
                         "/api/auth/check") // 許可するパスを指定
                 .permitAll() // これらのパスは認証不要でアクセス可能
+                // 死活監視とメトリクス収集（管理用ポートでのみ公開）
+                .requestMatchers("/actuator/health", "/actuator/prometheus")
+                .permitAll()
                 .anyRequest().authenticated())
                 .oauth2Login(oauth2 -> oauth2
                         .loginProcessingUrl("/auth2/callback") // OAuth2認証後のコールバックURL
                         .loginPage("/login") // カスタムログインページのURL
-                        .defaultSuccessUrl("/aiAnalysis", true) // 認証成功後のリダイレクト先URL
-                )
+                        .authorizedClientRepository(authorizedClientRepository) // トークンは共有状態の保存先に保存
+                        // 認証成功時に有効期限のヒントCookieを発行してから分析画面へリダイレクト
+                        .successHandler((request, response, authentication) -> {
+                            authExpiryHints.issue(request, response, authentication);
+                            successRedirect.onAuthenticationSuccess(request, response, authentication);
+                        }))
+                // 認証成功後は常に分析画面へリダイレクトするため、認証前のリクエストをセッションに保存しない
+                .requestCache(cache -> cache.requestCache(new NullRequestCache()))
+                // JSON API は Content-Type: application/json 等を必須とし、他オリジンからは
+                // プリフライトで拒否されるため CSRF トークンの検証対象から除外
+                .csrf(csrf -> csrf.ignoringRequestMatchers("/api/**"))
                 .logout(logout -> logout
                         .logoutSuccessUrl("/login?logout") // ログアウト成功後のリダイレクト先URL
                         .invalidateHttpSession(true) // セッションを無効化
-                        .deleteCookies("JSESSIONID")) // セッションCookieを削除
+                        // セッションCookie（組み込みコンテナ・共有セッション）とヒントCookieを削除
+                        .deleteCookies("JSESSIONID", "SESSION", AuthExpiryHints.COOKIE_NAME))
 
                 // Spring Securityの設定内でキャッシュ制御を追加
+                // 画面・APIの応答は利用者ごとの内容のためキャッシュさせない（no-cache, no-store）
+                // 静的リソースはリソースハンドラが Cache-Control を設定するため、こちらでは上書きされない
                 .headers(headers -> headers
-                        .cacheControl(cache -> cache.disable())) // キャッシュ制御を無効化
+                        .cacheControl(Customizer.withDefaults()))
 
                 .exceptionHandling(ex -> ex
                         // 期限切れや認証エラー時に強制ログアウト
                         .authenticationEntryPoint((request, response, authException) -> {
+                            if (request.getRequestURI().startsWith("/api/")) {
+                                // APIはリダイレクトせず HTTP 401 を返す
+                                response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                                return;
+                            }
                             response.sendRedirect("/login?error=expired"); // ログインページへリダイレクト
                         }));
 
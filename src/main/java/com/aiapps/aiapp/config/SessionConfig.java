@@ -0,0 +1,42 @@
+package com.aiapps.aiapp.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+
+import com.aiapps.aiapp.service.SharedStateStore;
+
+/**
+ * セッションの保存先を管理する構成クラス
+ * 共有状態の保存先に Redis 互換のサーバーを使用する場合（aiapp.state.store=redis）に限り、
+ * 組み込みコンテナのセッションを Spring Session に置き換えて共有状態の保存先に保存する
+ * これにより、ロードバランサーのスティッキーセッションなしで複数台に振り分けられる
+ *
+ * @author AiApp
+ */
+@Configuration
+@EnableSpringHttpSession
+@ConditionalOnProperty(name = "aiapp.state.store", havingValue = "redis")
+public class SessionConfig {
+
+    /**
+     * 共有状態の保存先にセッションを保存するリポジトリ
+     *
+     * @param store             共有状態の保存先
+     * @param timeout           セッションの有効期間
+     * @param touchInterval     属性が変わっていないセッションの有効期間を延長する最短の間隔
+     * @param compressThreshold セッションを圧縮して保存する大きさ（バイト）
+     * @return セッションのリポジトリ
+     */
+    @Bean
+    public SharedSessionRepository sessionRepository(SharedStateStore store,
+            @Value("${server.servlet.session.timeout:30m}") Duration timeout,
+            @Value("${aiapp.state.session.touch-interval:1m}") Duration touchInterval,
+            @Value("${aiapp.state.session.compress-threshold:1024}") int compressThreshold) {
+        return new SharedSessionRepository(store, timeout, touchInterval, compressThreshold);
+    }
+}
@@ -0,0 +1,214 @@
+package com.aiapps.aiapp.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.HttpSessionOAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+import com.aiapps.aiapp.service.SharedStateStore;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * OAuth2 の認可済みクライアントを共有状態の保存先に保存するリポジトリ
+ * 既定の実装（プロセス内のメモリに利用者ごとに保持し、削除されない）を置き換え、複数台で共有できるようにする
+ *
+ * 保存するのはアクセストークンとリフレッシュトークンの値・期限・スコープのみで、
+ * クライアント登録（クライアントシークレットやエンドポイントのURL）は読み込み時に ClientRegistrationRepository から補う
+ * 有効期間はセッションと同じとし、利用されなくなった認可済みクライアントは保存先から自動的に削除される
+ *
+ * @author AiApp
+ */
+public class SharedAuthorizedClientRepository implements OAuth2AuthorizedClientRepository {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(SharedAuthorizedClientRepository.class);
+
+    // 保存形式のバージョン
+    private static final byte FORMAT_VERSION = 1;
+    // 保存先のキーの接頭辞
+    private static final String KEY_PREFIX = "oauth2:";
+    // 期限が未設定の場合の値
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    // 共有状態の保存先
+    private final SharedStateStore store;
+    // クライアント登録
+    private final ClientRegistrationRepository clientRegistrations;
+    // 保存する有効期間
+    private final Duration ttl;
+    // 未ログイン時の保存先（ログイン処理中の匿名の利用者はセッションに保存する）
+    private final OAuth2AuthorizedClientRepository anonymousClients = new HttpSessionOAuth2AuthorizedClientRepository();
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    /**
+     * コンストラクタ
+     *
+     * @param store               共有状態の保存先
+     * @param clientRegistrations クライアント登録
+     * @param ttl                 保存する有効期間
+     */
+    public SharedAuthorizedClientRepository(SharedStateStore store, ClientRegistrationRepository clientRegistrations,
+            Duration ttl) {
+        this.store = store;
+        this.clientRegistrations = clientRegistrations;
+        this.ttl = ttl;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId,
+            Authentication principal, HttpServletRequest request) {
+        if (isAnonymous(principal)) {
+            return anonymousClients.loadAuthorizedClient(clientRegistrationId, principal, request);
+        }
+        ClientRegistration registration = clientRegistrations.findByRegistrationId(clientRegistrationId);
+        if (registration == null) {
+            return null;
+        }
+        byte[] value;
+        try {
+            value = store.get(key(clientRegistrationId, principal.getName()));
+        } catch (UncheckedIOException e) {
+            // 保存先に接続できない場合は未認可として扱う（再ログインを促す）
+            logger.warn("認可済みクライアントを読み込めませんでした: {}", e.getMessage());
+            return null;
+        }
+        if (value == null) {
+            return null;
+        }
+        try {
+            return (T) decode(registration, principal.getName(), value);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.info("読み込めない認可済みクライアントを破棄しました: {}", e.getMessage());
+            store.delete(key(clientRegistrationId, principal.getName()));
+            return null;
+        }
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal,
+            HttpServletRequest request, HttpServletResponse response) {
+        if (isAnonymous(principal)) {
+            anonymousClients.saveAuthorizedClient(authorizedClient, principal, request, response);
+            return;
+        }
+        store.put(key(authorizedClient.getClientRegistration().getRegistrationId(), principal.getName()),
+                encode(authorizedClient), ttl);
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, Authentication principal,
+            HttpServletRequest request, HttpServletResponse response) {
+        if (isAnonymous(principal)) {
+            anonymousClients.removeAuthorizedClient(clientRegistrationId, principal, request, response);
+            return;
+        }
+        store.delete(key(clientRegistrationId, principal.getName()));
+    }
+
+    private boolean isAnonymous(Authentication principal) {
+        return principal == null || trustResolver.isAnonymous(principal);
+    }
+
+    private static String key(String clientRegistrationId, String principalName) {
+        return KEY_PREFIX + clientRegistrationId + ":" + principalName;
+    }
+
+    /**
+     * 認可済みクライアントのトークンを保存形式に変換する
+     *
+     * @param client 認可済みクライアント
+     * @return 保存する値
+     */
+    static byte[] encode(OAuth2AuthorizedClient client) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            OAuth2AccessToken accessToken = client.getAccessToken();
+            out.writeUTF(accessToken.getTokenType().getValue());
+            out.writeUTF(accessToken.getTokenValue());
+            writeTime(out, accessToken.getIssuedAt());
+            writeTime(out, accessToken.getExpiresAt());
+            out.writeInt(accessToken.getScopes().size());
+            for (String scope : accessToken.getScopes()) {
+                out.writeUTF(scope);
+            }
+            OAuth2RefreshToken refreshToken = client.getRefreshToken();
+            out.writeBoolean(refreshToken != null);
+            if (refreshToken != null) {
+                out.writeUTF(refreshToken.getTokenValue());
+                writeTime(out, refreshToken.getIssuedAt());
+                writeTime(out, refreshToken.getExpiresAt());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 保存形式から認可済みクライアントを復元する
+     *
+     * @param registration  クライアント登録
+     * @param principalName 利用者名
+     * @param value         保存されていた値
+     * @return 認可済みクライアント
+     * @throws IOException 形式が不正な場合
+     */
+    static OAuth2AuthorizedClient decode(ClientRegistration registration, String principalName, byte[] value)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        if (in.readByte() != FORMAT_VERSION) {
+            throw new IOException("認可済みクライアントの保存形式が異なります");
+        }
+        String tokenType = in.readUTF();
+        if (!OAuth2AccessToken.TokenType.BEARER.getValue().equalsIgnoreCase(tokenType)) {
+            throw new IOException("未対応のトークン種別です: " + tokenType);
+        }
+        String tokenValue = in.readUTF();
+        Instant issuedAt = readTime(in);
+        Instant expiresAt = readTime(in);
+        int scopeCount = in.readInt();
+        Set<String> scopes = new LinkedHashSet<>();
+        for (int i = 0; i < scopeCount; i++) {
+            scopes.add(in.readUTF());
+        }
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, tokenValue,
+                issuedAt, expiresAt, scopes);
+        OAuth2RefreshToken refreshToken = null;
+        if (in.readBoolean()) {
+            refreshToken = new OAuth2RefreshToken(in.readUTF(), readTime(in), readTime(in));
+        }
+        return new OAuth2AuthorizedClient(registration, principalName, accessToken, refreshToken);
+    }
+
+    private static void writeTime(DataOutputStream out, Instant time) throws IOException {
+        out.writeLong(time != null ? time.toEpochMilli() : NO_TIME);
+    }
+
+    private static Instant readTime(DataInputStream in) throws IOException {
+        long millis = in.readLong();
+        return millis != NO_TIME ? Instant.ofEpochMilli(millis) : null;
+    }
+}
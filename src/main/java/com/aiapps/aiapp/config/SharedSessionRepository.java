@@ -0,0 +1,331 @@
+package com.aiapps.aiapp.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+import com.aiapps.aiapp.service.SharedStateStore;
+
+/**
+ * セッションを共有状態の保存先に保存するリポジトリ（Spring Session）
+ * 複数台のアプリケーションのどれにリクエストが届いても同じセッションを参照できる
+ *
+ * 保存量と通信量を抑えるため、次のように保存する
+ *
+ * <pre>
+ * - 属性はまとめて1つのストリームでシリアライズする（認証情報の中で共有されるIDトークンなどを重複して書き出さない）
+ * - 一定の大きさを超えた場合は圧縮する
+ * - 属性が変わっていないリクエストでは書き込まず、最終アクセス時刻が一定以上進んだ場合にだけ書き込んで有効期間を延長する
+ * - シリアライズできない属性は保存しない
+ * </pre>
+ *
+ * 保存先の値を書き換えられた場合に任意のクラスを復元しないよう、復元できるクラスを
+ * JDK・Spring Security・Spring Session・アプリケーションのパッケージに限定する
+ *
+ * @author AiApp
+ */
+public class SharedSessionRepository implements SessionRepository<SharedSessionRepository.SharedSession> {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(SharedSessionRepository.class);
+
+    // 保存形式のバージョン
+    private static final byte FORMAT_VERSION = 1;
+    // 保存先のキーの接頭辞
+    private static final String KEY_PREFIX = "session:";
+    // 属性の復元を許可するクラス（一致しないクラスを含むセッションは読み込めないものとして破棄する）
+    private static final ObjectInputFilter ATTRIBUTE_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=64;java.**;org.springframework.security.**;org.springframework.session.**;com.aiapps.**;!*");
+
+    // 共有状態の保存先
+    private final SharedStateStore store;
+    // 既定の有効期間
+    private final Duration defaultMaxInactiveInterval;
+    // 有効期間を延長する最短の間隔
+    private final Duration touchInterval;
+    // 圧縮する大きさ（バイト）
+    private final int compressThreshold;
+
+    /**
+     * コンストラクタ
+     *
+     * @param store                      共有状態の保存先
+     * @param defaultMaxInactiveInterval 既定の有効期間
+     * @param touchInterval              有効期間を延長する最短の間隔
+     * @param compressThreshold          圧縮する大きさ（バイト）
+     */
+    public SharedSessionRepository(SharedStateStore store, Duration defaultMaxInactiveInterval,
+            Duration touchInterval, int compressThreshold) {
+        this.store = store;
+        this.defaultMaxInactiveInterval = defaultMaxInactiveInterval;
+        this.touchInterval = touchInterval;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public SharedSession createSession() {
+        MapSession session = new MapSession();
+        session.setMaxInactiveInterval(defaultMaxInactiveInterval);
+        return new SharedSession(session, null, null);
+    }
+
+    @Override
+    public void save(SharedSession session) {
+        byte[] attributes = serializeAttributes(session.delegate);
+        String id = session.getId();
+        Duration ttl = ttlOf(session);
+
+        if (session.storedId != null && session.storedId.equals(id)
+                && Arrays.equals(attributes, session.storedAttributes)) {
+            // 属性が変わっていない場合は、最終アクセス時刻が一定以上進んだときだけ書き込んで有効期間を延長する
+            if (Duration.between(session.storedAccessedTime, session.getLastAccessedTime())
+                    .compareTo(touchInterval) < 0) {
+                return;
+            }
+        }
+
+        store.put(KEY_PREFIX + id, encode(session.delegate, attributes), ttl);
+        if (session.storedId != null && !session.storedId.equals(id)) {
+            // セッションIDを変更した場合（ログイン時のセッション固定攻撃対策）は古いキーを削除
+            store.delete(KEY_PREFIX + session.storedId);
+        }
+        session.storedId = id;
+        session.storedAttributes = attributes;
+        session.storedAccessedTime = session.getLastAccessedTime();
+    }
+
+    @Override
+    public SharedSession findById(String id) {
+        byte[] value = store.get(KEY_PREFIX + id);
+        if (value == null) {
+            return null;
+        }
+        SharedSession session;
+        try {
+            session = decode(id, value);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            // 旧バージョンの形式・クラスなど読み込めないセッションは破棄する（再ログインを促す）
+            logger.info("読み込めないセッションを破棄しました: {}", e.getMessage());
+            store.delete(KEY_PREFIX + id);
+            return null;
+        }
+        if (session.isExpired()) {
+            deleteById(id);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        store.delete(KEY_PREFIX + id);
+    }
+
+    /**
+     * セッションの有効期間を求める
+     *
+     * @param session セッション
+     * @return 有効期間（無期限の設定の場合は既定の有効期間）
+     */
+    private Duration ttlOf(SharedSession session) {
+        Duration interval = session.getMaxInactiveInterval();
+        return interval.isNegative() || interval.isZero() ? defaultMaxInactiveInterval : interval;
+    }
+
+    /**
+     * 属性をまとめてシリアライズする（シリアライズできない属性は除外）
+     *
+     * @param session セッション
+     * @return シリアライズした属性
+     */
+    private static byte[] serializeAttributes(MapSession session) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (String name : session.getAttributeNames()) {
+            Object value = session.getAttribute(name);
+            if (value instanceof Serializable) {
+                attributes.put(name, value);
+            } else {
+                logger.debug("シリアライズできないセッション属性を保存しません: {}", name);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(attributes);
+        } catch (NotSerializableException e) {
+            // 属性の内部にシリアライズできないオブジェクトがある場合
+            throw new IllegalStateException("セッション属性をシリアライズできません: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * セッションを保存形式に変換する
+     *
+     * @param session    セッション
+     * @param attributes シリアライズした属性
+     * @return 保存する値
+     */
+    private byte[] encode(MapSession session, byte[] attributes) {
+        boolean compress = attributes.length >= compressThreshold;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(attributes.length / (compress ? 3 : 1) + 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeBoolean(compress);
+            out.writeLong(session.getCreationTime().toEpochMilli());
+            out.writeLong(session.getLastAccessedTime().toEpochMilli());
+            out.writeLong(session.getMaxInactiveInterval().getSeconds());
+            if (compress) {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try (DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater)) {
+                    deflated.write(attributes);
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                out.write(attributes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 保存形式からセッションを復元する
+     *
+     * @param id    セッションID
+     * @param value 保存されていた値
+     * @return セッション
+     * @throws IOException            形式が不正な場合、または復元を許可していないクラスを含む場合
+     * @throws ClassNotFoundException 属性のクラスが見つからない場合
+     */
+    @SuppressWarnings("unchecked")
+    private static SharedSession decode(String id, byte[] value) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+        if (in.readByte() != FORMAT_VERSION) {
+            throw new IOException("セッションの保存形式が異なります");
+        }
+        boolean compressed = in.readBoolean();
+        MapSession session = new MapSession(id);
+        session.setCreationTime(Instant.ofEpochMilli(in.readLong()));
+        session.setLastAccessedTime(Instant.ofEpochMilli(in.readLong()));
+        session.setMaxInactiveInterval(Duration.ofSeconds(in.readLong()));
+
+        InputStream body = compressed ? new InflaterInputStream(in) : in;
+        byte[] attributes = body.readAllBytes();
+        try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(attributes))) {
+            objects.setObjectInputFilter(ATTRIBUTE_FILTER);
+            Map<String, Object> map = (Map<String, Object>) objects.readObject();
+            map.forEach(session::setAttribute);
+        }
+        return new SharedSession(session, id, attributes);
+    }
+
+    /**
+     * 保存時の状態を保持するセッション
+     * 属性が変わったかどうかを、保存時にシリアライズした属性との比較で判定する
+     */
+    public static final class SharedSession implements Session {
+
+        private final MapSession delegate;
+        // 保存先のセッションID（未保存の場合はnull）
+        private String storedId;
+        // 保存時にシリアライズした属性
+        private byte[] storedAttributes;
+        // 保存時の最終アクセス時刻
+        private Instant storedAccessedTime;
+
+        SharedSession(MapSession delegate, String storedId, byte[] storedAttributes) {
+            this.delegate = delegate;
+            this.storedId = storedId;
+            this.storedAttributes = storedAttributes;
+            this.storedAccessedTime = delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            delegate.setAttribute(attributeName, attributeValue);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            delegate.removeAttribute(attributeName);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            delegate.setLastAccessedTime(lastAccessedTime);
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            delegate.setMaxInactiveInterval(interval);
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return delegate.isExpired();
+        }
+    }
+}
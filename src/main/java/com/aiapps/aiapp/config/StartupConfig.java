@@ -0,0 +1,56 @@
+package com.aiapps.aiapp.config;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * 起動時間の短縮に関する設定を管理する構成クラス
+ * aiapp.startup.lazy-init=true の場合、aiapp.startup.lazy-beans に指定した Bean を起動時ではなく最初の利用時に生成する
+ *
+ * 対象は最初のリクエストの処理に不要な Bean（例外ハンドラー、利用頻度の低い API のコントローラーなど）に限定し、
+ * 分析処理・認証・永続化ファイルの読み込みなど最初のリクエストの応答時間に影響する Bean は起動時に生成する
+ * WebMvcConfigurer（WebMvcConfig）は Spring MVC の初期化時に必ず参照されるため、指定しても効果はない
+ *
+ * Spring AOT を有効にしてビルドした場合（-Pcds）は、ビルド時の設定値で遅延生成の対象が確定する
+ *
+ * @author AiApp
+ */
+@Configuration
+public class StartupConfig {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(StartupConfig.class);
+
+    /**
+     * 指定された Bean を遅延生成に切り替える
+     * Bean 定義の読み込み後・生成前に適用するため static メソッドで定義する
+     *
+     * @param environment 設定値の参照先
+     * @return Bean 定義の後処理
+     */
+    @Bean
+    public static BeanFactoryPostProcessor lazyBeanPostProcessor(Environment environment) {
+        return beanFactory -> {
+            Binder binder = Binder.get(environment);
+            if (!binder.bind("aiapp.startup.lazy-init", Boolean.class).orElse(false)) {
+                return;
+            }
+            String[] names = binder.bind("aiapp.startup.lazy-beans", String[].class).orElse(new String[0]);
+            for (String name : names) {
+                if (beanFactory.containsBeanDefinition(name)) {
+                    beanFactory.getBeanDefinition(name).setLazyInit(true);
+                } else {
+                    logger.warn("遅延生成の対象の Bean が見つかりません: {}", name);
+                }
+            }
+            logger.info("Bean を遅延生成に切り替えました: {}", Arrays.toString(names));
+        };
+    }
+}
@@ -0,0 +1,95 @@
+package com.aiapps.aiapp.config;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 起動から最初のリクエストに応答するまでの時間を計測するフィルター
+ * JVM の起動時刻を起点に、起動完了（ApplicationReadyEvent）と最初のリクエストの応答完了までの時間をログに出力し、
+ * aiapp.startup.first.request（最初のリクエストまで）と aiapp.startup.ready（起動完了まで）として公開する
+ * ローリングアップデートやオートスケール時の起動時間の推移を追跡するために使用する
+ *
+ * @author AiApp
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StartupTimingFilter extends OncePerRequestFilter {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimingFilter.class);
+
+    // JVM の起動時刻（エポックミリ秒）
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    // 起動完了までの時間（ミリ秒、未完了の場合は-1）
+    private final AtomicLong readyMillis = new AtomicLong(-1);
+    // 最初のリクエストの応答完了までの時間（ミリ秒、未応答の場合は-1）
+    private final AtomicLong firstRequestMillis = new AtomicLong(-1);
+    // 最初のリクエストを記録済みかどうか
+    private final AtomicBoolean recorded = new AtomicBoolean();
+
+    /**
+     * コンストラクタ：メトリクスの登録先を注入
+     *
+     * @param registry メトリクスの登録先
+     */
+    public StartupTimingFilter(MeterRegistry registry) {
+        TimeGauge.builder("aiapp.startup.ready", readyMillis, TimeUnit.MILLISECONDS, StartupTimingFilter::valueOf)
+                .description("JVM の起動からアプリケーションの起動完了までの時間")
+                .register(registry);
+        TimeGauge.builder("aiapp.startup.first.request", firstRequestMillis, TimeUnit.MILLISECONDS,
+                StartupTimingFilter::valueOf)
+                .description("JVM の起動から最初のリクエストに応答するまでの時間")
+                .register(registry);
+    }
+
+    /**
+     * 起動完了までの時間を記録する
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        readyMillis.set(System.currentTimeMillis() - jvmStartMillis);
+        logger.info("起動が完了しました。JVM の起動からの時間: {} ms", readyMillis.get());
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (!recorded.get() && recorded.compareAndSet(false, true)) {
+                firstRequestMillis.set(System.currentTimeMillis() - jvmStartMillis);
+                logger.info("最初のリクエストに応答しました。JVM の起動からの時間: {} ms（起動完了まで: {} ms, {} {}）",
+                        firstRequestMillis.get(), readyMillis.get(), request.getMethod(), request.getRequestURI());
+            }
+        }
+    }
+
+    /**
+     * 記録前は値なし（NaN）として公開する
+     */
+    private static double valueOf(AtomicLong millis) {
+        long value = millis.get();
+        return value < 0 ? Double.NaN : value;
+    }
+}
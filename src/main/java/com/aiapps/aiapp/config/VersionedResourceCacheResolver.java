@@ -0,0 +1,203 @@
+package com.aiapps.aiapp.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+import org.springframework.web.servlet.resource.VersionStrategy;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * ファイル名にバージョン（内容のハッシュ）を含むURLで要求された静的リソースに、変更されない前提の Cache-Control を付けるリゾルバー
+ * バージョン付きのURLは内容が変わるとURLも変わるため、ブラウザは有効期間中に再検証せずにキャッシュを使用できる
+ * バージョンなしのURL（外部から直接参照された場合など）は、リソースハンドラーの既定の Cache-Control（再検証）のままとする
+ *
+ * @author AiApp
+ */
+public class VersionedResourceCacheResolver extends AbstractResourceResolver {
+
+    // 内容のハッシュ（ContentVersionStrategy の MD5 の16進表記）の形式
+    // 「aiapp-style.css」の「style」のようにファイル名の一部をバージョンと誤認しないよう、形式まで確認する
+    private static final Pattern CONTENT_VERSION = Pattern.compile("[0-9a-f]{32}");
+    // パスのパターンの照合（VersionResourceResolver と同じ AntPathMatcher）
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    // バージョンの判定に使用するリゾルバー（後段でバージョンを検証・除去する）
+    private final VersionResourceResolver versionResolver;
+    // バージョン付きのURLに付ける Cache-Control
+    private final String cacheControl;
+
+    /**
+     * コンストラクタ
+     *
+     * @param versionResolver バージョンの判定に使用するリゾルバー
+     * @param maxAge          バージョン付きのURLのキャッシュ有効期間
+     */
+    public VersionedResourceCacheResolver(VersionResourceResolver versionResolver, Duration maxAge) {
+        this.versionResolver = versionResolver;
+        this.cacheControl = CacheControl.maxAge(maxAge).cachePublic().immutable().getHeaderValue();
+    }
+
+    @Override
+    protected Resource resolveResourceInternal(@Nullable HttpServletRequest request, @NonNull String requestPath,
+            @NonNull List<? extends Resource> locations, @NonNull ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource == null) {
+            return null;
+        }
+        // 後段で内容のハッシュと一致したバージョン付きのURLに限り、変更されない前提でキャッシュさせる
+        VersionStrategy strategy = strategyForPath(requestPath);
+        String version = strategy != null ? strategy.extractVersion(requestPath) : null;
+        if (version == null || !CONTENT_VERSION.matcher(version).matches()) {
+            return resource;
+        }
+        return new ImmutableResource(resource, cacheControl);
+    }
+
+    /**
+     * リクエストのパスに対応するバージョンの判定方法を求める
+     * VersionResourceResolver#getStrategyForPath は protected のため、公開されている対応表から同じ規則
+     * （一致するパターンのうち最も具体的なもの）で選ぶ
+     *
+     * @param requestPath リクエストのパス（先頭の「/」なし）
+     * @return バージョンの判定方法（対象外のパスの場合はnull）
+     */
+    @Nullable
+    private VersionStrategy strategyForPath(String requestPath) {
+        String path = "/".concat(requestPath);
+        Map<String, VersionStrategy> strategies = versionResolver.getStrategyMap();
+        List<String> matching = new ArrayList<>();
+        for (String pattern : strategies.keySet()) {
+            if (PATH_MATCHER.match(pattern, path)) {
+                matching.add(pattern);
+            }
+        }
+        if (matching.isEmpty()) {
+            return null;
+        }
+        matching.sort(PATH_MATCHER.getPatternComparator(path));
+        return strategies.get(matching.get(0));
+    }
+
+    @Override
+    protected String resolveUrlPathInternal(@NonNull String resourceUrlPath,
+            @NonNull List<? extends Resource> locations, @NonNull ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+
+    /**
+     * Cache-Control を付ける静的リソース（内容・圧縮形式・ETag などは元のリソースのものを使用する）
+     */
+    private static final class ImmutableResource extends AbstractResource implements HttpResource {
+
+        private final Resource original;
+        private final String cacheControl;
+
+        ImmutableResource(Resource original, String cacheControl) {
+            this.original = original;
+            this.cacheControl = cacheControl;
+        }
+
+        @Override
+        public boolean exists() {
+            return original.exists();
+        }
+
+        @Override
+        public boolean isReadable() {
+            return original.isReadable();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return original.isOpen();
+        }
+
+        @Override
+        public boolean isFile() {
+            return original.isFile();
+        }
+
+        @Override
+        @NonNull
+        public URL getURL() throws IOException {
+            return original.getURL();
+        }
+
+        @Override
+        @NonNull
+        public URI getURI() throws IOException {
+            return original.getURI();
+        }
+
+        @Override
+        @NonNull
+        public File getFile() throws IOException {
+            return original.getFile();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return original.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return original.lastModified();
+        }
+
+        @Override
+        @NonNull
+        public Resource createRelative(@NonNull String relativePath) throws IOException {
+            return original.createRelative(relativePath);
+        }
+
+        @Override
+        @Nullable
+        public String getFilename() {
+            return original.getFilename();
+        }
+
+        @Override
+        @NonNull
+        public String getDescription() {
+            return original.getDescription();
+        }
+
+        @Override
+        @NonNull
+        public InputStream getInputStream() throws IOException {
+            return original.getInputStream();
+        }
+
+        @Override
+        @NonNull
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            if (original instanceof HttpResource httpResource) {
+                headers.putAll(httpResource.getResponseHeaders());
+            }
+            headers.setCacheControl(cacheControl);
+            return headers;
+        }
+    }
+}
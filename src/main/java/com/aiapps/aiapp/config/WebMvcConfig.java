@@ -1,16 +1,32 @@
 package com.aiapps.aiapp.config;
 
+import java.time.Duration;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
 import org.springframework.lang.NonNull;
 
+import jakarta.servlet.DispatcherType;
+
 /**
  * Web MVCの設定を管理する構成クラス
  * 静的リソース（CSS、JavaScript、Faviconなど）のハンドリングを定義
  * 
+ * CSS・JavaScript はファイル名に内容のハッシュを含むURL（例：/css/aiapp-style-{ハッシュ}.css）で配信し、
+ * 変更されない前提の長期間のキャッシュを許可する。テンプレートの @{/css/...} などのリンクは
+ * ResourceUrlEncodingFilter によりバージョン付きのURLに書き換えられる
+ * ビルド時に作成した圧縮済みのファイル（.br / .gz）がある場合は、Accept-Encoding に応じてそちらを返す
+ * 
  * @author AiApp
  */
 @Configuration
@@ -19,6 +35,24 @@ public class WebMvcConfig implements WebMvcConfigurer {
         // ロガーの定義
         private static final Logger logger = LoggerFactory.getLogger(WebMvcConfig.class);
 
+        // バージョン付きのURLのキャッシュ有効期間
+        private final Duration versionedCachePeriod;
+        // Favicon のキャッシュ有効期間（テンプレートの ?v= で更新を反映する）
+        private final Duration faviconCachePeriod;
+
+        /**
+         * コンストラクタ：application.properties の設定値を注入
+         * 
+         * @param versionedCachePeriod バージョン付きのURLのキャッシュ有効期間
+         * @param faviconCachePeriod   Favicon のキャッシュ有効期間
+         */
+        public WebMvcConfig(
+                        @Value("${aiapp.static.versioned-cache-period:365d}") Duration versionedCachePeriod,
+                        @Value("${aiapp.static.favicon-cache-period:1d}") Duration faviconCachePeriod) {
+                this.versionedCachePeriod = versionedCachePeriod;
+                this.faviconCachePeriod = faviconCachePeriod;
+        }
+
         /**
          * 静的リソース（CSS、JavaScript、画像、ファビコン等）のハンドリングを構成
          * 
@@ -34,15 +68,50 @@ public class WebMvcConfig implements WebMvcConfigurer {
                 // 「/css/**」というURLでアクセスが来たら、
                 // 「classpath:/static/css/」フォルダの中身を返す、という設定
                 // CSSファイルの場所を指定
-                registry.addResourceHandler("/css/**")
-                                .addResourceLocations("classpath:/static/css/");
+                addVersionedResourceHandler(registry, "/css/**", "classpath:/static/css/");
 
                 // JavaScriptファイルの場所を指定
-                registry.addResourceHandler("/js/**")
-                                .addResourceLocations("classpath:/static/js/");
+                addVersionedResourceHandler(registry, "/js/**", "classpath:/static/js/");
 
                 // ファビコンの場所を指定
                 registry.addResourceHandler("/favicon.ico")
-                                .addResourceLocations("classpath:/static/");
+                                .addResourceLocations("classpath:/static/")
+                                .setCacheControl(CacheControl.maxAge(faviconCachePeriod).cachePublic());
+        }
+
+        /**
+         * テンプレートのリンクを、ファイル名に内容のハッシュを含むURLに書き換えるフィルター
+         * エラー画面（ERROR ディスパッチ）のリンクも書き換える
+         * 
+         * @return フィルターの登録
+         */
+        @Bean
+        public FilterRegistrationBean<ResourceUrlEncodingFilter> resourceUrlEncodingFilter() {
+                FilterRegistrationBean<ResourceUrlEncodingFilter> registration =
+                                new FilterRegistrationBean<>(new ResourceUrlEncodingFilter());
+                registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ERROR);
+                return registration;
+        }
+
+        /**
+         * バージョン付きのURLと圧縮済みのファイルに対応したリソースハンドラを登録する
+         * バージョン付きのURLは変更されない前提で長期間キャッシュさせ、バージョンなしのURLは毎回再検証させる
+         * 
+         * @param registry     リソースハンドラを登録するためのレジストリ
+         * @param pathPattern  URLのパターン
+         * @param location     リソースの場所
+         */
+        private void addVersionedResourceHandler(ResourceHandlerRegistry registry, String pathPattern,
+                        String location) {
+                VersionResourceResolver versionResolver = new VersionResourceResolver()
+                                .addContentVersionStrategy("/**");
+                registry.addResourceHandler(pathPattern)
+                                .addResourceLocations(location)
+                                .setCacheControl(CacheControl.noCache())
+                                // 解決結果（圧縮形式ごと）をキャッシュし、ハッシュの計算は初回のみ行う
+                                .resourceChain(true)
+                                .addResolver(new VersionedResourceCacheResolver(versionResolver, versionedCachePeriod))
+                                .addResolver(new EncodedResourceResolver())
+                                .addResolver(versionResolver);
         }
 }
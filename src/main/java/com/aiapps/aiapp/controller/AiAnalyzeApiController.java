@@ -0,0 +1,260 @@
+package com.aiapps.aiapp.controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.aiapps.aiapp.dto.AnalyzeRequest;
+import com.aiapps.aiapp.dto.AnalyzeResponse;
+import com.aiapps.aiapp.dto.ErrorResponse;
+import com.aiapps.aiapp.exception.AiAppApiExceptionHandler;
+import com.aiapps.aiapp.service.AiService;
+import com.aiapps.aiapp.service.BulkAnalysisService;
+import com.aiapps.aiapp.service.BulkInputReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * AIによる文章分析をJSONで提供するAPIコントローラー
+ * 分析結果を CompletableFuture で返し、AIの応答待ちの間もリクエスト処理スレッドを解放する
+ *
+ * @author AiApp
+ */
+@RestController
+public class AiAnalyzeApiController {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(AiAnalyzeApiController.class);
+
+    // NDJSON のメディアタイプ
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final String TEXT_CSV = "text/csv";
+    private static final byte[] NEWLINE = { '\n' };
+    // ストリーミングのイベント名（EventSource 標準の error イベントと区別するため failure とする）
+    private static final String EVENT_PARTIAL = "partial";
+    private static final String EVENT_RESULT = "result";
+    private static final String EVENT_FAILURE = "failure";
+
+    // AIサービスの注入
+    private final AiService aiService;
+    // 一括分析サービスの注入
+    private final BulkAnalysisService bulkAnalysisService;
+    // JSONの読み書き
+    private final ObjectMapper objectMapper;
+    // 一括分析を実行するスレッド（仮想スレッド）
+    private final AsyncTaskExecutor taskExecutor;
+    // 一括分析のタイムアウト
+    private final Duration bulkTimeout;
+    // 一括分析の入力の1行の最大文字数
+    private final int bulkMaxLineLength;
+    // ストリーミングのタイムアウト
+    private final Duration streamTimeout;
+    // 応答期限の算出
+    private final RequestDeadlines requestDeadlines;
+
+    /**
+     * コンストラクタ：AIサービス、一括分析サービス、ObjectMapper、スレッド、応答期限の算出と設定値を注入
+     *
+     * @param aiService           注入するAIサービス
+     * @param bulkAnalysisService 注入する一括分析サービス
+     * @param objectMapper        注入するObjectMapper
+     * @param taskExecutor        注入するスレッド（Spring Boot 標準の applicationTaskExecutor）
+     * @param requestDeadlines    注入する応答期限の算出
+     * @param bulkTimeout         一括分析のタイムアウト
+     * @param bulkMaxLineLength   一括分析の入力の1行の最大文字数
+     * @param streamTimeout       ストリーミングのタイムアウト
+     */
+    public AiAnalyzeApiController(AiService aiService, BulkAnalysisService bulkAnalysisService,
+            ObjectMapper objectMapper,
+            @Qualifier("applicationTaskExecutor") AsyncTaskExecutor taskExecutor,
+            RequestDeadlines requestDeadlines,
+            @Value("${aiapp.bulk.timeout:30m}") Duration bulkTimeout,
+            @Value("${aiapp.bulk.max-line-length:4096}") int bulkMaxLineLength,
+            @Value("${spring.mvc.async.request-timeout:40s}") Duration streamTimeout) {
+        this.aiService = aiService;
+        this.bulkAnalysisService = bulkAnalysisService;
+        this.objectMapper = objectMapper;
+        this.taskExecutor = taskExecutor;
+        this.bulkTimeout = bulkTimeout;
+        this.bulkMaxLineLength = bulkMaxLineLength;
+        this.streamTimeout = streamTimeout;
+        this.requestDeadlines = requestDeadlines;
+    }
+
+    /**
+     * AI分析を実行するAPI
+     * 応答期限は X-Request-Timeout ヘッダーで短くできる
+     *
+     * @param request     分析対象の文章を含むリクエストボディ
+     * @param httpRequest HTTPリクエスト（応答期限の算出に使用）
+     * @param principal   ログイン中の利用者（利用回数の制限と公平な割り当てに使用）
+     * @return 分析結果（入力エラーの場合は HTTP 400）
+     */
+    @PostMapping(value = "/api/analyze", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<Object>> analyze(@RequestBody AnalyzeRequest request,
+            HttpServletRequest httpRequest, Principal principal) {
+
+        // 入力値チェック
+        String userInput = request.input();
+        String errorMessage = aiService.getInputErrorMessage(userInput);
+        if (!errorMessage.isEmpty()) {
+            logger.debug("入力エラー: {}", errorMessage);
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().<Object>body(new ErrorResponse(errorMessage)));
+        }
+
+        // AIサービスを非同期で呼び出して分析を実行
+        return aiService.callGeminiApiAsync(userInput, requestDeadlines.of(httpRequest), principal.getName())
+                .thenApply(result -> ResponseEntity.<Object>ok(new AnalyzeResponse(userInput, result)));
+    }
+
+    /**
+     * AI分析の途中経過を Server-Sent Events で返すAPI
+     * Gemini の生成テキストを届いた順に partial イベントで送信し、
+     * 完了時に result イベント（AnalyzeResponse）、失敗時に failure イベント（ErrorResponse）を送信して終了する
+     *
+     * @param userInput   分析対象の文章
+     * @param httpRequest HTTPリクエスト（応答期限の算出に使用）
+     * @param principal   ログイン中の利用者（利用回数の制限と公平な割り当てに使用）
+     * @return イベントを送信するエミッター
+     */
+    @GetMapping(value = "/api/analyze/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyzeStream(@RequestParam("input") String userInput, HttpServletRequest httpRequest,
+            Principal principal) {
+
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+
+        // 入力値チェック
+        String errorMessage = aiService.getInputErrorMessage(userInput);
+        if (!errorMessage.isEmpty()) {
+            logger.debug("入力エラー: {}", errorMessage);
+            sendAndComplete(emitter, EVENT_FAILURE, new ErrorResponse(errorMessage));
+            return emitter;
+        }
+
+        // AIサービスをストリーミングで呼び出し、断片が届くたびに送信
+        aiService.callGeminiApiStreaming(userInput, requestDeadlines.of(httpRequest), principal.getName(), chunk -> {
+            try {
+                emitter.send(SseEmitter.event().name(EVENT_PARTIAL).data(chunk, MediaType.TEXT_PLAIN));
+            } catch (IOException | IllegalStateException e) {
+                // クライアントが切断した場合も分析自体は最後まで行い、結果をキャッシュに残す
+                logger.debug("途中経過を送信できませんでした: {}", e.getMessage());
+            }
+        }).whenComplete((result, ex) -> {
+            if (ex == null) {
+                sendAndComplete(emitter, EVENT_RESULT, new AnalyzeResponse(userInput, result));
+            } else {
+                logger.warn("AI分析（ストリーミング）に失敗しました: {}", ex.getMessage());
+                sendAndComplete(emitter, EVENT_FAILURE, new ErrorResponse(AiAppApiExceptionHandler.userMessageOf(ex)));
+            }
+        });
+
+        return emitter;
+    }
+
+    /**
+     * 最後のイベントを送信してエミッターを終了する
+     *
+     * @param emitter 送信先のエミッター
+     * @param name    イベント名
+     * @param data    送信するデータ（JSONに変換）
+     */
+    private static void sendAndComplete(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("イベントを送信できませんでした: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 分析処理の統計情報を返すAPI
+     * キャッシュのヒット率や前段分類器の回答率・Geminiとの一致率の確認に使用
+     *
+     * @return 分析処理の統計情報
+     */
+    @GetMapping("/api/analyze/stats")
+    public AiService.Stats stats() {
+        return aiService.stats();
+    }
+
+    /**
+     * 大量の文章を一括でAI分析するAPI
+     * リクエストボディ（NDJSON または CSV）を1行ずつ読み込みながら分析し、
+     * 完了した順に結果を NDJSON でストリーミング返却する
+     *
+     * @param request   HTTPリクエスト（ボディを逐次読み込む）
+     * @param principal ログイン中の利用者（利用回数の制限と公平な割り当てに使用）
+     * @return 分析結果を1行ずつ書き出すレスポンス
+     */
+    @PostMapping(value = "/api/analyze/bulk", consumes = { APPLICATION_NDJSON, TEXT_CSV }, produces = APPLICATION_NDJSON)
+    public ResponseEntity<ResponseBodyEmitter> analyzeBulk(HttpServletRequest request, Principal principal) {
+
+        logger.info("一括分析を開始します。形式: {}", request.getContentType());
+
+        // 件数に比例して時間がかかるため、通常の非同期タイムアウトとは別に設定
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(bulkTimeout.toMillis());
+        String user = principal.getName();
+        taskExecutor.execute(() -> {
+            try {
+                BulkInputReader reader = bulkInputReader(request, objectMapper, bulkMaxLineLength);
+                bulkAnalysisService.analyzeAll(reader, user, result -> {
+                    // 1件ごとに書き出してクライアントへ送信
+                    emitter.send(objectMapper.writeValueAsBytes(result), MediaType.APPLICATION_OCTET_STREAM);
+                    emitter.send(NEWLINE, MediaType.APPLICATION_OCTET_STREAM);
+                });
+                logger.info("一括分析が完了しました。");
+                emitter.complete();
+            } catch (IOException | RuntimeException e) {
+                // 切断後の送信（IllegalStateException）や分析中の想定外の例外でも応答を終了させる
+                logger.warn("一括分析を中止しました: {}", e.getMessage());
+                emitter.completeWithError(e);
+            }
+        });
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(emitter);
+    }
+
+    /**
+     * リクエストボディ（NDJSON または CSV）を1件ずつ読み込む読み込み元を作成する
+     *
+     * @param request       HTTPリクエスト
+     * @param objectMapper  NDJSONの解析に使用するObjectMapper
+     * @param maxLineLength 1行の最大文字数（超えた行はエラーの結果になる）
+     * @return 入力の読み込み元
+     * @throws IOException リクエストボディを開けなかった場合
+     */
+    static BulkInputReader bulkInputReader(HttpServletRequest request, ObjectMapper objectMapper, int maxLineLength)
+            throws IOException {
+        BulkInputReader.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType(TEXT_CSV))
+                        ? BulkInputReader.Format.CSV
+                        : BulkInputReader.Format.NDJSON;
+        Charset charset = request.getCharacterEncoding() != null
+                ? Charset.forName(request.getCharacterEncoding())
+                : StandardCharsets.UTF_8;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), charset));
+        return new BulkInputReader(reader, format, objectMapper, maxLineLength);
+    }
+}
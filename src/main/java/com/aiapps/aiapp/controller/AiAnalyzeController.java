@@ -1,5 +1,8 @@
 package com.aiapps.aiapp.controller;
 
+import java.security.Principal;
+import java.util.concurrent.CompletableFuture;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
@@ -10,6 +13,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import com.aiapps.aiapp.service.AiService;
 
+import jakarta.servlet.http.HttpServletRequest;
+
 /**
  * AIによる文章分析機能の画面遷移およびリクエスト制御を担当するコントローラー
  * ユーザーからの入力情報の受け取り、AIサービスによる分析実行、
@@ -25,17 +30,21 @@ public class AiAnalyzeController {
 
     // AIサービスの注入
     private final AiService aiService;
+    // 応答期限の算出
+    private final RequestDeadlines requestDeadlines;
 
     private static final String VIEW_INDEX = "login";
     private static final String VIEW_AI_ANALYSIS = "aiAnalysis";
 
     /**
-     * コンストラクタ：AIサービスを注入
+     * コンストラクタ：AIサービスと応答期限の算出を注入
      * 
-     * @param aiService 注入するAIサービス
+     * @param aiService        注入するAIサービス
+     * @param requestDeadlines 注入する応答期限の算出
      */
-    public AiAnalyzeController(AiService aiService) {
+    public AiAnalyzeController(AiService aiService, RequestDeadlines requestDeadlines) {
         this.aiService = aiService;
+        this.requestDeadlines = requestDeadlines;
     }
 
     /**
@@ -60,13 +69,17 @@ public class AiAnalyzeController {
 
     /**
      * AI分析を実行するためのPOSTリクエストを処理
+     * AIの応答を待つ間はリクエスト処理スレッドを解放し、応答後に分析結果画面を描画する
      * 
      * @param userInput ユーザー入力文字列
      * @param model     モデルオブジェクト（画面に渡すデータを保持）
-     * @return 分析結果画面へのテンプレート名
+     * @param request   HTTPリクエスト（応答期限の算出に使用）
+     * @param principal ログイン中の利用者（利用回数の制限と公平な割り当てに使用）
+     * @return 分析結果画面へのテンプレート名を受け取るFuture
      */
     @PostMapping("/analyze")
-    public String analyze(@RequestParam("aiInput") String userInput, Model model) {
+    public CompletableFuture<String> analyze(@RequestParam("aiInput") String userInput, Model model,
+            HttpServletRequest request, Principal principal) {
 
         // 入力値チェック
         String errorMessage = aiService.getInputErrorMessage(userInput);
@@ -74,18 +87,17 @@ public class AiAnalyzeController {
 
             logger.debug("入力エラー: {}", errorMessage);
             model.addAttribute("errorMessage", errorMessage);
+            return CompletableFuture.completedFuture(VIEW_AI_ANALYSIS);
 
-        } else {
+        }
 
-            // AIサービスを呼び出して分析を実行
-            String result = aiService.callGeminiApi(userInput);
+        // AIサービスを非同期で呼び出して分析を実行
+        return aiService.callGeminiApiAsync(userInput, requestDeadlines.of(request), principal.getName()).thenApply(result -> {
             // 画面に入力値と分析結果を渡す
             model.addAttribute("userInput", userInput);
             model.addAttribute("analysisResult", result);
-
-        }
-
-        return VIEW_AI_ANALYSIS;
+            return VIEW_AI_ANALYSIS;
+        });
     }
 
 }
@@ -0,0 +1,218 @@
+package com.aiapps.aiapp.controller;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.aiapps.aiapp.dto.AnalysisJobStatus;
+import com.aiapps.aiapp.dto.ErrorResponse;
+import com.aiapps.aiapp.exception.AiAppException;
+import com.aiapps.aiapp.service.AnalysisJobService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * 大量の文章を非同期ジョブとしてAI分析するAPIコントローラー
+ * 入力を登録するとジョブIDを返し、進捗と結果はジョブIDで取得する（HTTP接続を保持し続けない）
+ * 他の利用者が登録したジョブは、存在しないジョブと同じく HTTP 404 を返す
+ *
+ * @author AiApp
+ */
+@RestController
+public class AiAnalyzeJobApiController {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(AiAnalyzeJobApiController.class);
+
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final String TEXT_CSV = "text/csv";
+    private static final String MESSAGE_NOT_FOUND = "指定されたジョブが見つかりません。";
+    private static final String MESSAGE_DISABLED = "ジョブ機能は無効になっています。";
+    // 進捗イベントの最短の送信間隔（件数が多いジョブでイベントが過剰にならないため）
+    private static final long PROGRESS_INTERVAL_NANOS = Duration.ofMillis(500).toNanos();
+    // 結果の取得件数の上限
+    private static final int MAX_RESULTS_LIMIT = 10000;
+    // ストリーミングのイベント名
+    private static final String EVENT_PROGRESS = "progress";
+    private static final String EVENT_DONE = "done";
+
+    // ジョブサービスの注入
+    private final AnalysisJobService jobService;
+    // JSONの読み書き
+    private final ObjectMapper objectMapper;
+    // 進捗のストリーミングのタイムアウト
+    private final Duration eventsTimeout;
+    // 入力の1行の最大文字数
+    private final int maxLineLength;
+
+    /**
+     * コンストラクタ：ジョブサービス、ObjectMapper と設定値を注入
+     *
+     * @param jobService    注入するジョブサービス
+     * @param objectMapper  注入するObjectMapper
+     * @param eventsTimeout 進捗のストリーミングのタイムアウト
+     * @param maxLineLength 入力の1行の最大文字数（一括分析APIと共通）
+     */
+    public AiAnalyzeJobApiController(AnalysisJobService jobService, ObjectMapper objectMapper,
+            @Value("${aiapp.jobs.events-timeout:30m}") Duration eventsTimeout,
+            @Value("${aiapp.bulk.max-line-length:4096}") int maxLineLength) {
+        this.jobService = jobService;
+        this.objectMapper = objectMapper;
+        this.eventsTimeout = eventsTimeout;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * ジョブを登録するAPI
+     * リクエストボディ（NDJSON または CSV）を一括分析APIと同じ形式で読み込む
+     *
+     * @param request   HTTPリクエスト（ボディを逐次読み込む）
+     * @param principal ログイン中の利用者（ジョブの所有者として記録）
+     * @return 登録したジョブの進捗（HTTP 202、Location ヘッダーにジョブのURL。入力が上限を超える場合は HTTP 413）
+     * @throws IOException リクエストボディの読み込み、またはファイルの書き込みに失敗した場合
+     */
+    @PostMapping(value = "/api/jobs", consumes = { APPLICATION_NDJSON, TEXT_CSV })
+    public ResponseEntity<Object> submit(HttpServletRequest request, Principal principal) throws IOException {
+        if (!jobService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ErrorResponse(MESSAGE_DISABLED));
+        }
+        AnalysisJobStatus status;
+        try {
+            status = jobService.submit(AiAnalyzeApiController.bulkInputReader(request, objectMapper, maxLineLength),
+                    principal.getName());
+        } catch (AiAppException e) {
+            if (!AnalysisJobService.MESSAGE_TOO_LARGE.equals(e.getMessage())) {
+                throw e;
+            }
+            logger.info("上限を超えるジョブの登録を拒否しました。利用者: {}", principal.getName());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new ErrorResponse(e.getMessage()));
+        }
+        return ResponseEntity.accepted().location(URI.create("/api/jobs/" + status.id())).body(status);
+    }
+
+    /**
+     * ジョブの進捗を取得するAPI
+     *
+     * @param id        ジョブID
+     * @param principal ログイン中の利用者
+     * @return ジョブの進捗（存在しない場合は HTTP 404）
+     */
+    @GetMapping("/api/jobs/{id}")
+    public ResponseEntity<Object> status(@PathVariable("id") String id, Principal principal) {
+        AnalysisJobStatus status = jobService.status(id, principal.getName());
+        return status != null ? ResponseEntity.ok(status) : notFound();
+    }
+
+    /**
+     * ジョブの結果を取得するAPI
+     * 完了した順に記録された結果を NDJSON で返す。offset に取得済みの件数を指定して続きを取得する
+     *
+     * @param id        ジョブID
+     * @param offset    読み飛ばす件数
+     * @param limit     取得する最大件数
+     * @param principal ログイン中の利用者
+     * @return 結果を1行ずつ書き出すレスポンス（存在しない場合は HTTP 404）
+     */
+    @GetMapping(value = "/api/jobs/{id}/results", produces = APPLICATION_NDJSON)
+    public ResponseEntity<?> results(@PathVariable("id") String id,
+            @RequestParam(name = "offset", defaultValue = "0") long offset,
+            @RequestParam(name = "limit", defaultValue = "1000") int limit, Principal principal) {
+        String owner = principal.getName();
+        if (jobService.status(id, owner) == null) {
+            return notFound();
+        }
+        int size = Math.max(0, Math.min(MAX_RESULTS_LIMIT, limit));
+        StreamingResponseBody body = out -> jobService.readResults(id, owner, Math.max(0, offset), size, result -> {
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write('\n');
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON)).body(body);
+    }
+
+    /**
+     * ジョブの進捗を Server-Sent Events で返すAPI
+     * 進捗が変化するたびに progress イベント（一定間隔に間引く）を送信し、終了時に done イベントを送信して終了する
+     *
+     * @param id        ジョブID
+     * @param principal ログイン中の利用者
+     * @return イベントを送信するエミッター（存在しない場合は HTTP 404）
+     */
+    @GetMapping(value = "/api/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> events(@PathVariable("id") String id, Principal principal) {
+        String owner = principal.getName();
+        if (jobService.status(id, owner) == null) {
+            return notFound();
+        }
+
+        SseEmitter emitter = new SseEmitter(eventsTimeout.toMillis());
+        AtomicLong lastSent = new AtomicLong(System.nanoTime() - PROGRESS_INTERVAL_NANOS);
+        Consumer<AnalysisJobStatus> listener = new Consumer<>() {
+            @Override
+            public void accept(AnalysisJobStatus status) {
+                try {
+                    if (status.state().isTerminal()) {
+                        emitter.send(SseEmitter.event().name(EVENT_DONE).data(status, MediaType.APPLICATION_JSON));
+                        emitter.complete();
+                        jobService.unsubscribe(id, this);
+                        return;
+                    }
+                    long now = System.nanoTime();
+                    long last = lastSent.get();
+                    if (now - last >= PROGRESS_INTERVAL_NANOS && lastSent.compareAndSet(last, now)) {
+                        emitter.send(SseEmitter.event().name(EVENT_PROGRESS).data(status, MediaType.APPLICATION_JSON));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // クライアントが切断した場合は通知を解除する（ジョブ自体は継続する）
+                    logger.debug("ジョブの進捗を送信できませんでした: {}", e.getMessage());
+                    jobService.unsubscribe(id, this);
+                }
+            }
+        };
+        emitter.onCompletion(() -> jobService.unsubscribe(id, listener));
+        emitter.onTimeout(() -> jobService.unsubscribe(id, listener));
+        jobService.subscribe(id, owner, listener);
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    /**
+     * ジョブを取り消すAPI
+     *
+     * @param id        ジョブID
+     * @param principal ログイン中の利用者
+     * @return 取り消し後のジョブの進捗（存在しない場合は HTTP 404）
+     */
+    @DeleteMapping("/api/jobs/{id}")
+    public ResponseEntity<Object> cancel(@PathVariable("id") String id, Principal principal) {
+        AnalysisJobStatus status = jobService.cancel(id, principal.getName());
+        return status != null ? ResponseEntity.ok(status) : notFound();
+    }
+
+    /**
+     * ジョブが見つからない場合のレスポンスを返す
+     *
+     * @return HTTP 404
+     */
+    private static ResponseEntity<Object> notFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).contentType(MediaType.APPLICATION_JSON)
+                .body(new ErrorResponse(MESSAGE_NOT_FOUND));
+    }
+}
@@ -0,0 +1,50 @@
+package com.aiapps.aiapp.controller;
+
+import java.security.Principal;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.aiapps.aiapp.dto.QuotaStatus;
+import com.aiapps.aiapp.service.FairShareScheduler;
+import com.aiapps.aiapp.service.UserQuotaLimiter;
+
+/**
+ * ログイン中の利用者のAI分析の利用状況を提供するAPIコントローラー
+ * 残りの利用回数・回復までの時間と、実行中・待機中の分析の件数を返す
+ *
+ * @author AiApp
+ */
+@RestController
+public class AiQuotaApiController {
+
+    // 利用回数の制限の注入
+    private final UserQuotaLimiter quotaLimiter;
+    // 公平な割り当ての注入
+    private final FairShareScheduler scheduler;
+
+    /**
+     * コンストラクタ：利用回数の制限と公平な割り当てを注入
+     *
+     * @param quotaLimiter 注入する利用回数の制限
+     * @param scheduler    注入する公平な割り当て
+     */
+    public AiQuotaApiController(UserQuotaLimiter quotaLimiter, FairShareScheduler scheduler) {
+        this.quotaLimiter = quotaLimiter;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * ログイン中の利用者の利用状況を返すAPI
+     *
+     * @param principal ログイン中の利用者
+     * @return 利用状況
+     */
+    @GetMapping("/api/quota")
+    public QuotaStatus quota(Principal principal) {
+        UserQuotaLimiter.Usage usage = quotaLimiter.usage(principal.getName());
+        FairShareScheduler.Share share = scheduler.share(principal.getName());
+        return new QuotaStatus(usage.enabled(), usage.capacity(), usage.remaining(), usage.used(), usage.rejected(),
+                usage.nextRefillMillis(), usage.fullRefillMillis(), share.inFlight(), share.queued());
+    }
+}
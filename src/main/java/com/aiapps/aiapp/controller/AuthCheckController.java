@@ -1,26 +1,37 @@
 package com.aiapps.aiapp.controller;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
-import org.springframework.security.oauth2.client.annotation.RegisteredOAuth2AuthorizedClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 /**
  * 認証状態を確認するためのコントローラー
  * Google OAuth2 認証の状態を確認するためのエンドポイントを提供
  * クライアントのアクセストークンの有効期限をチェックし 、
  * HTTP 200（OK）または HTTP 401（Unauthorized）を返す
+ * 有効期限はヒントCookieから求め、ない場合に限りセッションの認可済みクライアントを参照する
  * すべてのメソッドがデータを直接返すため、@RestController を使用
  * これにより SonarLint の java:S4601 警告を解消し、@ResponseBody を省略
- * 
+ *
  * @author AiApp
  */
 @RestController
@@ -29,32 +40,57 @@ public class AuthCheckController {
     // ロガーの定義
     private static final Logger logger = LoggerFactory.getLogger(AuthCheckController.class);
 
+    // ストリーミングのイベント名
+    private static final String EVENT_EXPIRY = "expiry";
+    private static final String EVENT_EXPIRED = "expired";
+    // 期限の通知後、接続を閉じるまでの猶予
+    private static final Duration EVENTS_GRACE = Duration.ofMinutes(1);
+
+    // 有効期限の確認
+    private final AuthExpiryHints authExpiryHints;
+
+    // 期限の通知を行うスレッド
+    private final ScheduledExecutorService notifier = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "auth-expiry-notifier");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * コンストラクタ：有効期限の確認を注入
+     *
+     * @param authExpiryHints 注入する有効期限の確認
+     */
+    public AuthCheckController(AuthExpiryHints authExpiryHints) {
+        this.authExpiryHints = authExpiryHints;
+    }
+
     /**
      * 認証状態を確認するエンドポイント
      * クライアントのアクセストークンの有効期限をチェックし、HTTP 200（OK）または HTTP 401（Unauthorized）を返す
-     * 
-     * @param client 登録されたOAuth2AuthorizedClientオブジェクト
+     *
+     * @param request  HTTPリクエスト
+     * @param response HTTPレスポンス（ヒントCookieの再発行に使用）
      * @return 認証状態に応じたHTTPレスポンス
      */
     @GetMapping("/api/auth/check")
-    public ResponseEntity<Void> checkAuth(
-            @RegisteredOAuth2AuthorizedClient("google") OAuth2AuthorizedClient client) {
-        // ログ出力
-        logger.debug("認証状態を確認します。クライアント: {}", client);
-        // クライアントとアクセストークンの有効期限を確認
-        if (client == null) {
-            logger.warn("OAuth2AuthorizedClientがnullです。認証されていません。");
+    public ResponseEntity<Void> checkAuth(HttpServletRequest request, HttpServletResponse response) {
+        // ヒントCookieで確認し、ない場合はセッションの認可済みクライアントを参照
+        Instant expiresAt = authExpiryHints.lookup(request);
+        if (expiresAt == null) {
+            expiresAt = authExpiryHints.resolve(request, response);
+        }
+        if (expiresAt == null) {
+            logger.debug("認可済みクライアントがありません。認証されていません。");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
-        // アクセストークンの有効期限を取得
-        Instant expiresAt = client.getAccessToken().getExpiresAt();
-
         // アクセストークンの有効期限を確認し、HTTPステータスを返す
-        if (expiresAt != null && expiresAt.isAfter(Instant.now())) {
-            // 日本時間に変換
-            ZonedDateTime expiresAtJst = expiresAt.atZone(ZoneId.of("Asia/Tokyo"));
-            logger.debug("トークンは有効です。期限: {}", expiresAtJst);
+        if (expiresAt.isAfter(Instant.now())) {
+            if (logger.isDebugEnabled()) {
+                // 日本時間に変換
+                logger.debug("トークンは有効です。期限: {}", expiresAt.atZone(ZoneId.of("Asia/Tokyo")));
+            }
             return ResponseEntity.ok().build();
         }
 
@@ -62,4 +98,54 @@ public class AuthCheckController {
         logger.warn("トークンの期限が切れています。期限: {}", expiresAt);
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     }
+
+    /**
+     * 認証の有効期限を Server-Sent Events で通知するエンドポイント
+     * 接続時に expiry イベント（期限のエポックミリ秒）を送信し、期限に達した時点で expired イベントを送信して終了する
+     * 画面は expired を受け取った時点で /api/auth/check を1回だけ呼び出して状態を確認する（定期的な確認は不要）
+     *
+     * @param request  HTTPリクエスト
+     * @param response HTTPレスポンス（ヒントCookieの再発行に使用）
+     * @return イベントを送信するエミッター（認証されていない場合は HTTP 401）
+     */
+    @GetMapping(value = "/api/auth/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> authEvents(HttpServletRequest request, HttpServletResponse response) {
+        // 認証必須のエンドポイントでセッションは読み込み済みのため、ヒントCookieの短い期限ではなくトークンの期限を使用
+        Instant expiresAt = authExpiryHints.resolve(request, response);
+        if (expiresAt == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        long delayMillis = Math.max(0, Duration.between(Instant.now(), expiresAt).toMillis());
+        SseEmitter emitter = new SseEmitter(delayMillis + EVENTS_GRACE.toMillis());
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_EXPIRY)
+                    .data(Map.of("expiresAt", expiresAt.toEpochMilli()), MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            logger.debug("認証の有効期限を送信できませんでした: {}", e.getMessage());
+            emitter.complete();
+            return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+        }
+
+        // 期限に達したら通知して終了（切断・タイムアウト時は通知を取り消す）
+        ScheduledFuture<?> expiry = notifier.schedule(() -> {
+            try {
+                emitter.send(SseEmitter.event().name(EVENT_EXPIRED).data(""));
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("認証の期限切れを送信できませんでした: {}", e.getMessage());
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        emitter.onCompletion(() -> expiry.cancel(false));
+        emitter.onTimeout(() -> expiry.cancel(false));
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    /**
+     * アプリケーション終了時に通知スレッドを停止する
+     */
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdownNow();
+    }
 }
@@ -0,0 +1,254 @@
+package com.aiapps.aiapp.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.DefaultOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * 認証の有効期限を軽量に確認するためのクラス
+ * 認証状態の確認のたびにセッションから OAuth2AuthorizedClient を読み込まないよう、次の順に有効期限を求める
+ *
+ * <pre>
+ * 1. 有効期限のヒントCookie（ログイン時・確認時に発行する署名付きの短期間のCookie。画面のJavaScriptからも参照する）
+ * 2. 保存された OAuth2AuthorizedClient（期限切れの場合はリフレッシュトークンで更新）
+ * </pre>
+ *
+ * ヒントCookieはセッションIDと期限を HMAC-SHA256 で署名するため、別のセッションでは無効になる
+ * セッションの存在は確認しないため、ヒントCookieの有効期間（aiapp.auth.hint-ttl）だけは
+ * セッションの破棄後も認証済みとして扱う（ログアウト時はCookieを削除する）
+ * ログアウトしたリクエストを受けたサーバーはCookieを削除するが、他のサーバーでセッションが破棄された場合や
+ * 削除前のCookieを持つ別のタブからのリクエストでは、最大でこの期間 /api/auth/check が HTTP 200 を返す
+ * サーバーごとの状態は持たないため、複数台で動かしても同じ結果になる
+ *
+ * @author AiApp
+ */
+@Component
+public class AuthExpiryHints {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(AuthExpiryHints.class);
+
+    // ヒントCookieの名前
+    public static final String COOKIE_NAME = "AIAPP_AUTH_EXP";
+    // OAuth2 のクライアント登録ID
+    private static final String REGISTRATION_ID = "google";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // OAuth2AuthorizedClient の取得（期限切れの場合は更新）
+    private final DefaultOAuth2AuthorizedClientManager clientManager;
+    // ヒントCookieの署名鍵
+    private final SecretKeySpec key;
+    // ヒントCookieの有効期間の上限
+    private final Duration hintTtl;
+
+    /**
+     * コンストラクタ：OAuth2 のクライアント登録・認可済みクライアントの保存先と application.properties の設定値を注入
+     *
+     * @param clientRegistrations クライアント登録
+     * @param authorizedClients   認可済みクライアントの保存先（共有状態の保存先）
+     * @param secret              ヒントCookieの署名鍵（未設定の場合は起動ごとに生成）
+     * @param hintTtl             ヒントCookieの有効期間の上限
+     */
+    public AuthExpiryHints(ClientRegistrationRepository clientRegistrations,
+            OAuth2AuthorizedClientRepository authorizedClients,
+            @Value("${aiapp.auth.hint-secret:}") String secret,
+            @Value("${aiapp.auth.hint-ttl:5m}") Duration hintTtl) {
+        this.clientManager = new DefaultOAuth2AuthorizedClientManager(clientRegistrations, authorizedClients);
+        this.key = new SecretKeySpec(secretBytes(secret), HMAC_ALGORITHM);
+        this.hintTtl = hintTtl;
+    }
+
+    /**
+     * セッションを読み込まずに、ヒントCookieから有効期限を求める
+     *
+     * @param request HTTPリクエスト
+     * @return 有効期限（期限内のヒントがない場合はnull）
+     */
+    public Instant lookup(HttpServletRequest request) {
+        String sessionId = request.getRequestedSessionId();
+        if (sessionId == null) {
+            return null;
+        }
+        Instant hinted = verifyCookie(request, sessionId);
+        return hinted != null && hinted.isAfter(Instant.now()) ? hinted : null;
+    }
+
+    /**
+     * セッションの OAuth2AuthorizedClient から有効期限を求め、ヒントCookieを更新する
+     * アクセストークンが期限切れの場合はリフレッシュトークンで更新する
+     *
+     * @param request  HTTPリクエスト
+     * @param response HTTPレスポンス（ヒントCookieの発行に使用）
+     * @return 有効期限（認証されていない場合や更新できない場合はnull）
+     */
+    public Instant resolve(HttpServletRequest request, HttpServletResponse response) {
+        return resolve(request, response, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    /**
+     * ログイン成功時に、有効期限のヒントCookieを発行する
+     *
+     * @param request        HTTPリクエスト
+     * @param response       HTTPレスポンス
+     * @param authentication ログインした利用者の認証情報
+     */
+    public void issue(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        resolve(request, response, authentication);
+    }
+
+    /**
+     * 認証情報から有効期限を求め、ヒントCookieを更新する
+     *
+     * @param request        HTTPリクエスト
+     * @param response       HTTPレスポンス
+     * @param authentication 認証情報
+     * @return 有効期限（認証されていない場合や更新できない場合はnull）
+     */
+    private Instant resolve(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        // 未ログイン（匿名の認証情報を含む）の場合はセッションを作らずに終了
+        if (!(authentication instanceof OAuth2AuthenticationToken) || request.getSession(false) == null) {
+            return null;
+        }
+        OAuth2AuthorizedClient client;
+        try {
+            client = clientManager.authorize(OAuth2AuthorizeRequest.withClientRegistrationId(REGISTRATION_ID)
+                    .principal(authentication)
+                    .attribute(HttpServletRequest.class.getName(), request)
+                    .attribute(HttpServletResponse.class.getName(), response)
+                    .build());
+        } catch (OAuth2AuthorizationException | OAuth2AuthenticationException e) {
+            logger.info("アクセストークンを更新できませんでした: {}", e.getMessage());
+            return null;
+        }
+        if (client == null || client.getAccessToken().getExpiresAt() == null) {
+            return null;
+        }
+
+        Instant expiresAt = client.getAccessToken().getExpiresAt();
+        writeCookie(request, response, request.getSession(false).getId(), expiresAt);
+        return expiresAt;
+    }
+
+    /**
+     * ヒントCookieを発行する（有効期間はアクセストークンの有効期限と設定の上限の短い方）
+     *
+     * @param request   HTTPリクエスト
+     * @param response  HTTPレスポンス
+     * @param sessionId セッションID
+     * @param expiresAt アクセストークンの有効期限
+     */
+    private void writeCookie(HttpServletRequest request, HttpServletResponse response, String sessionId,
+            Instant expiresAt) {
+        Instant now = Instant.now();
+        Instant until = expiresAt.isBefore(now.plus(hintTtl)) ? expiresAt : now.plus(hintTtl);
+        long seconds = until.getEpochSecond();
+        if (seconds <= now.getEpochSecond()) {
+            return;
+        }
+        // 画面の JavaScript から期限を参照するため HttpOnly にしない（値は期限と署名のみ）
+        ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, seconds + "." + sign(sessionId, seconds))
+                .path("/")
+                .maxAge(Duration.ofSeconds(seconds - now.getEpochSecond()))
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    /**
+     * ヒントCookieの署名を検証し、期限を取得する
+     *
+     * @param request   HTTPリクエスト
+     * @param sessionId リクエストのセッションID
+     * @return ヒントの期限（Cookieがない場合や署名が一致しない場合はnull）
+     */
+    private Instant verifyCookie(HttpServletRequest request, String sessionId) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (!COOKIE_NAME.equals(cookie.getName())) {
+                continue;
+            }
+            String value = cookie.getValue();
+            int separator = value.indexOf('.');
+            if (separator <= 0) {
+                return null;
+            }
+            try {
+                long seconds = Long.parseLong(value.substring(0, separator));
+                byte[] expected = sign(sessionId, seconds).getBytes(StandardCharsets.US_ASCII);
+                byte[] actual = value.substring(separator + 1).getBytes(StandardCharsets.US_ASCII);
+                return MessageDigest.isEqual(expected, actual) ? Instant.ofEpochSecond(seconds) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * セッションIDと期限の署名を作成する
+     *
+     * @param sessionId セッションID
+     * @param seconds   期限（エポック秒）
+     * @return Base64URL 形式の署名
+     */
+    private String sign(String sessionId, long seconds) {
+        try {
+            // Mac はスレッドセーフではないため呼び出しごとに作成する
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            byte[] signature = mac.doFinal((sessionId + "." + seconds).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("ヒントCookieの署名に失敗しました", e);
+        }
+    }
+
+    /**
+     * 署名鍵を作成する
+     *
+     * @param secret 設定された署名鍵（未設定の場合は起動ごとに生成）
+     * @return 署名鍵のバイト列
+     */
+    private static byte[] secretBytes(String secret) {
+        if (secret != null && !secret.isBlank()) {
+            return secret.getBytes(StandardCharsets.UTF_8);
+        }
+        // 複数台で動かす場合は、同じ値を aiapp.auth.hint-secret に設定すること
+        logger.info("ヒントCookieの署名鍵が未設定のため生成しました（再起動で発行済みのヒントは無効になります）");
+        byte[] generated = new byte[32];
+        new SecureRandom().nextBytes(generated);
+        return generated;
+    }
+}
@@ -0,0 +1,65 @@
+package com.aiapps.aiapp.controller;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import com.aiapps.aiapp.service.Deadline;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * HTTPリクエストからAI分析の応答期限を求めるクラス
+ * 設定値（非同期処理のタイムアウトより短くすること）を上限とし、
+ * クライアントが X-Request-Timeout ヘッダーでより短い時間を指定した場合はそちらを使用する
+ *
+ * @author AiApp
+ */
+@Component
+public class RequestDeadlines {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(RequestDeadlines.class);
+
+    /** クライアントが応答期限までの時間を指定するヘッダー（例: "5s"、"5000"（ミリ秒）） */
+    public static final String HEADER_REQUEST_TIMEOUT = "X-Request-Timeout";
+
+    // 応答期限までの時間の上限
+    private final Duration maxTimeout;
+
+    /**
+     * コンストラクタ：application.properties の設定値を注入
+     *
+     * @param maxTimeout 応答期限までの時間の上限
+     */
+    public RequestDeadlines(@Value("${aiapp.deadline.request:35s}") Duration maxTimeout) {
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * HTTPリクエストの応答期限を求める
+     *
+     * @param request HTTPリクエスト
+     * @return 応答期限
+     */
+    public Deadline of(HttpServletRequest request) {
+        Duration timeout = maxTimeout;
+        String header = request.getHeader(HEADER_REQUEST_TIMEOUT);
+        if (header != null && !header.isBlank()) {
+            try {
+                Duration requested = DurationStyle.detectAndParse(header.strip());
+                if (!requested.isNegative() && requested.compareTo(timeout) < 0) {
+                    timeout = requested;
+                }
+            } catch (IllegalArgumentException e) {
+                // 不正な値は無視して上限を使用
+                logger.debug("{} ヘッダーの値が不正です: {}", HEADER_REQUEST_TIMEOUT, header);
+            }
+        }
+        return Deadline.after(timeout);
+    }
+}
@@ -0,0 +1,44 @@
+package com.aiapps.aiapp.dto;
+
+import java.time.Instant;
+
+/**
+ * 非同期ジョブの進捗
+ *
+ * @param id        ジョブID
+ * @param state     ジョブの状態
+ * @param total     入力の件数
+ * @param completed 処理が完了した件数（エラーを含む）
+ * @param failed    エラーになった件数
+ * @param createdAt 登録日時
+ * @param updatedAt 最終更新日時
+ * @author AiApp
+ */
+public record AnalysisJobStatus(String id, State state, long total, long completed, long failed, Instant createdAt,
+        Instant updatedAt) {
+
+    /**
+     * ジョブの状態
+     */
+    public enum State {
+        /** 実行待ち */
+        QUEUED,
+        /** 実行中 */
+        RUNNING,
+        /** 完了 */
+        COMPLETED,
+        /** 取り消し済み */
+        CANCELLED,
+        /** 失敗（入力の読み込み、または結果の書き込みに失敗したため中断） */
+        FAILED;
+
+        /**
+         * 終了した状態かどうかを判定する
+         *
+         * @return 完了・取り消し済み・失敗の場合はtrue
+         */
+        public boolean isTerminal() {
+            return this == COMPLETED || this == CANCELLED || this == FAILED;
+        }
+    }
+}
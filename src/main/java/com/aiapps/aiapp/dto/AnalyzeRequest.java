@@ -0,0 +1,10 @@
+package com.aiapps.aiapp.dto;
+
+/**
+ * AI分析APIのリクエストボディ
+ *
+ * @param input 分析対象の文章
+ * @author AiApp
+ */
+public record AnalyzeRequest(String input) {
+}
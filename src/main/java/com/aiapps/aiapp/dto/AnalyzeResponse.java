@@ -0,0 +1,11 @@
+package com.aiapps.aiapp.dto;
+
+/**
+ * AI分析APIのレスポンスボディ
+ *
+ * @param input    分析対象の文章
+ * @param category AIが分類したカテゴリー
+ * @author AiApp
+ */
+public record AnalyzeResponse(String input, String category) {
+}
@@ -0,0 +1,16 @@
+package com.aiapps.aiapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 一括分析APIで1件ごとに返す結果（NDJSONの1行）
+ *
+ * @param line     入力の行番号
+ * @param input    分析対象の文章
+ * @param category AIが分類したカテゴリー（エラーの場合はnull）
+ * @param error    エラーメッセージ（正常な場合はnull）
+ * @author AiApp
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkAnalyzeResult(long line, String input, String category, String error) {
+}
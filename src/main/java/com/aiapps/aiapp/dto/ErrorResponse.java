@@ -0,0 +1,10 @@
+package com.aiapps.aiapp.dto;
+
+/**
+ * APIのエラーレスポンスボディ
+ *
+ * @param error ユーザー向けのエラーメッセージ
+ * @author AiApp
+ */
+public record ErrorResponse(String error) {
+}
@@ -0,0 +1,19 @@
+package com.aiapps.aiapp.dto;
+
+/**
+ * 利用者の利用状況APIのレスポンスボディ
+ *
+ * @param enabled          利用回数の制限が有効かどうか
+ * @param limit            連続して利用できる回数
+ * @param remaining        現在利用できる回数
+ * @param used             起動後の利用回数
+ * @param rejected         起動後に上限を超えて拒否された回数
+ * @param nextRefillMillis 次の1回分が利用できるようになるまでの時間（ミリ秒、利用できる場合は0）
+ * @param fullRefillMillis 上限の回数まで回復するまでの時間（ミリ秒）
+ * @param inFlight         実行中の分析の件数
+ * @param queued           順番を待っている分析の件数
+ * @author AiApp
+ */
+public record QuotaStatus(boolean enabled, long limit, long remaining, long used, long rejected,
+        long nextRefillMillis, long fullRefillMillis, int inFlight, int queued) {
+}
@@ -0,0 +1,117 @@
+package com.aiapps.aiapp.exception;
+
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.aiapps.aiapp.controller.AiAnalyzeApiController;
+import com.aiapps.aiapp.dto.ErrorResponse;
+
+/**
+ * JSON API の例外をキャッチしてJSONのエラーレスポンスを返すクラス
+ * 画面用の AiAppExceptionHandler より先に評価され、エラー画面ではなくステータスコードとメッセージを返す
+ *
+ * @author AiApp
+ */
+@RestControllerAdvice(assignableTypes = AiAnalyzeApiController.class)
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AiAppApiExceptionHandler {
+
+    // ロガーの定義
+    private static final Logger logger = LoggerFactory.getLogger(AiAppApiExceptionHandler.class);
+    // 定数定義
+    private static final String VALUE_TOO_MANY_REQUESTS = "429";
+    private static final String VALUE_QUOTA_EXCEEDED = "QUOTA_EXCEEDED";
+    private static final String VALUE_CONNECT_ERROR = "CONNECT_ERROR";
+    private static final String MESSAGE_TOO_MANY_REQUESTS = "現在AIが混み合っています。時間をおいて置いてから再度お試しください。";
+    private static final String MESSAGE_QUOTA_EXCEEDED = "AI分析の利用回数の上限に達しました。時間をおいて再度お試しください。";
+    private static final String MESSAGE_CONNECT_ERROR = "外部サービスへの接続に失敗しました。時間をおいて再度お試しください。";
+    private static final String MESSAGE_SYSTEM_ERROR = "一時的なシステムエラーが発生しました。時間をおいて再度お試しください。";
+
+    /**
+     * 例外の内容からユーザー向けのエラーメッセージを取得する
+     * レスポンスのステータスコードで返せない一括分析の結果行などで使用
+     *
+     * @param ex 発生した例外オブジェクト
+     * @return ユーザー向けのエラーメッセージ
+     */
+    public static String userMessageOf(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        String message = cause.getMessage() == null ? "" : cause.getMessage();
+        if (message.contains(VALUE_QUOTA_EXCEEDED)) {
+            return MESSAGE_QUOTA_EXCEEDED;
+        }
+        if (message.contains(VALUE_TOO_MANY_REQUESTS)) {
+            return MESSAGE_TOO_MANY_REQUESTS;
+        }
+        if (message.contains(VALUE_CONNECT_ERROR)) {
+            return MESSAGE_CONNECT_ERROR;
+        }
+        return MESSAGE_SYSTEM_ERROR;
+    }
+
+    /**
+     * AIアプリケーション固有の例外をキャッチして処理するハンドラー
+     *
+     * @param ex 発生した例外オブジェクト
+     * @return エラー内容に応じたステータスコードとメッセージ
+     */
+    @ExceptionHandler(AiAppException.class)
+    public ResponseEntity<ErrorResponse> handleAiAppException(AiAppException ex) {
+
+        String message = ex.getMessage() == null ? "" : ex.getMessage();
+
+        if (message.contains(VALUE_QUOTA_EXCEEDED)) {
+            logger.info("AI分析の利用回数の上限に達しました。エラー内容:{} ", message);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(new ErrorResponse(MESSAGE_QUOTA_EXCEEDED));
+        }
+        if (message.contains(VALUE_TOO_MANY_REQUESTS)) {
+            logger.warn("現在AIが混み合っています。エラー内容:{} ", message);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(new ErrorResponse(MESSAGE_TOO_MANY_REQUESTS));
+        }
+        if (message.contains(VALUE_CONNECT_ERROR)) {
+            logger.warn("外部サービスへの接続に失敗しました。");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ErrorResponse(MESSAGE_CONNECT_ERROR));
+        }
+
+        logger.error("AI分析APIでエラーが発生しました: ", ex);
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                .body(new ErrorResponse(MESSAGE_SYSTEM_ERROR));
+    }
+
+    /**
+     * リクエストボディが読み取れない場合の例外をキャッチして処理するハンドラー
+     *
+     * @param ex 発生した例外オブジェクト
+     * @return HTTP 400 Bad Request のレスポンス
+     */
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<ErrorResponse> handleBadRequest(HttpMessageNotReadableException ex) {
+        logger.warn("不正なリクエストが送信されました {}: ", ex.getMessage());
+        return ResponseEntity.badRequest().body(new ErrorResponse("リクエストの内容が正しくありません。"));
+    }
+
+    /**
+     * その他の例外をキャッチして処理するハンドラー
+     *
+     * @param ex 発生した例外オブジェクト
+     * @return HTTP 500 Internal Server Error のレスポンス
+     */
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponse> handleAllExceptions(Exception ex) {
+        logger.error("予期せぬシステムエラーが発生しました: ", ex);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ErrorResponse(MESSAGE_SYSTEM_ERROR));
+    }
+}
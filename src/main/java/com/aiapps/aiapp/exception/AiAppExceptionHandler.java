@@ -31,6 +31,7 @@ public class AiAppExceptionHandler {
     private static final String ERROR_ATTRIBUTE = "errorMessage";
     private static final String VIEW_ERROR = "error";
     private static final String VALUE_TOO_MANY_REQUESTS = "429";
+    private static final String VALUE_QUOTA_EXCEEDED = "QUOTA_EXCEEDED";
     private static final String VALUE_CONNECT_ERROR = "CONNECT_ERROR";
 
     /**
@@ -43,7 +44,14 @@ public class AiAppExceptionHandler {
     @ExceptionHandler(Exception.class)
     public String handleAllExceptions(Exception ex, Model model) {
 
-        if (ex.getMessage().contains(VALUE_TOO_MANY_REQUESTS)) {
+        if (ex.getMessage().contains(VALUE_QUOTA_EXCEEDED)) {
+
+            logger.info("AI分析の利用回数の上限に達しました。エラー内容:{} ", ex.getMessage());
+
+            // ユーザーへのメッセージを設定
+            model.addAttribute(ERROR_ATTRIBUTE, "AI分析の利用回数の上限に達しました。時間をおいて再度お試しください。");
+
+        } else if (ex.getMessage().contains(VALUE_TOO_MANY_REQUESTS)) {
 
             logger.warn("現在AIが混み合っています。時間をおいて置いてから再度お試しください。エラー内容:{} ", ex.getMessage());
 
@@ -0,0 +1,45 @@
+package com.aiapps.aiapp.exception;
+
+import java.time.Duration;
+
+/**
+ * 外部API（Gemini API）がステータスコード200以外を返したことを表す例外クラス
+ * 再試行の判定に使用するため、ステータスコードと Retry-After の待機時間を保持する
+ * 
+ * @author AiApp
+ */
+public class UpstreamApiException extends AiAppException {
+
+    // 外部APIが返したステータスコード
+    private final int statusCode;
+    // 外部APIが指定した再試行までの待機時間（指定がない場合はnull）
+    private final transient Duration retryAfter;
+
+    /**
+     * コンストラクタ
+     * @param message    エラーメッセージ
+     * @param statusCode 外部APIが返したステータスコード
+     * @param retryAfter 外部APIが指定した再試行までの待機時間（指定がない場合はnull）
+     */
+    public UpstreamApiException(String message, int statusCode, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * 外部APIが返したステータスコードを取得する
+     * @return ステータスコード
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 外部APIが指定した再試行までの待機時間を取得する
+     * @return 待機時間（指定がない場合はnull）
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,224 @@
+package com.aiapps.aiapp.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.aiapps.aiapp.exception.AiAppException;
+
+/**
+ * Gemini API への同時呼び出し数を適応的に制限するクラス（AIMD方式）
+ * 成功するたびに上限を少しずつ引き上げ、混雑（429/503/タイムアウト）を検知すると半減させる
+ * 上限に達している間は一定数まで待機列に並べ、待機列も満杯の場合は即座に拒否する
+ *
+ * @author AiApp
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+	// 拒否時のメッセージ（画面・APIとも「混み合っています」として扱われるよう 429 を含める）
+	static final String MESSAGE_REJECTED = "429 : 同時実行数の上限に達したため受け付けできませんでした";
+	// 連続した混雑検知で上限を下げすぎないよう、引き下げは一定間隔に1回まで
+	private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * 呼び出し結果の種別
+	 */
+	public enum Outcome {
+		/** 成功（上限を引き上げる） */
+		SUCCESS,
+		/** 呼び出し先の混雑（上限を引き下げる） */
+		OVERLOAD,
+		/** 混雑と無関係な失敗（上限を変えない） */
+		IGNORE
+	}
+
+	// 同時呼び出し数の下限・上限
+	private final int minLimit;
+	private final int maxLimit;
+	// 待機列の最大長
+	private final int maxQueue;
+	// 待機列での最大待ち時間
+	private final Duration maxWait;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// 現在の同時呼び出し数の上限（加算的に増やすため小数で保持）
+	private double limit;
+	// 実行中の呼び出し数
+	private int inFlight;
+	// 空きを待っている呼び出し
+	private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+	// 最後に上限を引き下げた時刻
+	private long lastDecreaseNanos = System.nanoTime() - DECREASE_INTERVAL_NANOS;
+
+	// 統計用カウンタ
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param initialLimit 同時呼び出し数の初期上限
+	 * @param minLimit     同時呼び出し数の上限の下限
+	 * @param maxLimit     同時呼び出し数の上限の上限
+	 * @param maxQueue     待機列の最大長
+	 * @param maxWait      待機列での最大待ち時間
+	 */
+	public AdaptiveConcurrencyLimiter(
+			@Value("${aiapp.limiter.initial-limit:8}") int initialLimit,
+			@Value("${aiapp.limiter.min-limit:1}") int minLimit,
+			@Value("${aiapp.limiter.max-limit:64}") int maxLimit,
+			@Value("${aiapp.limiter.max-queue:100}") int maxQueue,
+			@Value("${aiapp.limiter.max-wait:10s}") Duration maxWait) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.maxQueue = Math.max(0, maxQueue);
+		this.maxWait = maxWait;
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+	}
+
+	/**
+	 * 呼び出しの許可を取得する
+	 * 許可を取得した場合は、呼び出し完了後に必ず {@link #release(Outcome)} を呼ぶこと
+	 *
+	 * @return 許可を取得すると完了するFuture（待機列が満杯、または待ち時間の上限を超えた場合は AiAppException で失敗）
+	 */
+	public CompletableFuture<Void> acquire() {
+		CompletableFuture<Void> waiter;
+		lock.lock();
+		try {
+			if (waiters.isEmpty() && inFlight < currentLimit()) {
+				inFlight++;
+				return CompletableFuture.completedFuture(null);
+			}
+			if (waiters.size() >= maxQueue) {
+				rejected.increment();
+				logger.warn("Gemini API の同時呼び出し数が上限に達したため拒否しました。上限: {}, 待機数: {}",
+						currentLimit(), waiters.size());
+				return CompletableFuture.failedFuture(new AiAppException(MESSAGE_REJECTED));
+			}
+			waiter = new CompletableFuture<>();
+			waiters.add(waiter);
+		} finally {
+			lock.unlock();
+		}
+
+		return waiter.orTimeout(maxWait.toMillis(), TimeUnit.MILLISECONDS)
+				.exceptionallyCompose(ex -> {
+					lock.lock();
+					try {
+						waiters.remove(waiter);
+					} finally {
+						lock.unlock();
+					}
+					timedOut.increment();
+					return CompletableFuture.failedFuture(new AiAppException(MESSAGE_REJECTED));
+				});
+	}
+
+	/**
+	 * 待機せずに取得できる場合に限り呼び出しの許可を取得する
+	 * ヘッジなど、空きがなければ行わなくてよい追加の呼び出しで使用
+	 * 許可を取得した場合は、呼び出し完了後に必ず {@link #release(Outcome)} を呼ぶこと
+	 *
+	 * @return 許可を取得した場合はtrue
+	 */
+	public boolean tryAcquire() {
+		lock.lock();
+		try {
+			if (waiters.isEmpty() && inFlight < currentLimit()) {
+				inFlight++;
+				return true;
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 呼び出しの許可を返却し、結果に応じて上限を調整する
+	 *
+	 * @param outcome 呼び出し結果の種別
+	 */
+	public void release(Outcome outcome) {
+		List<CompletableFuture<Void>> granted = new ArrayList<>();
+		lock.lock();
+		try {
+			inFlight--;
+			if (outcome == Outcome.SUCCESS) {
+				// 上限1つ分の呼び出しが成功するごとに1ずつ増える
+				limit = Math.min(maxLimit, limit + 1.0 / limit);
+			} else if (outcome == Outcome.OVERLOAD && System.nanoTime() - lastDecreaseNanos >= DECREASE_INTERVAL_NANOS) {
+				limit = Math.max(minLimit, limit / 2);
+				lastDecreaseNanos = System.nanoTime();
+				logger.warn("Gemini API の混雑を検知したため同時呼び出し数の上限を {} に下げました", currentLimit());
+			}
+			while (inFlight < currentLimit() && !waiters.isEmpty()) {
+				CompletableFuture<Void> waiter = waiters.poll();
+				if (!waiter.isDone()) {
+					inFlight++;
+					granted.add(waiter);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		// 待機していた呼び出しの再開はロックの外で行う
+		for (CompletableFuture<Void> waiter : granted) {
+			if (!waiter.complete(null)) {
+				// 直前にタイムアウトした場合は許可を戻す
+				release(Outcome.IGNORE);
+			}
+		}
+	}
+
+	/**
+	 * 現在の同時呼び出し数の上限を整数で返す（ロック取得中に呼び出すこと）
+	 *
+	 * @return 同時呼び出し数の上限
+	 */
+	private int currentLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * 同時実行制御の統計情報を取得する
+	 *
+	 * @return 現在の上限・実行中の件数・待機中の件数・拒否件数・待ち時間超過件数
+	 */
+	public Stats stats() {
+		lock.lock();
+		try {
+			return new Stats(currentLimit(), inFlight, waiters.size(), rejected.sum(), timedOut.sum());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 同時実行制御の統計情報
+	 *
+	 * @param limit    現在の同時呼び出し数の上限
+	 * @param inFlight 実行中の呼び出し数
+	 * @param queued   空きを待っている呼び出し数
+	 * @param rejected 待機列が満杯のため拒否した件数
+	 * @param timedOut 待ち時間の上限を超えて拒否した件数
+	 */
+	public record Stats(int limit, int inFlight, int queued, long rejected, long timedOut) {
+	}
+}
@@ -1,24 +1,18 @@
 package com.aiapps.aiapp.service;
 
-import java.io.IOException;
-import java.net.ConnectException;
-import java.net.SocketTimeoutException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import com.aiapps.aiapp.exception.AiAppException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.aiapps.aiapp.exception.AiAppException;
+
 /**
  * AI分析のビジネスロジックを担当するサービスクラス
  * Gemini APIを呼び出してAI分析を実行する機能や、入力値のエラーメッセージを取得する機能を提供
@@ -31,107 +25,247 @@ public class AiService {
 	// ロガーの定義
 	private static final Logger logger = LoggerFactory.getLogger(AiService.class);
 
-	// application.properties で定義したキー名で参照
-	@Value("${google.api.key}")
-	private String apiKey;
+	// AI分析の実行先（Gemini API など）
+	private final AnalysisProvider provider;
+	// 複数リクエストのまとめ送信
+	private final AnalysisBatcher batcher;
+	// 分析結果キャッシュ
+	private final AnalysisResultCache resultCache;
+	// 複数台で共有する分析結果キャッシュ
+	private final SharedResultCache sharedCache;
+	// 同一入力の同時リクエストの相乗り
+	private final InFlightRequestCoalescer coalescer;
+	// 表記ゆれ程度の違いの入力の索引
+	private final NearDuplicateIndex nearDuplicates;
+	// アプリ内の前段分類器
+	private final LocalPreClassifier preClassifier;
+	// 分析結果の永続化
+	private final ClassificationStore store;
+	// Gemini API 呼び出しの同時実行制御と再試行
+	private final UpstreamCallGuard upstreamGuard;
+	// 利用者ごとの利用回数の制限
+	private final UserQuotaLimiter quotaLimiter;
+	// 利用者ごとの公平な割り当て
+	private final FairShareScheduler scheduler;
+	// メトリクスの記録
+	private final AnalysisMetrics metrics;
+	// 応答期限を指定しない呼び出しの応答期限
+	private final Duration defaultDeadline;
 
-	// HttpClientは使い回す（リソースの節約とjava:S2095対策）
-	// Java 21の仮想スレッドを使用する場合も、共通のクライアントを使う
-	private static final HttpClient CLIENT = HttpClient.newBuilder()
-			.connectTimeout(Duration.ofSeconds(10)) // 接続タイムアウト設定
-			.build();
-
-	// ObjectMapperも使い回すことでパフォーマンス向上
-	private static final ObjectMapper MAPPER = new ObjectMapper();
+	/**
+	 * コンストラクタ：AI分析の実行先、バッチ処理、分析結果キャッシュ、共有キャッシュ、相乗り処理、類似入力の索引、前段分類器、永続化ストア、
+	 * 呼び出し保護、利用回数の制限、公平な割り当て、メトリクスの記録と application.properties の設定値を注入
+	 * 
+	 * @param provider        注入するAI分析の実行先
+	 * @param batcher         注入するバッチ処理
+	 * @param resultCache     注入する分析結果キャッシュ
+	 * @param sharedCache     注入する共有キャッシュ
+	 * @param coalescer       注入する相乗り処理
+	 * @param nearDuplicates  注入する類似入力の索引
+	 * @param preClassifier   注入する前段分類器
+	 * @param store           注入する永続化ストア
+	 * @param upstreamGuard   注入する呼び出し保護
+	 * @param quotaLimiter    注入する利用回数の制限
+	 * @param scheduler       注入する公平な割り当て
+	 * @param metrics         注入するメトリクスの記録
+	 * @param defaultDeadline 応答期限を指定しない呼び出しの応答期限
+	 */
+	public AiService(AnalysisProvider provider, AnalysisBatcher batcher, AnalysisResultCache resultCache,
+			SharedResultCache sharedCache, InFlightRequestCoalescer coalescer, NearDuplicateIndex nearDuplicates,
+			LocalPreClassifier preClassifier, ClassificationStore store, UpstreamCallGuard upstreamGuard, UserQuotaLimiter quotaLimiter,
+			FairShareScheduler scheduler, AnalysisMetrics metrics,
+			@Value("${aiapp.deadline.request:35s}") Duration defaultDeadline) {
+		this.provider = provider;
+		this.batcher = batcher;
+		this.resultCache = resultCache;
+		this.sharedCache = sharedCache;
+		this.coalescer = coalescer;
+		this.nearDuplicates = nearDuplicates;
+		this.preClassifier = preClassifier;
+		this.store = store;
+		this.upstreamGuard = upstreamGuard;
+		this.quotaLimiter = quotaLimiter;
+		this.scheduler = scheduler;
+		this.metrics = metrics;
+		this.defaultDeadline = defaultDeadline;
+	}
 
 	/**
 	 * Gemini APIを呼び出してAI分析を実行する
+	 * 結果が返るまで呼び出し元のスレッドで待機する（既定の応答期限を適用）
 	 * 
 	 * @param userInput ユーザー入力文字列
 	 * @return AIからの分析結果テキスト
 	 */
 	public String callGeminiApi(String userInput) {
+		return FutureResults.await(callGeminiApiAsync(userInput));
+	}
 
-		// ログ出力
-		logger.info("AI分析を開始します。入力内容: {}", userInput);
+	/**
+	 * Gemini APIを非同期で呼び出してAI分析を実行する（既定の応答期限を適用）
+	 * 利用者を特定しないため、利用回数の制限は行わずバックグラウンドとして割り当てる
+	 * 
+	 * @param userInput ユーザー入力文字列
+	 * @return AIからの分析結果テキストを受け取るFuture
+	 */
+	public CompletableFuture<String> callGeminiApiAsync(String userInput) {
+		return callGeminiApiAsync(userInput, Deadline.after(defaultDeadline), null);
+	}
+
+	/**
+	 * 利用者を指定してGemini APIを非同期で呼び出し、AI分析を実行する（既定の応答期限を適用）
+	 * 
+	 * @param userInput ユーザー入力文字列
+	 * @param user      利用者ID
+	 * @return AIからの分析結果テキストを受け取るFuture
+	 */
+	public CompletableFuture<String> callGeminiApiAsync(String userInput, String user) {
+		return callGeminiApiAsync(userInput, Deadline.after(defaultDeadline), user);
+	}
+
+	/**
+	 * Gemini APIを非同期で呼び出してAI分析を実行する
+	 * 正規化した入力で分析結果キャッシュを検索し、ヒットした場合はAPIを呼び出さずに返す
+	 * 続いてアプリ内の前段分類器で確信度の高い分類ができればその結果を返す
+	 * 同じ入力の呼び出しが実行中の場合は、その結果を共有する
+	 * 応答期限を過ぎた場合は、Gemini APIの応答を待たずに期限切れで失敗させる
+	 * Gemini APIを呼び出す場合は利用者の利用回数を1回分消費し、他の利用者と公平に順番を割り当てる
+	 * 
+	 * @param userInput ユーザー入力文字列
+	 * @param deadline  応答期限
+	 * @param user      利用者ID（null の場合は利用回数の制限を行わない）
+	 * @return AIからの分析結果テキストを受け取るFuture
+	 */
+	public CompletableFuture<String> callGeminiApiAsync(String userInput, Deadline deadline, String user) {
+		return analyze(userInput, deadline, user, () -> requestGeminiApi(userInput, user, deadline));
+	}
 
-		// APIキーとエンドポイントURLの設定
-		String apiUrl = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash:generateContent?key="
-				+ apiKey;
-		try {
-			String systemPrompt = "Task: Classify into [スポーツ, テクノロジー, 政治, 経済, エンターテイメント, 医療, 教育, ビジネス, ニュース, その他]. Rule: Think in English, output ONLY 1 Japanese word. NO English. Input:";
-			String combinedInput = systemPrompt + userInput;
-
-			// JSONリクエストボディの作成
-			String jsonBody = """
-					{
-					    "contents": [{
-					        "parts": [{
-					            "text": "%s"
-					        }]
-					    }]
-					}
-					""".formatted(combinedInput.replace("\"", "\\\"").replace("\n", "\\n"));
-
-			// POSTリクエストの構築
-			HttpRequest request = HttpRequest.newBuilder()
-					.uri(URI.create(apiUrl))
-					.header("Content-Type", "application/json")
-					.timeout(Duration.ofSeconds(30)) // タイムアウト設定
-					.POST(HttpRequest.BodyPublishers.ofString(jsonBody, StandardCharsets.UTF_8))
-					.build();
-
-			// 送信して結果を受け取る
-			HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-			// レスポンスの処理
-			if (response == null) {
-				// nullチェック
-				logger.error("AIからの応答がnullでした。");
-				throw new AiAppException("AIからの応答が空でした");
-
-				// 正常に応答が返ってきた場合
-			} else if (response.statusCode() == 200) {
-				// JSONをパース
-				JsonNode root = MAPPER.readTree(response.body());
-
-				// 必要なデータを抽出
-				// 構造: candidates[0] -> content -> parts[0] -> text
-				String aiText = root.path("candidates").get(0)
-						.path("content")
-						.path("parts").get(0)
-						.path("text").asText();
-
-				logger.info("AI分析が正常に完了しました。");
-				// 分析結果を返す
-				return aiText;
-
-				// ステータスコード200以外のエラー処理
-			} else {
-				// ボディの最初の100文字のみログに出す
-				String partialBody = response.body().length() > 100
-						? response.body().substring(0, 100) + "..."
-						: response.body();
-				logger.warn("APIエラー : statusCode={}, body={}", response.statusCode(), partialBody);
-				throw new AiAppException(
-						"APIエラー : response.statusCode()= " + response.statusCode() + ", response.body()= "
-								+ response.body());
+	/**
+	 * Gemini APIをストリーミングで呼び出してAI分析を実行する
+	 * 生成テキストの断片を届いた順に通知し、最後に分析結果全体を返す
+	 * キャッシュ・前段分類器で応答できる場合や、同じ入力の呼び出しに相乗りした場合は断片を通知しない
+	 * 
+	 * @param userInput ユーザー入力文字列
+	 * @param deadline  応答期限
+	 * @param user      利用者ID（null の場合は利用回数の制限を行わない）
+	 * @param onPartial 生成テキストの断片の通知先
+	 * @return AIからの分析結果テキストを受け取るFuture
+	 */
+	public CompletableFuture<String> callGeminiApiStreaming(String userInput, Deadline deadline, String user,
+			Consumer<String> onPartial) {
+		return analyze(userInput, deadline, user, () -> {
+			logger.info("AI分析（ストリーミング）を開始します。入力内容: {}", userInput);
+			return provider.streamGenerateContentAsync(AnalysisPrompts.single(userInput), deadline, onPartial)
+					.thenApply(aiText -> {
+						logger.info("AI分析（ストリーミング）が正常に完了しました。");
+						return aiText;
+					});
+		});
+	}
+
+	/**
+	 * キャッシュ・類似入力の索引・前段分類器で応答できない場合に限り、Gemini APIへ分析を依頼する
+	 * 相乗りした呼び出しの応答期限は最初の呼び出し元のものになるため、呼び出し元ごとの期限はここで適用する
+	 * 利用回数は相乗りの有無にかかわらず呼び出し元ごとに消費し（相乗り先の失敗を他の利用者に波及させないため）、
+	 * 公平な割り当ては実際に Gemini API を呼び出す1件ごとに行う
+	 * 
+	 * @param userInput ユーザー入力文字列
+	 * @param deadline  応答期限
+	 * @param user      利用者ID
+	 * @param request   Gemini APIへの分析依頼
+	 * @return AIからの分析結果テキストを受け取るFuture
+	 */
+	private CompletableFuture<String> analyze(String userInput, Deadline deadline, String user,
+			Supplier<CompletableFuture<String>> request) {
+
+		// キャッシュを検索（インメモリで見つからない場合は他の台と共有するキャッシュ、永続化ストアの順に検索）
+		String cacheKey = AnalysisInputNormalizer.normalize(userInput);
+		String cached = resultCache.get(cacheKey);
+		if (cached == null) {
+			cached = sharedCache.get(cacheKey);
+			if (cached == null) {
+				cached = store.find(cacheKey);
 			}
-		} catch (ConnectException | SocketTimeoutException e) {
-			throw new AiAppException("CONNECT_ERROR");
-		} catch (IOException e) {
-			if (e.getMessage().contains("EOF reached")) {
-				throw new AiAppException("CONNECT_ERROR");
+			if (cached != null) {
+				resultCache.put(cacheKey, cached);
 			}
-			throw new AiAppException("システムエラー: " + e);
-		} catch (InterruptedException e) {
-			// ログを出す
-			logger.warn("API呼び出しが中断されました");
-
-			// 中断フラグを再設定する (SonarLint対策)
-			Thread.currentThread().interrupt();
-			// 例外をラップして再スロー
-			throw new AiAppException("処理が中断されました", e);
 		}
+		if (cached != null) {
+			String hit = cached;
+			logger.info("キャッシュから分析結果を返します。入力内容: {}", userInput);
+			return metrics.recordAnalysis(AnalysisMetrics.SOURCE_CACHE, () -> CompletableFuture.completedFuture(hit));
+		}
+
+		// 表記ゆれ程度の違いの入力を分類済みの場合は、そのカテゴリーを再利用
+		String near = nearDuplicates.lookup(cacheKey);
+		if (near != null) {
+			logger.info("類似する入力の分析結果を返します。入力内容: {}", userInput);
+			return metrics.recordAnalysis(AnalysisMetrics.SOURCE_NEAR_DUPLICATE,
+					() -> CompletableFuture.completedFuture(near));
+		}
+
+		// 前段分類器で分類
+		String local = preClassifier.classify(cacheKey);
+		if (local != null) {
+			logger.info("前段分類器で分析結果を返します。入力内容: {}", userInput);
+			return metrics.recordAnalysis(AnalysisMetrics.SOURCE_PRE_CLASSIFIER,
+					() -> CompletableFuture.completedFuture(local));
+		}
+
+		// 利用回数の制限
+		if (!quotaLimiter.tryAcquire(user)) {
+			logger.info("利用回数の上限に達したため分析を受け付けません。利用者: {}", user);
+			return metrics.recordAnalysis(AnalysisMetrics.SOURCE_GEMINI,
+					() -> CompletableFuture.failedFuture(new AiAppException(UserQuotaLimiter.MESSAGE_EXCEEDED)));
+		}
+
+		return metrics.recordAnalysis(AnalysisMetrics.SOURCE_GEMINI,
+				() -> deadline.bound(coalescer.execute(cacheKey, () -> scheduler.submit(user, deadline, request)
+						.thenApply(result -> {
+							// 分析結果をキャッシュに登録（相乗り解除前に登録し、後続のリクエストはキャッシュで応答）
+							resultCache.put(cacheKey, result);
+							sharedCache.put(cacheKey, result);
+							// Gemini の回答で類似入力の索引と前段分類器を学習
+							nearDuplicates.observe(cacheKey, result);
+							preClassifier.observe(cacheKey, result);
+							// 再起動後も利用できるよう永続化
+							store.append(cacheKey, result, provider.model());
+							return result;
+						}))));
+	}
+
+	/**
+	 * Gemini APIへ分析を依頼する
+	 * バッチが有効な場合は同じ利用者の他のリクエストとまとめて送信する
+	 * 
+	 * @param userInput ユーザー入力文字列
+	 * @param user      利用者ID
+	 * @param deadline  応答期限
+	 * @return AIからの分析結果テキストを受け取るFuture
+	 */
+	private CompletableFuture<String> requestGeminiApi(String userInput, String user, Deadline deadline) {
+
+		// ログ出力
+		logger.info("AI分析を開始します。入力内容: {}", userInput);
+
+		CompletableFuture<String> result = batcher.isEnabled()
+				? batcher.submit(userInput, user, deadline)
+				: provider.generateContentAsync(AnalysisPrompts.single(userInput), deadline);
+
+		return result.thenApply(aiText -> {
+			logger.info("AI分析が正常に完了しました。");
+			return aiText;
+		});
+	}
+
+	/**
+	 * 分析処理の統計情報を取得する
+	 * 
+	 * @return キャッシュ・共有キャッシュ・相乗り・類似入力の索引・バッチ・前段分類器・呼び出し保護・利用回数の制限・公平な割り当ての統計情報
+	 */
+	public Stats stats() {
+		return new Stats(resultCache.stats(), sharedCache.stats(), coalescer.stats(), nearDuplicates.stats(),
+				batcher.stats(), preClassifier.stats(), upstreamGuard.stats(), quotaLimiter.stats(), scheduler.stats());
 	}
 
 	/**
@@ -141,6 +275,16 @@ public class AiService {
 	 * @return エラーメッセージ（エラーがない場合は空文字）
 	 */
 	public String getInputErrorMessage(String userInput) {
+		return metrics.recordValidation(() -> validate(userInput));
+	}
+
+	/**
+	 * 入力値をチェックする
+	 * 
+	 * @param userInput ユーザー入力文字列
+	 * @return エラーメッセージ（エラーがない場合は空文字）
+	 */
+	private String validate(String userInput) {
 
 		// 未入力チェック
 		if (userInput == null || userInput.trim().isEmpty()) {
@@ -153,4 +297,23 @@ public class AiService {
 
 		return "";
 	}
+
+	/**
+	 * 分析処理の統計情報
+	 * 
+	 * @param cache         分析結果キャッシュの統計情報
+	 * @param sharedCache   共有キャッシュの統計情報
+	 * @param coalescer     相乗りの統計情報
+	 * @param nearDuplicate 類似入力の索引の統計情報
+	 * @param batch         バッチの統計情報
+	 * @param preClassifier 前段分類器の統計情報
+	 * @param upstream      呼び出し保護の統計情報
+	 * @param quota         利用回数の制限の統計情報
+	 * @param fairShare     公平な割り当ての統計情報
+	 */
+	public record Stats(AnalysisResultCache.Stats cache, SharedResultCache.Stats sharedCache,
+			InFlightRequestCoalescer.Stats coalescer, NearDuplicateIndex.Stats nearDuplicate,
+			AnalysisBatcher.Stats batch, LocalPreClassifier.Stats preClassifier, UpstreamCallGuard.Stats upstream,
+			UserQuotaLimiter.Stats quota, FairShareScheduler.Stats fairShare) {
+	}
 }
@@ -0,0 +1,247 @@
+package com.aiapps.aiapp.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 複数の分析リクエストを1回の Gemini API 呼び出しにまとめるクラス（マイクロバッチ）
+ * 一定時間（ウィンドウ）または最大件数に達するまでリクエストを集め、番号付きのプロンプトで
+ * まとめて分類させたうえで、応答を行ごとに検証して各呼び出し元へ振り分ける
+ * 応答の形式が不正な場合や、カテゴリー一覧にない回答は個別の呼び出しにフォールバックする
+ * 他の利用者の入力が回答に影響しないよう、まとめるのは同じ利用者のリクエストに限る
+ *
+ * @author AiApp
+ */
+@Component
+public class AnalysisBatcher {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(AnalysisBatcher.class);
+
+	// AI分析の実行先（Gemini API など）
+	private final AnalysisProvider provider;
+
+	// バッチ有効フラグ
+	private final boolean enabled;
+	// リクエストを集める時間
+	private final long windowMillis;
+	// 1回の呼び出しにまとめる最大件数
+	private final int maxSize;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// 利用者ごとの送信待ちのリクエスト（キー：利用者ID、利用者を特定できない場合は空文字）
+	private final Map<String, List<Pending>> pending = new HashMap<>();
+
+	// ウィンドウ経過を検知するタイマー
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "analysis-batcher");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// 統計用カウンタ
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder batchedItems = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+
+	/**
+	 * コンストラクタ：AI分析の実行先と application.properties の設定値を注入
+	 *
+	 * @param provider     注入するAI分析の実行先
+	 * @param enabled      バッチを有効にするかどうか
+	 * @param window       リクエストを集める時間
+	 * @param maxSize      1回の呼び出しにまとめる最大件数
+	 */
+	public AnalysisBatcher(AnalysisProvider provider,
+			@Value("${aiapp.batch.enabled:false}") boolean enabled,
+			@Value("${aiapp.batch.window:20ms}") Duration window,
+			@Value("${aiapp.batch.max-size:16}") int maxSize) {
+		this.provider = provider;
+		this.enabled = enabled;
+		this.windowMillis = window.toMillis();
+		this.maxSize = Math.max(1, maxSize);
+	}
+
+	/**
+	 * バッチが有効かどうかを返す
+	 *
+	 * @return 有効な場合true
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 分析リクエストを利用者のバッチに追加する
+	 *
+	 * @param userInput ユーザー入力文字列
+	 * @param user      利用者ID（null の場合は利用者を特定できない依頼としてまとめる）
+	 * @param deadline  応答期限
+	 * @return 分析結果を受け取るFuture
+	 */
+	public CompletableFuture<String> submit(String userInput, String user, Deadline deadline) {
+		Pending item = new Pending(userInput, deadline, new CompletableFuture<>());
+		String key = user == null ? "" : user;
+		List<Pending> full = null;
+
+		lock.lock();
+		try {
+			List<Pending> current = pending.computeIfAbsent(key, k -> new ArrayList<>());
+			current.add(item);
+			if (current.size() >= maxSize) {
+				// 最大件数に達したら即時送信
+				full = pending.remove(key);
+			} else if (current.size() == 1) {
+				// 最初の1件が入った時点でウィンドウのタイマーを開始
+				timer.schedule(() -> flushIfCurrent(key, current), windowMillis, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (full != null) {
+			send(full);
+		}
+		return item.result();
+	}
+
+	/**
+	 * ウィンドウ経過時に、対象のバッチがまだ送信されていなければ送信する
+	 *
+	 * @param key      利用者ID
+	 * @param expected タイマー開始時のバッチ
+	 */
+	private void flushIfCurrent(String key, List<Pending> expected) {
+		List<Pending> batch = null;
+		lock.lock();
+		try {
+			// 最大件数で既に送信済みの場合は何もしない
+			if (pending.remove(key, expected)) {
+				batch = expected;
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (batch != null) {
+			send(batch);
+		}
+	}
+
+	/**
+	 * バッチを送信し、応答を各リクエストへ振り分ける
+	 *
+	 * @param batch 送信するリクエスト
+	 */
+	private void send(List<Pending> batch) {
+		if (batch.size() == 1) {
+			sendSingle(batch.get(0));
+			return;
+		}
+
+		batches.increment();
+		batchedItems.add(batch.size());
+
+		// バッチの応答期限は最も遅いリクエストに合わせる（期限の早いリクエストは呼び出し元で打ち切る）
+		Deadline deadline = batch.stream().map(Pending::deadline).reduce(Deadline::later).orElseThrow();
+		provider.generateContentAsync(AnalysisPrompts.batch(batch.stream().map(Pending::userInput).toList()), deadline)
+				.whenComplete((reply, ex) -> {
+					if (ex != null) {
+						// API呼び出し自体の失敗はバッチ全体に共有する（個別に再送すると負荷を増幅するため）
+						batch.forEach(item -> item.result().completeExceptionally(ex));
+					} else {
+						demultiplex(batch, AnalysisPrompts.parseBatchReply(reply, batch.size()));
+					}
+				});
+	}
+
+	/**
+	 * バッチ応答のカテゴリーを各リクエストへ振り分ける
+	 *
+	 * @param batch  送信したリクエスト
+	 * @param labels 入力順のカテゴリー一覧（形式不正の場合はnull）
+	 */
+	private void demultiplex(List<Pending> batch, List<String> labels) {
+		if (labels == null) {
+			logger.warn("バッチ応答の形式が不正なため個別に分析します。件数: {}", batch.size());
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			String label = labels == null ? null : labels.get(i);
+			if (label != null) {
+				batch.get(i).result().complete(label);
+			} else {
+				// 形式不正・カテゴリー外の回答は個別呼び出しにフォールバック
+				fallbacks.increment();
+				sendSingle(batch.get(i));
+			}
+		}
+	}
+
+	/**
+	 * 1件のリクエストを個別に送信する
+	 *
+	 * @param item 送信するリクエスト
+	 */
+	private void sendSingle(Pending item) {
+		provider.generateContentAsync(AnalysisPrompts.single(item.userInput()), item.deadline())
+				.whenComplete((result, ex) -> {
+					if (ex != null) {
+						item.result().completeExceptionally(ex);
+					} else {
+						item.result().complete(result);
+					}
+				});
+	}
+
+	/**
+	 * バッチの統計情報を取得する
+	 *
+	 * @return まとめて送信した回数・件数・個別呼び出しへのフォールバック件数
+	 */
+	public Stats stats() {
+		return new Stats(batches.sum(), batchedItems.sum(), fallbacks.sum());
+	}
+
+	/**
+	 * アプリケーション終了時にタイマーを停止する
+	 */
+	@PreDestroy
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+
+	/**
+	 * 送信待ちのリクエスト
+	 *
+	 * @param userInput ユーザー入力文字列
+	 * @param deadline  応答期限
+	 * @param result    分析結果を受け取るFuture
+	 */
+	private record Pending(String userInput, Deadline deadline, CompletableFuture<String> result) {
+	}
+
+	/**
+	 * バッチの統計情報
+	 *
+	 * @param batches      まとめて送信した回数
+	 * @param batchedItems まとめて送信した件数
+	 * @param fallbacks    個別呼び出しにフォールバックした件数
+	 */
+	public record Stats(long batches, long batchedItems, long fallbacks) {
+	}
+}
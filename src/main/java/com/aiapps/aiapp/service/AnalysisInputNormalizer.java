@@ -0,0 +1,36 @@
+package com.aiapps.aiapp.service;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+/**
+ * 分析対象の入力文字列を正規化するユーティリティクラス
+ * キャッシュのキーなど、表記ゆれを吸収して同一入力とみなしたい場面で使用
+ *
+ * @author AiApp
+ */
+public final class AnalysisInputNormalizer {
+
+	// 連続する空白文字（改行・タブを含む）
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private AnalysisInputNormalizer() {
+	}
+
+	/**
+	 * 入力文字列を正規化する
+	 * Unicode NFKC 正規化により全角英数字・記号を半角に、半角カナを全角に揃え、
+	 * 前後の空白を除去したうえで連続する空白を1つにまとめる
+	 *
+	 * @param userInput ユーザー入力文字列
+	 * @return 正規化済みの文字列（nullの場合は空文字）
+	 */
+	public static String normalize(String userInput) {
+		if (userInput == null) {
+			return "";
+		}
+		// NFKC正規化（全角スペースも半角スペースに変換される）
+		String normalized = Normalizer.normalize(userInput, Normalizer.Form.NFKC);
+		return WHITESPACE.matcher(normalized.strip()).replaceAll(" ");
+	}
+}
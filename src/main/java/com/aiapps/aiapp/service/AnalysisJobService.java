@@ -0,0 +1,1012 @@
+package com.aiapps.aiapp.service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.aiapps.aiapp.dto.AnalysisJobStatus;
+import com.aiapps.aiapp.dto.AnalysisJobStatus.State;
+import com.aiapps.aiapp.dto.BulkAnalyzeResult;
+import com.aiapps.aiapp.exception.AiAppApiExceptionHandler;
+import com.aiapps.aiapp.exception.AiAppException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 大量の文章を非同期ジョブとしてAI分析するサービスクラス
+ * 登録した入力をファイルに保存してジョブIDを返し、バックグラウンドで AiService に渡して結果をファイルに追記する
+ * 再起動後は処理済みの入力を読み飛ばして未完了のジョブを再開する
+ * 入力の読み込みや結果の書き込みに失敗した場合は、実行中のまま止まらないようジョブを失敗として終了する
+ * 保持期間を過ぎた終了済みのジョブは定期的に削除する
+ * ジョブは登録した利用者だけが参照・取り消しでき、入力の行数とファイルサイズには上限を設ける
+ *
+ * 公平性のため、実行中のジョブから1件ずつ順番に取り出して割り当てる（大きなジョブが他のジョブを待たせない）
+ * また、画面・APIからの対話的なリクエストを優先するため、ジョブの同時実行数は Gemini API の同時呼び出し数の上限の
+ * 一定割合までとし、公平な割り当て・同時実行制御の待機列に対話的なリクエストが並んでいる間は新たな割り当てを見送る
+ * ジョブの分析は登録した利用者の依頼として、利用者ごとの公平な割り当てと利用回数の制限の対象とする
+ * （利用回数の上限に達した場合は、次の1回分が回復するまでそのジョブの割り当てを止める）
+ *
+ * ファイル構成（保存先/ジョブID/）:
+ * <pre>
+ * job.properties : 状態・件数・登録した利用者・登録日時・最終更新日時（一時ファイルに書き込んでから置き換える）
+ * input.ndjson   : 入力（1行に {"line": 行番号, "input": "..."}）
+ * results.ndjson : 結果（BulkAnalyzeResult を完了した順に追記。書き込み途中の末尾の行は再開時に切り詰める）
+ * </pre>
+ *
+ * @author AiApp
+ */
+@Service
+public class AnalysisJobService {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(AnalysisJobService.class);
+
+	// ファイル名
+	private static final String META_FILE = "job.properties";
+	private static final String INPUT_FILE = "input.ndjson";
+	private static final String RESULTS_FILE = "results.ndjson";
+	// ジョブIDの形式（パスの組み立てに使用するため UUID 以外は受け付けない）
+	private static final Pattern JOB_ID = Pattern.compile(
+			"[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+	// 入力が上限を超えた場合のメッセージ
+	public static final String MESSAGE_TOO_LARGE = "ジョブの入力が上限を超えています。";
+	// 割り当てを見送った場合に、同時実行制御の状態を確認し直すまでの時間
+	private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	// AIサービス
+	private final AiService aiService;
+	// Gemini API の同時実行制御（対話的なリクエストの待機状況の確認に使用）
+	private final AdaptiveConcurrencyLimiter limiter;
+	// 利用者ごとの公平な割り当て（対話的なリクエストの待機状況の確認に使用）
+	private final FairShareScheduler scheduler;
+	// 利用者ごとの利用回数の制限（上限に達したジョブを再開するまでの時間の算出に使用）
+	private final UserQuotaLimiter quotaLimiter;
+	// JSONの読み書き
+	private final ObjectMapper mapper;
+
+	// ジョブ有効フラグ
+	private final boolean enabled;
+	// ファイルの保存先
+	private final Path root;
+	// ジョブ全体での同時実行数の上限
+	private final int concurrency;
+	// Gemini API の同時呼び出し数の上限に対する、ジョブが使用してよい割合
+	private final double maxShare;
+	// 終了したジョブの保持期間
+	private final Duration retention;
+	// 保持期間を過ぎたジョブを削除する間隔
+	private final Duration purgeInterval;
+	// 1件のジョブの入力の最大行数（行番号の上限）
+	private final long maxLines;
+	// 1件のジョブの入力・結果ファイルの最大バイト数
+	private final long maxBytes;
+
+	// 登録済みのジョブ（キー：ジョブID）
+	private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+	// 登録途中のジョブID（起動時の読み込みで削除・二重に読み込みしないため）
+	private final Set<String> registering = ConcurrentHashMap.newKeySet();
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// ジョブの追加・完了を割り当て処理に通知する
+	private final Condition changed = lock.newCondition();
+	// 割り当て待ちの入力があるジョブ（先頭から1件ずつ割り当てて末尾に戻す）
+	private final ArrayDeque<Job> runnable = new ArrayDeque<>();
+	// 実行中の件数
+	private int inFlight;
+
+	// 割り当てを行うスレッド
+	private volatile Thread dispatcher;
+	private volatile boolean running = true;
+
+	// 保持期間を過ぎたジョブの削除と、利用回数の上限で止めたジョブの再開を行うスレッド
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "analysis-job-timer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * コンストラクタ：AIサービス、同時実行制御、公平な割り当て、利用回数の制限、ObjectMapper と application.properties の設定値を注入
+	 *
+	 * @param aiService     注入するAIサービス
+	 * @param limiter       注入する同時実行制御
+	 * @param scheduler     注入する公平な割り当て
+	 * @param quotaLimiter  注入する利用回数の制限
+	 * @param mapper        注入するObjectMapper
+	 * @param enabled       ジョブを有効にするかどうか
+	 * @param root          ファイルの保存先
+	 * @param concurrency   ジョブ全体での同時実行数の上限
+	 * @param maxShare      Gemini API の同時呼び出し数の上限に対する、ジョブが使用してよい割合
+	 * @param retention     終了したジョブの保持期間
+	 * @param purgeInterval 保持期間を過ぎたジョブを削除する間隔
+	 * @param maxLines      1件のジョブの入力の最大行数
+	 * @param maxBytes      1件のジョブの入力・結果ファイルの最大サイズ
+	 */
+	public AnalysisJobService(AiService aiService, AdaptiveConcurrencyLimiter limiter, FairShareScheduler scheduler,
+			UserQuotaLimiter quotaLimiter, ObjectMapper mapper,
+			@Value("${aiapp.jobs.enabled:true}") boolean enabled,
+			@Value("${aiapp.jobs.path:data/jobs}") Path root,
+			@Value("${aiapp.jobs.concurrency:4}") int concurrency,
+			@Value("${aiapp.jobs.max-share:0.5}") double maxShare,
+			@Value("${aiapp.jobs.retention:7d}") Duration retention,
+			@Value("${aiapp.jobs.purge-interval:1h}") Duration purgeInterval,
+			@Value("${aiapp.jobs.max-lines:100000}") long maxLines,
+			@Value("${aiapp.jobs.max-size:64MB}") DataSize maxBytes) {
+		this.aiService = aiService;
+		this.limiter = limiter;
+		this.scheduler = scheduler;
+		this.quotaLimiter = quotaLimiter;
+		this.mapper = mapper;
+		this.enabled = enabled;
+		this.root = root;
+		this.concurrency = Math.max(1, concurrency);
+		this.maxShare = maxShare;
+		this.retention = retention;
+		this.purgeInterval = purgeInterval;
+		// 処理済みの行番号を BitSet で管理するため int の範囲に収める
+		this.maxLines = Math.max(1, Math.min(maxLines, Integer.MAX_VALUE - 1));
+		this.maxBytes = maxBytes.toBytes();
+	}
+
+	/**
+	 * 起動完了後、未完了のジョブを読み込んで割り当てを開始し、保持期間を過ぎたジョブの定期削除を開始する
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		dispatcher = Thread.ofVirtual().name("analysis-job-dispatcher").start(() -> {
+			resume();
+			dispatchLoop();
+		});
+		long intervalMillis = Math.max(1, purgeInterval.toMillis());
+		timer.scheduleWithFixedDelay(this::purgeExpired, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * ジョブが有効かどうかを返す
+	 *
+	 * @return 有効な場合true
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 入力をすべて読み込んでジョブを登録する
+	 * 入力エラーの行はその場でエラーの結果として記録する
+	 *
+	 * @param reader 入力の読み込み元
+	 * @param owner  登録した利用者ID
+	 * @return 登録したジョブの進捗
+	 * @throws IOException 入力の読み込み、またはファイルの書き込みに失敗した場合
+	 * @throws AiAppException 入力の行数・サイズが上限を超えた場合（MESSAGE_TOO_LARGE）
+	 */
+	public AnalysisJobStatus submit(BulkInputReader reader, String owner) throws IOException {
+		String id = UUID.randomUUID().toString();
+		registering.add(id);
+		try {
+			return register(id, owner, reader);
+		} finally {
+			registering.remove(id);
+		}
+	}
+
+	/**
+	 * 入力をファイルに保存してジョブを登録する
+	 *
+	 * @param id     ジョブID
+	 * @param owner  登録した利用者ID
+	 * @param reader 入力の読み込み元
+	 * @return 登録したジョブの進捗
+	 * @throws IOException 入力の読み込み、またはファイルの書き込みに失敗した場合
+	 */
+	private AnalysisJobStatus register(String id, String owner, BulkInputReader reader) throws IOException {
+		Path dir = root.resolve(id);
+		Files.createDirectories(dir);
+		Job job = new Job(id, owner, dir, Instant.now());
+
+		try (OutputStream input = new BufferedOutputStream(Files.newOutputStream(dir.resolve(INPUT_FILE)))) {
+			job.openResults();
+			BulkInputReader.Item item;
+			long total = 0;
+			long bytes = 0;
+			while ((item = reader.next()) != null) {
+				if (item.line() > maxLines) {
+					throw new AiAppException(MESSAGE_TOO_LARGE);
+				}
+				total++;
+				String errorMessage = item.error() != null ? item.error() : aiService.getInputErrorMessage(item.input());
+				if (!errorMessage.isEmpty()) {
+					bytes += job.append(new BulkAnalyzeResult(item.line(), item.input(), null, errorMessage));
+				} else {
+					byte[] json = mapper.writeValueAsBytes(new BulkAnalyzeResult(item.line(), item.input(), null, null));
+					input.write(json);
+					input.write('\n');
+					// 結果ファイルには入力を含む結果が同程度のサイズで追記されるため、2倍で見積もる
+					bytes += (json.length + 1) * 2L;
+				}
+				if (bytes > maxBytes) {
+					throw new AiAppException(MESSAGE_TOO_LARGE);
+				}
+			}
+			job.total = total;
+		} catch (IOException | RuntimeException e) {
+			job.close();
+			deleteDirectory(dir);
+			throw e;
+		}
+
+		// 状態ファイルは最後に書き込む（ない場合は登録途中のジョブとして起動時に削除）
+		job.state = job.completed >= job.total ? State.COMPLETED : State.QUEUED;
+		writeMeta(job);
+		jobs.put(id, job);
+		logger.info("ジョブを登録しました。ジョブID: {}, 件数: {}", id, job.total);
+
+		if (job.state.isTerminal()) {
+			job.close();
+		} else {
+			enqueue(job);
+		}
+		return job.status();
+	}
+
+	/**
+	 * 利用者が登録したジョブを取得する
+	 *
+	 * @param id    ジョブID
+	 * @param owner 利用者ID
+	 * @return ジョブ（存在しない・他の利用者が登録した場合はnull）
+	 */
+	private Job find(String id, String owner) {
+		Job job = jobs.get(id);
+		return job != null && job.owner != null && job.owner.equals(owner) ? job : null;
+	}
+
+	/**
+	 * ジョブの進捗を取得する
+	 *
+	 * @param id    ジョブID
+	 * @param owner 利用者ID
+	 * @return ジョブの進捗（存在しない・他の利用者が登録した場合はnull）
+	 */
+	public AnalysisJobStatus status(String id, String owner) {
+		Job job = find(id, owner);
+		return job == null ? null : job.status();
+	}
+
+	/**
+	 * ジョブを取り消す
+	 * 実行中の分析は最後まで行うが、結果は記録しない
+	 *
+	 * @param id    ジョブID
+	 * @param owner 利用者ID
+	 * @return 取り消し後のジョブの進捗（存在しない・他の利用者が登録した場合はnull）
+	 */
+	public AnalysisJobStatus cancel(String id, String owner) {
+		Job job = find(id, owner);
+		if (job == null) {
+			return null;
+		}
+		if (job.finish(State.CANCELLED)) {
+			lock.lock();
+			try {
+				runnable.remove(job);
+				job.queued = false;
+			} finally {
+				lock.unlock();
+			}
+			logger.info("ジョブを取り消しました。ジョブID: {}", id);
+		}
+		return job.status();
+	}
+
+	/**
+	 * ジョブの結果を記録された順に読み込む
+	 *
+	 * @param id       ジョブID
+	 * @param owner    利用者ID
+	 * @param offset   読み飛ばす件数
+	 * @param limit    読み込む最大件数
+	 * @param listener 結果の通知先
+	 * @return ジョブが存在した場合はtrue（他の利用者が登録した場合はfalse）
+	 * @throws IOException ファイルの読み込み、または結果の通知に失敗した場合
+	 */
+	public boolean readResults(String id, String owner, long offset, int limit,
+			BulkAnalysisService.ResultListener listener) throws IOException {
+		Job job = find(id, owner);
+		if (job == null) {
+			return false;
+		}
+		Path results = job.dir.resolve(RESULTS_FILE);
+		if (!Files.exists(results)) {
+			return true;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(results, StandardCharsets.UTF_8)) {
+			String line;
+			long index = 0;
+			int count = 0;
+			while (count < limit && (line = reader.readLine()) != null) {
+				if (index++ < offset) {
+					continue;
+				}
+				try {
+					listener.onResult(mapper.readValue(line, BulkAnalyzeResult.class));
+				} catch (JsonProcessingException e) {
+					// 書き込み途中の行に達した場合はそこまでとする
+					break;
+				}
+				count++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * ジョブの進捗の変化を通知する
+	 * 登録時点の進捗を直ちに通知し、以降は結果が記録されるたびに通知する
+	 *
+	 * @param id       ジョブID
+	 * @param owner    利用者ID
+	 * @param listener 進捗の通知先（分析を行うスレッドから呼ばれるため、時間のかかる処理は行わないこと）
+	 * @return ジョブが存在した場合はtrue（他の利用者が登録した場合はfalse）
+	 */
+	public boolean subscribe(String id, String owner, Consumer<AnalysisJobStatus> listener) {
+		Job job = find(id, owner);
+		if (job == null) {
+			return false;
+		}
+		job.listeners.add(listener);
+		listener.accept(job.status());
+		return true;
+	}
+
+	/**
+	 * 進捗の通知を解除する
+	 *
+	 * @param id       ジョブID
+	 * @param listener 解除する通知先
+	 */
+	public void unsubscribe(String id, Consumer<AnalysisJobStatus> listener) {
+		Job job = jobs.get(id);
+		if (job != null) {
+			job.listeners.remove(listener);
+		}
+	}
+
+	/**
+	 * 割り当て待ちの入力があるジョブを末尾に追加する
+	 *
+	 * @param job 追加するジョブ
+	 */
+	private void enqueue(Job job) {
+		lock.lock();
+		try {
+			if (!job.queued && !job.state.isTerminal()) {
+				job.queued = true;
+				runnable.add(job);
+				changed.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 実行中のジョブから1件ずつ順番に入力を取り出して AiService に渡す
+	 */
+	private void dispatchLoop() {
+		while (running) {
+			Job job;
+			lock.lock();
+			try {
+				if (runnable.isEmpty()) {
+					// ジョブの追加を待つ
+					changed.await();
+					continue;
+				}
+				if (inFlight >= allowedInFlight() || scheduler.hasWaitingUsers() || limiter.stats().queued() > 0) {
+					// 上限に達している間や対話的なリクエストが待機している間は、完了の通知または一定時間の経過を待つ
+					changed.awaitNanos(RECHECK_NANOS);
+					continue;
+				}
+				job = runnable.poll();
+				if (job.isPaused()) {
+					// 利用回数の上限で止めたジョブは、再開の予定時刻に改めて追加する
+					job.queued = false;
+					continue;
+				}
+				inFlight++;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			BulkAnalyzeResult item = null;
+			try {
+				item = job.next();
+			} catch (IOException | RuntimeException e) {
+				logger.warn("ジョブの入力の読み込みに失敗しました。ジョブID: {}, 理由: {}", job.id, e.getMessage());
+				job.finish(State.FAILED);
+			}
+
+			lock.lock();
+			try {
+				if (item == null) {
+					inFlight--;
+					if (job.hasRetries()) {
+						// 読み込み中に再試行する入力が追加された場合
+						runnable.add(job);
+					} else {
+						// 割り当て待ちの入力がなくなったジョブは、再試行する入力が出るまで割り当て対象から外す
+						job.queued = false;
+					}
+					continue;
+				}
+				runnable.add(job);
+			} finally {
+				lock.unlock();
+			}
+			dispatch(job, item);
+		}
+	}
+
+	/**
+	 * ジョブが同時に実行してよい件数を求める（ロック取得中に呼び出すこと）
+	 *
+	 * @return 同時実行数の上限
+	 */
+	private int allowedInFlight() {
+		return Math.max(1, Math.min(concurrency, (int) (limiter.stats().limit() * maxShare)));
+	}
+
+	/**
+	 * 1件の入力を分析し、完了時に結果を記録する
+	 *
+	 * @param job  対象のジョブ
+	 * @param item 分析する入力
+	 */
+	private void dispatch(Job job, BulkAnalyzeResult item) {
+		job.markRunning();
+		CompletableFuture<String> future;
+		try {
+			future = aiService.callGeminiApiAsync(item.input(), job.owner);
+		} catch (RuntimeException e) {
+			future = CompletableFuture.failedFuture(e);
+		}
+		future.whenComplete((result, ex) -> {
+			// 同時実行制御・公平な割り当て・利用回数の制限で拒否された場合は、分析の失敗ではないため後で再試行する
+			String message = ex == null ? null : FutureResults.unwrap(ex).getMessage();
+			boolean exceeded = UserQuotaLimiter.MESSAGE_EXCEEDED.equals(message);
+			boolean rejected = exceeded || AdaptiveConcurrencyLimiter.MESSAGE_REJECTED.equals(message)
+					|| FairShareScheduler.MESSAGE_REJECTED.equals(message);
+			try {
+				if (rejected) {
+					job.retry(item);
+				} else {
+					job.append(ex == null
+							? new BulkAnalyzeResult(item.line(), item.input(), result, null)
+							: new BulkAnalyzeResult(item.line(), item.input(), null,
+									AiAppApiExceptionHandler.userMessageOf(ex)));
+				}
+			} catch (IOException e) {
+				// 書き込み途中の行が残っている場合に続けて追記すると結果ファイルが壊れるため、ジョブを失敗として終了する
+				logger.warn("ジョブの結果の書き込みに失敗しました。ジョブID: {}, 理由: {}", job.id, e.getMessage());
+				job.finish(State.FAILED);
+			}
+
+			lock.lock();
+			try {
+				inFlight--;
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			if (exceeded) {
+				pause(job);
+			} else if (rejected) {
+				enqueue(job);
+			} else if (job.completed >= job.total && job.finish(State.COMPLETED)) {
+				logger.info("ジョブが完了しました。ジョブID: {}, 件数: {}, エラー: {}", job.id, job.total, job.failed);
+			}
+			job.notifyListeners();
+		});
+	}
+
+	/**
+	 * 利用回数の上限に達したジョブの割り当てを、次の1回分が回復するまで止める
+	 *
+	 * @param job 対象のジョブ
+	 */
+	private void pause(Job job) {
+		long waitMillis = Math.max(1, quotaLimiter.usage(job.owner).nextRefillMillis());
+		job.resumeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+		try {
+			timer.schedule(() -> enqueue(job), waitMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// 終了処理中のため再開しない（再起動後に未完了のジョブとして再開する）
+		}
+	}
+
+	/**
+	 * 保持期間を過ぎた終了済みのジョブを削除する
+	 */
+	private void purgeExpired() {
+		Instant expireBefore = Instant.now().minus(retention);
+		int purged = 0;
+		for (Job job : jobs.values()) {
+			if (job.isExpired(expireBefore) && jobs.remove(job.id, job)) {
+				deleteDirectory(job.dir);
+				purged++;
+			}
+		}
+		if (purged > 0) {
+			logger.info("保持期間を過ぎたジョブを削除しました。件数: {}", purged);
+		}
+	}
+
+	/**
+	 * 保存先のジョブを読み込み、未完了のジョブを再開する
+	 * 保持期間を過ぎた終了済みのジョブと、登録途中で停止したジョブは削除する
+	 * 読み込み中に登録されたジョブ（登録途中を含む）は対象外とする
+	 */
+	private void resume() {
+		if (!Files.isDirectory(root)) {
+			return;
+		}
+		Instant expireBefore = Instant.now().minus(retention);
+		int resumed = 0;
+		try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root)) {
+			for (Path dir : dirs) {
+				String id = dir.getFileName().toString();
+				if (!Files.isDirectory(dir) || !JOB_ID.matcher(id).matches()) {
+					continue;
+				}
+				try {
+					// 登録の完了時は jobs に追加してから registering から外すため、この順に確認する
+					if (registering.contains(id) || jobs.containsKey(id)) {
+						continue;
+					}
+					Job job = load(id, dir);
+					if (job == null || job.isExpired(expireBefore)) {
+						deleteDirectory(dir);
+						continue;
+					}
+					jobs.put(id, job);
+					if (!job.state.isTerminal()) {
+						enqueue(job);
+						resumed++;
+					}
+				} catch (IOException | RuntimeException e) {
+					logger.warn("ジョブの読み込みに失敗しました。ジョブID: {}, 理由: {}", id, e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("ジョブの保存先の読み込みに失敗しました: {}", e.getMessage());
+		}
+		logger.info("ジョブを読み込みました。件数: {}, 再開: {}", jobs.size(), resumed);
+	}
+
+	/**
+	 * ジョブを読み込む（未完了の場合は記録済みの結果を読み込み、結果ファイルを追記できる状態にする）
+	 *
+	 * @param id  ジョブID
+	 * @param dir ジョブのディレクトリ
+	 * @return 読み込んだジョブ（登録途中で停止していた場合はnull）
+	 * @throws IOException ファイルの読み込みに失敗した場合
+	 */
+	private Job load(String id, Path dir) throws IOException {
+		Path metaFile = dir.resolve(META_FILE);
+		if (!Files.exists(metaFile)) {
+			return null;
+		}
+		Properties meta = new Properties();
+		try (Reader reader = Files.newBufferedReader(metaFile, StandardCharsets.UTF_8)) {
+			meta.load(reader);
+		}
+		Job job = new Job(id, meta.getProperty("owner"), dir,
+				Instant.ofEpochMilli(Long.parseLong(meta.getProperty("createdAt"))));
+		job.total = Long.parseLong(meta.getProperty("total"));
+		job.state = State.valueOf(meta.getProperty("state"));
+		job.updatedAt = Instant.ofEpochMilli(Long.parseLong(meta.getProperty("updatedAt")));
+		job.completed = Long.parseLong(meta.getProperty("completed", "0"));
+		job.failed = Long.parseLong(meta.getProperty("failed", "0"));
+		if (job.state.isTerminal()) {
+			return job;
+		}
+
+		// 記録済みの結果から処理済みの入力を復元
+		job.openResults();
+		job.completed = 0;
+		job.failed = 0;
+		try (BufferedReader reader = Files.newBufferedReader(dir.resolve(RESULTS_FILE), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				BulkAnalyzeResult result = mapper.readValue(line, BulkAnalyzeResult.class);
+				job.done.set(Math.toIntExact(result.line()));
+				job.completed++;
+				if (result.error() != null) {
+					job.failed++;
+				}
+			}
+		}
+		if (job.completed >= job.total) {
+			job.finish(State.COMPLETED);
+		}
+		return job;
+	}
+
+	/**
+	 * ジョブの状態ファイルを書き込む（一時ファイルに書き込んでから置き換える）
+	 *
+	 * @param job 対象のジョブ
+	 * @throws IOException ファイルの書き込みに失敗した場合
+	 */
+	private static void writeMeta(Job job) throws IOException {
+		Properties meta = new Properties();
+		meta.setProperty("state", job.state.name());
+		meta.setProperty("total", String.valueOf(job.total));
+		meta.setProperty("completed", String.valueOf(job.completed));
+		meta.setProperty("failed", String.valueOf(job.failed));
+		if (job.owner != null) {
+			meta.setProperty("owner", job.owner);
+		}
+		meta.setProperty("createdAt", String.valueOf(job.createdAt.toEpochMilli()));
+		meta.setProperty("updatedAt", String.valueOf(job.updatedAt.toEpochMilli()));
+		Path tmp = job.dir.resolve(META_FILE + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			meta.store(writer, null);
+		}
+		Files.move(tmp, job.dir.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * ディレクトリを中身ごと削除する
+	 *
+	 * @param dir 削除するディレクトリ
+	 */
+	private static void deleteDirectory(Path dir) {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+				try {
+					Files.delete(path);
+				} catch (IOException e) {
+					logger.warn("ジョブのファイルを削除できませんでした: {}", path);
+				}
+			});
+		} catch (IOException e) {
+			logger.warn("ジョブのディレクトリを削除できませんでした: {}", dir);
+		}
+	}
+
+	/**
+	 * アプリケーション終了時に割り当てを停止し、ファイルを閉じる
+	 * 実行中だった入力は結果が記録されないため、再起動後に改めて分析する
+	 */
+	@PreDestroy
+	public void shutdown() {
+		timer.shutdownNow();
+		running = false;
+		Thread t = dispatcher;
+		if (t != null) {
+			t.interrupt();
+		}
+		jobs.values().forEach(Job::close);
+	}
+
+	/**
+	 * 1件のジョブの状態と、入力・結果ファイルの読み書き
+	 */
+	private final class Job {
+
+		final String id;
+		// 登録した利用者ID
+		final String owner;
+		final Path dir;
+		final Instant createdAt;
+		// 処理済みの入力の行番号（再開時に読み飛ばすため）
+		final BitSet done = new BitSet();
+		// 同時実行制御・利用回数の制限で拒否されたため再試行する入力
+		final ArrayDeque<BulkAnalyzeResult> retries = new ArrayDeque<>();
+		// 進捗の通知先
+		final CopyOnWriteArrayList<Consumer<AnalysisJobStatus>> listeners = new CopyOnWriteArrayList<>();
+		final ReentrantLock jobLock = new ReentrantLock();
+
+		volatile State state = State.QUEUED;
+		volatile long total;
+		volatile long completed;
+		volatile long failed;
+		volatile Instant updatedAt;
+		// 割り当て待ちのジョブに含まれているかどうか（AnalysisJobService のロック取得中に参照すること）
+		boolean queued;
+		// 利用回数の上限で割り当てを止めたジョブを再開する時刻（System.nanoTime() 基準）
+		volatile long resumeAt = System.nanoTime();
+
+		// 入力の読み込み元（最初の割り当て時に開く）
+		private BufferedReader input;
+		// 結果の追記先
+		private FileChannel results;
+
+		Job(String id, String owner, Path dir, Instant createdAt) {
+			this.id = id;
+			this.owner = owner;
+			this.dir = dir;
+			this.createdAt = createdAt;
+			this.updatedAt = createdAt;
+		}
+
+		/**
+		 * 結果ファイルを追記用に開き、書き込み途中で停止した末尾の行を切り詰める
+		 *
+		 * @throws IOException ファイルの読み書きに失敗した場合
+		 */
+		void openResults() throws IOException {
+			results = FileChannel.open(dir.resolve(RESULTS_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			long size = results.size();
+			long validEnd = size;
+			ByteBuffer one = ByteBuffer.allocate(1);
+			while (validEnd > 0) {
+				one.clear();
+				results.read(one, validEnd - 1);
+				if (one.get(0) == '\n') {
+					break;
+				}
+				validEnd--;
+			}
+			if (validEnd < size) {
+				logger.warn("ジョブの結果ファイル末尾の不完全な行を切り詰めます。ジョブID: {}, {} -> {} bytes", id, size, validEnd);
+				results.truncate(validEnd);
+			}
+			results.position(validEnd);
+		}
+
+		/**
+		 * 次に分析する入力を取り出す（再試行する入力を優先し、処理済みの入力は読み飛ばす）
+		 *
+		 * @return 分析する入力（割り当て待ちの入力がない場合はnull）
+		 * @throws IOException 入力ファイルの読み込みに失敗した場合
+		 */
+		BulkAnalyzeResult next() throws IOException {
+			jobLock.lock();
+			try {
+				if (state.isTerminal()) {
+					return null;
+				}
+				BulkAnalyzeResult retry = retries.poll();
+				if (retry != null) {
+					return retry;
+				}
+				if (input == null) {
+					input = Files.newBufferedReader(dir.resolve(INPUT_FILE), StandardCharsets.UTF_8);
+				}
+				String line;
+				while ((line = input.readLine()) != null) {
+					BulkAnalyzeResult item = mapper.readValue(line, BulkAnalyzeResult.class);
+					if (!done.get(Math.toIntExact(item.line()))) {
+						return item;
+					}
+				}
+				return null;
+			} finally {
+				jobLock.unlock();
+			}
+		}
+
+		/**
+		 * 利用回数の上限で割り当てを止めているかどうかを判定する
+		 *
+		 * @return 再開する時刻より前の場合はtrue
+		 */
+		boolean isPaused() {
+			return resumeAt - System.nanoTime() > 0;
+		}
+
+		/**
+		 * 同時実行制御・利用回数の制限で拒否された入力を再試行の対象にする
+		 *
+		 * @param item 再試行する入力
+		 */
+		void retry(BulkAnalyzeResult item) {
+			jobLock.lock();
+			try {
+				retries.add(item);
+			} finally {
+				jobLock.unlock();
+			}
+		}
+
+		/**
+		 * 再試行する入力があるかどうかを判定する
+		 *
+		 * @return 再試行する入力がある場合はtrue
+		 */
+		boolean hasRetries() {
+			jobLock.lock();
+			try {
+				return !retries.isEmpty() && !state.isTerminal();
+			} finally {
+				jobLock.unlock();
+			}
+		}
+
+		/**
+		 * 結果を1行追記する（取り消し済みの場合は記録しない）
+		 *
+		 * @param result 分析結果
+		 * @return 追記したバイト数
+		 * @throws IOException ファイルの書き込みに失敗した場合
+		 */
+		int append(BulkAnalyzeResult result) throws IOException {
+			byte[] json = mapper.writeValueAsBytes(result);
+			ByteBuffer buf = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+			jobLock.lock();
+			try {
+				if (state == State.CANCELLED || results == null) {
+					return 0;
+				}
+				// 1行を1回の書き込みで追記し、停止した場合でも不完全な行は末尾の1行に限られるようにする
+				while (buf.hasRemaining()) {
+					results.write(buf);
+				}
+				done.set(Math.toIntExact(result.line()));
+				completed++;
+				if (result.error() != null) {
+					failed++;
+				}
+				updatedAt = Instant.now();
+				return json.length + 1;
+			} finally {
+				jobLock.unlock();
+			}
+		}
+
+		/**
+		 * 保持期間を過ぎた終了済みのジョブかどうかを判定する
+		 *
+		 * @param expireBefore この日時より前に終了したジョブを対象とする
+		 * @return 削除してよい場合はtrue
+		 */
+		boolean isExpired(Instant expireBefore) {
+			return state.isTerminal() && updatedAt.isBefore(expireBefore);
+		}
+
+		/**
+		 * 最初の割り当て時に実行中の状態にする
+		 */
+		void markRunning() {
+			if (state != State.QUEUED) {
+				return;
+			}
+			jobLock.lock();
+			try {
+				if (state == State.QUEUED) {
+					state = State.RUNNING;
+					writeMeta(this);
+				}
+			} catch (IOException e) {
+				logger.warn("ジョブの状態の書き込みに失敗しました。ジョブID: {}, 理由: {}", id, e.getMessage());
+			} finally {
+				jobLock.unlock();
+			}
+		}
+
+		/**
+		 * ジョブを終了した状態にしてファイルを閉じる
+		 *
+		 * @param terminal 終了後の状態
+		 * @return 状態を変更した場合はtrue（既に終了していた場合はfalse）
+		 */
+		boolean finish(State terminal) {
+			jobLock.lock();
+			try {
+				if (state.isTerminal()) {
+					return false;
+				}
+				state = terminal;
+				updatedAt = Instant.now();
+				writeMeta(this);
+			} catch (IOException e) {
+				logger.warn("ジョブの状態の書き込みに失敗しました。ジョブID: {}, 理由: {}", id, e.getMessage());
+			} finally {
+				jobLock.unlock();
+			}
+			close();
+			notifyListeners();
+			return true;
+		}
+
+		/**
+		 * 入力・結果ファイルを閉じる
+		 */
+		void close() {
+			jobLock.lock();
+			try {
+				if (input != null) {
+					input.close();
+					input = null;
+				}
+				if (results != null) {
+					results.force(false);
+					results.close();
+					results = null;
+				}
+			} catch (IOException e) {
+				logger.warn("ジョブのファイルのクローズに失敗しました。ジョブID: {}, 理由: {}", id, e.getMessage());
+			} finally {
+				jobLock.unlock();
+			}
+		}
+
+		/**
+		 * 進捗の通知先に現在の進捗を通知する
+		 */
+		void notifyListeners() {
+			if (listeners.isEmpty()) {
+				return;
+			}
+			AnalysisJobStatus status = status();
+			for (Consumer<AnalysisJobStatus> listener : listeners) {
+				try {
+					listener.accept(status);
+				} catch (RuntimeException e) {
+					logger.debug("ジョブの進捗を通知できませんでした: {}", e.getMessage());
+				}
+			}
+		}
+
+		/**
+		 * 現在の進捗を返す
+		 *
+		 * @return ジョブの進捗
+		 */
+		AnalysisJobStatus status() {
+			return new AnalysisJobStatus(id, state, total, completed, failed, createdAt, updatedAt);
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package com.aiapps.aiapp.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.aiapps.aiapp.exception.AiAppException;
+import com.aiapps.aiapp.exception.UpstreamApiException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * AI分析の処理時間・件数を Micrometer に記録するクラス
+ * Actuator の /actuator/prometheus から参照できる
+ *
+ * 画面・APIのリクエスト全体の処理時間とステータスコード別の件数は、
+ * Spring Boot 標準の http.server.requests で記録される
+ *
+ * @author AiApp
+ */
+@Component
+public class AnalysisMetrics {
+
+	// メトリクス名
+	private static final String ANALYSIS = "aiapp.analysis";
+	private static final String ANALYSIS_ACTIVE = "aiapp.analysis.active";
+	private static final String ANALYSIS_ERRORS = "aiapp.analysis.errors";
+	private static final String VALIDATION = "aiapp.analysis.validation";
+	private static final String UPSTREAM = "aiapp.gemini.requests";
+	private static final String PARSE = "aiapp.gemini.parse";
+	private static final String HEDGE_SAVED = "aiapp.gemini.hedge.saved";
+	private static final String TOKENS = "aiapp.gemini.tokens";
+	private static final String TOKEN_LATENCY = "aiapp.gemini.token.latency";
+
+	/** 分析結果の取得元：分析結果キャッシュ */
+	public static final String SOURCE_CACHE = "cache";
+	/** 分析結果の取得元：類似入力の索引 */
+	public static final String SOURCE_NEAR_DUPLICATE = "near_duplicate";
+	/** 分析結果の取得元：前段分類器 */
+	public static final String SOURCE_PRE_CLASSIFIER = "pre_classifier";
+	/** 分析結果の取得元：Gemini API */
+	public static final String SOURCE_GEMINI = "gemini";
+
+	private final MeterRegistry registry;
+	// 実行中の分析件数
+	private final AtomicInteger active = new AtomicInteger();
+	private final Timer validationTimer;
+	private final Timer parseTimer;
+	private final Timer hedgeSavedTimer;
+	private final Timer tokenLatencyTimer;
+	// 種類別のトークン数（入力・キャッシュから読み込んだ入力・出力・思考）
+	private final DistributionSummary promptTokens;
+	private final DistributionSummary cachedTokens;
+	private final DistributionSummary outputTokens;
+	private final DistributionSummary thoughtTokens;
+
+	/**
+	 * コンストラクタ：メトリクスの登録先を注入
+	 *
+	 * @param registry 注入するメトリクスの登録先
+	 */
+	public AnalysisMetrics(MeterRegistry registry) {
+		this.registry = registry;
+		Gauge.builder(ANALYSIS_ACTIVE, active, AtomicInteger::get)
+				.description("実行中のAI分析の件数")
+				.register(registry);
+		this.validationTimer = Timer.builder(VALIDATION)
+				.description("入力値チェックの処理時間")
+				.register(registry);
+		this.parseTimer = Timer.builder(PARSE)
+				.description("Gemini API の応答JSONの解析時間")
+				.publishPercentileHistogram()
+				.register(registry);
+		this.hedgeSavedTimer = Timer.builder(HEDGE_SAVED)
+				.description("ヘッジが先に応答したことで短縮できた応答時間（直近の呼び出し時間からの推定）")
+				.publishPercentileHistogram()
+				.register(registry);
+		this.tokenLatencyTimer = Timer.builder(TOKEN_LATENCY)
+				.description("Gemini API の呼び出し時間を生成トークン数（出力と思考）で割った値")
+				.publishPercentileHistogram()
+				.register(registry);
+		this.promptTokens = tokenSummary(registry, "prompt");
+		this.cachedTokens = tokenSummary(registry, "cached");
+		this.outputTokens = tokenSummary(registry, "output");
+		this.thoughtTokens = tokenSummary(registry, "thoughts");
+	}
+
+	/**
+	 * 分析1件の処理時間と結果を記録する
+	 *
+	 * @param source   分析結果の取得元
+	 * @param analysis 分析処理
+	 * @return 分析結果を受け取るFuture
+	 */
+	public <T> CompletableFuture<T> recordAnalysis(String source, Supplier<CompletableFuture<T>> analysis) {
+		Timer.Sample sample = Timer.start(registry);
+		active.incrementAndGet();
+		CompletableFuture<T> future;
+		try {
+			future = analysis.get();
+		} catch (RuntimeException e) {
+			future = CompletableFuture.failedFuture(e);
+		}
+		return future.whenComplete((result, ex) -> {
+			active.decrementAndGet();
+			sample.stop(Timer.builder(ANALYSIS)
+					.description("AI分析1件の処理時間")
+					.tag("source", source)
+					.tag("outcome", ex == null ? "success" : "error")
+					.publishPercentileHistogram()
+					.register(registry));
+			if (ex != null) {
+				Counter.builder(ANALYSIS_ERRORS)
+						.description("AI分析の失敗件数（原因別）")
+						.tag("cause", causeOf(ex))
+						.register(registry)
+						.increment();
+			}
+		});
+	}
+
+	/**
+	 * 入力値チェックの処理時間を記録する
+	 *
+	 * @param validation 入力値チェック
+	 * @return 入力値チェックの結果
+	 */
+	public <T> T recordValidation(Supplier<T> validation) {
+		return validationTimer.record(validation);
+	}
+
+	/**
+	 * Gemini API 1回分の呼び出し時間をステータスコード別に記録する
+	 *
+	 * @param nanos      呼び出し時間（ナノ秒）
+	 * @param statusCode ステータスコード（応答を受け取れなかった場合は0以下）
+	 */
+	public void recordUpstream(long nanos, int statusCode) {
+		Timer.builder(UPSTREAM)
+				.description("Gemini API 1回分の呼び出し時間")
+				.tag("status", statusCode > 0 ? String.valueOf(statusCode) : "IO_ERROR")
+				.publishPercentileHistogram()
+				.register(registry)
+				.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gemini API の応答JSONの解析時間を記録する
+	 *
+	 * @param nanos 解析時間（ナノ秒）
+	 */
+	public void recordParse(long nanos) {
+		parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * ヘッジが先に応答した場合に、元の試行を待っていれば要したであろう追加時間を記録する
+	 *
+	 * @param nanos 追加時間の推定値（ナノ秒）
+	 */
+	public void recordHedgeSaved(long nanos) {
+		hedgeSavedTimer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gemini API 1回分のトークン数（usageMetadata）と、生成トークンあたりの呼び出し時間を記録する
+	 * 合計値からコストを、呼び出し時間の合計との比からトークンあたりの応答時間を求められる
+	 *
+	 * @param nanos    呼び出し時間（ナノ秒）
+	 * @param prompt   入力トークン数（キャッシュから読み込んだ分を含む）
+	 * @param cached   入力トークン数のうちキャッシュから読み込んだ分
+	 * @param output   出力トークン数（思考を除く）
+	 * @param thoughts 思考に使ったトークン数
+	 */
+	public void recordTokens(long nanos, int prompt, int cached, int output, int thoughts) {
+		promptTokens.record(prompt);
+		cachedTokens.record(cached);
+		outputTokens.record(output);
+		thoughtTokens.record(thoughts);
+		int generated = output + thoughts;
+		if (generated > 0) {
+			tokenLatencyTimer.record(nanos / generated, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * 種類別のトークン数の分布を登録する
+	 *
+	 * @param registry 登録先
+	 * @param type     トークンの種類
+	 * @return 登録した分布
+	 */
+	private static DistributionSummary tokenSummary(MeterRegistry registry, String type) {
+		return DistributionSummary.builder(TOKENS)
+				.description("Gemini API 1回分のトークン数（種類別）")
+				.baseUnit("tokens")
+				.tag("type", type)
+				.register(registry);
+	}
+
+	/**
+	 * 例外の内容から失敗原因のタグ値を求める
+	 *
+	 * @param ex 発生した例外
+	 * @return 失敗原因
+	 */
+	static String causeOf(Throwable ex) {
+		Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+		if (cause instanceof UpstreamApiException upstream) {
+			return "upstream_" + upstream.getStatusCode();
+		}
+		if (cause instanceof AiAppException) {
+			String message = cause.getMessage() == null ? "" : cause.getMessage();
+			if (AdaptiveConcurrencyLimiter.MESSAGE_REJECTED.equals(message)) {
+				return "limiter_rejected";
+			}
+			if (UserQuotaLimiter.MESSAGE_EXCEEDED.equals(message)) {
+				return "quota_exceeded";
+			}
+			if (FairShareScheduler.MESSAGE_REJECTED.equals(message)) {
+				return "fair_share_rejected";
+			}
+			if (Deadline.MESSAGE_EXCEEDED.equals(message)) {
+				return "deadline_exceeded";
+			}
+			if (UpstreamCallGuard.MESSAGE_ATTEMPT_TIMEOUT.equals(message)) {
+				return "attempt_timeout";
+			}
+			if (message.contains("CONNECT_ERROR")) {
+				return "connect_error";
+			}
+			return "app_error";
+		}
+		return cause.getClass().getSimpleName();
+	}
+}
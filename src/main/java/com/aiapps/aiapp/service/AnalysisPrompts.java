@@ -0,0 +1,169 @@
+package com.aiapps.aiapp.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AI分析で使用するプロンプトと分類カテゴリーを管理するクラス
+ * 全リクエストで共通の分類指示（systemInstruction）と、単一入力・複数入力をまとめたバッチの
+ * ユーザー入力部分の組み立て、バッチ応答の解析を行う
+ * 分類指示を入力ごとに連結しないため、入力トークン数が減り、指示をコンテキストキャッシュの対象にできる
+ *
+ * @author AiApp
+ */
+public final class AnalysisPrompts {
+
+	/** 分類カテゴリー一覧 */
+	public static final List<String> LABELS = List.of(
+			"スポーツ", "テクノロジー", "政治", "経済", "エンターテイメント", "医療", "教育", "ビジネス", "ニュース", "その他");
+
+	// 単一入力の接頭辞
+	private static final String SINGLE_PREFIX = "Input: ";
+	// バッチの1行目（入力件数を埋め込む）
+	private static final String BATCH_HEADER = "Inputs (%d):";
+	private static final Pattern BATCH_HEADER_LINE = Pattern.compile("^Inputs \\((\\d+)\\):");
+
+	/** 分類指示（単一入力・バッチの両方の出力形式を含み、全リクエストで同一） */
+	public static final String SYSTEM_INSTRUCTION = "Task: Classify into [" + String.join(", ", LABELS) + "]."
+			+ " Rule: Think in English, output ONLY Japanese category words. NO English."
+			+ " If the message starts with \"Input:\", output ONLY 1 Japanese word."
+			+ " If it starts with \"Inputs (N):\", each numbered line below is a separate input;"
+			+ " output exactly N lines in the form \"<number>. <category>\","
+			+ " one Japanese word per line, in the same order.";
+
+	// 応答行の形式（例: "1. スポーツ"）
+	private static final Pattern NUMBERED_LINE = Pattern.compile("^(\\d+)\\s*[.．:：)）]\\s*(.+)$");
+
+	private AnalysisPrompts() {
+	}
+
+	/**
+	 * 単一入力用のユーザー入力部分を組み立てる（分類指示は含めない）
+	 *
+	 * @param userInput ユーザー入力文字列
+	 * @return 送信するプロンプト
+	 */
+	public static String single(String userInput) {
+		return SINGLE_PREFIX + userInput;
+	}
+
+	/**
+	 * 複数入力をまとめたバッチ用のユーザー入力部分を組み立てる（分類指示は含めない）
+	 * 入力内の改行は番号付き行の区切りと衝突するため空白に置き換える
+	 *
+	 * @param userInputs ユーザー入力文字列の一覧
+	 * @return 送信するプロンプト
+	 */
+	public static String batch(List<String> userInputs) {
+		StringBuilder sb = new StringBuilder(BATCH_HEADER.formatted(userInputs.size()));
+		for (int i = 0; i < userInputs.size(); i++) {
+			sb.append('\n').append(i + 1).append(". ")
+					.append(userInputs.get(i).replace('\r', ' ').replace('\n', ' '));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * プロンプトから入力文字列を取り出す（single / batch の逆変換）
+	 * ローカルのスタブなど、プロンプトを解釈して応答を作る実装で使用
+	 *
+	 * @param prompt single または batch で組み立てたプロンプト
+	 * @return 入力文字列の一覧（単一入力の場合は1件）
+	 */
+	public static List<String> inputsOf(String prompt) {
+		if (prompt.startsWith(SINGLE_PREFIX)) {
+			return List.of(prompt.substring(SINGLE_PREFIX.length()));
+		}
+		// バッチ用は1行目が件数、2行目以降が "<番号>. <入力>"
+		List<String> inputs = new ArrayList<>();
+		prompt.lines().skip(1).forEach(line -> {
+			Matcher m = NUMBERED_LINE.matcher(line);
+			inputs.add(m.matches() ? m.group(2) : line);
+		});
+		return inputs;
+	}
+
+	/**
+	 * プロンプトに含まれる入力件数を求める（出力トークン数の上限の算出に使用）
+	 * 入力文字列は取り出さず、バッチの1行目の件数のみを読み取る
+	 *
+	 * @param prompt single または batch で組み立てたプロンプト
+	 * @return 入力件数（single・形式が不明な場合は1）
+	 */
+	public static int inputCount(String prompt) {
+		if (prompt.startsWith(SINGLE_PREFIX)) {
+			return 1;
+		}
+		Matcher m = BATCH_HEADER_LINE.matcher(prompt);
+		if (m.lookingAt()) {
+			try {
+				return Math.max(1, Integer.parseInt(m.group(1)));
+			} catch (NumberFormatException e) {
+				return 1;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * バッチ応答を入力ごとのカテゴリーに分解する
+	 * 番号付き行を優先し、番号がない場合は行数が一致するときのみ順番どおりに対応付ける
+	 *
+	 * @param reply バッチ応答テキスト
+	 * @param size  入力件数
+	 * @return 入力順のカテゴリー一覧（カテゴリー一覧にない値の要素はnull）。
+	 *         応答の形式が不正な場合はnull
+	 */
+	public static List<String> parseBatchReply(String reply, int size) {
+		if (reply == null) {
+			return null;
+		}
+		List<String> lines = reply.lines().map(String::strip).filter(line -> !line.isEmpty()).toList();
+		String[] labels = new String[size];
+		int numbered = 0;
+
+		for (String line : lines) {
+			Matcher m = NUMBERED_LINE.matcher(line);
+			if (!m.matches()) {
+				continue;
+			}
+			int index;
+			try {
+				index = Integer.parseInt(m.group(1)) - 1;
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			// 範囲外の番号や重複は形式不正とみなす
+			if (index < 0 || index >= size || labels[index] != null) {
+				return null;
+			}
+			labels[index] = m.group(2).strip();
+			numbered++;
+		}
+
+		if (numbered == 0 && lines.size() == size) {
+			// 番号なしで件数が一致する場合は順番どおりに対応付け
+			labels = lines.toArray(new String[0]);
+		} else if (numbered != size) {
+			return null;
+		}
+
+		List<String> result = new ArrayList<>(size);
+		for (String label : labels) {
+			result.add(isLabel(label) ? label : null);
+		}
+		return result;
+	}
+
+	/**
+	 * 分類カテゴリー一覧に含まれる値かどうかを判定する
+	 *
+	 * @param label 判定する値
+	 * @return カテゴリー一覧に含まれる場合true
+	 */
+	public static boolean isLabel(String label) {
+		return label != null && LABELS.contains(label);
+	}
+}
@@ -0,0 +1,40 @@
+package com.aiapps.aiapp.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * AI分析の実行先（生成AIのバックエンド）を表すインターフェース
+ * application.properties の aiapp.provider で実装を切り替える
+ * （gemini: Gemini API、stub: 負荷試験用のローカルスタブ）
+ *
+ * @author AiApp
+ */
+public interface AnalysisProvider {
+
+	/**
+	 * 分析に使用するモデル名を返す（分析結果の永続化時に記録）
+	 *
+	 * @return モデル名
+	 */
+	String model();
+
+	/**
+	 * プロンプトを送信して生成テキストを取得する
+	 *
+	 * @param prompt   送信するプロンプト
+	 * @param deadline 応答期限
+	 * @return 生成テキストを受け取るFuture
+	 */
+	CompletableFuture<String> generateContentAsync(String prompt, Deadline deadline);
+
+	/**
+	 * プロンプトを送信し、生成テキストを届いた順に通知する
+	 *
+	 * @param prompt   送信するプロンプト
+	 * @param deadline 応答期限
+	 * @param onChunk  生成テキストの断片の通知先
+	 * @return 生成テキスト全体を受け取るFuture
+	 */
+	CompletableFuture<String> streamGenerateContentAsync(String prompt, Deadline deadline, Consumer<String> onChunk);
+}
@@ -0,0 +1,177 @@
+package com.aiapps.aiapp.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * AI分析結果のインメモリキャッシュ
+ * 正規化済みの入力文字列をキーに、件数上限（LRU）と有効期限（TTL）で追い出しを行う
+ * ヒット数・ミス数・追い出し数のカウンタを保持
+ *
+ * @author AiApp
+ */
+@Component
+public class AnalysisResultCache {
+
+	// キャッシュ有効フラグ
+	private final boolean enabled;
+	// 最大保持件数
+	private final int maxSize;
+	// エントリの有効期限（ナノ秒）
+	private final long ttlNanos;
+
+	// 仮想スレッドのピン留めを避けるため synchronized ではなく ReentrantLock を使用
+	private final ReentrantLock lock = new ReentrantLock();
+	// アクセス順のLinkedHashMap（最も古く参照されたエントリから追い出す）
+	private final LinkedHashMap<String, Entry> entries;
+
+	// 統計用カウンタ
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param enabled キャッシュを有効にするかどうか
+	 * @param maxSize 最大保持件数
+	 * @param ttl     エントリの有効期限
+	 */
+	public AnalysisResultCache(
+			@Value("${aiapp.cache.enabled:true}") boolean enabled,
+			@Value("${aiapp.cache.max-size:10000}") int maxSize,
+			@Value("${aiapp.cache.ttl:24h}") Duration ttl) {
+		this.enabled = enabled;
+		this.maxSize = maxSize;
+		this.ttlNanos = ttl.toNanos();
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > AnalysisResultCache.this.maxSize) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * キャッシュから分析結果を取得する
+	 *
+	 * @param key 正規化済みの入力文字列
+	 * @return キャッシュされた分析結果（存在しない・期限切れの場合はnull）
+	 */
+	public String get(String key) {
+		if (!enabled) {
+			return null;
+		}
+		lock.lock();
+		try {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				misses.increment();
+				return null;
+			}
+			// 期限切れの場合は削除してミス扱い
+			if (System.nanoTime() - entry.expiresAt() >= 0) {
+				entries.remove(key);
+				evictions.increment();
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			return entry.value();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 分析結果をキャッシュに登録する
+	 *
+	 * @param key   正規化済みの入力文字列
+	 * @param value 分析結果（空の場合は登録しない）
+	 */
+	public void put(String key, String value) {
+		if (!enabled || value == null || value.isBlank()) {
+			return;
+		}
+		lock.lock();
+		try {
+			entries.put(key, new Entry(value, System.nanoTime() + ttlNanos));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 過去に得た分析結果を、経過時間を差し引いた残りの有効期限でキャッシュに登録する
+	 * 既に登録済みのキーは上書きしない（起動時のウォームアップで使用）
+	 *
+	 * @param key   正規化済みの入力文字列
+	 * @param value 分析結果
+	 * @param age   分析結果を得てからの経過時間
+	 */
+	public void putIfAbsent(String key, String value, Duration age) {
+		long remaining = ttlNanos - age.toNanos();
+		if (!enabled || value == null || value.isBlank() || remaining <= 0) {
+			return;
+		}
+		lock.lock();
+		try {
+			entries.putIfAbsent(key, new Entry(value, System.nanoTime() + remaining));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * キャッシュが有効かどうかを返す
+	 *
+	 * @return 有効な場合true
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * キャッシュの統計情報を取得する
+	 *
+	 * @return ヒット数・ミス数・追い出し数・現在の件数
+	 */
+	public Stats stats() {
+		lock.lock();
+		try {
+			return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * キャッシュエントリ
+	 *
+	 * @param value     分析結果
+	 * @param expiresAt 有効期限（System.nanoTime基準）
+	 */
+	private record Entry(String value, long expiresAt) {
+	}
+
+	/**
+	 * キャッシュの統計情報
+	 *
+	 * @param hits      ヒット数
+	 * @param misses    ミス数
+	 * @param evictions 追い出し数（件数超過・期限切れ）
+	 * @param size      現在の件数
+	 */
+	public record Stats(long hits, long misses, long evictions, int size) {
+	}
+}
@@ -0,0 +1,152 @@
+package com.aiapps.aiapp.service;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.aiapps.aiapp.dto.BulkAnalyzeResult;
+import com.aiapps.aiapp.exception.AiAppApiExceptionHandler;
+
+/**
+ * 大量の文章を一括でAI分析するサービスクラス
+ * 入力を1件ずつ読み込みながら同時実行数を制限して AiService に渡し、
+ * 完了した順に結果を通知する。入力・結果とも全件をメモリに保持しない
+ *
+ * @author AiApp
+ */
+@Service
+public class BulkAnalysisService {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(BulkAnalysisService.class);
+
+	// AIサービス
+	private final AiService aiService;
+	// 1回の一括分析での同時実行数
+	private final int concurrency;
+
+	/**
+	 * コンストラクタ：AIサービスと application.properties の設定値を注入
+	 *
+	 * @param aiService   注入するAIサービス
+	 * @param concurrency 1回の一括分析での同時実行数
+	 */
+	public BulkAnalysisService(AiService aiService,
+			@Value("${aiapp.bulk.concurrency:8}") int concurrency) {
+		this.aiService = aiService;
+		this.concurrency = Math.max(1, concurrency);
+	}
+
+	/**
+	 * 入力をすべて分析し、完了した順に結果を通知する
+	 * 通知先で例外が発生した場合（クライアントの切断など）は、実行時例外を含めて残りの入力の読み込みを中止する
+	 *
+	 * @param reader   入力の読み込み元
+	 * @param user     利用者ID（1件ごとに利用回数を消費する）
+	 * @param listener 結果の通知先（複数スレッドから呼ばれるため、呼び出しは直列化して行う）
+	 * @throws IOException 入力の読み込み、または結果の通知に失敗した場合
+	 */
+	public void analyzeAll(BulkInputReader reader, String user, ResultListener listener) throws IOException {
+		Semaphore permits = new Semaphore(concurrency);
+		AtomicReference<IOException> failure = new AtomicReference<>();
+		SerializedListener sink = new SerializedListener(listener, failure);
+
+		try {
+			BulkInputReader.Item item;
+			while (failure.get() == null && (item = reader.next()) != null) {
+				String errorMessage = item.error() != null ? item.error() : aiService.getInputErrorMessage(item.input());
+				if (!errorMessage.isEmpty()) {
+					sink.accept(new BulkAnalyzeResult(item.line(), item.input(), null, errorMessage));
+					continue;
+				}
+
+				// 同時実行数の上限に達している場合は空きが出るまで次の行を読まない
+				permits.acquire();
+				long line = item.line();
+				String input = item.input();
+				CompletableFuture<String> future;
+				try {
+					future = aiService.callGeminiApiAsync(input, user);
+				} catch (RuntimeException e) {
+					future = CompletableFuture.failedFuture(e);
+				}
+				future.whenComplete((result, ex) -> {
+					try {
+						sink.accept(ex == null
+								? new BulkAnalyzeResult(line, input, result, null)
+								: new BulkAnalyzeResult(line, input, null, AiAppApiExceptionHandler.userMessageOf(ex)));
+					} finally {
+						permits.release();
+					}
+				});
+			}
+
+			// 実行中の分析がすべて完了するまで待つ
+			permits.acquire(concurrency);
+		} catch (InterruptedException e) {
+			// ログを出す
+			logger.warn("一括分析が中断されました");
+
+			// 中断フラグを再設定する (SonarLint対策)
+			Thread.currentThread().interrupt();
+			throw new IOException("一括分析が中断されました", e);
+		}
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	/**
+	 * 一括分析の結果の通知先
+	 */
+	@FunctionalInterface
+	public interface ResultListener {
+
+		/**
+		 * 1件の結果を受け取る
+		 *
+		 * @param result 分析結果
+		 * @throws IOException 結果の書き出しに失敗した場合
+		 */
+		void onResult(BulkAnalyzeResult result) throws IOException;
+	}
+
+	/**
+	 * 通知を直列化し、最初に発生した例外を記録する通知先（実行時例外は IOException に包んで記録する）
+	 */
+	private static final class SerializedListener {
+
+		private final ResultListener delegate;
+		private final AtomicReference<IOException> failure;
+		private final ReentrantLock lock = new ReentrantLock();
+
+		SerializedListener(ResultListener delegate, AtomicReference<IOException> failure) {
+			this.delegate = delegate;
+			this.failure = failure;
+		}
+
+		void accept(BulkAnalyzeResult result) {
+			lock.lock();
+			try {
+				if (failure.get() == null) {
+					delegate.onResult(result);
+				}
+			} catch (IOException e) {
+				failure.compareAndSet(null, e);
+			} catch (RuntimeException e) {
+				// 通知先の状態の異常（完了済みの SseEmitter への送信など）も、読み込みを中止する失敗として扱う
+				failure.compareAndSet(null, new IOException("結果の通知に失敗しました: " + e.getMessage(), e));
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.aiapps.aiapp.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 一括分析の入力（NDJSON または CSV）を1件ずつ読み込むクラス
+ * 全件をメモリに展開せず、呼び出しのたびに次の1行だけを読み込む
+ *
+ * NDJSON: 1行に {"input": "..."} 形式のオブジェクト、またはJSON文字列を1つ記述
+ * CSV: 1列目を入力として扱い、先頭行が "input" の場合はヘッダーとして読み飛ばす
+ * 1行の文字数には上限を設け、超えた行は残りを読み捨ててエラーとして返す（改行のない巨大な入力でメモリを使い切らないため）
+ *
+ * @author AiApp
+ */
+public class BulkInputReader {
+
+	// 入力の形式
+	public enum Format {
+		NDJSON, CSV
+	}
+
+	private final BufferedReader reader;
+	private final Format format;
+	private final ObjectMapper mapper;
+	// 1行の最大文字数
+	private final int maxLineLength;
+
+	// 読み込んだ行番号（1始まり）
+	private long lineNumber;
+	// 読み込み中の行
+	private final StringBuilder buffer = new StringBuilder();
+	// 直前に読み込んだ行が最大文字数を超えたかどうか
+	private boolean tooLong;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param reader        入力の読み込み元
+	 * @param format        入力の形式
+	 * @param mapper        NDJSONの解析に使用するObjectMapper
+	 * @param maxLineLength 1行の最大文字数
+	 */
+	public BulkInputReader(BufferedReader reader, Format format, ObjectMapper mapper, int maxLineLength) {
+		this.reader = reader;
+		this.format = format;
+		this.mapper = mapper;
+		this.maxLineLength = Math.max(1, maxLineLength);
+	}
+
+	/**
+	 * 次の入力を読み込む（空行は読み飛ばす）
+	 *
+	 * @return 読み込んだ入力（入力の終端に達した場合はnull）
+	 * @throws IOException 読み込みに失敗した場合
+	 */
+	public Item next() throws IOException {
+		String line;
+		while ((line = readLine()) != null) {
+			lineNumber++;
+			if (tooLong) {
+				return new Item(lineNumber, null, "エラー：1行は" + maxLineLength + "文字以内にしてください。");
+			}
+			if (line.isBlank()) {
+				continue;
+			}
+			if (format == Format.CSV) {
+				String value = firstCsvColumn(line);
+				if (lineNumber == 1 && "input".equalsIgnoreCase(value.strip())) {
+					continue;
+				}
+				return new Item(lineNumber, value, null);
+			}
+			return parseJsonLine(line);
+		}
+		return null;
+	}
+
+	/**
+	 * 1行を読み込む（改行は LF・CRLF・CR のいずれも受け付ける）
+	 * 最大文字数を超えた場合は行末まで読み捨て、tooLong を true にする
+	 *
+	 * @return 読み込んだ行（入力の終端に達した場合はnull）
+	 * @throws IOException 読み込みに失敗した場合
+	 */
+	private String readLine() throws IOException {
+		buffer.setLength(0);
+		tooLong = false;
+		int c;
+		while ((c = reader.read()) >= 0) {
+			if (c == '\n') {
+				break;
+			}
+			if (c == '\r') {
+				// CRLF の LF を読み飛ばす
+				reader.mark(1);
+				if (reader.read() != '\n') {
+					reader.reset();
+				}
+				break;
+			}
+			if (buffer.length() < maxLineLength) {
+				buffer.append((char) c);
+			} else {
+				tooLong = true;
+			}
+		}
+		if (c < 0 && buffer.isEmpty() && !tooLong) {
+			return null;
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * NDJSONの1行を解析する
+	 *
+	 * @param line 読み込んだ行
+	 * @return 解析した入力（形式が不正な場合はエラーメッセージ付き）
+	 */
+	private Item parseJsonLine(String line) {
+		try {
+			JsonNode node = mapper.readTree(line);
+			if (node.isTextual()) {
+				return new Item(lineNumber, node.asText(), null);
+			}
+			if (node.path("input").isTextual()) {
+				return new Item(lineNumber, node.path("input").asText(), null);
+			}
+		} catch (JsonProcessingException e) {
+			// 下で形式エラーとして返す
+		}
+		return new Item(lineNumber, null, "エラー：行の形式が正しくありません。");
+	}
+
+	/**
+	 * CSVの1行から1列目の値を取り出す（ダブルクォートで囲まれた値に対応）
+	 *
+	 * @param line 読み込んだ行
+	 * @return 1列目の値
+	 */
+	static String firstCsvColumn(String line) {
+		if (!line.startsWith("\"")) {
+			int comma = line.indexOf(',');
+			return comma < 0 ? line : line.substring(0, comma);
+		}
+		StringBuilder sb = new StringBuilder(line.length());
+		for (int i = 1; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				// "" はエスケープされたダブルクォート
+				if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					sb.append('"');
+					i++;
+				} else {
+					break;
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 読み込んだ1件の入力
+	 *
+	 * @param line  行番号
+	 * @param input 入力文字列（形式エラーの場合はnull）
+	 * @param error 形式エラーのメッセージ（正常な場合はnull）
+	 */
+	public record Item(long line, String input, String error) {
+	}
+}
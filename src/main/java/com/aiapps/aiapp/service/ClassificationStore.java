@@ -0,0 +1,713 @@
+package com.aiapps.aiapp.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * AI分析結果をディスクに永続化する追記型のストア
+ * 再起動後も過去の分析結果を利用できるよう、起動完了後にバックグラウンドでファイルを読み込み、
+ * 分析結果キャッシュと前段分類器をウォームアップする
+ *
+ * ファイル形式（ビッグエンディアン）:
+ * <pre>
+ * ヘッダー : int マジックナンバー, short バージョン
+ * レコード : int ペイロード長, ペイロード, int CRC32(ペイロード)
+ * ペイロード: long 入力のハッシュ, long 記録日時(エポックミリ秒),
+ *             byte モデル名長, モデル名, byte カテゴリー長, カテゴリー, short 入力長, 入力（いずれもUTF-8）
+ * </pre>
+ * 書き込み途中で停止した末尾の不完全なレコードは、読み込み時に切り詰める
+ * メモリには入力のハッシュとレコードの位置だけを件数上限付きで保持し、分析結果はファイルから読み込む
+ *
+ * 検索はロックを取得せず、読み取り専用のチャネルへの位置指定の読み込みで行う（追記・圧縮の待ち時間を受けない）
+ * ファイルの読み込み（索引の再構築）はウォームアップで行い、完了前の検索は見つからないものとして扱う
+ * 圧縮は新しいファイルの作成をロックの外で行い、作成中に追記されたレコードの複写とファイルの置き換えのみロック内で行う
+ *
+ * @author AiApp
+ */
+@Component
+public class ClassificationStore {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(ClassificationStore.class);
+
+	// ファイル形式の定数
+	private static final int MAGIC = 0x41494353; // "AICS"
+	private static final short VERSION = 1;
+	private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+	private static final int MAX_PAYLOAD = 1 + 255 + 1 + 255 + 2 + 65535 + Long.BYTES * 2;
+	// 圧縮（コンパクション）を行う最小レコード数
+	private static final long MIN_RECORDS_TO_COMPACT = 1000;
+
+	// 永続化有効フラグ
+	private final boolean enabled;
+	// ファイルの保存先
+	private final Path path;
+	// 分析結果の保持期間
+	private final Duration retention;
+	// 圧縮の実行間隔
+	private final Duration compactionInterval;
+	// 保持する分析結果の最大件数
+	private final int maxEntries;
+
+	// ウォームアップ対象
+	private final AnalysisResultCache resultCache;
+	private final NearDuplicateIndex nearDuplicates;
+	private final LocalPreClassifier preClassifier;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// 入力のハッシュをキーにした最新のレコードの位置（起動時にファイルから再構築、書き込み順）
+	// 件数上限を超えた場合は最も古く書き込まれたものから外し、次回の圧縮でファイルからも削除する
+	private final LinkedHashMap<Long, Long> index;
+	// 追記用のチャネル（ファイルを読み込むまではnull）
+	private FileChannel channel;
+	// ファイル内のレコード数（圧縮の判定に使用）
+	private long recordCount;
+	// 検索用の読み取り専用チャネルと索引の写し（ロックを取得せずに参照する。ファイルを読み込むまではnull）
+	private volatile Reader reader;
+
+	// 圧縮を定期実行するスレッド
+	private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "classification-store-compactor");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * コンストラクタ：ウォームアップ対象と application.properties の設定値を注入
+	 *
+	 * @param resultCache        注入する分析結果キャッシュ
+	 * @param nearDuplicates     注入する類似入力の索引
+	 * @param preClassifier      注入する前段分類器
+	 * @param enabled            永続化を有効にするかどうか
+	 * @param path               ファイルの保存先
+	 * @param retention          分析結果の保持期間
+	 * @param compactionInterval 圧縮の実行間隔
+	 * @param maxEntries         保持する分析結果の最大件数
+	 */
+	public ClassificationStore(AnalysisResultCache resultCache, NearDuplicateIndex nearDuplicates,
+			LocalPreClassifier preClassifier,
+			@Value("${aiapp.store.enabled:true}") boolean enabled,
+			@Value("${aiapp.store.path:data/classifications.db}") Path path,
+			@Value("${aiapp.store.retention:30d}") Duration retention,
+			@Value("${aiapp.store.compaction-interval:1h}") Duration compactionInterval,
+			@Value("${aiapp.store.max-entries:100000}") int maxEntries) {
+		this.resultCache = resultCache;
+		this.nearDuplicates = nearDuplicates;
+		this.preClassifier = preClassifier;
+		this.enabled = enabled;
+		this.path = path;
+		this.retention = retention;
+		this.compactionInterval = compactionInterval;
+		this.maxEntries = maxEntries;
+		this.index = new LinkedHashMap<>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+				if (size() <= ClassificationStore.this.maxEntries) {
+					return false;
+				}
+				Reader current = reader;
+				if (current != null) {
+					current.offsets().remove(eldest.getKey());
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * 起動完了後、起動処理を妨げないよう仮想スレッドでファイルを読み込みウォームアップする
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		if (!enabled) {
+			return;
+		}
+		Thread.ofVirtual().name("classification-store-warmup").start(() -> {
+			long start = System.nanoTime();
+			List<Long> offsets;
+			Reader current;
+			lock.lock();
+			try {
+				load();
+				offsets = new ArrayList<>(index.values());
+				current = reader;
+			} catch (IOException e) {
+				logger.warn("分析結果ファイルの読み込みに失敗しました: {}", e.getMessage());
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			// 書き込み順（古い順）に登録し、キャッシュの件数上限を超えた場合は新しいものが残るようにする
+			// 圧縮はウォームアップ後に開始するため位置は変わらない
+			long now = System.currentTimeMillis();
+			int count = 0;
+			for (long offset : offsets) {
+				Entry entry;
+				try {
+					entry = read(current.channel(), offset);
+				} catch (ClosedChannelException e) {
+					// 終了処理でファイルが閉じられた場合
+					return;
+				} catch (IOException e) {
+					logger.warn("分析結果ファイルの読み込みに失敗しました: {}", e.getMessage());
+					return;
+				}
+				resultCache.putIfAbsent(entry.input(), entry.label(), Duration.ofMillis(now - entry.timestamp()));
+				nearDuplicates.observe(entry.input(), entry.label());
+				preClassifier.learn(entry.input(), entry.label());
+				count++;
+			}
+			logger.info("分析結果ファイルからウォームアップしました。件数: {}, 所要時間: {}ms", count,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+			long intervalMillis = compactionInterval.toMillis();
+			compactor.scheduleWithFixedDelay(this::compactIfNeeded, intervalMillis, intervalMillis,
+					TimeUnit.MILLISECONDS);
+		});
+	}
+
+	/**
+	 * 分析結果を追記する
+	 * 書き込みに失敗しても分析処理には影響させず、ログ出力のみ行う
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @param label           分析結果
+	 * @param model           分析に使用したモデル名
+	 */
+	public void append(String normalizedInput, String label, String model) {
+		if (!enabled || label == null || label.isBlank()) {
+			return;
+		}
+		Entry entry = new Entry(hash(normalizedInput), System.currentTimeMillis(), model, label, normalizedInput);
+		ByteBuffer record = encode(entry);
+		if (record == null) {
+			return;
+		}
+
+		lock.lock();
+		try {
+			openLocked();
+			long offset = channel.position();
+			while (record.hasRemaining()) {
+				channel.write(record);
+			}
+			recordCount++;
+			putLocked(entry.hash(), offset);
+		} catch (IOException e) {
+			logger.warn("分析結果の書き込みに失敗しました: {}", e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 永続化された分析結果を検索する
+	 * インメモリのキャッシュで見つからない場合に、索引からレコードの位置を求めてファイルから読み込む
+	 * ロックは取得せず、ファイルの読み込みが完了していない場合は見つからないものとして扱う
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @return 分析結果（存在しない・保持期間を過ぎた・ファイルの読み込みが完了していない場合はnull）
+	 */
+	public String find(String normalizedInput) {
+		if (!enabled) {
+			return null;
+		}
+		long hash = hash(normalizedInput);
+		Reader current = reader;
+		Entry entry = null;
+		while (entry == null) {
+			if (current == null) {
+				return null;
+			}
+			Long offset = current.offsets().get(hash);
+			if (offset == null) {
+				return null;
+			}
+			try {
+				entry = read(current.channel(), offset);
+			} catch (ClosedByInterruptException e) {
+				// 割り込みで閉じられたチャネルは他の検索でも使えないため開き直す
+				reopenReader(current);
+				return null;
+			} catch (ClosedChannelException e) {
+				// 圧縮で切り替わった場合は新しいファイルから読み直す（終了処理で閉じられた場合は見つからないものとして扱う）
+				Reader next = reader;
+				if (next == current) {
+					return null;
+				}
+				current = next;
+			} catch (IOException e) {
+				logger.warn("分析結果の読み込みに失敗しました: {}", e.getMessage());
+				return null;
+			}
+		}
+		// ハッシュの衝突と保持期間を確認
+		if (!entry.input().equals(normalizedInput)
+				|| entry.timestamp() < System.currentTimeMillis() - retention.toMillis()) {
+			return null;
+		}
+		return entry.label();
+	}
+
+	/**
+	 * ファイルを開き、レコードを読み込んで索引を再構築する（ウォームアップから呼び出す）
+	 * 既に開いている場合は何もしない
+	 *
+	 * @throws IOException ファイルの読み書きに失敗した場合
+	 */
+	void load() throws IOException {
+		lock.lock();
+		try {
+			openLocked();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ファイルを開き、レコードを読み込んで索引を再構築する（ロック取得中に呼び出すこと）
+	 * 既に開いている場合は何もしない
+	 *
+	 * @throws IOException ファイルの読み書きに失敗した場合
+	 */
+	private void openLocked() throws IOException {
+		if (channel != null) {
+			return;
+		}
+		// 圧縮の失敗などで追記用のチャネルだけが閉じられている場合は、検索用のチャネルも開き直す
+		Reader stale = reader;
+		if (stale != null) {
+			reader = null;
+			stale.channel().close();
+		}
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long size = ch.size();
+		long validEnd = size == 0 ? writeHeader(ch) : scan(ch, size);
+		if (validEnd < 0) {
+			// 形式の異なるファイルは退避して新規作成
+			ch.close();
+			Path backup = path.resolveSibling(path.getFileName() + ".corrupt-" + System.currentTimeMillis());
+			Files.move(path, backup);
+			logger.warn("分析結果ファイルの形式が不正なため退避しました: {}", backup);
+			ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			validEnd = writeHeader(ch);
+		} else if (validEnd < size) {
+			logger.warn("分析結果ファイル末尾の不完全なレコードを切り詰めます。{} -> {} bytes", size, validEnd);
+			ch.truncate(validEnd);
+		}
+		ch.position(validEnd);
+		channel = ch;
+		reader = new Reader(FileChannel.open(path, StandardOpenOption.READ), new ConcurrentHashMap<>(index));
+	}
+
+	/**
+	 * 割り込みで閉じられた検索用のチャネルを開き直す
+	 *
+	 * @param closed 閉じられたチャネルを持つ検索用の参照先
+	 */
+	private void reopenReader(Reader closed) {
+		lock.lock();
+		try {
+			if (reader == closed && channel != null) {
+				reader = new Reader(FileChannel.open(path, StandardOpenOption.READ), closed.offsets());
+			}
+		} catch (IOException e) {
+			logger.warn("分析結果ファイルを開き直せませんでした: {}", e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * メモリマップしたファイルからレコードを読み込み、索引を再構築する
+	 *
+	 * @param ch   読み込むファイルのチャネル
+	 * @param size ファイルサイズ
+	 * @return 正常に読み込めた末尾の位置（ヘッダーが不正な場合は-1）
+	 * @throws IOException ファイルの読み込みに失敗した場合
+	 */
+	private long scan(FileChannel ch, long size) throws IOException {
+		MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		if (size < HEADER_SIZE || buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+			return -1;
+		}
+		long expireBefore = System.currentTimeMillis() - retention.toMillis();
+		CRC32 crc = new CRC32();
+		long records = 0;
+		index.clear();
+
+		while (buf.remaining() >= Integer.BYTES) {
+			int start = buf.position();
+			int length = buf.getInt();
+			if (length <= 0 || length > MAX_PAYLOAD || buf.remaining() < length + Integer.BYTES) {
+				buf.position(start);
+				break;
+			}
+			ByteBuffer payload = buf.slice(buf.position(), length);
+			buf.position(buf.position() + length);
+			crc.reset();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != buf.getInt()) {
+				buf.position(start);
+				break;
+			}
+			records++;
+			// ハッシュと記録日時だけを読み、保持期間内のものを索引に登録（同じ入力は後のレコードを優先）
+			long hash = payload.getLong(0);
+			if (payload.getLong(Long.BYTES) >= expireBefore) {
+				putLocked(hash, start);
+			}
+		}
+		recordCount = records;
+		return buf.position();
+	}
+
+	/**
+	 * 索引にレコードの位置を登録する（ロック取得中に呼び出すこと）
+	 * 同じ入力を上書きした場合も書き込み順の末尾に移し、件数上限で外れにくくする
+	 *
+	 * @param hash   入力のハッシュ値
+	 * @param offset レコードの位置
+	 */
+	private void putLocked(long hash, long offset) {
+		index.remove(hash);
+		index.put(hash, offset);
+		Reader current = reader;
+		if (current != null) {
+			current.offsets().put(hash, offset);
+		}
+	}
+
+	/**
+	 * 指定した位置のレコードを読み込む（位置指定の読み込みのため、ロックを取得せずに呼び出せる）
+	 * CRCは書き込み時と起動時の読み込みで確認済みのため、ここでは確認しない
+	 *
+	 * @param ch     読み込むファイルのチャネル
+	 * @param offset レコードの位置
+	 * @return 分析結果
+	 * @throws IOException ファイルの読み込みに失敗した場合
+	 */
+	private static Entry read(FileChannel ch, long offset) throws IOException {
+		ByteBuffer length = readFully(ch, offset, Integer.BYTES);
+		return decode(readFully(ch, offset + Integer.BYTES, length.getInt()));
+	}
+
+	/**
+	 * 指定した位置から指定したバイト数を読み込む
+	 *
+	 * @param ch       読み込むファイルのチャネル
+	 * @param position 読み込む位置
+	 * @param size     バイト数
+	 * @return 読み込んだバッファ
+	 * @throws IOException ファイルの読み込みに失敗した場合
+	 */
+	private static ByteBuffer readFully(FileChannel ch, long position, int size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		while (buf.hasRemaining()) {
+			if (ch.read(buf, position + buf.position()) < 0) {
+				throw new EOFException("レコードの途中でファイルが終了しました。位置: " + position);
+			}
+		}
+		return buf.flip();
+	}
+
+	/**
+	 * ファイルにヘッダーを書き込む
+	 *
+	 * @param ch 書き込むファイルのチャネル
+	 * @return ヘッダーの末尾の位置
+	 * @throws IOException ファイルの書き込みに失敗した場合
+	 */
+	private static long writeHeader(FileChannel ch) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).flip();
+		ch.position(0);
+		while (header.hasRemaining()) {
+			ch.write(header);
+		}
+		return HEADER_SIZE;
+	}
+
+	/**
+	 * 古いレコードや上書きされたレコードが多い場合、最新の分析結果だけでファイルを作り直す
+	 * 保持期間を過ぎたものと、件数上限で索引から外れたものはここで削除する
+	 * 新しいファイルはロックの外で作成し、作成中に追記されたレコードの複写とファイルの置き換えのみロック内で行う
+	 */
+	void compactIfNeeded() {
+		long expireBefore = System.currentTimeMillis() - retention.toMillis();
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		// 圧縮の対象（索引の写しと、その時点のファイルの末尾）を決める
+		List<long[]> snapshot;
+		long snapshotEnd;
+		long snapshotRecords;
+		FileChannel in;
+		lock.lock();
+		try {
+			if (channel == null || recordCount < MIN_RECORDS_TO_COMPACT || recordCount < index.size() * 2L) {
+				return;
+			}
+			snapshot = new ArrayList<>(index.size());
+			for (Map.Entry<Long, Long> indexed : index.entrySet()) {
+				snapshot.add(new long[] { indexed.getKey(), indexed.getValue() });
+			}
+			snapshotEnd = channel.position();
+			snapshotRecords = recordCount;
+			in = FileChannel.open(path, StandardOpenOption.READ);
+		} catch (IOException e) {
+			logger.warn("分析結果ファイルの圧縮に失敗しました: {}", e.getMessage());
+			return;
+		} finally {
+			lock.unlock();
+		}
+
+		// 書き込み順を保ったまま新しいファイルに書き込み、元の位置と新しい位置の対応を記録する
+		Map<Long, Long> moved = new HashMap<>();
+		try (in; FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			writeHeader(out);
+			for (long[] indexed : snapshot) {
+				Entry entry = read(in, indexed[1]);
+				if (entry.timestamp() < expireBefore) {
+					continue;
+				}
+				long offset = out.position();
+				ByteBuffer record = encode(entry);
+				while (record != null && record.hasRemaining()) {
+					out.write(record);
+				}
+				moved.put(indexed[1], offset);
+			}
+			out.force(true);
+		} catch (IOException e) {
+			logger.warn("分析結果ファイルの圧縮に失敗しました: {}", e.getMessage());
+			deleteQuietly(tmp);
+			return;
+		}
+
+		lock.lock();
+		try {
+			if (channel == null) {
+				// 終了処理でファイルが閉じられた場合
+				deleteQuietly(tmp);
+				return;
+			}
+			// 新しいファイルの作成中に追記されたレコードは、そのまま末尾に複写する
+			long base;
+			long tail = channel.position() - snapshotEnd;
+			try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				base = out.size();
+				long copied = 0;
+				while (copied < tail) {
+					copied += channel.transferTo(snapshotEnd + copied, tail - copied, out.position(base + copied));
+				}
+				out.force(true);
+			}
+			LinkedHashMap<Long, Long> offsets = new LinkedHashMap<>();
+			for (Map.Entry<Long, Long> indexed : index.entrySet()) {
+				long old = indexed.getValue();
+				Long offset = old >= snapshotEnd ? Long.valueOf(base + old - snapshotEnd) : moved.get(old);
+				if (offset != null) {
+					offsets.put(indexed.getKey(), offset);
+				}
+			}
+
+			long before = recordCount;
+			Reader previous = reader;
+			channel.close();
+			channel = null;
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+			index.clear();
+			index.putAll(offsets);
+			recordCount = moved.size() + (before - snapshotRecords);
+			reader = new Reader(FileChannel.open(path, StandardOpenOption.READ), new ConcurrentHashMap<>(offsets));
+			// 読み込み中の検索は、閉じられたことを検知して新しいファイルから読み直す
+			previous.channel().close();
+			logger.info("分析結果ファイルを圧縮しました。レコード数: {} -> {}", before, recordCount);
+		} catch (IOException e) {
+			logger.warn("分析結果ファイルの圧縮に失敗しました: {}", e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * ファイルを削除する（失敗した場合はログ出力のみ行う）
+	 *
+	 * @param file 削除するファイル
+	 */
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			logger.warn("一時ファイルの削除に失敗しました: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * 分析結果をレコードに変換する
+	 *
+	 * @param entry 分析結果
+	 * @return 書き込むレコード（長さの上限を超える場合はnull）
+	 */
+	private static ByteBuffer encode(Entry entry) {
+		byte[] model = entry.model().getBytes(StandardCharsets.UTF_8);
+		byte[] label = entry.label().getBytes(StandardCharsets.UTF_8);
+		byte[] input = entry.input().getBytes(StandardCharsets.UTF_8);
+		if (model.length > 255 || label.length > 255 || input.length > 65535) {
+			return null;
+		}
+		int length = Long.BYTES * 2 + 1 + model.length + 1 + label.length + 2 + input.length;
+		ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+		buf.putInt(length)
+				.putLong(entry.hash())
+				.putLong(entry.timestamp())
+				.put((byte) model.length).put(model)
+				.put((byte) label.length).put(label)
+				.putShort((short) input.length).put(input);
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), Integer.BYTES, length);
+		return buf.putInt((int) crc.getValue()).flip();
+	}
+
+	/**
+	 * レコードのペイロードを分析結果に変換する
+	 *
+	 * @param payload レコードのペイロード
+	 * @return 分析結果
+	 */
+	private static Entry decode(ByteBuffer payload) {
+		long hash = payload.getLong();
+		long timestamp = payload.getLong();
+		String model = readString(payload, Byte.toUnsignedInt(payload.get()));
+		String label = readString(payload, Byte.toUnsignedInt(payload.get()));
+		String input = readString(payload, Short.toUnsignedInt(payload.getShort()));
+		return new Entry(hash, timestamp, model, label, input);
+	}
+
+	/**
+	 * バッファからUTF-8の文字列を読み込む
+	 *
+	 * @param buf    読み込むバッファ
+	 * @param length バイト数
+	 * @return 読み込んだ文字列
+	 */
+	private static String readString(ByteBuffer buf, int length) {
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 正規化済みの入力文字列の64bitハッシュ値（FNV-1a）を求める
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @return ハッシュ値
+	 */
+	static long hash(String normalizedInput) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : normalizedInput.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * 保持している分析結果の件数を返す
+	 *
+	 * @return 索引の件数
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return index.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * アプリケーション終了時に圧縮処理を停止し、ファイルを閉じる
+	 */
+	@PreDestroy
+	public void shutdown() {
+		compactor.shutdownNow();
+		lock.lock();
+		try {
+			Reader current = reader;
+			reader = null;
+			if (current != null) {
+				current.channel().close();
+			}
+			if (channel != null) {
+				channel.force(false);
+				channel.close();
+				channel = null;
+			}
+		} catch (IOException e) {
+			logger.warn("分析結果ファイルのクローズに失敗しました: {}", e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 永続化された分析結果
+	 *
+	 * @param hash      入力のハッシュ値
+	 * @param timestamp 記録日時（エポックミリ秒）
+	 * @param model     分析に使用したモデル名
+	 * @param label     分析結果
+	 * @param input     正規化済みの入力文字列
+	 */
+	private record Entry(long hash, long timestamp, String model, String label, String input) {
+	}
+
+	/**
+	 * 検索用の読み取り専用チャネルと索引の写し
+	 * 索引の写しは追記時にロック取得中に更新し、ファイルを置き換えた場合は新しいものに差し替える
+	 *
+	 * @param channel 読み取り専用のチャネル
+	 * @param offsets 入力のハッシュをキーにした最新のレコードの位置
+	 */
+	private record Reader(FileChannel channel, ConcurrentHashMap<Long, Long> offsets) {
+	}
+}
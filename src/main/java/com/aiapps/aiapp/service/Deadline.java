@@ -0,0 +1,111 @@
+package com.aiapps.aiapp.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.aiapps.aiapp.exception.AiAppException;
+
+/**
+ * 1件の分析リクエストの応答期限
+ * HTTPリクエストの受付時に作成し、Gemini API の各試行・再試行・ヘッジまで引き継ぐ
+ * 期限を過ぎた後は新たな試行を開始せず、呼び出し元には期限切れとして返す
+ *
+ * @author AiApp
+ */
+public final class Deadline {
+
+	/** 期限なし */
+	public static final Deadline NONE = new Deadline(0, false);
+
+	/** 期限切れ時のメッセージ（例外ハンドラーでは接続エラーと同じ扱い） */
+	public static final String MESSAGE_EXCEEDED = "CONNECT_ERROR : 応答期限までにAIの応答がありませんでした";
+
+	// 期限（System.nanoTime 基準）
+	private final long expiresAtNanos;
+	// 期限があるかどうか
+	private final boolean bounded;
+
+	private Deadline(long expiresAtNanos, boolean bounded) {
+		this.expiresAtNanos = expiresAtNanos;
+		this.bounded = bounded;
+	}
+
+	/**
+	 * 現在時刻から指定した時間後を期限とする
+	 *
+	 * @param timeout 期限までの時間
+	 * @return 応答期限
+	 */
+	public static Deadline after(Duration timeout) {
+		return new Deadline(System.nanoTime() + timeout.toNanos(), true);
+	}
+
+	/**
+	 * 2つの期限のうち遅い方を返す（複数のリクエストをまとめて送信する場合に使用）
+	 *
+	 * @param a 期限
+	 * @param b 期限
+	 * @return 遅い方の期限（どちらかが期限なしの場合は期限なし）
+	 */
+	public static Deadline later(Deadline a, Deadline b) {
+		if (!a.bounded || !b.bounded) {
+			return NONE;
+		}
+		return a.expiresAtNanos - b.expiresAtNanos >= 0 ? a : b;
+	}
+
+	/**
+	 * 期限までの残り時間を返す
+	 *
+	 * @return 残り時間（期限切れの場合は0、期限なしの場合はnull）
+	 */
+	public Duration remaining() {
+		if (!bounded) {
+			return null;
+		}
+		return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+	}
+
+	/**
+	 * 期限を過ぎたかどうかを判定する
+	 *
+	 * @return 期限を過ぎた場合はtrue
+	 */
+	public boolean isExpired() {
+		return bounded && expiresAtNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * 指定した時間を期限までの残り時間で切り詰める
+	 *
+	 * @param timeout 切り詰める時間
+	 * @return 指定した時間と残り時間の短い方
+	 */
+	public Duration cap(Duration timeout) {
+		Duration remaining = remaining();
+		return remaining == null || timeout.compareTo(remaining) <= 0 ? timeout : remaining;
+	}
+
+	/**
+	 * 期限までに完了しなかった場合に期限切れで失敗するFutureを返す
+	 * 元のFutureには影響しないため、相乗りしている他の呼び出し元の処理は継続する
+	 *
+	 * @param future 対象のFuture
+	 * @return 期限切れを考慮したFuture
+	 */
+	public <T> CompletableFuture<T> bound(CompletableFuture<T> future) {
+		if (!bounded) {
+			return future;
+		}
+		return future.copy()
+				.orTimeout(remaining().toMillis(), TimeUnit.MILLISECONDS)
+				.exceptionallyCompose(ex -> {
+					Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+					return CompletableFuture.failedFuture(
+							cause instanceof TimeoutException ? new AiAppException(MESSAGE_EXCEEDED) : cause);
+				});
+	}
+}
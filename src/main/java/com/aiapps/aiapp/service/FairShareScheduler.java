@@ -0,0 +1,370 @@
+package com.aiapps.aiapp.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.aiapps.aiapp.exception.AiAppException;
+
+/**
+ * Gemini API への分析依頼を利用者ごとに公平に割り当てるクラス（重み付き公平キューイング）
+ * 同時に実行できる件数は同時実行制御（AdaptiveConcurrencyLimiter）の現在の上限に合わせ、
+ * 空きがない間は利用者ごとに待機させて、重みに比例した割合で順番に実行する
+ * （1人の利用者が大量に依頼しても、他の利用者の依頼はその後ろに並ばない）
+ *
+ * 各依頼には「仮想時刻」の開始時刻を割り当て（利用者ごとに 1/重み ずつ進む）、開始時刻の小さい順に実行する（SFQ方式）
+ * 利用者を特定できない依頼（登録した利用者の記録がない以前のジョブなど）は、まとめて1人の利用者（バックグラウンド）として扱う
+ *
+ * @author AiApp
+ */
+@Component
+public class FairShareScheduler {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(FairShareScheduler.class);
+
+	// 拒否時のメッセージ（画面・APIとも「混み合っています」として扱われるよう 429 を含める）
+	static final String MESSAGE_REJECTED = "429 : 待機中の分析依頼が上限に達したため受け付けできませんでした";
+	// 利用者を特定できない依頼をまとめる利用者ID
+	private static final String BACKGROUND = "";
+
+	// 同時実行制御（同時に実行できる件数の取得に使用）
+	private final AdaptiveConcurrencyLimiter limiter;
+	// 公平な割り当ての有効フラグ
+	private final boolean enabled;
+	// 利用者ごとの待機できる件数
+	private final int maxQueuePerUser;
+	// 利用者ごとの重み（既定は1）
+	private final Map<String, Double> weights;
+	// バックグラウンドの重み
+	private final double backgroundWeight;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// 待機中の依頼（開始時刻の小さい順。同じ場合は到着順）
+	private final PriorityQueue<Pending<?>> queue = new PriorityQueue<>(
+			Comparator.<Pending<?>> comparingDouble(p -> p.start).thenComparingLong(p -> p.sequence));
+	// 待機中・実行中の依頼がある利用者
+	private final Map<String, Lane> lanes = new HashMap<>();
+	// 仮想時刻（最後に実行を開始した依頼の開始時刻）
+	private double virtualTime;
+	// 実行中の件数
+	private int inFlight;
+	// 到着順の連番
+	private long sequence;
+
+	// 統計用カウンタ
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder expired = new LongAdder();
+
+	/**
+	 * コンストラクタ：同時実行制御と application.properties の設定値を注入
+	 *
+	 * @param limiter          注入する同時実行制御
+	 * @param enabled          公平な割り当てを有効にするかどうか
+	 * @param maxQueuePerUser  利用者ごとの待機できる件数
+	 * @param weights          利用者ごとの重み（「利用者ID:重み」のカンマ区切り）
+	 * @param backgroundWeight バックグラウンドの重み
+	 */
+	public FairShareScheduler(AdaptiveConcurrencyLimiter limiter,
+			@Value("${aiapp.fair.enabled:true}") boolean enabled,
+			@Value("${aiapp.fair.max-queue-per-user:20}") int maxQueuePerUser,
+			@Value("${aiapp.fair.weights:}") String weights,
+			@Value("${aiapp.fair.background-weight:1}") double backgroundWeight) {
+		this.limiter = limiter;
+		this.enabled = enabled;
+		this.maxQueuePerUser = Math.max(0, maxQueuePerUser);
+		this.weights = parseWeights(weights);
+		this.backgroundWeight = backgroundWeight > 0 ? backgroundWeight : 1;
+	}
+
+	/**
+	 * 分析依頼を実行する
+	 * 空きがあればすぐに実行し、空きがない場合は順番が来るまで待機させる
+	 *
+	 * @param user     利用者ID（null の場合はバックグラウンド）
+	 * @param deadline 応答期限（順番が来たときに期限を過ぎていれば実行しない）
+	 * @param task     分析依頼
+	 * @return 分析依頼の結果を受け取るFuture（待機中の依頼が上限に達している場合は AiAppException で失敗）
+	 */
+	public <T> CompletableFuture<T> submit(String user, Deadline deadline, Supplier<CompletableFuture<T>> task) {
+		if (!enabled) {
+			return task.get();
+		}
+		String key = user == null ? BACKGROUND : user;
+		int capacity = limiter.stats().limit();
+		Lane lane;
+		Pending<T> pending;
+		lock.lock();
+		try {
+			lane = lanes.computeIfAbsent(key, this::newLane);
+			double start = Math.max(virtualTime, lane.finish);
+			if (queue.isEmpty() && inFlight < capacity) {
+				// 空きがある場合も仮想時刻を進め、その後の待機で使いすぎた利用者が後回しになるようにする
+				lane.finish = start + 1 / lane.weight;
+				virtualTime = start;
+				inFlight++;
+				lane.inFlight++;
+				pending = null;
+			} else if (lane.queued >= maxQueuePerUser) {
+				rejected.increment();
+				logger.warn("待機中の分析依頼が上限に達したため拒否しました。待機数: {}", lane.queued);
+				return CompletableFuture.failedFuture(new AiAppException(MESSAGE_REJECTED));
+			} else {
+				lane.finish = start + 1 / lane.weight;
+				lane.queued++;
+				pending = new Pending<>(lane, start, sequence++, deadline, task);
+				queue.add(pending);
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (pending != null) {
+			return pending.result;
+		}
+		return run(lane, task);
+	}
+
+	/**
+	 * 分析依頼を実行し、完了時に次の依頼へ割り当てる
+	 *
+	 * @param lane 依頼した利用者
+	 * @param task 分析依頼
+	 * @return 分析依頼の結果を受け取るFuture
+	 */
+	private <T> CompletableFuture<T> run(Lane lane, Supplier<CompletableFuture<T>> task) {
+		CompletableFuture<T> result;
+		try {
+			result = task.get();
+		} catch (RuntimeException e) {
+			result = CompletableFuture.failedFuture(e);
+		}
+		result.whenComplete((value, ex) -> release(lane));
+		return result;
+	}
+
+	/**
+	 * 実行枠を返却し、空いた枠に待機中の依頼を割り当てる
+	 *
+	 * @param lane 完了した依頼の利用者
+	 */
+	private void release(Lane lane) {
+		int capacity = limiter.stats().limit();
+		List<Pending<?>> granted = new ArrayList<>();
+		List<Pending<?>> dropped = new ArrayList<>();
+		lock.lock();
+		try {
+			inFlight--;
+			lane.inFlight--;
+			while (inFlight < capacity && !queue.isEmpty()) {
+				Pending<?> next = queue.poll();
+				next.lane.queued--;
+				if (next.result.isDone() || next.deadline.isExpired()) {
+					dropped.add(next);
+					continue;
+				}
+				virtualTime = next.start;
+				inFlight++;
+				next.lane.inFlight++;
+				granted.add(next);
+			}
+			lanes.values().removeIf(this::isIdle);
+		} finally {
+			lock.unlock();
+		}
+
+		// 待機していた依頼の実行・失敗の通知はロックの外で行う
+		for (Pending<?> next : dropped) {
+			if (!next.result.isDone()) {
+				expired.increment();
+				next.result.completeExceptionally(new AiAppException(Deadline.MESSAGE_EXCEEDED));
+			}
+		}
+		for (Pending<?> next : granted) {
+			next.start();
+		}
+	}
+
+	/**
+	 * 待機中・実行中の依頼がなく、仮想時刻が追いついた利用者かどうかを判定する（ロック取得中に呼び出すこと）
+	 * 仮想時刻が追いつく前に削除すると、使いすぎた利用者の後回しが解除されるため残す
+	 *
+	 * @param lane 対象の利用者
+	 * @return 削除してよい場合はtrue
+	 */
+	private boolean isIdle(Lane lane) {
+		return lane.queued == 0 && lane.inFlight == 0 && lane.finish <= virtualTime;
+	}
+
+	/**
+	 * 利用者を作成する
+	 *
+	 * @param user 利用者ID
+	 * @return 利用者
+	 */
+	private Lane newLane(String user) {
+		double weight = BACKGROUND.equals(user) ? backgroundWeight : weights.getOrDefault(user, 1.0);
+		return new Lane(user, weight, virtualTime);
+	}
+
+	/**
+	 * 待機中の依頼がある利用者がいるかどうかを返す（バックグラウンドを除く）
+	 * 非同期ジョブが画面・APIからの依頼を優先するために使用
+	 *
+	 * @return 待機中の依頼がある利用者がいる場合はtrue
+	 */
+	public boolean hasWaitingUsers() {
+		lock.lock();
+		try {
+			for (Lane lane : lanes.values()) {
+				if (lane.queued > 0 && !BACKGROUND.equals(lane.user)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 利用者の現在の割り当て状況を取得する
+	 *
+	 * @param user 利用者ID
+	 * @return 実行中・待機中の件数
+	 */
+	public Share share(String user) {
+		lock.lock();
+		try {
+			Lane lane = user == null ? null : lanes.get(user);
+			return lane == null ? new Share(0, 0) : new Share(lane.inFlight, lane.queued);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 公平な割り当ての統計情報を取得する
+	 *
+	 * @return 実行中・待機中の件数、利用者数、拒否件数、期限切れ件数
+	 */
+	public Stats stats() {
+		lock.lock();
+		try {
+			return new Stats(inFlight, queue.size(), lanes.size(), rejected.sum(), expired.sum());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 利用者ごとの重みの設定を解析する
+	 *
+	 * @param value 「利用者ID:重み」のカンマ区切り
+	 * @return 利用者IDをキーにした重み
+	 */
+	private static Map<String, Double> parseWeights(String value) {
+		Map<String, Double> parsed = new HashMap<>();
+		for (String entry : value.split(",")) {
+			int separator = entry.lastIndexOf(':');
+			if (separator <= 0) {
+				continue;
+			}
+			try {
+				double weight = Double.parseDouble(entry.substring(separator + 1).trim());
+				if (weight > 0) {
+					parsed.put(entry.substring(0, separator).trim(), weight);
+				}
+			} catch (NumberFormatException e) {
+				logger.warn("利用者の重みの設定を読み飛ばしました: {}", entry);
+			}
+		}
+		return Map.copyOf(parsed);
+	}
+
+	/**
+	 * 利用者ごとの割り当て状況（ロック取得中に参照・更新すること）
+	 */
+	private static final class Lane {
+
+		final String user;
+		final double weight;
+		// 次の依頼の開始時刻の下限（直前の依頼の終了時刻）
+		double finish;
+		int queued;
+		int inFlight;
+
+		Lane(String user, double weight, double finish) {
+			this.user = user;
+			this.weight = weight;
+			this.finish = finish;
+		}
+	}
+
+	/**
+	 * 順番を待っている分析依頼
+	 */
+	private final class Pending<T> {
+
+		final Lane lane;
+		final double start;
+		final long sequence;
+		final Deadline deadline;
+		final Supplier<CompletableFuture<T>> task;
+		final CompletableFuture<T> result = new CompletableFuture<>();
+
+		Pending(Lane lane, double start, long sequence, Deadline deadline, Supplier<CompletableFuture<T>> task) {
+			this.lane = lane;
+			this.start = start;
+			this.sequence = sequence;
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		/**
+		 * 分析依頼を実行し、結果を待機していた呼び出し元に通知する
+		 */
+		void start() {
+			run(lane, task).whenComplete((value, ex) -> {
+				if (ex == null) {
+					result.complete(value);
+				} else {
+					result.completeExceptionally(ex);
+				}
+			});
+		}
+	}
+
+	/**
+	 * 利用者の割り当て状況
+	 *
+	 * @param inFlight 実行中の件数
+	 * @param queued   待機中の件数
+	 */
+	public record Share(int inFlight, int queued) {
+	}
+
+	/**
+	 * 公平な割り当ての統計情報
+	 *
+	 * @param inFlight 実行中の件数
+	 * @param queued   待機中の件数
+	 * @param users    待機中・実行中の依頼がある利用者数
+	 * @param rejected 待機中の依頼が上限に達したため拒否した件数
+	 * @param expired  待機中に応答期限を過ぎたため実行しなかった件数
+	 */
+	public record Stats(int inFlight, int queued, int users, long rejected, long expired) {
+	}
+}
@@ -0,0 +1,66 @@
+package com.aiapps.aiapp.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aiapps.aiapp.exception.AiAppException;
+
+/**
+ * CompletableFuture の完了待ちを共通化するユーティリティクラス
+ * 中断時・例外時の扱いを Gemini API 呼び出しと揃える
+ *
+ * @author AiApp
+ */
+final class FutureResults {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(FutureResults.class);
+
+	private FutureResults() {
+	}
+
+	/**
+	 * Futureの完了を待って結果を返す
+	 * 取り消された場合の CancellationException はそのままスローする
+	 *
+	 * @param <T>    結果の型
+	 * @param future 完了を待つFuture
+	 * @return 処理結果
+	 */
+	static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			// ログを出す
+			logger.warn("API呼び出しが中断されました");
+
+			// 中断フラグを再設定する (SonarLint対策)
+			Thread.currentThread().interrupt();
+			// 例外をラップして再スロー
+			throw new AiAppException("処理が中断されました", e);
+		} catch (ExecutionException e) {
+			throw unwrap(e.getCause());
+		}
+	}
+
+	/**
+	 * 非同期処理の例外を AiAppException に変換する
+	 * 例外ハンドラーはメッセージで判定するため、AiAppException のメッセージは引き継ぐ
+	 *
+	 * @param cause 非同期処理で発生した例外
+	 * @return 変換後の例外
+	 */
+	static AiAppException unwrap(Throwable cause) {
+		if (cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if (cause instanceof AiAppException) {
+			return new AiAppException(cause.getMessage(), cause);
+		}
+		return new AiAppException("システムエラー: " + cause, cause);
+	}
+}
@@ -0,0 +1,455 @@
+package com.aiapps.aiapp.service;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.aiapps.aiapp.exception.AiAppException;
+import com.aiapps.aiapp.exception.UpstreamApiException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Gemini API（generateContent）との通信を担当するクライアントクラス
+ * プロンプトを送信し、応答JSONから生成テキストを取り出す
+ * リクエスト・応答JSONの読み書きは {@link GeminiJsonCodec} で行い、通信は {@link UpstreamHttpClient} の共通の HttpClient で行う
+ * APIキーはURLではなく x-goog-api-key ヘッダーで送り、エンドポイントのURIは起動時に組み立てたものを使い回す
+ * 分類指示は systemInstruction で送り、出力トークン数は入力件数に応じて制限する
+ * 応答の usageMetadata のトークン数はメトリクスに記録する
+ * aiapp.provider=gemini（既定）の場合に使用される
+ *
+ * @author AiApp
+ */
+@Component
+@ConditionalOnProperty(name = "aiapp.provider", havingValue = "gemini", matchIfMissing = true)
+public class GeminiClient implements AnalysisProvider {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(GeminiClient.class);
+
+	/** 使用するモデル名 */
+	public static final String MODEL = "gemini-2.5-flash";
+
+	// APIキーを送るヘッダー
+	private static final String HEADER_API_KEY = "x-goog-api-key";
+
+	// ObjectMapperも使い回すことでパフォーマンス向上（エラー応答の解析に使用）
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	// 同時実行制御と再試行
+	private final UpstreamCallGuard guard;
+	// 外部APIとの通信
+	private final UpstreamHttpClient http;
+	// メトリクスの記録
+	private final AnalysisMetrics metrics;
+	// 入力1件あたりの出力トークン数の上限
+	private final int maxOutputTokensPerInput;
+	// 思考に使うトークン数の上限（負の場合はモデルの既定値）
+	private final int thinkingBudget;
+	// APIキー
+	private final String apiKey;
+	// エンドポイントのURI（起動時に組み立てて使い回す）
+	private final URI generateUri;
+	private final URI streamUri;
+	private final URI modelUri;
+
+	/**
+	 * コンストラクタ：呼び出し保護、外部APIとの通信、メトリクスの記録と application.properties の設定値を注入
+	 *
+	 * @param guard                   注入する呼び出し保護
+	 * @param http                    注入する外部APIとの通信
+	 * @param metrics                 注入するメトリクスの記録
+	 * @param apiKey                  APIキー
+	 * @param baseUrl                 APIのベースURL（ベンチマークや負荷試験ではスタブサーバーを指定）
+	 * @param maxOutputTokensPerInput 入力1件あたりの出力トークン数の上限（0以下の場合は制限しない）
+	 * @param thinkingBudget          思考に使うトークン数の上限（負の場合はモデルの既定値）
+	 */
+	public GeminiClient(UpstreamCallGuard guard, UpstreamHttpClient http, AnalysisMetrics metrics,
+			@Value("${google.api.key}") String apiKey,
+			@Value("${aiapp.gemini.base-url:https://generativelanguage.googleapis.com}") String baseUrl,
+			@Value("${aiapp.gemini.max-output-tokens-per-input:16}") int maxOutputTokensPerInput,
+			@Value("${aiapp.gemini.thinking-budget:0}") int thinkingBudget) {
+		this.guard = guard;
+		this.http = http;
+		this.metrics = metrics;
+		this.maxOutputTokensPerInput = maxOutputTokensPerInput;
+		this.thinkingBudget = thinkingBudget;
+		this.apiKey = apiKey;
+		String modelUrl = baseUrl + "/v1beta/models/" + MODEL;
+		this.generateUri = URI.create(modelUrl + ":generateContent");
+		// alt=sse で Server-Sent Events 形式の応答を受け取る
+		this.streamUri = URI.create(modelUrl + ":streamGenerateContent?alt=sse");
+		this.modelUri = URI.create(modelUrl);
+	}
+
+	/**
+	 * 起動完了後、Gemini API への接続を事前に確立する
+	 * モデル情報の取得（副作用のない GET）を送り、TLS ハンドシェイクを最初の分析の応答時間に含めないようにする
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		http.warmUp(HttpRequest.newBuilder()
+				.uri(modelUri)
+				.header(HEADER_API_KEY, apiKey)
+				.GET()
+				.build());
+	}
+
+	@Override
+	public String model() {
+		return MODEL;
+	}
+
+	/**
+	 * Gemini APIへプロンプトを非同期で送信して生成テキストを取得する
+	 * 応答待ちの間スレッドを占有しないよう HttpClient.sendAsync を使用
+	 * 同時呼び出し数は適応的に制限し、一時的な失敗は再試行する
+	 * 応答が遅い場合はヘッジ（同じリクエストの追加送信）の対象になる
+	 *
+	 * @param prompt   送信するプロンプト
+	 * @param deadline 応答期限
+	 * @return AIからの生成テキストを受け取るFuture
+	 */
+	@Override
+	public CompletableFuture<String> generateContentAsync(String prompt, Deadline deadline) {
+		return guard.execute(() -> send(prompt), deadline, true);
+	}
+
+	/**
+	 * Gemini APIへプロンプトを1回送信する
+	 *
+	 * @param prompt 送信するプロンプト
+	 * @return AIからの生成テキストを受け取るFuture
+	 */
+	private CompletableFuture<String> send(String prompt) {
+
+		// POSTリクエストの構築
+		HttpRequest request = buildRequest(generateUri, prompt);
+
+		// 送信して結果を受け取る
+		long start = System.nanoTime();
+		CompletableFuture<HttpResponse<byte[]>> exchange = http.sendAsync(request,
+				HttpResponse.BodyHandlers.ofByteArray());
+		return abortOnCompletion(exchange, exchange.handle((response, ex) -> {
+			long nanos = System.nanoTime() - start;
+			metrics.recordUpstream(nanos, response != null ? response.statusCode() : 0);
+			if (ex != null) {
+				throw toAiAppException(ex);
+			}
+			return extractText(response, nanos);
+		}));
+	}
+
+	/**
+	 * Gemini API（streamGenerateContent）へプロンプトを送信し、生成テキストを届いた順に通知する
+	 * 応答本文は Server-Sent Events 形式で、行単位の BodySubscriber で受信しながら処理する
+	 * 同時呼び出し数の制限は generateContentAsync と同じ
+	 * 断片が重複して通知されないよう、ヘッジの対象にはせず、断片を通知した後に失敗した場合は再試行しない
+	 *
+	 * @param prompt   送信するプロンプト
+	 * @param deadline 応答期限
+	 * @param onChunk  生成テキストの断片の通知先（HttpClient のスレッドから順に呼ばれる）
+	 * @return 生成テキスト全体を受け取るFuture
+	 */
+	@Override
+	public CompletableFuture<String> streamGenerateContentAsync(String prompt, Deadline deadline,
+			Consumer<String> onChunk) {
+		AtomicBoolean emitted = new AtomicBoolean();
+		Consumer<String> forward = chunk -> {
+			emitted.set(true);
+			onChunk.accept(chunk);
+		};
+		return guard.execute(() -> sendStreaming(prompt, forward), deadline, false, () -> !emitted.get());
+	}
+
+	/**
+	 * Gemini API（streamGenerateContent）へプロンプトを1回送信する
+	 *
+	 * @param prompt  送信するプロンプト
+	 * @param onChunk 生成テキストの断片の通知先
+	 * @return 生成テキスト全体を受け取るFuture
+	 */
+	private CompletableFuture<String> sendStreaming(String prompt, Consumer<String> onChunk) {
+
+		// POSTリクエストの構築
+		HttpRequest request = buildRequest(streamUri, prompt);
+
+		// 正常応答は1行ずつ処理し、エラー応答は本文をまとめて受け取る
+		ChunkSubscriber chunks = new ChunkSubscriber(onChunk);
+		HttpResponse.BodyHandler<String> handler = info -> info.statusCode() == 200
+				? HttpResponse.BodySubscribers.fromLineSubscriber(chunks, ChunkSubscriber::text,
+						StandardCharsets.UTF_8, null)
+				: HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+
+		// 送信して結果を受け取る
+		long start = System.nanoTime();
+		CompletableFuture<HttpResponse<String>> exchange = http.sendAsync(request, handler);
+		return abortOnCompletion(exchange, exchange.handle((response, ex) -> {
+			long nanos = System.nanoTime() - start;
+			metrics.recordUpstream(nanos, response != null ? response.statusCode() : 0);
+			if (ex != null) {
+				throw toAiAppException(ex);
+			}
+			if (response.statusCode() != 200) {
+				throw upstreamError(response.statusCode(), response.headers(), response.body());
+			}
+			recordUsage(chunks.usage(), nanos);
+			return response.body();
+		}));
+	}
+
+	/**
+	 * 結果が先に確定した場合（時間切れ・ヘッジの取り消し）に通信を中断するよう設定する
+	 * HttpClient は sendAsync のFutureを取り消すと通信を中断する
+	 *
+	 * @param exchange sendAsync のFuture
+	 * @param result   応答を変換した結果のFuture
+	 * @return 結果のFuture
+	 */
+	private static <T> CompletableFuture<T> abortOnCompletion(CompletableFuture<?> exchange,
+			CompletableFuture<T> result) {
+		result.whenComplete((value, ex) -> exchange.cancel(true));
+		return result;
+	}
+
+	/**
+	 * Gemini APIへのリクエストを構築する
+	 * 分類指示は systemInstruction として送る
+	 * 出力トークン数の上限は入力件数（バッチの場合は件数分）に応じて決める
+	 *
+	 * @param uri    エンドポイントのURI
+	 * @param prompt 送信するプロンプト
+	 * @return 構築したリクエスト
+	 */
+	private HttpRequest buildRequest(URI uri, String prompt) {
+		int maxOutputTokens = maxOutputTokensPerInput > 0
+				? maxOutputTokensPerInput * AnalysisPrompts.inputCount(prompt)
+				: 0;
+		return HttpRequest.newBuilder()
+				.uri(uri)
+				.header(HEADER_API_KEY, apiKey)
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(GeminiJsonCodec.encodeRequest(prompt,
+						AnalysisPrompts.SYSTEM_INSTRUCTION, maxOutputTokens, thinkingBudget)))
+				.build();
+	}
+
+	/**
+	 * 応答のトークン数をメトリクスに記録する
+	 *
+	 * @param usage トークン数（応答に含まれない場合はnull）
+	 * @param nanos 呼び出し時間（ナノ秒）
+	 */
+	private void recordUsage(GeminiJsonCodec.Usage usage, long nanos) {
+		if (usage == null) {
+			return;
+		}
+		metrics.recordTokens(nanos, usage.prompt(), usage.cached(), usage.output(), usage.thoughts());
+		if (logger.isDebugEnabled()) {
+			logger.debug("トークン数 : prompt={}, cached={}, output={}, thoughts={}, {} ms", usage.prompt(),
+					usage.cached(), usage.output(), usage.thoughts(), TimeUnit.NANOSECONDS.toMillis(nanos));
+		}
+	}
+
+	/**
+	 * Gemini APIの応答から生成テキストを取り出す
+	 *
+	 * @param response Gemini APIの応答
+	 * @param nanos    呼び出し時間（ナノ秒）
+	 * @return AIからの生成テキスト
+	 */
+	private String extractText(HttpResponse<byte[]> response, long nanos) {
+		// レスポンスの処理
+		if (response == null) {
+			// nullチェック
+			logger.error("AIからの応答がnullでした。");
+			throw new AiAppException("AIからの応答が空でした");
+
+			// 正常に応答が返ってきた場合
+		} else if (response.statusCode() == 200) {
+			long parseStart = System.nanoTime();
+			GeminiJsonCodec.Reply reply;
+			try {
+				reply = GeminiJsonCodec.decodeReply(response.body());
+			} finally {
+				metrics.recordParse(System.nanoTime() - parseStart);
+			}
+			recordUsage(reply.usage(), nanos);
+			return reply.text();
+
+			// ステータスコード200以外のエラー処理
+		} else {
+			throw upstreamError(response.statusCode(), response.headers(),
+					new String(response.body(), StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * ステータスコード200以外の応答をログに出力し、例外に変換する
+	 *
+	 * @param statusCode ステータスコード
+	 * @param headers    応答ヘッダー
+	 * @param body       応答本文
+	 * @return 変換後の例外
+	 */
+	private static UpstreamApiException upstreamError(int statusCode, HttpHeaders headers, String body) {
+		// ボディの最初の100文字のみログに出す
+		String partialBody = body.length() > 100
+				? body.substring(0, 100) + "..."
+				: body;
+		logger.warn("APIエラー : statusCode={}, body={}", statusCode, partialBody);
+		return new UpstreamApiException(
+				"APIエラー : response.statusCode()= " + statusCode + ", response.body()= " + body,
+				statusCode, retryAfterOf(headers, body));
+	}
+
+	/**
+	 * 応答から再試行までの待機時間を取得する
+	 * Retry-After ヘッダー（秒数またはHTTP日付）を優先し、なければ応答本文の RetryInfo.retryDelay を使用
+	 *
+	 * @param headers Gemini APIの応答ヘッダー
+	 * @param body    Gemini APIの応答本文
+	 * @return 待機時間（指定がない、または解析できない場合はnull）
+	 */
+	static Duration retryAfterOf(HttpHeaders headers, String body) {
+		String header = headers.firstValue("Retry-After").orElse(null);
+		if (header != null) {
+			try {
+				return Duration.ofSeconds(Long.parseLong(header.strip()));
+			} catch (NumberFormatException e) {
+				try {
+					ZonedDateTime at = ZonedDateTime.parse(header.strip(), DateTimeFormatter.RFC_1123_DATE_TIME);
+					Duration wait = Duration.between(ZonedDateTime.now(at.getZone()), at);
+					return wait.isNegative() ? Duration.ZERO : wait;
+				} catch (DateTimeParseException ignored) {
+					// 本文の指定を確認する
+				}
+			}
+		}
+
+		// 構造: error -> details[] -> retryDelay（"30s" 形式）
+		try {
+			for (JsonNode detail : MAPPER.readTree(body).path("error").path("details")) {
+				String delay = detail.path("retryDelay").asText("");
+				if (delay.endsWith("s")) {
+					double seconds = Double.parseDouble(delay.substring(0, delay.length() - 1));
+					return Duration.ofMillis(Math.round(seconds * 1000));
+				}
+			}
+		} catch (JsonProcessingException | NumberFormatException e) {
+			// 指定なしとして扱う
+		}
+		return null;
+	}
+
+	/**
+	 * 送信時に発生した例外を AiAppException に変換する
+	 *
+	 * @param ex 送信時に発生した例外
+	 * @return 変換後の例外
+	 */
+	private static AiAppException toAiAppException(Throwable ex) {
+		Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+		if (cause instanceof ConnectException || cause instanceof SocketTimeoutException) {
+			return new AiAppException("CONNECT_ERROR");
+		}
+		if (cause instanceof IOException) {
+			if (cause.getMessage() != null && cause.getMessage().contains("EOF reached")) {
+				return new AiAppException("CONNECT_ERROR");
+			}
+			return new AiAppException("システムエラー: " + cause);
+		}
+		if (cause instanceof AiAppException aiAppException) {
+			return aiAppException;
+		}
+		return new AiAppException("システムエラー: " + cause, cause);
+	}
+
+	/**
+	 * streamGenerateContent の応答（Server-Sent Events）を1行ずつ受け取り、生成テキストの断片を通知するクラス
+	 * 各イベントの data 行は generateContent と同じ形式のJSON
+	 */
+	private static final class ChunkSubscriber implements Flow.Subscriber<String> {
+
+		private final Consumer<String> onChunk;
+		// 受け取った生成テキスト全体
+		private final StringBuilder text = new StringBuilder();
+		// 最後に受け取ったトークン数（各イベントに累計が含まれる）
+		private volatile GeminiJsonCodec.Usage usage;
+
+		ChunkSubscriber(Consumer<String> onChunk) {
+			this.onChunk = onChunk;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			// 1件ごとに処理を終えるため、流量制御はせずにすべて要求する
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(String line) {
+			if (!line.startsWith("data:")) {
+				// 空行（イベントの区切り）やコメント行は読み飛ばす
+				return;
+			}
+			try {
+				GeminiJsonCodec.Reply reply = GeminiJsonCodec.decodeChunk(
+						line.substring(5).strip().getBytes(StandardCharsets.UTF_8));
+				if (reply.usage() != null) {
+					usage = reply.usage();
+				}
+				String chunk = reply.text();
+				if (!chunk.isEmpty()) {
+					text.append(chunk);
+					onChunk.accept(chunk);
+				}
+			} catch (RuntimeException e) {
+				// 1件の失敗で受信全体を止めないよう、ログのみ出して次の行へ進む
+				logger.warn("ストリーミング応答の処理に失敗しました: {}", e.getMessage());
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			// 例外は sendAsync の Future に伝わる
+		}
+
+		@Override
+		public void onComplete() {
+			// 生成テキスト全体は text() で取り出す
+		}
+
+		String text() {
+			return text.toString();
+		}
+
+		GeminiJsonCodec.Usage usage() {
+			return usage;
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package com.aiapps.aiapp.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.aiapps.aiapp.exception.AiAppException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+
+/**
+ * Gemini API（generateContent）のリクエスト・応答JSONをストリーミングで読み書きするクラス
+ * リクエストは JsonGenerator で再利用バッファに直接書き込み、
+ * 応答は JsonParser で candidates[0].content.parts[0].text と usageMetadata のトークン数だけを読み取る
+ * JsonNode のツリーや中間の文字列を作らないため、1リクエストあたりのアロケーションが少ない
+ *
+ * @author AiApp
+ */
+final class GeminiJsonCodec {
+
+	// 仮想スレッドではスレッドごとのバッファ再利用が効かないため、スレッド間で共有するプールを使用
+	private static final JsonFactory FACTORY = JsonFactory.builder()
+			.recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool())
+			.build();
+
+	// 書き込みバッファのプール（空の場合は新規作成し、満杯の場合は返却せず破棄する）
+	private static final ArrayBlockingQueue<ReusableBuffer> BUFFERS = new ArrayBlockingQueue<>(64);
+	// プールに戻すバッファの最大サイズ（大きな入力で確保したバッファを保持し続けないため）
+	private static final int MAX_POOLED_BUFFER = 16 * 1024;
+
+	private GeminiJsonCodec() {
+	}
+
+	/**
+	 * generateContent のリクエストボディを作成する
+	 * 文字列はJSONの規則どおりにエスケープされる（ダブルクォート・バックスラッシュ・制御文字を含む）
+	 *
+	 * @param prompt            送信するプロンプト（ユーザー入力部分）
+	 * @param systemInstruction 分類指示（null の場合は送信しない）
+	 * @param maxOutputTokens   出力トークン数の上限（0以下の場合は指定しない）
+	 * @param thinkingBudget    思考に使うトークン数の上限（負の場合は指定せずモデルの既定値）
+	 * @return UTF-8のリクエストボディ
+	 */
+	static byte[] encodeRequest(String prompt, String systemInstruction, int maxOutputTokens, int thinkingBudget) {
+		return encode(gen -> {
+			// 構造: {"contents":[{"role":"user","parts":[{"text":"..."}]}],
+			// "systemInstruction":{"parts":[{"text":"..."}]}, "generationConfig":{...}}
+			gen.writeStartObject();
+			gen.writeArrayFieldStart("contents");
+			gen.writeStartObject();
+			gen.writeStringField("role", "user");
+			writeParts(gen, prompt);
+			gen.writeEndObject();
+			gen.writeEndArray();
+			if (systemInstruction != null) {
+				gen.writeObjectFieldStart("systemInstruction");
+				writeParts(gen, systemInstruction);
+				gen.writeEndObject();
+			}
+			// 候補は1件、出力は決定的に（カテゴリー名のみのため多様性は不要）
+			gen.writeObjectFieldStart("generationConfig");
+			gen.writeNumberField("candidateCount", 1);
+			gen.writeNumberField("temperature", 0);
+			if (maxOutputTokens > 0) {
+				gen.writeNumberField("maxOutputTokens", maxOutputTokens);
+			}
+			if (thinkingBudget >= 0) {
+				gen.writeObjectFieldStart("thinkingConfig");
+				gen.writeNumberField("thinkingBudget", thinkingBudget);
+				gen.writeEndObject();
+			}
+			gen.writeEndObject();
+			gen.writeEndObject();
+		});
+	}
+
+	/**
+	 * generateContent の正常応答から生成テキストを取り出す
+	 *
+	 * @param body UTF-8の応答本文
+	 * @return AIからの生成テキスト（text がない場合は空文字）
+	 */
+	static String decodeText(byte[] body) {
+		return decodeReply(body).text();
+	}
+
+	/**
+	 * generateContent の正常応答から生成テキストとトークン数を取り出す
+	 *
+	 * @param body UTF-8の応答本文
+	 * @return 生成テキスト（text がない場合は空文字）とトークン数
+	 */
+	static Reply decodeReply(byte[] body) {
+		Reply reply = read(body);
+		if (reply.text() == null) {
+			throw new AiAppException("AIからの応答が空でした");
+		}
+		return reply;
+	}
+
+	/**
+	 * streamGenerateContent の1イベント分のJSONから生成テキストの断片とトークン数を取り出す
+	 * 最後のイベントなど candidates を含まない場合は空文字を返す
+	 * トークン数は各イベントに累計が含まれるため、最後に受け取った値を使用する
+	 *
+	 * @param chunk UTF-8の1イベント分のJSON
+	 * @return 生成テキストの断片（ない場合は空文字）とトークン数
+	 */
+	static Reply decodeChunk(byte[] chunk) {
+		Reply reply = read(chunk);
+		return reply.text() == null ? new Reply("", reply.usage()) : reply;
+	}
+
+	/**
+	 * 応答JSONから candidates[0].content.parts[0].text と usageMetadata を読み取る
+	 * 2件目以降の候補や安全性の評価などは読み飛ばす
+	 *
+	 * @param body UTF-8の応答JSON
+	 * @return 生成テキスト（text がない場合は空文字、candidates がない場合はnull）とトークン数（ない場合はnull）
+	 */
+	private static Reply read(byte[] body) {
+		String text = null;
+		Usage usage = null;
+		try (JsonParser parser = FACTORY.createParser(body)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return new Reply(null, null);
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.currentName();
+				JsonToken value = parser.nextToken();
+				if ("candidates".equals(field) && value == JsonToken.START_ARRAY) {
+					text = readCandidateText(parser);
+				} else if ("usageMetadata".equals(field) && value == JsonToken.START_OBJECT) {
+					usage = readUsage(parser);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return new Reply(text, usage);
+		} catch (IOException e) {
+			throw new AiAppException("システムエラー: " + e);
+		}
+	}
+
+	/**
+	 * candidates 配列から1件目の候補の生成テキストを読み取り、配列の終わりまで読み進める
+	 *
+	 * @param parser 解析中のパーサー（candidates 配列の開始位置にあること）
+	 * @return 生成テキスト（text がない場合は空文字、候補がない場合はnull）
+	 * @throws IOException JSONの解析に失敗した場合
+	 */
+	private static String readCandidateText(JsonParser parser) throws IOException {
+		JsonStreamContext parent = parser.getParsingContext().getParent();
+		String text = null;
+		if (parser.nextToken() == JsonToken.START_OBJECT) {
+			text = moveToField(parser, "content", JsonToken.START_OBJECT)
+					&& moveToField(parser, "parts", JsonToken.START_ARRAY)
+					&& parser.nextToken() == JsonToken.START_OBJECT
+					&& moveToField(parser, "text", JsonToken.VALUE_STRING) ? parser.getText() : "";
+		}
+		// 残りの候補を読み飛ばし、candidates 配列の終わりまで進める
+		while (parser.getParsingContext() != parent) {
+			if (parser.nextToken() == null) {
+				break;
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * usageMetadata からトークン数を読み取る
+	 *
+	 * @param parser 解析中のパーサー（usageMetadata オブジェクトの開始位置にあること）
+	 * @return トークン数
+	 * @throws IOException JSONの解析に失敗した場合
+	 */
+	private static Usage readUsage(JsonParser parser) throws IOException {
+		int prompt = 0;
+		int cached = 0;
+		int output = 0;
+		int thoughts = 0;
+		int total = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.currentName();
+			if (parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+				// トークン数の内訳（promptTokensDetails など）は読み飛ばす
+				parser.skipChildren();
+				continue;
+			}
+			switch (field) {
+				case "promptTokenCount" -> prompt = parser.getIntValue();
+				case "cachedContentTokenCount" -> cached = parser.getIntValue();
+				case "candidatesTokenCount" -> output = parser.getIntValue();
+				case "thoughtsTokenCount" -> thoughts = parser.getIntValue();
+				case "totalTokenCount" -> total = parser.getIntValue();
+				default -> {
+					// 他のトークン数（toolUsePromptTokenCount など）は使用しない
+				}
+			}
+		}
+		return new Usage(prompt, cached, output, thoughts, total);
+	}
+
+	/**
+	 * 再利用バッファにJSONを書き込み、バイト列として取り出す
+	 *
+	 * @param writer JSONの書き込み処理
+	 * @return UTF-8のJSON
+	 */
+	private static byte[] encode(JsonWriter writer) {
+		ReusableBuffer buffer = BUFFERS.poll();
+		if (buffer == null) {
+			buffer = new ReusableBuffer();
+		}
+		try {
+			try (JsonGenerator gen = FACTORY.createGenerator(buffer)) {
+				writer.write(gen);
+			}
+			return buffer.toByteArray();
+		} catch (IOException e) {
+			// メモリ上のバッファへの書き込みのため発生しない
+			throw new UncheckedIOException(e);
+		} finally {
+			buffer.reset();
+			if (buffer.capacity() <= MAX_POOLED_BUFFER) {
+				BUFFERS.offer(buffer);
+			}
+		}
+	}
+
+	/**
+	 * テキスト1件の parts 配列を書き込む（構造: "parts":[{"text":"..."}]）
+	 *
+	 * @param gen  書き込み先
+	 * @param text テキスト
+	 * @throws IOException 書き込みに失敗した場合
+	 */
+	private static void writeParts(JsonGenerator gen, String text) throws IOException {
+		gen.writeArrayFieldStart("parts");
+		gen.writeStartObject();
+		gen.writeStringField("text", text);
+		gen.writeEndObject();
+		gen.writeEndArray();
+	}
+
+	/**
+	 * 現在のオブジェクト内で指定したフィールドまで読み進める（他のフィールドの値は読み飛ばす）
+	 *
+	 * @param parser 解析中のパーサー（オブジェクトの開始位置にあること）
+	 * @param name   フィールド名
+	 * @param type   フィールドの値に期待するトークン
+	 * @return フィールドの値の位置まで進んだ場合はtrue
+	 * @throws IOException JSONの解析に失敗した場合
+	 */
+	private static boolean moveToField(JsonParser parser, String name, JsonToken type) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			boolean matched = name.equals(parser.currentName());
+			JsonToken value = parser.nextToken();
+			if (matched) {
+				return value == type;
+			}
+			parser.skipChildren();
+		}
+		return false;
+	}
+
+	/**
+	 * JSONの書き込み処理
+	 */
+	@FunctionalInterface
+	private interface JsonWriter {
+
+		void write(JsonGenerator gen) throws IOException;
+	}
+
+	/**
+	 * 応答から取り出した生成テキストとトークン数
+	 *
+	 * @param text  生成テキスト
+	 * @param usage トークン数（応答に usageMetadata がない場合はnull）
+	 */
+	record Reply(String text, Usage usage) {
+	}
+
+	/**
+	 * 1リクエスト分のトークン数（usageMetadata）
+	 *
+	 * @param prompt   入力トークン数（コンテキストキャッシュ・暗黙のキャッシュから読み込んだ分を含む）
+	 * @param cached   入力トークン数のうちキャッシュから読み込んだ分
+	 * @param output   出力トークン数（思考を除く）
+	 * @param thoughts 思考に使ったトークン数
+	 * @param total    合計トークン数
+	 */
+	record Usage(int prompt, int cached, int output, int thoughts, int total) {
+	}
+
+	/**
+	 * 内部配列の容量を参照できる ByteArrayOutputStream
+	 */
+	private static final class ReusableBuffer extends ByteArrayOutputStream {
+
+		ReusableBuffer() {
+			super(1024);
+		}
+
+		int capacity() {
+			return buf.length;
+		}
+	}
+}
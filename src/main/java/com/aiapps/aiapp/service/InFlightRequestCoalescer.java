@@ -0,0 +1,100 @@
+package com.aiapps.aiapp.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 同一入力に対する同時リクエストを1回の処理にまとめるクラス（シングルフライト）
+ * 最初の呼び出し元（リーダー）だけが実際の処理を開始し、処理中に到着した同じキーの
+ * 呼び出し元（フォロワー）はリーダーの CompletableFuture に相乗りして結果または例外を共有する
+ *
+ * @author AiApp
+ */
+@Component
+public class InFlightRequestCoalescer {
+
+	// 相乗り有効フラグ
+	private final boolean enabled;
+
+	// 処理中のリクエスト（キー：正規化済みの入力文字列）
+	private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+	// 統計用カウンタ
+	private final LongAdder leaders = new LongAdder();
+	private final LongAdder followers = new LongAdder();
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param enabled 相乗りを有効にするかどうか
+	 */
+	public InFlightRequestCoalescer(@Value("${aiapp.coalesce.enabled:true}") boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * 同じキーの処理が実行中であればその結果に相乗りし、なければ処理を開始する
+	 * 返却するFutureは呼び出し元ごとのコピーのため、ある呼び出し元が取り消しても
+	 * 共有中の処理や他の呼び出し元には影響しない
+	 *
+	 * @param key  正規化済みの入力文字列
+	 * @param call 実際の処理
+	 * @return 処理結果を受け取るFuture
+	 */
+	public CompletableFuture<String> execute(String key, Supplier<CompletableFuture<String>> call) {
+		if (!enabled) {
+			return call.get();
+		}
+
+		CompletableFuture<String> created = new CompletableFuture<>();
+		CompletableFuture<String> existing = inFlight.putIfAbsent(key, created);
+		if (existing != null) {
+			// フォロワーとして実行中の処理に相乗り
+			followers.increment();
+			return existing.copy();
+		}
+
+		// リーダーとして処理を開始
+		leaders.increment();
+		CompletableFuture<String> upstream;
+		try {
+			upstream = call.get();
+		} catch (RuntimeException e) {
+			upstream = CompletableFuture.failedFuture(e);
+		}
+		upstream.whenComplete((result, ex) -> {
+			// 完了を通知する前に登録を解除（後続のリクエストはキャッシュで応答）
+			inFlight.remove(key, created);
+			if (ex != null) {
+				created.completeExceptionally(ex);
+			} else {
+				created.complete(result);
+			}
+		});
+		return created.copy();
+	}
+
+	/**
+	 * 相乗りの統計情報を取得する
+	 *
+	 * @return 実際に処理を行った回数・相乗りした回数・現在実行中の件数
+	 */
+	public Stats stats() {
+		return new Stats(leaders.sum(), followers.sum(), inFlight.size());
+	}
+
+	/**
+	 * 相乗りの統計情報
+	 *
+	 * @param leaders   実際に処理を行った回数
+	 * @param followers 実行中の処理に相乗りした回数
+	 * @param inFlight  現在実行中の件数
+	 */
+	public record Stats(long leaders, long followers, int inFlight) {
+	}
+}
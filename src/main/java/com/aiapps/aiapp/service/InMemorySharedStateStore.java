@@ -0,0 +1,110 @@
+package com.aiapps.aiapp.service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * プロセス内のメモリに状態を保存するクラス（1台構成の既定）
+ * 期限切れの値は参照時と一定間隔の掃除で削除する
+ *
+ * @author AiApp
+ */
+@Component
+@ConditionalOnProperty(name = "aiapp.state.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySharedStateStore implements SharedStateStore {
+
+	// キーごとの値と期限
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	// 期限切れの値を削除するスレッド
+	private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "shared-state-sweeper");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param sweepInterval 期限切れの値を削除する間隔
+	 */
+	public InMemorySharedStateStore(@Value("${aiapp.state.sweep-interval:1m}") Duration sweepInterval) {
+		long intervalMillis = Math.max(1000, sweepInterval.toMillis());
+		sweeper.scheduleWithFixedDelay(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public byte[] get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.isExpired(System.nanoTime())) {
+			entries.remove(key, entry);
+			return null;
+		}
+		return entry.value();
+	}
+
+	@Override
+	public void put(String key, byte[] value, Duration ttl) {
+		entries.put(key, new Entry(value, System.nanoTime() + ttl.toNanos()));
+	}
+
+	@Override
+	public void delete(String key) {
+		entries.remove(key);
+	}
+
+	@Override
+	public boolean isShared() {
+		return false;
+	}
+
+	/**
+	 * 保存している件数を取得する
+	 *
+	 * @return 件数（期限切れで未削除のものを含む）
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * 期限切れの値を削除する
+	 */
+	void sweep() {
+		long now = System.nanoTime();
+		entries.values().removeIf(entry -> entry.isExpired(now));
+	}
+
+	/**
+	 * アプリケーション終了時に掃除のスレッドを停止する
+	 */
+	@PreDestroy
+	public void shutdown() {
+		sweeper.shutdownNow();
+	}
+
+	/**
+	 * 保存している値
+	 *
+	 * @param value     値
+	 * @param expiresAt 期限（System.nanoTime() 基準）
+	 */
+	private record Entry(byte[] value, long expiresAt) {
+
+		boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.aiapps.aiapp.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 直近の Gemini API 呼び出し時間を保持し、パーセンタイルを求めるクラス
+ * 固定長のリングバッファに記録し、パーセンタイルは一定件数ごとにまとめて再計算する
+ * ヘッジ（応答が遅い呼び出しの追加送信）を始めるまでの待ち時間の算出に使用
+ *
+ * @author AiApp
+ */
+final class LatencyTracker {
+
+	// 保持する件数
+	private static final int CAPACITY = 1024;
+	// パーセンタイルを再計算する間隔（記録件数）
+	private static final int RECOMPUTE_INTERVAL = 32;
+
+	// 求めるパーセンタイル（0.0～1.0）
+	private final double quantile;
+	// パーセンタイルを返すのに必要な最低件数
+	private final int minSamples;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// 呼び出し時間（ナノ秒）のリングバッファ
+	private final long[] samples = new long[CAPACITY];
+	// これまでの記録件数
+	private long count;
+	// 直近に計算したパーセンタイル（件数が足りない場合は-1）
+	private volatile long cachedNanos = -1;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param quantile   求めるパーセンタイル（0.0～1.0）
+	 * @param minSamples パーセンタイルを返すのに必要な最低件数
+	 */
+	LatencyTracker(double quantile, int minSamples) {
+		this.quantile = Math.min(1.0, Math.max(0.0, quantile));
+		this.minSamples = Math.max(1, Math.min(CAPACITY, minSamples));
+	}
+
+	/**
+	 * 呼び出し時間を記録する
+	 *
+	 * @param nanos 呼び出し時間（ナノ秒）
+	 */
+	void record(long nanos) {
+		lock.lock();
+		try {
+			samples[(int) (count % CAPACITY)] = nanos;
+			count++;
+			if (count >= minSamples && (count == minSamples || count % RECOMPUTE_INTERVAL == 0)) {
+				cachedNanos = compute();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 直近の呼び出し時間のパーセンタイルを返す
+	 *
+	 * @return パーセンタイル（ナノ秒、件数が足りない場合は-1）
+	 */
+	long percentileNanos() {
+		return cachedNanos;
+	}
+
+	/**
+	 * 指定した時間を超えた呼び出しが、その後さらに要した時間の平均を返す
+	 * ヘッジが先に応答した場合に、元の呼び出しを待っていれば要したであろう追加時間の推定に使用
+	 * （取り消した呼び出しは記録されないため、実際より小さめの推定になる）
+	 *
+	 * @param elapsedNanos 経過時間（ナノ秒）
+	 * @return 追加時間の平均（ナノ秒、該当する記録がない場合は0）
+	 */
+	long expectedExcessNanos(long elapsedNanos) {
+		lock.lock();
+		try {
+			int size = (int) Math.min(count, CAPACITY);
+			long sum = 0;
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (samples[i] > elapsedNanos) {
+					sum += samples[i] - elapsedNanos;
+					n++;
+				}
+			}
+			return n == 0 ? 0 : sum / n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 保持している記録からパーセンタイルを計算する（ロック取得中に呼び出すこと）
+	 *
+	 * @return パーセンタイル（ナノ秒）
+	 */
+	private long compute() {
+		int size = (int) Math.min(count, CAPACITY);
+		long[] sorted = Arrays.copyOf(samples, size);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(quantile * size) - 1;
+		return sorted[Math.max(0, Math.min(size - 1, index))];
+	}
+}
@@ -0,0 +1,279 @@
+package com.aiapps.aiapp.service;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gemini API を呼び出す前に、自明な入力をアプリ内で分類する前段の分類器
+ * 文字 1-gram / 2-gram を特徴量とした多項ナイーブベイズで、Gemini の回答から逐次学習する
+ * 確信度がしきい値を超えた場合のみカテゴリーを返し、それ以外は Gemini に委ねる
+ *
+ * 特徴量はハッシュで固定数のバケットに割り当てるため、学習量に関わらずメモリ使用量は一定
+ *
+ * @author AiApp
+ */
+@Component
+public class LocalPreClassifier {
+
+	// 特徴量ハッシュのバケット数（2のべき乗）
+	private static final int BUCKETS = 1 << 16;
+	private static final List<String> LABELS = AnalysisPrompts.LABELS;
+
+	// 前段分類で回答するかどうか（無効でも学習と一致率の計測は行う）
+	private final boolean enabled;
+	// 回答に必要な確信度（事後確率）
+	private final double threshold;
+	// 回答を始めるまでに必要な学習件数
+	private final long minSamples;
+	// 確信度が高くても Gemini に回して一致率を計測する割合
+	private final double auditRate;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	// カテゴリーごとの特徴量の出現回数
+	private final int[][] featureCounts = new int[LABELS.size()][BUCKETS];
+	// カテゴリーごとの特徴量の総出現回数
+	private final long[] featureTotals = new long[LABELS.size()];
+	// カテゴリーごとの学習件数
+	private final long[] docCounts = new long[LABELS.size()];
+	// 全学習件数
+	private long totalDocs;
+
+	// 統計用カウンタ
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder fallthroughs = new LongAdder();
+	private final LongAdder audits = new LongAdder();
+	private final LongAdder agreements = new LongAdder();
+	private final LongAdder disagreements = new LongAdder();
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param enabled    前段分類で回答するかどうか
+	 * @param threshold  回答に必要な確信度
+	 * @param minSamples 回答を始めるまでに必要な学習件数
+	 * @param auditRate  確信度が高くても Gemini に回して一致率を計測する割合
+	 */
+	public LocalPreClassifier(
+			@Value("${aiapp.preclassifier.enabled:false}") boolean enabled,
+			@Value("${aiapp.preclassifier.threshold:0.95}") double threshold,
+			@Value("${aiapp.preclassifier.min-samples:500}") long minSamples,
+			@Value("${aiapp.preclassifier.audit-rate:0.05}") double auditRate) {
+		this.enabled = enabled;
+		this.threshold = threshold;
+		this.minSamples = minSamples;
+		this.auditRate = auditRate;
+	}
+
+	/**
+	 * 確信度がしきい値を超える場合にカテゴリーを返す
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @return 分類したカテゴリー（Gemini に委ねる場合はnull）
+	 */
+	public String classify(String normalizedInput) {
+		if (!enabled) {
+			return null;
+		}
+		Prediction prediction = predict(normalizedInput);
+		if (prediction == null || prediction.confidence() < threshold) {
+			fallthroughs.increment();
+			return null;
+		}
+		// 一部は Gemini に回して一致率を計測し続ける
+		if (ThreadLocalRandom.current().nextDouble() < auditRate) {
+			audits.increment();
+			return null;
+		}
+		hits.increment();
+		return prediction.label();
+	}
+
+	/**
+	 * Gemini の回答を受け取り、一致率を計測したうえで学習する
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @param label           Gemini が回答したカテゴリー
+	 */
+	public void observe(String normalizedInput, String label) {
+		int labelIndex = LABELS.indexOf(label);
+		if (labelIndex < 0) {
+			// カテゴリー一覧にない回答は学習しない
+			return;
+		}
+
+		// 学習前に予測し、確信度が高い予測のみ一致率に計上
+		Prediction prediction = predict(normalizedInput);
+		if (prediction != null && prediction.confidence() >= threshold) {
+			if (prediction.label().equals(label)) {
+				agreements.increment();
+			} else {
+				disagreements.increment();
+			}
+		}
+
+		learn(normalizedInput, labelIndex);
+	}
+
+	/**
+	 * 過去の分類結果を学習する（一致率には計上しない）
+	 * 起動時に永続化された分類結果から学習し直す場合に使用
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @param label           分類されたカテゴリー
+	 */
+	public void learn(String normalizedInput, String label) {
+		int labelIndex = LABELS.indexOf(label);
+		if (labelIndex >= 0) {
+			learn(normalizedInput, labelIndex);
+		}
+	}
+
+	/**
+	 * 入力の特徴量をカテゴリーの出現回数に加算する
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @param labelIndex      カテゴリーの番号
+	 */
+	private void learn(String normalizedInput, int labelIndex) {
+		int[] features = features(normalizedInput);
+		lock.writeLock().lock();
+		try {
+			int[] counts = featureCounts[labelIndex];
+			for (int feature : features) {
+				// オーバーフローする前に頭打ちにする
+				if (counts[feature] < Integer.MAX_VALUE) {
+					counts[feature]++;
+				}
+			}
+			featureTotals[labelIndex] += features.length;
+			docCounts[labelIndex]++;
+			totalDocs++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 入力のカテゴリーと確信度を予測する
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @return 最も確率の高いカテゴリーと事後確率（学習件数が不足している場合はnull）
+	 */
+	Prediction predict(String normalizedInput) {
+		int[] features = features(normalizedInput);
+		if (features.length == 0) {
+			return null;
+		}
+		double[] scores = new double[LABELS.size()];
+
+		lock.readLock().lock();
+		try {
+			if (totalDocs < minSamples) {
+				return null;
+			}
+			for (int c = 0; c < scores.length; c++) {
+				if (docCounts[c] == 0) {
+					scores[c] = Double.NEGATIVE_INFINITY;
+					continue;
+				}
+				// 対数事前確率 + ラプラス平滑化した対数尤度
+				double score = Math.log((double) docCounts[c] / totalDocs);
+				double denominator = Math.log((double) featureTotals[c] + BUCKETS);
+				for (int feature : features) {
+					score += Math.log(featureCounts[c][feature] + 1.0) - denominator;
+				}
+				scores[c] = score;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		// 対数スコアを正規化して事後確率を求める
+		int best = 0;
+		for (int c = 1; c < scores.length; c++) {
+			if (scores[c] > scores[best]) {
+				best = c;
+			}
+		}
+		double sum = 0;
+		for (double score : scores) {
+			sum += Math.exp(score - scores[best]);
+		}
+		return new Prediction(LABELS.get(best), 1.0 / sum);
+	}
+
+	/**
+	 * 入力文字列から特徴量（文字 1-gram と 2-gram のハッシュ値）を抽出する
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @return 特徴量のバケット番号の配列
+	 */
+	private static int[] features(String normalizedInput) {
+		int[] codePoints = normalizedInput.codePoints().filter(cp -> !Character.isWhitespace(cp)).toArray();
+		if (codePoints.length == 0) {
+			return new int[0];
+		}
+		int[] features = new int[codePoints.length * 2 - 1];
+		int n = 0;
+		for (int i = 0; i < codePoints.length; i++) {
+			features[n++] = bucket(codePoints[i] * 0x9E3779B1);
+			if (i + 1 < codePoints.length) {
+				features[n++] = bucket(codePoints[i] * 31 + codePoints[i + 1] * 0x85EBCA6B);
+			}
+		}
+		return features;
+	}
+
+	/**
+	 * ハッシュ値をバケット番号に変換する
+	 *
+	 * @param hash ハッシュ値
+	 * @return バケット番号
+	 */
+	private static int bucket(int hash) {
+		return (hash ^ (hash >>> 16)) & (BUCKETS - 1);
+	}
+
+	/**
+	 * 前段分類の統計情報を取得する
+	 *
+	 * @return 回答数・Gemini に委ねた件数・一致率計測のため委ねた件数・一致件数・不一致件数・学習件数
+	 */
+	public Stats stats() {
+		lock.readLock().lock();
+		try {
+			return new Stats(hits.sum(), fallthroughs.sum(), audits.sum(), agreements.sum(), disagreements.sum(),
+					totalDocs);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 予測結果
+	 *
+	 * @param label      最も確率の高いカテゴリー
+	 * @param confidence 事後確率
+	 */
+	record Prediction(String label, double confidence) {
+	}
+
+	/**
+	 * 前段分類の統計情報
+	 *
+	 * @param hits          前段分類で回答した件数
+	 * @param fallthroughs  確信度不足で Gemini に委ねた件数
+	 * @param audits        一致率計測のため Gemini に委ねた件数
+	 * @param agreements    確信度の高い予測が Gemini の回答と一致した件数
+	 * @param disagreements 確信度の高い予測が Gemini の回答と一致しなかった件数
+	 * @param trainedSamples 学習件数
+	 */
+	public record Stats(long hits, long fallthroughs, long audits, long agreements, long disagreements,
+			long trainedSamples) {
+	}
+}
@@ -0,0 +1,331 @@
+package com.aiapps.aiapp.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 過去に分類した入力と「ほぼ同じ」入力を見つけ、そのカテゴリーを再利用するための索引
+ * 句読点・助詞・一部の語句だけが異なるニュース見出しの表記ゆれなど、完全一致のキャッシュでは拾えない入力を対象とする
+ *
+ * 入力の文字 n-gram（シングル）から 64 ビットの SimHash を求め、ハミング距離が小さいものを類似とみなす
+ * 64 ビットを (許容距離 + 1) 個のバンドに分割し、バンドごとのハッシュ表で候補を絞り込む
+ * 許容距離以内の指紋は少なくとも1つのバンドが完全に一致するため（鳩の巣原理）、候補の取りこぼしはない
+ *
+ * 指紋・カテゴリー・ハッシュ表の連結はすべてプリミティブ配列で保持し、件数の上限に達した場合は古い順に上書きする
+ *
+ * @author AiApp
+ */
+@Component
+public class NearDuplicateIndex {
+
+	private static final List<String> LABELS = AnalysisPrompts.LABELS;
+	private static final int FINGERPRINT_BITS = 64;
+	// 指紋を求められない（短すぎる）入力を表す値
+	private static final long NO_FINGERPRINT = 0L;
+
+	// 類似入力の再利用有効フラグ
+	private final boolean enabled;
+	// 類似とみなすハミング距離の上限
+	private final int maxDistance;
+	// シングルの文字数
+	private final int shingleSize;
+	// 指紋を求めるのに必要なシングルの数
+	private final int minShingles;
+	// 最大保持件数
+	private final int capacity;
+
+	// バンドの開始ビット位置・ビット幅・ハッシュ表のマスク
+	private final int[] bandShifts;
+	private final long[] bandMasks;
+	private final int tableMask;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// 位置ごとの指紋とカテゴリーの番号（-1は空き）
+	private final long[] fingerprints;
+	private final byte[] labels;
+	// バンドごとのハッシュ表（値は位置+1、0は空）と、同じバケットの次の位置（位置+1、0は終端）
+	private final int[][] heads;
+	private final int[][] next;
+	// 次に書き込む位置と保持件数
+	private int cursor;
+	private int size;
+
+	// 統計用カウンタ
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder nearHits = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder lookupNanos = new LongAdder();
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param enabled     類似入力の再利用を有効にするかどうか
+	 * @param threshold   類似とみなす類似度（1 - ハミング距離 / 64）
+	 * @param capacity    最大保持件数
+	 * @param shingleSize シングルの文字数
+	 * @param minShingles 指紋を求めるのに必要なシングルの数（これより短い入力は対象外）
+	 */
+	public NearDuplicateIndex(
+			@Value("${aiapp.near.enabled:true}") boolean enabled,
+			@Value("${aiapp.near.threshold:0.9}") double threshold,
+			@Value("${aiapp.near.capacity:50000}") int capacity,
+			@Value("${aiapp.near.shingle-size:3}") int shingleSize,
+			@Value("${aiapp.near.min-shingles:4}") int minShingles) {
+		this.enabled = enabled;
+		this.maxDistance = Math.max(0, Math.min(FINGERPRINT_BITS / 2,
+				(int) Math.floor((1.0 - threshold) * FINGERPRINT_BITS)));
+		this.shingleSize = Math.max(1, shingleSize);
+		this.minShingles = Math.max(1, minShingles);
+		this.capacity = Math.max(1, capacity);
+
+		// 64 ビットを (許容距離 + 1) 個のバンドに分割（余りは先頭のバンドに1ビットずつ配分）
+		int bands = maxDistance + 1;
+		this.bandShifts = new int[bands];
+		this.bandMasks = new long[bands];
+		int shift = 0;
+		int widest = 0;
+		for (int b = 0; b < bands; b++) {
+			int width = FINGERPRINT_BITS / bands + (b < FINGERPRINT_BITS % bands ? 1 : 0);
+			bandShifts[b] = shift;
+			bandMasks[b] = width == FINGERPRINT_BITS ? -1L : (1L << width) - 1;
+			shift += width;
+			widest = Math.max(widest, width);
+		}
+		// バケット数はバンドの取り得る値の数と保持件数の小さい方（2のべき乗）
+		int tableSize = Integer.highestOneBit(Math.max(1, Math.min(this.capacity, 1 << Math.min(widest, 30))));
+		this.tableMask = tableSize - 1;
+
+		this.fingerprints = new long[this.capacity];
+		this.labels = new byte[this.capacity];
+		Arrays.fill(labels, (byte) -1);
+		this.heads = new int[bands][tableSize];
+		this.next = new int[bands][this.capacity];
+	}
+
+	/**
+	 * 類似する過去の入力のカテゴリーを取得する
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @return 最も近い入力のカテゴリー（類似する入力がない場合はnull）
+	 */
+	public String lookup(String normalizedInput) {
+		if (!enabled) {
+			return null;
+		}
+		long start = System.nanoTime();
+		long fingerprint = fingerprint(normalizedInput);
+		int found = -1;
+		if (fingerprint != NO_FINGERPRINT) {
+			lock.lock();
+			try {
+				found = nearestLocked(fingerprint, maxDistance);
+			} finally {
+				lock.unlock();
+			}
+		}
+		String label = found >= 0 ? LABELS.get(found) : null;
+		lookups.increment();
+		if (label != null) {
+			nearHits.increment();
+		}
+		lookupNanos.add(System.nanoTime() - start);
+		return label;
+	}
+
+	/**
+	 * 分類結果を索引に登録する
+	 * 指紋が同じ入力が登録済みの場合は、新しいカテゴリーで上書きする
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @param label           分類したカテゴリー（カテゴリー一覧にない値は登録しない）
+	 */
+	public void observe(String normalizedInput, String label) {
+		int labelIndex = LABELS.indexOf(label);
+		if (!enabled || labelIndex < 0) {
+			return;
+		}
+		long fingerprint = fingerprint(normalizedInput);
+		if (fingerprint == NO_FINGERPRINT) {
+			return;
+		}
+		lock.lock();
+		try {
+			int existing = slotOfLocked(fingerprint);
+			if (existing >= 0) {
+				labels[existing] = (byte) labelIndex;
+				return;
+			}
+			int slot = cursor;
+			if (labels[slot] >= 0) {
+				// 最も古いものを上書きする
+				unlinkLocked(slot);
+				evictions.increment();
+			} else {
+				size++;
+			}
+			fingerprints[slot] = fingerprint;
+			labels[slot] = (byte) labelIndex;
+			for (int b = 0; b < heads.length; b++) {
+				int bucket = bucketOf(fingerprint, b);
+				next[b][slot] = heads[b][bucket];
+				heads[b][bucket] = slot + 1;
+			}
+			cursor = (slot + 1) % capacity;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 索引の統計情報を取得する
+	 *
+	 * @return 件数・検索件数・類似ヒット数・追い出し数・検索時間の合計
+	 */
+	public Stats stats() {
+		lock.lock();
+		try {
+			return new Stats(size, lookups.sum(), nearHits.sum(), evictions.sum(), lookupNanos.sum());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 許容距離以内で最も近い指紋のカテゴリーを探す
+	 *
+	 * @param fingerprint 検索する指紋
+	 * @param distance    許容するハミング距離
+	 * @return カテゴリーの番号（見つからない場合は-1）
+	 */
+	private int nearestLocked(long fingerprint, int distance) {
+		int best = -1;
+		int bestDistance = distance + 1;
+		for (int b = 0; b < heads.length && bestDistance > 0; b++) {
+			for (int p = heads[b][bucketOf(fingerprint, b)]; p != 0; p = next[b][p - 1]) {
+				int d = Long.bitCount(fingerprint ^ fingerprints[p - 1]);
+				if (d < bestDistance) {
+					best = p - 1;
+					bestDistance = d;
+					if (d == 0) {
+						break;
+					}
+				}
+			}
+		}
+		return best >= 0 ? labels[best] : -1;
+	}
+
+	/**
+	 * 同じ指紋が登録されている位置を探す
+	 *
+	 * @param fingerprint 指紋
+	 * @return 位置（登録されていない場合は-1）
+	 */
+	private int slotOfLocked(long fingerprint) {
+		for (int p = heads[0][bucketOf(fingerprint, 0)]; p != 0; p = next[0][p - 1]) {
+			if (fingerprints[p - 1] == fingerprint) {
+				return p - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 位置をすべてのバンドのハッシュ表から外す
+	 *
+	 * @param slot 位置
+	 */
+	private void unlinkLocked(int slot) {
+		long fingerprint = fingerprints[slot];
+		for (int b = 0; b < heads.length; b++) {
+			int bucket = bucketOf(fingerprint, b);
+			int previous = 0;
+			for (int p = heads[b][bucket]; p != 0; previous = p, p = next[b][p - 1]) {
+				if (p - 1 == slot) {
+					if (previous == 0) {
+						heads[b][bucket] = next[b][slot];
+					} else {
+						next[b][previous - 1] = next[b][slot];
+					}
+					break;
+				}
+			}
+			next[b][slot] = 0;
+		}
+	}
+
+	/**
+	 * 指紋のバンドの値からハッシュ表のバケットを求める
+	 */
+	private int bucketOf(long fingerprint, int band) {
+		long value = (fingerprint >>> bandShifts[band]) & bandMasks[band];
+		return (int) mix(value + band) & tableMask;
+	}
+
+	/**
+	 * 入力の SimHash（64 ビット）を求める
+	 * 文字と数字以外（空白・句読点・記号）を除いた文字列から、連続する shingleSize 文字をシングルとする
+	 *
+	 * @param normalizedInput 正規化済みの入力文字列
+	 * @return 指紋（シングルが足りない場合は NO_FINGERPRINT）
+	 */
+	long fingerprint(String normalizedInput) {
+		if (normalizedInput == null) {
+			return NO_FINGERPRINT;
+		}
+		int[] codePoints = normalizedInput.codePoints().filter(Character::isLetterOrDigit).toArray();
+		int shingles = codePoints.length - shingleSize + 1;
+		if (shingles < minShingles) {
+			return NO_FINGERPRINT;
+		}
+		int[] weights = new int[FINGERPRINT_BITS];
+		for (int i = 0; i < shingles; i++) {
+			// FNV-1a でシングルをハッシュし、ビットを拡散する
+			long hash = 0xcbf29ce484222325L;
+			for (int j = 0; j < shingleSize; j++) {
+				hash = (hash ^ codePoints[i + j]) * 0x100000001b3L;
+			}
+			hash = mix(hash);
+			for (int bit = 0; bit < FINGERPRINT_BITS; bit++) {
+				weights[bit] += ((hash >>> bit) & 1L) != 0 ? 1 : -1;
+			}
+		}
+		long fingerprint = 0L;
+		for (int bit = 0; bit < FINGERPRINT_BITS; bit++) {
+			if (weights[bit] > 0) {
+				fingerprint |= 1L << bit;
+			}
+		}
+		// 0 は「指紋なし」を表すため、まれに 0 になった場合は最下位ビットを立てる
+		return fingerprint != NO_FINGERPRINT ? fingerprint : 1L;
+	}
+
+	/**
+	 * 64 ビットのハッシュのビットを拡散する（MurmurHash3 の fmix64）
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	/**
+	 * 類似入力の索引の統計情報
+	 *
+	 * @param size        保持件数
+	 * @param lookups     検索件数
+	 * @param nearHits    類似する入力が見つかった件数
+	 * @param evictions   上限を超えて追い出した件数
+	 * @param lookupNanos 検索時間の合計（ナノ秒）
+	 */
+	public record Stats(int size, long lookups, long nearHits, long evictions, long lookupNanos) {
+	}
+}
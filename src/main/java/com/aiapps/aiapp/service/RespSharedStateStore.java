@@ -0,0 +1,340 @@
+package com.aiapps.aiapp.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Redis 互換のサーバーに状態を保存するクラス（複数台構成）
+ * RESP2 プロトコルで GET / SET PX / DEL のみを使用するため、Redis・Valkey・KeyDB などで動作する
+ *
+ * 接続はプールして再利用し、同時に使用する接続数を上限で制限する
+ * 再利用した接続が切れていた場合（サーバーの再起動・アイドル切断など）は、新しい接続で1回だけ再実行する
+ * 使用するコマンドはすべて冪等のため、再実行しても結果は変わらない
+ *
+ * @author AiApp
+ */
+@Component
+@ConditionalOnProperty(name = "aiapp.state.store", havingValue = "redis")
+public class RespSharedStateStore implements SharedStateStore {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(RespSharedStateStore.class);
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	// 接続先
+	private final String host;
+	private final int port;
+	// 認証のパスワード（未設定の場合は認証しない）
+	private final String password;
+	// データベース番号
+	private final int database;
+	// 接続・応答のタイムアウト
+	private final int timeoutMillis;
+	// すべてのキーに付ける接頭辞（同じサーバーを他の用途と共有する場合の名前空間）
+	private final String keyPrefix;
+
+	// 同時に使用する接続数の上限
+	private final Semaphore permits;
+	// 使用していない接続
+	private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param host      接続先のホスト名
+	 * @param port      接続先のポート番号
+	 * @param password  認証のパスワード
+	 * @param database  データベース番号
+	 * @param poolSize  同時に使用する接続数の上限
+	 * @param timeout   接続・応答のタイムアウト
+	 * @param keyPrefix キーの接頭辞
+	 */
+	public RespSharedStateStore(
+			@Value("${aiapp.state.redis.host:localhost}") String host,
+			@Value("${aiapp.state.redis.port:6379}") int port,
+			@Value("${aiapp.state.redis.password:}") String password,
+			@Value("${aiapp.state.redis.database:0}") int database,
+			@Value("${aiapp.state.redis.pool-size:16}") int poolSize,
+			@Value("${aiapp.state.redis.timeout:2s}") Duration timeout,
+			@Value("${aiapp.state.redis.key-prefix:aiapp:}") String keyPrefix) {
+		this.host = host;
+		this.port = port;
+		this.password = password;
+		this.database = database;
+		this.timeoutMillis = (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeout.toMillis()));
+		this.keyPrefix = keyPrefix;
+		this.permits = new Semaphore(Math.max(1, poolSize));
+	}
+
+	/**
+	 * 起動完了後、接続を確認する（接続できなくても起動は継続し、利用時に再接続する）
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void ping() {
+		try {
+			execute(bytes("PING"));
+			logger.info("共有状態の保存先に接続しました: {}:{}", host, port);
+		} catch (UncheckedIOException e) {
+			logger.warn("共有状態の保存先に接続できません: {}:{} ({})", host, port, e.getMessage());
+		}
+	}
+
+	@Override
+	public byte[] get(String key) {
+		return (byte[]) execute(bytes("GET"), key(key));
+	}
+
+	@Override
+	public void put(String key, byte[] value, Duration ttl) {
+		execute(bytes("SET"), key(key), value, bytes("PX"), bytes(String.valueOf(Math.max(1, ttl.toMillis()))));
+	}
+
+	@Override
+	public void delete(String key) {
+		execute(bytes("DEL"), key(key));
+	}
+
+	@Override
+	public boolean isShared() {
+		return true;
+	}
+
+	/**
+	 * コマンドを実行し、応答を返す
+	 *
+	 * @param args コマンドと引数
+	 * @return 応答（文字列は String、整数は Long、バルク文字列は byte[]、配列は List、null応答は null）
+	 * @throws UncheckedIOException 接続できない場合、またはサーバーがエラーを返した場合
+	 */
+	Object execute(byte[]... args) {
+		try {
+			if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new UncheckedIOException(new IOException("共有状態の保存先の接続数が上限に達しています"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new IOException("共有状態の保存先の接続待ちが中断されました", e));
+		}
+		try {
+			Connection reused = idle.pollFirst();
+			if (reused != null) {
+				try {
+					return call(reused, args);
+				} catch (ServerErrorException e) {
+					throw e;
+				} catch (IOException e) {
+					// 再利用した接続が切れていた場合は新しい接続で再実行
+					logger.debug("共有状態の保存先への接続を作り直します: {}", e.getMessage());
+				}
+			}
+			return call(connect(), args);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * 接続でコマンドを実行し、成功した場合は接続をプールに戻す
+	 *
+	 * @param connection 接続
+	 * @param args       コマンドと引数
+	 * @return 応答
+	 * @throws IOException 通信に失敗した場合（接続は閉じる）
+	 */
+	private Object call(Connection connection, byte[]... args) throws IOException {
+		try {
+			Object reply = connection.call(args);
+			idle.offerFirst(connection);
+			return reply;
+		} catch (ServerErrorException e) {
+			// エラー応答の後も接続は使用できる
+			idle.offerFirst(connection);
+			throw e;
+		} catch (IOException | RuntimeException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 新しい接続を作成し、認証とデータベースの選択を行う
+	 *
+	 * @return 接続
+	 * @throws IOException 接続・認証に失敗した場合
+	 */
+	private Connection connect() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+			socket.setSoTimeout(timeoutMillis);
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			Connection connection = new Connection(socket);
+			if (password != null && !password.isEmpty()) {
+				connection.call(bytes("AUTH"), bytes(password));
+			}
+			if (database != 0) {
+				connection.call(bytes("SELECT"), bytes(String.valueOf(database)));
+			}
+			return connection;
+		} catch (IOException | RuntimeException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * アプリケーション終了時にプールの接続を閉じる
+	 */
+	@PreDestroy
+	public void shutdown() {
+		Connection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			connection.close();
+		}
+	}
+
+	private byte[] key(String key) {
+		return bytes(keyPrefix + key);
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * サーバーが返したエラー応答（接続は引き続き使用できる）
+	 */
+	static final class ServerErrorException extends UncheckedIOException {
+
+		private static final long serialVersionUID = 1L;
+
+		ServerErrorException(String message) {
+			super(new IOException(message));
+		}
+	}
+
+	/**
+	 * サーバーへの1本の接続（同時に1つのスレッドからのみ使用する）
+	 */
+	private static final class Connection implements Closeable {
+
+		private final Socket socket;
+		private final InputStream in;
+		private final OutputStream out;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+		/**
+		 * コマンドを RESP の配列として送信し、応答を読み込む
+		 */
+		Object call(byte[]... args) throws IOException {
+			out.write('*');
+			out.write(bytes(String.valueOf(args.length)));
+			out.write(CRLF);
+			for (byte[] arg : args) {
+				out.write('$');
+				out.write(bytes(String.valueOf(arg.length)));
+				out.write(CRLF);
+				out.write(arg);
+				out.write(CRLF);
+			}
+			out.flush();
+			return readReply();
+		}
+
+		private Object readReply() throws IOException {
+			int type = in.read();
+			switch (type) {
+			case '+':
+				return readLine();
+			case '-':
+				throw new ServerErrorException(readLine());
+			case ':':
+				return Long.parseLong(readLine());
+			case '$': {
+				int length = Integer.parseInt(readLine());
+				if (length < 0) {
+					return null;
+				}
+				byte[] value = in.readNBytes(length);
+				if (value.length < length || in.read() != '\r' || in.read() != '\n') {
+					throw new EOFException("応答が途中で切れています");
+				}
+				return value;
+			}
+			case '*': {
+				int count = Integer.parseInt(readLine());
+				if (count < 0) {
+					return null;
+				}
+				List<Object> values = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) {
+					values.add(readReply());
+				}
+				return values;
+			}
+			case -1:
+				throw new EOFException("接続が切断されました");
+			default:
+				throw new IOException("不正な応答です: " + (char) type);
+			}
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\r') {
+				if (c == -1) {
+					throw new EOFException("接続が切断されました");
+				}
+				line.append((char) c);
+			}
+			if (in.read() != '\n') {
+				throw new IOException("不正な応答です");
+			}
+			return line.toString();
+		}
+
+		@Override
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				logger.debug("共有状態の保存先への接続を閉じられませんでした: {}", e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.aiapps.aiapp.service;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 複数台のアプリケーションで共有する分析結果キャッシュ
+ * インメモリキャッシュ（AnalysisResultCache）で見つからない場合に参照し、他の台が Gemini API で分析した結果を再利用する
+ * 共有状態の保存先がプロセス内のメモリの場合は、インメモリキャッシュと重複するため使用しない
+ *
+ * 保存先に接続できない場合は見つからなかったものとして扱い、分析処理は継続する
+ *
+ * @author AiApp
+ */
+@Component
+public class SharedResultCache {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(SharedResultCache.class);
+
+	// 保存先のキーの接頭辞
+	private static final String KEY_PREFIX = "result:";
+
+	// 共有状態の保存先
+	private final SharedStateStore store;
+	// 共有キャッシュ有効フラグ
+	private final boolean enabled;
+	// エントリの有効期限
+	private final Duration ttl;
+
+	// 統計用カウンタ
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+
+	/**
+	 * コンストラクタ：共有状態の保存先と application.properties の設定値を注入
+	 *
+	 * @param store   注入する共有状態の保存先
+	 * @param enabled 共有キャッシュを有効にするかどうか
+	 * @param ttl     エントリの有効期限
+	 */
+	public SharedResultCache(SharedStateStore store,
+			@Value("${aiapp.state.results.enabled:true}") boolean enabled,
+			@Value("${aiapp.cache.ttl:24h}") Duration ttl) {
+		this.store = store;
+		this.enabled = enabled && store.isShared();
+		this.ttl = ttl;
+	}
+
+	/**
+	 * 共有キャッシュから分析結果を取得する
+	 *
+	 * @param key 正規化済みの入力文字列
+	 * @return 分析結果（存在しない場合や保存先に接続できない場合はnull）
+	 */
+	public String get(String key) {
+		if (!enabled) {
+			return null;
+		}
+		try {
+			byte[] value = store.get(KEY_PREFIX + key);
+			if (value == null) {
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			return new String(value, StandardCharsets.UTF_8);
+		} catch (UncheckedIOException e) {
+			errors.increment();
+			logger.warn("共有キャッシュを参照できませんでした: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * 分析結果を共有キャッシュに登録する
+	 *
+	 * @param key    正規化済みの入力文字列
+	 * @param result 分析結果
+	 */
+	public void put(String key, String result) {
+		if (!enabled) {
+			return;
+		}
+		try {
+			store.put(KEY_PREFIX + key, result.getBytes(StandardCharsets.UTF_8), ttl);
+		} catch (UncheckedIOException e) {
+			errors.increment();
+			logger.warn("共有キャッシュに登録できませんでした: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * 共有キャッシュの統計情報を取得する
+	 *
+	 * @return ヒット数・ミス数・接続エラー数
+	 */
+	public Stats stats() {
+		return new Stats(enabled, hits.sum(), misses.sum(), errors.sum());
+	}
+
+	/**
+	 * 共有キャッシュの統計情報
+	 *
+	 * @param enabled 共有キャッシュが有効かどうか
+	 * @param hits    ヒット数
+	 * @param misses  ミス数
+	 * @param errors  保存先に接続できなかった回数
+	 */
+	public record Stats(boolean enabled, long hits, long misses, long errors) {
+	}
+}
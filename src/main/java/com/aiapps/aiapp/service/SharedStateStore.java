@@ -0,0 +1,52 @@
+package com.aiapps.aiapp.service;
+
+import java.time.Duration;
+
+/**
+ * 複数台のアプリケーションで共有する状態の保存先（SPI）
+ * セッション、OAuth2 の認可済みクライアント、分析結果をキーと値（バイト列）で保存する
+ * 実装は application.properties の aiapp.state.store で選択する
+ *
+ * <pre>
+ * memory : プロセス内のメモリに保存（1台構成の既定）
+ * redis  : Redis 互換のサーバーに保存（複数台構成）
+ * </pre>
+ *
+ * 保存先に接続できない場合は UncheckedIOException をスローする
+ *
+ * @author AiApp
+ */
+public interface SharedStateStore {
+
+	/**
+	 * 値を取得する
+	 *
+	 * @param key キー
+	 * @return 値（存在しない場合や期限切れの場合はnull）
+	 */
+	byte[] get(String key);
+
+	/**
+	 * 値を有効期間付きで保存する（既存の値は上書き）
+	 *
+	 * @param key   キー
+	 * @param value 値
+	 * @param ttl   有効期間
+	 */
+	void put(String key, byte[] value, Duration ttl);
+
+	/**
+	 * 値を削除する
+	 *
+	 * @param key キー
+	 */
+	void delete(String key);
+
+	/**
+	 * 他のアプリケーションと共有される保存先かどうか
+	 * プロセス内の保存先の場合は、分析結果のキャッシュなどで二重に保持しないようにする
+	 *
+	 * @return 共有される保存先の場合はtrue
+	 */
+	boolean isShared();
+}
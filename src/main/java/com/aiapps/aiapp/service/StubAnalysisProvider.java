@@ -0,0 +1,166 @@
+package com.aiapps.aiapp.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.aiapps.aiapp.exception.UpstreamApiException;
+
+/**
+ * 負荷試験用のローカルスタブ（外部APIを呼び出さないAI分析の実行先）
+ * 入力文字列のハッシュ値から決定的にカテゴリーを返し、
+ * 応答時間は対数正規分布（中央値と99パーセンタイルで指定）、失敗は指定した割合で発生させる
+ * aiapp.provider=stub の場合に使用される
+ *
+ * 同時実行制御・再試行は Gemini API と同じく {@link UpstreamCallGuard} を通すため、
+ * コントローラーから呼び出し保護までを含めた容量試験をオフラインで行える
+ *
+ * @author AiApp
+ */
+@Component
+@ConditionalOnProperty(name = "aiapp.provider", havingValue = "stub")
+public class StubAnalysisProvider implements AnalysisProvider {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(StubAnalysisProvider.class);
+
+	/** スタブのモデル名 */
+	public static final String MODEL = "local-stub";
+
+	// 標準正規分布の99パーセンタイル
+	private static final double Z_99 = 2.326;
+
+	// 同時実行制御と再試行
+	private final UpstreamCallGuard guard;
+	// メトリクスの記録
+	private final AnalysisMetrics metrics;
+	// 応答時間の中央値（ミリ秒）
+	private final double medianMillis;
+	// 応答時間の対数の標準偏差
+	private final double sigma;
+	// 失敗させる割合
+	private final double errorRate;
+	// 失敗時に返すステータスコード
+	private final int errorStatus;
+	// 応答時間と失敗の乱数（シードを指定すると再現可能）
+	private final Random random;
+
+	/**
+	 * コンストラクタ：呼び出し保護、メトリクスの記録と application.properties の設定値を注入
+	 *
+	 * @param guard         注入する呼び出し保護
+	 * @param metrics       注入するメトリクスの記録
+	 * @param latencyMedian 応答時間の中央値
+	 * @param latencyP99    応答時間の99パーセンタイル
+	 * @param errorRate     失敗させる割合（0.0～1.0）
+	 * @param errorStatus   失敗時に返すステータスコード
+	 * @param seed          乱数のシード
+	 */
+	public StubAnalysisProvider(UpstreamCallGuard guard, AnalysisMetrics metrics,
+			@Value("${aiapp.stub.latency-median:300ms}") Duration latencyMedian,
+			@Value("${aiapp.stub.latency-p99:1500ms}") Duration latencyP99,
+			@Value("${aiapp.stub.error-rate:0.0}") double errorRate,
+			@Value("${aiapp.stub.error-status:503}") int errorStatus,
+			@Value("${aiapp.stub.seed:42}") long seed) {
+		this.guard = guard;
+		this.metrics = metrics;
+		this.medianMillis = Math.max(0, latencyMedian.toMillis());
+		double ratio = Math.max(1.0, (double) latencyP99.toMillis() / Math.max(1, latencyMedian.toMillis()));
+		this.sigma = Math.log(ratio) / Z_99;
+		this.errorRate = errorRate;
+		this.errorStatus = errorStatus;
+		this.random = new Random(seed);
+		logger.warn("ローカルスタブでAI分析を行います（外部APIは呼び出しません）。中央値: {}, 99%: {}, 失敗率: {}",
+				latencyMedian, latencyP99, errorRate);
+	}
+
+	@Override
+	public String model() {
+		return MODEL;
+	}
+
+	@Override
+	public CompletableFuture<String> generateContentAsync(String prompt, Deadline deadline) {
+		return guard.execute(() -> respond(prompt), deadline, true);
+	}
+
+	@Override
+	public CompletableFuture<String> streamGenerateContentAsync(String prompt, Deadline deadline,
+			Consumer<String> onChunk) {
+		return guard.execute(() -> respond(prompt).thenApply(text -> {
+			// 1文字ずつ断片として通知
+			text.codePoints().forEach(cp -> onChunk.accept(Character.toString(cp)));
+			return text;
+		}), deadline, false);
+	}
+
+	/**
+	 * 応答時間の経過後に応答を返す（スレッドは待機させない）
+	 * 時間切れやヘッジで先に結果が確定した場合は、通信を中断した場合と同じく応答を記録しない
+	 *
+	 * @param prompt 受け取ったプロンプト
+	 * @return 生成テキストを受け取るFuture
+	 */
+	private CompletableFuture<String> respond(String prompt) {
+		long delayMillis = Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+		boolean fail = random.nextDouble() < errorRate;
+		long start = System.nanoTime();
+
+		CompletableFuture<String> future = new CompletableFuture<>();
+		CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+			if (future.isDone()) {
+				return;
+			}
+			metrics.recordUpstream(System.nanoTime() - start, fail ? errorStatus : 200);
+			if (fail) {
+				future.completeExceptionally(new UpstreamApiException("APIエラー : response.statusCode()= "
+						+ errorStatus + ", response.body()= (stub)", errorStatus, null));
+			} else {
+				future.complete(reply(AnalysisPrompts.inputsOf(prompt)));
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * 入力ごとに決定的なカテゴリーを選び、Gemini と同じ形式の応答を作る
+	 *
+	 * @param inputs 入力文字列の一覧
+	 * @return 単一入力の場合はカテゴリー、複数の場合は "<番号>. <カテゴリー>" の行
+	 */
+	static String reply(List<String> inputs) {
+		if (inputs.size() == 1) {
+			return labelOf(inputs.get(0));
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < inputs.size(); i++) {
+			sb.append(i + 1).append(". ").append(labelOf(inputs.get(i))).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 入力文字列のハッシュ値からカテゴリーを選ぶ
+	 *
+	 * @param input 入力文字列
+	 * @return カテゴリー
+	 */
+	private static String labelOf(String input) {
+		List<String> labels = AnalysisPrompts.LABELS;
+		int hash = 0;
+		for (byte b : AnalysisInputNormalizer.normalize(input).getBytes(StandardCharsets.UTF_8)) {
+			hash = hash * 31 + b;
+		}
+		return labels.get(Math.floorMod(hash, labels.size()));
+	}
+}
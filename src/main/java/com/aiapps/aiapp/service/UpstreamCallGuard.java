@@ -0,0 +1,421 @@
+package com.aiapps.aiapp.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.aiapps.aiapp.exception.AiAppException;
+import com.aiapps.aiapp.exception.UpstreamApiException;
+
+/**
+ * Gemini API の呼び出しを同時実行制御・再試行・ヘッジで保護するクラス
+ * 各試行の前に {@link AdaptiveConcurrencyLimiter} の許可を取得し、
+ * 一時的な失敗（429/5xx/接続エラー/試行の時間切れ）はジッター付きの指数バックオフで再試行する
+ * 呼び出し先が Retry-After を指定した場合は、その時間が経過するまで再試行しない
+ *
+ * 試行ごとの待ち時間は設定値とリクエストの応答期限の短い方とし、期限を過ぎた後は再試行しない
+ * ヘッジが有効な場合は、直近の呼び出し時間のパーセンタイルを過ぎても応答がない試行に対して
+ * 同じリクエストをもう1回送信し、先に成功した方を採用してもう一方は取り消す
+ *
+ * @author AiApp
+ */
+@Component
+public class UpstreamCallGuard {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(UpstreamCallGuard.class);
+
+	/** 試行の時間切れ時のメッセージ（接続エラーと同じく再試行の対象） */
+	static final String MESSAGE_ATTEMPT_TIMEOUT = "CONNECT_ERROR : 応答待ちの時間が上限を超えました";
+
+	// ヘッジの待ち時間の算出に必要な最低記録件数
+	private static final int HEDGE_MIN_SAMPLES = 100;
+
+	// 同時実行制御
+	private final AdaptiveConcurrencyLimiter limiter;
+	// メトリクスの記録
+	private final AnalysisMetrics metrics;
+	// 最大試行回数（初回を含む）
+	private final int maxAttempts;
+	// バックオフの基準時間
+	private final Duration baseDelay;
+	// バックオフの最大時間
+	private final Duration maxDelay;
+	// 再試行する Retry-After の上限（これより長い待機を指定された場合は再試行せずに失敗させる）
+	private final Duration maxRetryAfter;
+	// 1回の試行の待ち時間の上限
+	private final Duration attemptTimeout;
+	// ヘッジ有効フラグ
+	private final boolean hedgeEnabled;
+	// ヘッジを送信するまでの最短の待ち時間
+	private final long hedgeMinDelayNanos;
+	// 呼び出し件数に対するヘッジ件数の上限の割合（呼び出し先の負荷を増やしすぎないため）
+	private final double hedgeMaxRatio;
+	// 直近の呼び出し時間（ヘッジの待ち時間の算出に使用）
+	private final LatencyTracker latency;
+
+	// 統計用カウンタ
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder exhausted = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder deadlineExceeded = new LongAdder();
+	private final LongAdder hedges = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+
+	/**
+	 * コンストラクタ：同時実行制御、メトリクスの記録と application.properties の設定値を注入
+	 *
+	 * @param limiter        注入する同時実行制御
+	 * @param metrics        注入するメトリクスの記録
+	 * @param maxAttempts    最大試行回数（初回を含む）
+	 * @param baseDelay      バックオフの基準時間
+	 * @param maxDelay       バックオフの最大時間
+	 * @param maxRetryAfter  再試行する Retry-After の上限
+	 * @param attemptTimeout 1回の試行の待ち時間の上限
+	 * @param hedgeEnabled   ヘッジを有効にするかどうか
+	 * @param hedgeQuantile  ヘッジを送信するまでの待ち時間とする呼び出し時間のパーセンタイル（0.0～1.0）
+	 * @param hedgeMinDelay  ヘッジを送信するまでの最短の待ち時間
+	 * @param hedgeMaxRatio  呼び出し件数に対するヘッジ件数の上限の割合
+	 */
+	public UpstreamCallGuard(AdaptiveConcurrencyLimiter limiter, AnalysisMetrics metrics,
+			@Value("${aiapp.retry.max-attempts:3}") int maxAttempts,
+			@Value("${aiapp.retry.base-delay:200ms}") Duration baseDelay,
+			@Value("${aiapp.retry.max-delay:5s}") Duration maxDelay,
+			@Value("${aiapp.retry.max-retry-after:10s}") Duration maxRetryAfter,
+			@Value("${aiapp.upstream.attempt-timeout:30s}") Duration attemptTimeout,
+			@Value("${aiapp.hedge.enabled:false}") boolean hedgeEnabled,
+			@Value("${aiapp.hedge.quantile:0.95}") double hedgeQuantile,
+			@Value("${aiapp.hedge.min-delay:200ms}") Duration hedgeMinDelay,
+			@Value("${aiapp.hedge.max-ratio:0.1}") double hedgeMaxRatio) {
+		this.limiter = limiter;
+		this.metrics = metrics;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.maxRetryAfter = maxRetryAfter;
+		this.attemptTimeout = attemptTimeout;
+		this.hedgeEnabled = hedgeEnabled;
+		this.hedgeMinDelayNanos = hedgeMinDelay.toNanos();
+		this.hedgeMaxRatio = hedgeMaxRatio;
+		this.latency = new LatencyTracker(hedgeQuantile, HEDGE_MIN_SAMPLES);
+	}
+
+	/**
+	 * 呼び出しを実行する
+	 * generateContent は副作用のない呼び出しのため、失敗時の再実行やヘッジによる重複送信をしてよい
+	 * 途中経過を通知する呼び出しなど、重複して実行できない場合は hedgeable に false を指定する
+	 *
+	 * @param call      1回分の呼び出し（返却するFutureを取り消した場合は通信を中断すること）
+	 * @param deadline  応答期限
+	 * @param hedgeable ヘッジの対象にするかどうか
+	 * @return 呼び出し結果を受け取るFuture
+	 */
+	public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call, Deadline deadline, boolean hedgeable) {
+		return execute(call, deadline, hedgeable, () -> true);
+	}
+
+	/**
+	 * 呼び出しを実行する
+	 * 失敗時には retryable を確認し、false の場合は再試行せずに失敗させる
+	 * 途中経過を通知済みの呼び出しを再実行すると通知が重複するため、通知した時点で false を返すようにする
+	 *
+	 * @param call      1回分の呼び出し（返却するFutureを取り消した場合は通信を中断すること）
+	 * @param deadline  応答期限
+	 * @param hedgeable ヘッジの対象にするかどうか
+	 * @param retryable 失敗時に再試行してよいかどうか
+	 * @return 呼び出し結果を受け取るFuture
+	 */
+	public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call, Deadline deadline, boolean hedgeable,
+			BooleanSupplier retryable) {
+		calls.increment();
+		return attempt(call, deadline, hedgeable && hedgeEnabled, retryable, 1);
+	}
+
+	/**
+	 * 許可を取得して1回分の呼び出しを行い、必要に応じて再試行する
+	 *
+	 * @param call      1回分の呼び出し
+	 * @param deadline  応答期限
+	 * @param hedgeable ヘッジの対象にするかどうか
+	 * @param retryable 失敗時に再試行してよいかどうか
+	 * @param attempt   試行回数（1始まり）
+	 * @return 呼び出し結果を受け取るFuture
+	 */
+	private <T> CompletableFuture<T> attempt(Supplier<CompletableFuture<T>> call, Deadline deadline, boolean hedgeable,
+			BooleanSupplier retryable, int attempt) {
+		if (deadline.isExpired()) {
+			deadlineExceeded.increment();
+			return CompletableFuture.failedFuture(new AiAppException(Deadline.MESSAGE_EXCEEDED));
+		}
+
+		// 許可を取得できない場合（待機列が満杯）は再試行せずに失敗させる
+		return limiter.acquire().thenCompose(ignored -> {
+			CompletableFuture<T> primary = invoke(call, deadline);
+			CompletableFuture<T> future = hedgeable ? hedge(call, deadline, primary) : primary;
+			return future.handle((result, ex) -> {
+				Throwable cause = unwrap(ex);
+				if (cause == null) {
+					return CompletableFuture.completedFuture(result);
+				}
+				if (cause instanceof TimeoutException) {
+					if (deadline.isExpired()) {
+						// 応答期限で待ち時間を切り詰めていた場合は期限切れとして扱う
+						deadlineExceeded.increment();
+						cause = new AiAppException(Deadline.MESSAGE_EXCEEDED);
+					} else {
+						cause = new AiAppException(MESSAGE_ATTEMPT_TIMEOUT);
+					}
+				}
+
+				Duration delay = retryable.getAsBoolean() ? retryDelay(cause, attempt, deadline) : null;
+				if (delay == null) {
+					return CompletableFuture.<T>failedFuture(cause);
+				}
+				retries.increment();
+				logger.warn("Gemini API の呼び出しを再試行します。試行回数: {}, 待機時間: {}ms, 理由: {}",
+						attempt + 1, delay.toMillis(), cause.getMessage());
+				return CompletableFuture.supplyAsync(() -> attempt(call, deadline, hedgeable, retryable, attempt + 1),
+						CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS))
+						.thenCompose(Function.identity());
+			}).thenCompose(Function.identity());
+		});
+	}
+
+	/**
+	 * 取得済みの許可で1回分の呼び出しを行う
+	 * 待ち時間の上限を過ぎた場合は TimeoutException で失敗させ、完了時に許可を返却する
+	 *
+	 * @param call     1回分の呼び出し
+	 * @param deadline 応答期限
+	 * @return 呼び出し結果を受け取るFuture（取り消すと通信を中断する）
+	 */
+	private <T> CompletableFuture<T> invoke(Supplier<CompletableFuture<T>> call, Deadline deadline) {
+		long start = System.nanoTime();
+		CompletableFuture<T> future;
+		try {
+			future = call.get();
+		} catch (RuntimeException e) {
+			future = CompletableFuture.failedFuture(e);
+		}
+		future.orTimeout(deadline.cap(attemptTimeout).toMillis(), TimeUnit.MILLISECONDS)
+				.whenComplete((result, ex) -> {
+					Throwable cause = unwrap(ex);
+					limiter.release(outcomeOf(cause));
+					if (cause == null) {
+						latency.record(System.nanoTime() - start);
+					} else if (cause instanceof TimeoutException) {
+						timeouts.increment();
+					}
+				});
+		return future;
+	}
+
+	/**
+	 * 元の試行の応答が遅い場合にヘッジを送信し、先に成功した方の結果を返す
+	 * 一方が失敗した場合はもう一方の結果を待ち、両方とも失敗した場合は元の試行の例外で失敗させる
+	 *
+	 * @param call     1回分の呼び出し
+	 * @param deadline 応答期限
+	 * @param primary  元の試行
+	 * @return 呼び出し結果を受け取るFuture
+	 */
+	private <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> call, Deadline deadline,
+			CompletableFuture<T> primary) {
+		long delayNanos = latency.percentileNanos();
+		if (delayNanos < 0) {
+			// 呼び出し時間の記録が足りないうちはヘッジしない
+			return primary;
+		}
+		delayNanos = Math.max(hedgeMinDelayNanos, delayNanos);
+
+		long start = System.nanoTime();
+		CompletableFuture<T> result = new CompletableFuture<>();
+		// 結果が未確定の試行の件数（0になった時点で失敗が確定する）
+		AtomicInteger pending = new AtomicInteger(1);
+		AtomicReference<CompletableFuture<T>> hedged = new AtomicReference<>();
+		AtomicReference<Throwable> primaryError = new AtomicReference<>();
+
+		primary.whenComplete((value, ex) -> {
+			if (ex == null) {
+				if (result.complete(value)) {
+					// 元の試行が先に応答した場合はヘッジを取り消す
+					CompletableFuture<T> loser = hedged.get();
+					if (loser != null) {
+						loser.cancel(true);
+					}
+				}
+			} else {
+				primaryError.set(ex);
+				if (pending.decrementAndGet() == 0) {
+					result.completeExceptionally(ex);
+				}
+			}
+		});
+
+		CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+			if (result.isDone() || deadline.isExpired()
+					|| hedges.sum() >= hedgeMaxRatio * calls.sum()
+					|| pending.getAndUpdate(n -> n == 0 ? 0 : n + 1) == 0) {
+				return;
+			}
+			if (!limiter.tryAcquire()) {
+				// 同時呼び出し数に空きがない場合は呼び出し先の負荷を優先してヘッジしない
+				if (pending.decrementAndGet() == 0) {
+					result.completeExceptionally(primaryError.get());
+				}
+				return;
+			}
+
+			hedges.increment();
+			CompletableFuture<T> future = invoke(call, deadline);
+			hedged.set(future);
+			future.whenComplete((value, ex) -> {
+				if (ex == null) {
+					long elapsed = System.nanoTime() - start;
+					if (result.complete(value)) {
+						// ヘッジが先に応答した場合は元の試行を取り消す
+						hedgeWins.increment();
+						primary.cancel(true);
+						metrics.recordHedgeSaved(latency.expectedExcessNanos(elapsed));
+					}
+				} else if (pending.decrementAndGet() == 0) {
+					Throwable first = primaryError.get();
+					result.completeExceptionally(first != null ? first : ex);
+				}
+			});
+			if (result.isDone()) {
+				// 登録前に元の試行が応答していた場合
+				future.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * 失敗内容から再試行までの待機時間を求める
+	 *
+	 * @param cause    発生した例外
+	 * @param attempt  失敗した試行の回数
+	 * @param deadline 応答期限
+	 * @return 待機時間（再試行しない場合はnull）
+	 */
+	private Duration retryDelay(Throwable cause, int attempt, Deadline deadline) {
+		if (!isRetryable(cause)) {
+			return null;
+		}
+		if (attempt >= maxAttempts) {
+			exhausted.increment();
+			return null;
+		}
+
+		// フルジッター：0 ～ min(最大時間, 基準時間 × 2^(試行回数-1)) の一様乱数
+		long cap = Math.min(maxDelay.toMillis(), baseDelay.toMillis() << Math.min(attempt - 1, 20));
+		long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+
+		if (cause instanceof UpstreamApiException upstream && upstream.getRetryAfter() != null) {
+			Duration retryAfter = upstream.getRetryAfter();
+			if (retryAfter.compareTo(maxRetryAfter) > 0) {
+				// 待機時間が長すぎる場合は呼び出し元に混雑として返す
+				return null;
+			}
+			delay = Math.max(delay, retryAfter.toMillis());
+		}
+
+		Duration remaining = deadline.remaining();
+		if (remaining != null && remaining.toMillis() <= delay) {
+			// 待機している間に応答期限を過ぎる場合は再試行しない
+			deadlineExceeded.increment();
+			return null;
+		}
+		return Duration.ofMillis(delay);
+	}
+
+	/**
+	 * 再試行で回復する見込みのある失敗かどうかを判定する
+	 *
+	 * @param cause 発生した例外
+	 * @return 再試行する場合はtrue
+	 */
+	private static boolean isRetryable(Throwable cause) {
+		if (cause instanceof UpstreamApiException upstream) {
+			int status = upstream.getStatusCode();
+			return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+		}
+		return cause instanceof AiAppException && ("CONNECT_ERROR".equals(cause.getMessage())
+				|| MESSAGE_ATTEMPT_TIMEOUT.equals(cause.getMessage()));
+	}
+
+	/**
+	 * 失敗内容を同時実行制御の結果種別に変換する
+	 * 429・503 と試行の時間切れは呼び出し先の混雑として扱う
+	 *
+	 * @param cause 発生した例外（成功した場合はnull）
+	 * @return 結果種別
+	 */
+	private static AdaptiveConcurrencyLimiter.Outcome outcomeOf(Throwable cause) {
+		if (cause == null) {
+			return AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+		}
+		if (cause instanceof TimeoutException) {
+			return AdaptiveConcurrencyLimiter.Outcome.OVERLOAD;
+		}
+		if (cause instanceof UpstreamApiException upstream
+				&& (upstream.getStatusCode() == 429 || upstream.getStatusCode() == 503)) {
+			return AdaptiveConcurrencyLimiter.Outcome.OVERLOAD;
+		}
+		return AdaptiveConcurrencyLimiter.Outcome.IGNORE;
+	}
+
+	/**
+	 * CompletionException を取り除いた元の例外を返す
+	 *
+	 * @param ex 発生した例外（成功した場合はnull）
+	 * @return 元の例外
+	 */
+	private static Throwable unwrap(Throwable ex) {
+		return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+	}
+
+	/**
+	 * 呼び出し保護の統計情報を取得する
+	 *
+	 * @return 同時実行制御の統計情報・再試行回数・再試行上限に達した件数・時間切れ件数・ヘッジの件数
+	 */
+	public Stats stats() {
+		long hedgeDelayNanos = latency.percentileNanos();
+		return new Stats(limiter.stats(), retries.sum(), exhausted.sum(), timeouts.sum(), deadlineExceeded.sum(),
+				hedges.sum(), hedgeWins.sum(),
+				hedgeDelayNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(Math.max(hedgeMinDelayNanos, hedgeDelayNanos)));
+	}
+
+	/**
+	 * 呼び出し保護の統計情報
+	 *
+	 * @param limiter          同時実行制御の統計情報
+	 * @param retries          再試行した回数
+	 * @param exhausted        再試行の上限に達して失敗した件数
+	 * @param timeouts         1回の試行の待ち時間の上限を超えた件数
+	 * @param deadlineExceeded 応答期限を過ぎたため試行・再試行しなかった件数
+	 * @param hedges           ヘッジを送信した件数
+	 * @param hedgeWins        ヘッジが元の試行より先に応答した件数
+	 * @param hedgeDelayMillis ヘッジを送信するまでの現在の待ち時間（記録が足りない場合は-1）
+	 */
+	public record Stats(AdaptiveConcurrencyLimiter.Stats limiter, long retries, long exhausted, long timeouts,
+			long deadlineExceeded, long hedges, long hedgeWins, long hedgeDelayMillis) {
+	}
+}
@@ -0,0 +1,310 @@
+package com.aiapps.aiapp.service;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 外部API（Gemini API）への通信に使う共通の HttpClient を管理するクラス
+ *
+ * <pre>
+ * - HTTP/2 を優先し、1本の接続で複数のリクエストを多重化する（サーバーが対応しない場合は HTTP/1.1）
+ * - HttpClient 内部の非同期処理は仮想スレッドで実行する
+ * - 起動完了時に接続を事前に確立し（TLS ハンドシェイクを最初のリクエストの応答時間に含めない）、
+ *   一定時間リクエストがない場合は接続を維持するための軽いリクエストを送る
+ * - 新しく確立した TLS 接続の数を数え、リクエスト数との比から接続の再利用率を求められるようにする
+ * </pre>
+ *
+ * JDK の HttpClient は接続プールの状態を公開しないため、TLS の接続数は SSLEngine の作成回数で数える（https のみ）
+ *
+ * @author AiApp
+ */
+@Component
+public class UpstreamHttpClient {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(UpstreamHttpClient.class);
+
+	// HttpClient は使い回す（接続を再利用するため）
+	private final HttpClient client;
+	// HttpClient 内部の非同期処理を実行するスレッド（既定のスレッドプールを使う場合はnull）
+	private final ExecutorService executor;
+	// 事前に確立する接続数
+	private final int prewarmConnections;
+	// 接続を維持するリクエストを送るまでの無通信時間（ナノ秒、0の場合は送らない）
+	private final long keepWarmNanos;
+
+	// 接続の確立・維持に使うリクエスト
+	private volatile HttpRequest warmUpRequest;
+	// 最後にリクエストを送った時刻（System.nanoTime() 基準）
+	private volatile long lastSentNanos = System.nanoTime();
+
+	// 接続を維持するリクエストを送るスレッド
+	private final ScheduledExecutorService keepWarm = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "upstream-http-keep-warm");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// 統計用カウンタ
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder connections = new LongAdder();
+	private final LongAdder http2Responses = new LongAdder();
+	private final LongAdder warmUps = new LongAdder();
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param version            優先する HTTP のバージョン
+	 * @param connectTimeout     接続タイムアウト
+	 * @param virtualThreads     HttpClient 内部の非同期処理を仮想スレッドで実行するかどうか
+	 * @param idleTimeout        使用していない接続を閉じるまでの時間（JDK のシステムプロパティが未設定の場合に適用）
+	 * @param prewarmConnections 起動完了時に確立する接続数（HTTP/2 の場合は1で十分）
+	 * @param keepWarmInterval   接続を維持するリクエストを送るまでの無通信時間（0の場合は送らない）
+	 */
+	public UpstreamHttpClient(
+			@Value("${aiapp.http.version:HTTP_2}") HttpClient.Version version,
+			@Value("${aiapp.http.connect-timeout:10s}") Duration connectTimeout,
+			@Value("${aiapp.http.virtual-threads:true}") boolean virtualThreads,
+			@Value("${aiapp.http.idle-timeout:5m}") Duration idleTimeout,
+			@Value("${aiapp.http.prewarm-connections:1}") int prewarmConnections,
+			@Value("${aiapp.http.keep-warm-interval:0s}") Duration keepWarmInterval) {
+		// 接続プールの設定は最初の HttpClient の作成時に読み込まれるため、作成前に設定する
+		String idleSeconds = String.valueOf(Math.max(1, idleTimeout.toSeconds()));
+		setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", idleSeconds);
+		setPropertyIfAbsent("jdk.httpclient.keepalive.timeout.h2", idleSeconds);
+
+		this.executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.version(version)
+				.connectTimeout(connectTimeout)
+				.sslContext(countingContext(connections));
+		if (executor != null) {
+			builder.executor(executor);
+		}
+		this.client = builder.build();
+		this.prewarmConnections = Math.max(0, prewarmConnections);
+		this.keepWarmNanos = Math.max(0, keepWarmInterval.toNanos());
+		if (keepWarmNanos > 0) {
+			long intervalMillis = Math.max(1000, keepWarmInterval.toMillis() / 2);
+			keepWarm.scheduleWithFixedDelay(this::keepWarmIfIdle, intervalMillis, intervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * リクエストを非同期で送信する
+	 * 返す Future を取り消すと通信を中断する（HttpClient.sendAsync と同じ）
+	 *
+	 * @param request リクエスト
+	 * @param handler 応答本文の受け取り方
+	 * @return 応答を受け取るFuture
+	 */
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+			HttpResponse.BodyHandler<T> handler) {
+		requests.increment();
+		lastSentNanos = System.nanoTime();
+		return client.sendAsync(request, info -> {
+			if (info.version() == HttpClient.Version.HTTP_2) {
+				http2Responses.increment();
+			}
+			return handler.apply(info);
+		});
+	}
+
+	/**
+	 * 接続を事前に確立する（起動完了時に呼び出す）
+	 * 指定したリクエストは、無通信時に接続を維持するためにも使用する
+	 * 応答は待たず、失敗してもログのみ出力する
+	 *
+	 * @param request 接続の確立に使う軽いリクエスト（GET など副作用のないもの）
+	 */
+	public void warmUp(HttpRequest request) {
+		this.warmUpRequest = request;
+		for (int i = 0; i < prewarmConnections; i++) {
+			sendWarmUp(request);
+		}
+	}
+
+	/**
+	 * 一定時間リクエストがない場合に、接続を維持するリクエストを送る
+	 */
+	private void keepWarmIfIdle() {
+		HttpRequest request = warmUpRequest;
+		if (request != null && System.nanoTime() - lastSentNanos >= keepWarmNanos) {
+			sendWarmUp(request);
+		}
+	}
+
+	/**
+	 * 接続の確立・維持のリクエストを送る（リクエスト数には含めない）
+	 *
+	 * @param request リクエスト
+	 */
+	private void sendWarmUp(HttpRequest request) {
+		warmUps.increment();
+		lastSentNanos = System.nanoTime();
+		long start = System.nanoTime();
+		client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+			if (ex != null) {
+				logger.warn("外部APIへの接続を確立できませんでした: {} ({})", request.uri().getHost(), ex.toString());
+			} else {
+				logger.info("外部APIへの接続を確立しました: {} status={}, version={}, {} ms", request.uri().getHost(),
+						response.statusCode(), response.version(),
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			}
+		});
+	}
+
+	/**
+	 * 通信の統計情報を取得する
+	 *
+	 * @return リクエスト数・確立した TLS 接続数・HTTP/2 の応答数・接続の確立・維持のリクエスト数
+	 */
+	public Stats stats() {
+		return new Stats(requests.sum(), connections.sum(), http2Responses.sum(), warmUps.sum());
+	}
+
+	/**
+	 * アプリケーション終了時にスレッドを停止する
+	 */
+	@PreDestroy
+	public void shutdown() {
+		keepWarm.shutdownNow();
+		client.shutdownNow();
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void setPropertyIfAbsent(String key, String value) {
+		if (System.getProperty(key) == null) {
+			System.setProperty(key, value);
+		}
+	}
+
+	/**
+	 * TLS 接続を作成するたびに数を数える SSLContext を作成する
+	 *
+	 * @param counter 接続数のカウンタ
+	 * @return 既定の SSLContext に処理を委譲する SSLContext
+	 */
+	private static SSLContext countingContext(LongAdder counter) {
+		try {
+			SSLContext delegate = SSLContext.getDefault();
+			return new CountingSslContext(new CountingSslContextSpi(delegate, counter), delegate);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("既定の SSLContext を取得できません", e);
+		}
+	}
+
+	/**
+	 * 接続数を数える SSLContext
+	 */
+	private static final class CountingSslContext extends SSLContext {
+
+		CountingSslContext(SSLContextSpi spi, SSLContext delegate) {
+			super(spi, delegate.getProvider(), delegate.getProtocol());
+		}
+	}
+
+	/**
+	 * SSLEngine の作成回数（＝ TLS 接続数）を数え、それ以外は既定の SSLContext に委譲する
+	 */
+	private static final class CountingSslContextSpi extends SSLContextSpi {
+
+		private final SSLContext delegate;
+		private final LongAdder counter;
+
+		CountingSslContextSpi(SSLContext delegate, LongAdder counter) {
+			this.delegate = delegate;
+			this.counter = counter;
+		}
+
+		@Override
+		protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr)
+				throws KeyManagementException {
+			throw new KeyManagementException("既定の SSLContext は初期化済みです");
+		}
+
+		@Override
+		protected SSLSocketFactory engineGetSocketFactory() {
+			return delegate.getSocketFactory();
+		}
+
+		@Override
+		protected SSLServerSocketFactory engineGetServerSocketFactory() {
+			return delegate.getServerSocketFactory();
+		}
+
+		@Override
+		protected SSLEngine engineCreateSSLEngine() {
+			counter.increment();
+			return delegate.createSSLEngine();
+		}
+
+		@Override
+		protected SSLEngine engineCreateSSLEngine(String host, int port) {
+			counter.increment();
+			return delegate.createSSLEngine(host, port);
+		}
+
+		@Override
+		protected SSLSessionContext engineGetServerSessionContext() {
+			return delegate.getServerSessionContext();
+		}
+
+		@Override
+		protected SSLSessionContext engineGetClientSessionContext() {
+			return delegate.getClientSessionContext();
+		}
+
+		@Override
+		protected SSLParameters engineGetDefaultSSLParameters() {
+			return delegate.getDefaultSSLParameters();
+		}
+
+		@Override
+		protected SSLParameters engineGetSupportedSSLParameters() {
+			return delegate.getSupportedSSLParameters();
+		}
+	}
+
+	/**
+	 * 通信の統計情報
+	 *
+	 * @param requests       リクエスト数（接続の確立・維持のリクエストを除く）
+	 * @param connections    確立した TLS 接続数（リクエスト数との比が小さいほど接続を再利用できている）
+	 * @param http2Responses HTTP/2 で受け取った応答数
+	 * @param warmUps        接続の確立・維持のリクエスト数
+	 */
+	public record Stats(long requests, long connections, long http2Responses, long warmUps) {
+	}
+}
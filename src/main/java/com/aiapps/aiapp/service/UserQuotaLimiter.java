@@ -0,0 +1,306 @@
+package com.aiapps.aiapp.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 利用者ごとの Gemini API の利用回数を制限するクラス（トークンバケット方式）
+ * 利用者ごとに上限の回数まで連続して利用でき、一定間隔ごとに1回分ずつ回復する
+ *
+ * バケットの状態は「満杯に戻る時刻」1つで表し（GCRA）、AtomicLong の compareAndSet で更新するためロックを使用しない
+ * 永続化を有効にした場合は終了時に回復途中のバケットをファイルに保存し、起動時に読み込む（再起動で回数が戻らないようにする）
+ * 満杯に戻ったバケットは新規と同じため定期的に削除する（利用者ごとの利用・拒否の回数もその時点で0に戻る）
+ *
+ * @author AiApp
+ */
+@Component
+public class UserQuotaLimiter {
+
+	// ロガーの定義
+	private static final Logger logger = LoggerFactory.getLogger(UserQuotaLimiter.class);
+
+	// 上限超過時のメッセージ（画面・APIとも HTTP 429 として扱われるよう 429 を含める）
+	static final String MESSAGE_EXCEEDED = "429 QUOTA_EXCEEDED : 利用回数の上限に達したため受け付けできませんでした";
+
+	// 利用制限有効フラグ
+	private final boolean enabled;
+	// 連続して利用できる回数
+	private final long capacity;
+	// 1回分が回復するまでの時間（ナノ秒）
+	private final long intervalNanos;
+	// 永続化有効フラグ
+	private final boolean persist;
+	// ファイルの保存先
+	private final Path path;
+	// 満杯に戻ったバケットを削除する間隔
+	private final Duration sweepInterval;
+
+	// 利用者ごとのバケット（キー：利用者ID）
+	private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	// 定期削除で取り除いたバケットの印（取り除いたバケットを参照していた利用は、新しいバケットで数え直す）
+	private static final long REMOVED = Long.MIN_VALUE;
+
+	// 統計用カウンタ
+	private final LongAdder used = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	// 満杯に戻ったバケットの削除を定期実行するスレッド
+	private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "user-quota-sweeper");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * コンストラクタ：application.properties の設定値を注入
+	 *
+	 * @param enabled        利用制限を有効にするかどうか
+	 * @param capacity       連続して利用できる回数
+	 * @param refillInterval 1回分が回復するまでの時間
+	 * @param persist        バケットの状態を永続化するかどうか
+	 * @param path           ファイルの保存先
+	 * @param sweepInterval  満杯に戻ったバケットを削除する間隔
+	 */
+	public UserQuotaLimiter(
+			@Value("${aiapp.quota.enabled:true}") boolean enabled,
+			@Value("${aiapp.quota.capacity:50}") long capacity,
+			@Value("${aiapp.quota.refill-interval:6s}") Duration refillInterval,
+			@Value("${aiapp.quota.persist:false}") boolean persist,
+			@Value("${aiapp.quota.path:data/quotas.properties}") Path path,
+			@Value("${aiapp.quota.sweep-interval:10m}") Duration sweepInterval) {
+		this.enabled = enabled;
+		this.capacity = Math.max(1, capacity);
+		this.intervalNanos = Math.max(1, refillInterval.toNanos());
+		this.persist = persist;
+		this.path = path;
+		this.sweepInterval = sweepInterval;
+	}
+
+	/**
+	 * 利用を1回分消費する
+	 * 利用者を特定できない呼び出し（登録した利用者の記録がない以前のジョブなど）は制限しない
+	 *
+	 * @param user 利用者ID（null の場合は制限しない）
+	 * @return 利用できる場合はtrue、上限に達している場合はfalse
+	 */
+	public boolean tryAcquire(String user) {
+		if (!enabled || user == null) {
+			return true;
+		}
+		long now = System.nanoTime();
+		long burst = capacity * intervalNanos;
+		while (true) {
+			Bucket bucket = buckets.computeIfAbsent(user, key -> new Bucket(now));
+			long fullAt = bucket.fullAt.get();
+			if (fullAt == REMOVED) {
+				// 定期削除と入れ違いになった場合は、取り除かれたバケットを外して新しいバケットで数え直す
+				buckets.remove(user, bucket);
+				continue;
+			}
+			// 満杯に戻る時刻を1回分後ろにずらし、現在から見て上限の回数分を超える場合は拒否
+			long next = Math.max(fullAt - now, 0) + now + intervalNanos;
+			if (next - now > burst) {
+				bucket.rejected.increment();
+				rejected.increment();
+				return false;
+			}
+			if (bucket.fullAt.compareAndSet(fullAt, next)) {
+				bucket.used.increment();
+				used.increment();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 利用者の現在の利用状況を取得する
+	 *
+	 * @param user 利用者ID
+	 * @return 利用状況
+	 */
+	public Usage usage(String user) {
+		Bucket bucket = user == null ? null : buckets.get(user);
+		long fullAt = bucket == null ? REMOVED : bucket.fullAt.get();
+		if (!enabled || fullAt == REMOVED) {
+			return new Usage(enabled, capacity, capacity, 0, 0, 0, 0);
+		}
+		long now = System.nanoTime();
+		long pending = Math.max(fullAt - now, 0);
+		long remaining = Math.max(0, capacity - (pending + intervalNanos - 1) / intervalNanos);
+		// 残りが0の場合は、次の1回分が利用できるようになるまでの時間
+		long nextNanos = remaining > 0 ? 0 : pending - (capacity - 1) * intervalNanos;
+		return new Usage(true, capacity, remaining, bucket.used.sum(), bucket.rejected.sum(),
+				TimeUnit.NANOSECONDS.toMillis(Math.max(0, nextNanos)), TimeUnit.NANOSECONDS.toMillis(pending));
+	}
+
+	/**
+	 * 利用制限の統計情報を取得する
+	 *
+	 * @return 利用者数・利用回数・拒否件数
+	 */
+	public Stats stats() {
+		return new Stats(buckets.size(), used.sum(), rejected.sum());
+	}
+
+	/**
+	 * 満杯に戻ったバケットを削除する
+	 *
+	 * @return 削除したバケットの数
+	 */
+	int sweep() {
+		long now = System.nanoTime();
+		int swept = 0;
+		for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+			Bucket bucket = entry.getValue();
+			long fullAt = bucket.fullAt.get();
+			// 印を付けてから外すことで、同時に消費された回数が取り除いたバケットに記録されて失われないようにする
+			if (fullAt != REMOVED && fullAt - now <= 0 && bucket.fullAt.compareAndSet(fullAt, REMOVED)) {
+				buckets.remove(entry.getKey(), bucket);
+				swept++;
+			}
+		}
+		if (swept > 0) {
+			logger.debug("満杯に戻ったバケットを削除しました。件数: {}, 残り: {}", swept, buckets.size());
+		}
+		return swept;
+	}
+
+	/**
+	 * 起動完了後、満杯に戻ったバケットの定期削除を開始し、永続化されたバケットを読み込む
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		if (enabled) {
+			long intervalMillis = Math.max(1, sweepInterval.toMillis());
+			sweeper.scheduleWithFixedDelay(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+		if (!enabled || !persist || !Files.exists(path)) {
+			return;
+		}
+		Properties saved = new Properties();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			saved.load(reader);
+		} catch (IOException e) {
+			logger.warn("利用回数ファイルの読み込みに失敗しました: {}", e.getMessage());
+			return;
+		}
+
+		// 保存時の時刻（エポックミリ秒）を現在の System.nanoTime() 基準に換算する
+		long nowMillis = System.currentTimeMillis();
+		long nowNanos = System.nanoTime();
+		for (String user : saved.stringPropertyNames()) {
+			try {
+				long remainingMillis = Long.parseLong(saved.getProperty(user)) - nowMillis;
+				if (remainingMillis > 0) {
+					long fullAt = nowNanos + Math.min(TimeUnit.MILLISECONDS.toNanos(remainingMillis),
+							capacity * intervalNanos);
+					buckets.putIfAbsent(user, new Bucket(fullAt));
+				}
+			} catch (NumberFormatException e) {
+				logger.warn("利用回数ファイルの不正な行を読み飛ばしました: {}", user);
+			}
+		}
+		logger.info("利用回数ファイルを読み込みました。利用者数: {}", buckets.size());
+	}
+
+	/**
+	 * アプリケーション終了時に定期削除を停止し、回復途中のバケットをファイルに保存する
+	 * 満杯のバケットは新規と同じため保存しない
+	 */
+	@PreDestroy
+	public void save() {
+		sweeper.shutdownNow();
+		if (!enabled || !persist) {
+			return;
+		}
+		long nowMillis = System.currentTimeMillis();
+		long nowNanos = System.nanoTime();
+		Properties saved = new Properties();
+		for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+			long fullAt = entry.getValue().fullAt.get();
+			long pending = fullAt - nowNanos;
+			if (fullAt != REMOVED && pending > 0) {
+				saved.setProperty(entry.getKey(),
+						String.valueOf(nowMillis + TimeUnit.NANOSECONDS.toMillis(pending)));
+			}
+		}
+		try {
+			if (path.getParent() != null) {
+				Files.createDirectories(path.getParent());
+			}
+			Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				saved.store(writer, null);
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			logger.info("利用回数ファイルを保存しました。利用者数: {}", saved.size());
+		} catch (IOException e) {
+			logger.warn("利用回数ファイルの保存に失敗しました: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * 利用者ごとのバケット
+	 */
+	private static final class Bucket {
+
+		// 満杯に戻る時刻（System.nanoTime() 基準。現在より前なら満杯、REMOVED は定期削除で取り除いたバケット）
+		final AtomicLong fullAt;
+		// 統計用カウンタ
+		final LongAdder used = new LongAdder();
+		final LongAdder rejected = new LongAdder();
+
+		Bucket(long fullAt) {
+			this.fullAt = new AtomicLong(fullAt);
+		}
+	}
+
+	/**
+	 * 利用者の利用状況
+	 *
+	 * @param enabled          利用制限が有効かどうか
+	 * @param capacity         連続して利用できる回数
+	 * @param remaining        現在利用できる回数
+	 * @param used             起動後の利用回数
+	 * @param rejected         起動後に上限を超えて拒否した回数
+	 * @param nextRefillMillis 次の1回分が利用できるようになるまでの時間（ミリ秒、利用できる場合は0）
+	 * @param fullRefillMillis 上限の回数まで回復するまでの時間（ミリ秒）
+	 */
+	public record Usage(boolean enabled, long capacity, long remaining, long used, long rejected,
+			long nextRefillMillis, long fullRefillMillis) {
+	}
+
+	/**
+	 * 利用制限の統計情報
+	 *
+	 * @param users    回復途中のバケットを持つ利用者数（満杯に戻ったバケットは定期的に削除する）
+	 * @param used     起動後の利用回数
+	 * @param rejected 起動後に上限を超えて拒否した回数
+	 */
+	public record Stats(int users, long used, long rejected) {
+	}
+}
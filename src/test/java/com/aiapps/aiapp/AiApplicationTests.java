@@ -3,7 +3,8 @@ package com.aiapps.aiapp;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// 作業ディレクトリにファイルを作らないよう、分析結果の永続化と非同期ジョブは無効にする
+@SpringBootTest(properties = { "aiapp.store.enabled=false", "aiapp.jobs.enabled=false" })
 class AiApplicationTests {
 
 	@Test
@@ -0,0 +1,124 @@
+package com.aiapps.aiapp.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+
+import com.aiapps.aiapp.service.SharedStateStore;
+
+class SharedSessionRepositoryTest {
+
+	private final RecordingStore store = new RecordingStore();
+	private final SharedSessionRepository repository = new SharedSessionRepository(store, Duration.ofMinutes(30),
+			Duration.ofMinutes(1), 256);
+
+	@Test
+	void largeAttributesAreCompressedAndRestored() {
+		SharedSessionRepository.SharedSession session = repository.createSession();
+		session.setAttribute("history", List.of("野球".repeat(500), "選挙".repeat(500)));
+		session.setAttribute("count", 3);
+		repository.save(session);
+
+		// 属性のシリアライズ結果（UTF-8 で約3KB）より小さく保存される
+		assertTrue(store.values.get("session:" + session.getId()).length < 1000);
+		SharedSessionRepository.SharedSession restored = repository.findById(session.getId());
+		assertEquals(List.of("野球".repeat(500), "選挙".repeat(500)), restored.getAttribute("history"));
+		assertEquals(Integer.valueOf(3), restored.getAttribute("count"));
+		assertEquals(session.getCreationTime().truncatedTo(ChronoUnit.MILLIS), restored.getCreationTime());
+		assertEquals(Duration.ofMinutes(30), restored.getMaxInactiveInterval());
+	}
+
+	@Test
+	void changingSessionIdDeletesOldKey() {
+		SharedSessionRepository.SharedSession session = repository.createSession();
+		session.setAttribute("user", "alice");
+		repository.save(session);
+		String oldId = session.getId();
+
+		String newId = session.changeSessionId();
+		repository.save(session);
+
+		assertNull(repository.findById(oldId));
+		assertEquals(List.of("session:" + oldId), store.deleted);
+		assertEquals("alice", repository.findById(newId).getAttribute("user"));
+	}
+
+	@Test
+	void unchangedSessionIsWrittenOnlyAfterTouchInterval() {
+		SharedSessionRepository.SharedSession created = repository.createSession();
+		created.setAttribute("user", "alice");
+		repository.save(created);
+		SharedSessionRepository.SharedSession session = repository.findById(created.getId());
+		Instant loaded = session.getLastAccessedTime();
+
+		// 属性が変わらず、最終アクセス時刻の進みが延長の間隔未満の場合は書き込まない
+		session.setLastAccessedTime(loaded.plusSeconds(30));
+		repository.save(session);
+		assertEquals(1, store.puts);
+
+		session.setLastAccessedTime(loaded.plusSeconds(90));
+		repository.save(session);
+		assertEquals(2, store.puts);
+
+		// 属性が変わった場合は間隔によらず書き込む
+		session.setAttribute("user", "bob");
+		repository.save(session);
+		assertEquals(3, store.puts);
+	}
+
+	@Test
+	void sessionWithDisallowedClassIsDiscarded() {
+		SharedSessionRepository.SharedSession session = repository.createSession();
+		// シリアライズはできるが、復元を許可していないパッケージのクラス
+		session.setAttribute("values", new LinkedMultiValueMap<>(Map.of("a", List.of("b"))));
+		repository.save(session);
+		assertNotNull(store.values.get("session:" + session.getId()));
+
+		assertNull(repository.findById(session.getId()));
+		assertNull(store.values.get("session:" + session.getId()));
+	}
+
+	/**
+	 * 書き込み回数と削除したキーを記録する保存先
+	 */
+	private static final class RecordingStore implements SharedStateStore {
+
+		final Map<String, byte[]> values = new HashMap<>();
+		final List<String> deleted = new ArrayList<>();
+		int puts;
+
+		@Override
+		public byte[] get(String key) {
+			return values.get(key);
+		}
+
+		@Override
+		public void put(String key, byte[] value, Duration ttl) {
+			values.put(key, value);
+			puts++;
+		}
+
+		@Override
+		public void delete(String key) {
+			values.remove(key);
+			deleted.add(key);
+		}
+
+		@Override
+		public boolean isShared() {
+			return true;
+		}
+	}
+}
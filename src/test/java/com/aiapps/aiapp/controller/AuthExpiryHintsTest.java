@@ -0,0 +1,168 @@
+package com.aiapps.aiapp.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import jakarta.servlet.http.Cookie;
+
+class AuthExpiryHintsTest {
+
+	private static final String SECRET = "test-secret";
+
+	private final ClientRegistration registration = ClientRegistration.withRegistrationId("google")
+			.clientId("client")
+			.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+			.redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+			.authorizationUri("https://accounts.example.com/auth")
+			.tokenUri("https://accounts.example.com/token")
+			.build();
+	private final OAuth2AuthenticationToken authentication = new OAuth2AuthenticationToken(
+			new DefaultOAuth2User(AuthorityUtils.createAuthorityList("OAUTH2_USER"), Map.of("sub", "alice"), "sub"),
+			AuthorityUtils.createAuthorityList("OAUTH2_USER"), "google");
+
+	@Test
+	void issuedHintIsAcceptedForSameSession() {
+		AuthExpiryHints hints = hints(Duration.ofMinutes(5));
+		String value = issue(hints, "session-1");
+
+		Instant hinted = hints.lookup(request("session-1", value));
+		assertNotNull(hinted);
+		// アクセストークンの有効期限（1時間後）より短い、設定の上限（5分）に合わせる
+		assertTrue(hinted.isBefore(Instant.now().plus(Duration.ofMinutes(6))));
+	}
+
+	@Test
+	void tamperedValueIsRejected() {
+		AuthExpiryHints hints = hints(Duration.ofMinutes(5));
+		String value = issue(hints, "session-1");
+		int separator = value.indexOf('.');
+		long seconds = Long.parseLong(value.substring(0, separator));
+		String signature = value.substring(separator + 1);
+
+		// 期限の延長
+		assertNull(hints.lookup(request("session-1", (seconds + 3600) + "." + signature)));
+		// 署名の書き換え
+		char last = signature.charAt(signature.length() - 1);
+		String forged = signature.substring(0, signature.length() - 1) + (last == 'A' ? 'B' : 'A');
+		assertNull(hints.lookup(request("session-1", seconds + "." + forged)));
+		// 期限が数値でない
+		assertNull(hints.lookup(request("session-1", "x" + value)));
+	}
+
+	@Test
+	void hintFromAnotherSessionIsRejected() {
+		AuthExpiryHints hints = hints(Duration.ofMinutes(5));
+		String value = issue(hints, "session-1");
+
+		assertNull(hints.lookup(request("session-2", value)));
+	}
+
+	@Test
+	void hintSignedWithAnotherSecretIsRejected() {
+		String value = issue(hints(Duration.ofMinutes(5)), "session-1");
+		AuthExpiryHints other = new AuthExpiryHints(mock(ClientRegistrationRepository.class),
+				mock(OAuth2AuthorizedClientRepository.class), "another-secret", Duration.ofMinutes(5));
+
+		assertNull(other.lookup(request("session-1", value)));
+	}
+
+	@Test
+	void expiredHintIsRejected() throws InterruptedException {
+		AuthExpiryHints hints = hints(Duration.ofSeconds(1));
+		String value = issue(hints, "session-1");
+		long seconds = Long.parseLong(value.substring(0, value.indexOf('.')));
+
+		Thread.sleep(Math.max(0, Instant.ofEpochSecond(seconds).toEpochMilli() - System.currentTimeMillis()) + 50);
+		assertNull(hints.lookup(request("session-1", value)));
+	}
+
+	@Test
+	void valueWithoutSeparatorIsRejected() {
+		AuthExpiryHints hints = hints(Duration.ofMinutes(5));
+		String value = issue(hints, "session-1");
+
+		assertNull(hints.lookup(request("session-1", value.replace(".", ""))));
+		assertNull(hints.lookup(request("session-1", value.substring(value.indexOf('.')))));
+	}
+
+	@Test
+	void requestWithoutSessionHasNoHint() {
+		AuthExpiryHints hints = hints(Duration.ofMinutes(5));
+		String value = issue(hints, "session-1");
+
+		assertNull(hints.lookup(request(null, value)));
+		// セッションがない場合は発行もしない
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		hints.issue(new MockHttpServletRequest(), response, authentication);
+		assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+	}
+
+	@Test
+	void hintOutlivesSessionInvalidatedOnAnotherNode() {
+		// 同じ署名鍵を設定した2台の構成
+		AuthExpiryHints nodeA = hints(Duration.ofMinutes(5));
+		AuthExpiryHints nodeB = hints(Duration.ofMinutes(5));
+		String value = issue(nodeA, "session-1");
+
+		// セッションの存在は確認しないため、他のサーバーで破棄された後もヒントの期限までは認証済みとして扱う
+		assertNotNull(nodeB.lookup(request("session-1", value)));
+	}
+
+	private AuthExpiryHints hints(Duration hintTtl) {
+		ClientRegistrationRepository registrations = mock(ClientRegistrationRepository.class);
+		when(registrations.findByRegistrationId("google")).thenReturn(registration);
+		OAuth2AuthorizedClientRepository authorizedClients = mock(OAuth2AuthorizedClientRepository.class);
+		Instant now = Instant.now();
+		OAuth2AuthorizedClient client = new OAuth2AuthorizedClient(registration, "alice",
+				new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "token", now, now.plus(Duration.ofHours(1))));
+		when(authorizedClients.loadAuthorizedClient(eq("google"), any(), any())).thenReturn(client);
+		return new AuthExpiryHints(registrations, authorizedClients, SECRET, hintTtl);
+	}
+
+	/**
+	 * ログイン時のヒントCookieを発行し、その値を返す
+	 */
+	private String issue(AuthExpiryHints hints, String sessionId) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setSession(new MockHttpSession(null, sessionId));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		hints.issue(request, response, authentication);
+
+		Cookie cookie = response.getCookie(AuthExpiryHints.COOKIE_NAME);
+		assertNotNull(cookie);
+		assertEquals("/", cookie.getPath());
+		return cookie.getValue();
+	}
+
+	private static MockHttpServletRequest request(String sessionId, String cookieValue) {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRequestedSessionId(sessionId);
+		request.setCookies(new Cookie(AuthExpiryHints.COOKIE_NAME, cookieValue));
+		return request;
+	}
+}
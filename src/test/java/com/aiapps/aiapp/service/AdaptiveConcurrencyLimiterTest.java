@@ -0,0 +1,99 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.aiapps.aiapp.exception.AiAppException;
+
+class AdaptiveConcurrencyLimiterTest {
+
+	@Test
+	void limitGrowsByOneAfterAFullWindowOfSuccesses() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 8, 0, Duration.ofSeconds(1));
+		for (int i = 0; i < 4; i++) {
+			assertTrue(limiter.tryAcquire());
+		}
+		assertFalse(limiter.tryAcquire());
+
+		// 上限1つ分（4件）の成功で 4 + 1/4 + ... となり、5件目で 5 を超える
+		for (int i = 0; i < 4; i++) {
+			limiter.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+		}
+		assertEquals(4, limiter.stats().limit());
+		assertTrue(limiter.tryAcquire());
+		limiter.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+		assertEquals(5, limiter.stats().limit());
+	}
+
+	@Test
+	void limitIsCappedAtMaximum() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2, 0, Duration.ofSeconds(1));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(limiter.tryAcquire());
+			limiter.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+		}
+		assertEquals(2, limiter.stats().limit());
+	}
+
+	@Test
+	void overloadHalvesLimitAtMostOncePerInterval() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8, 0, Duration.ofSeconds(1));
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+
+		limiter.release(AdaptiveConcurrencyLimiter.Outcome.OVERLOAD);
+		assertEquals(4, limiter.stats().limit());
+		// 同じ混雑による連続した失敗では下げすぎない
+		limiter.release(AdaptiveConcurrencyLimiter.Outcome.OVERLOAD);
+		assertEquals(4, limiter.stats().limit());
+		assertEquals(0, limiter.stats().inFlight());
+	}
+
+	@Test
+	void ignoredFailureKeepsLimit() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 1, 8, 0, Duration.ofSeconds(1));
+		assertTrue(limiter.tryAcquire());
+		limiter.release(AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+		assertEquals(3, limiter.stats().limit());
+	}
+
+	@Test
+	void waitersAreGrantedInOrderAndRejectedWhenQueueIsFull() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, Duration.ofSeconds(10));
+		assertTrue(limiter.acquire().isDone());
+		CompletableFuture<Void> waiting = limiter.acquire();
+		assertFalse(waiting.isDone());
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> limiter.acquire().get());
+		assertInstanceOf(AiAppException.class, e.getCause());
+		assertEquals(AdaptiveConcurrencyLimiter.MESSAGE_REJECTED, e.getCause().getMessage());
+		assertEquals(1, limiter.stats().rejected());
+
+		limiter.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+		waiting.get(1, TimeUnit.SECONDS);
+		assertEquals(1, limiter.stats().inFlight());
+		assertEquals(0, limiter.stats().queued());
+	}
+
+	@Test
+	void waiterTimesOutAfterMaxWait() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 1, Duration.ofMillis(50));
+		assertTrue(limiter.tryAcquire());
+
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> limiter.acquire().get(5, TimeUnit.SECONDS));
+		assertEquals(AdaptiveConcurrencyLimiter.MESSAGE_REJECTED, e.getCause().getMessage());
+		assertEquals(1, limiter.stats().timedOut());
+		assertEquals(0, limiter.stats().queued());
+	}
+}
@@ -0,0 +1,110 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AnalysisBatcherTest {
+
+	// 個別に呼び出した場合の回答
+	private static final Map<String, String> SINGLE_REPLIES = Map.of("野球", "スポーツ", "選挙", "政治", "円安", "経済");
+
+	private final List<String> prompts = new CopyOnWriteArrayList<>();
+	private AnalysisBatcher batcher;
+
+	@AfterEach
+	void shutdown() {
+		batcher.shutdown();
+	}
+
+	@Test
+	void batchReplyIsDemultiplexedInInputOrder() throws Exception {
+		// 最大件数に達した時点で送信し、ウィンドウの経過は待たない
+		batcher = batcher(3, "3. 経済\n1. スポーツ\n2. 政治");
+
+		List<CompletableFuture<String>> results = List.of(
+				batcher.submit("野球", "alice", Deadline.NONE),
+				batcher.submit("選挙", "alice", Deadline.NONE),
+				batcher.submit("円安", "alice", Deadline.NONE));
+
+		assertEquals(List.of("スポーツ", "政治", "経済"), values(results));
+		assertEquals(List.of(AnalysisPrompts.batch(List.of("野球", "選挙", "円安"))), prompts);
+		assertEquals(new AnalysisBatcher.Stats(1, 3, 0), batcher.stats());
+	}
+
+	@Test
+	void malformedReplyFallsBackToSingleCalls() throws Exception {
+		// 2件に対して1行しか返らない応答は形式不正
+		batcher = batcher(2, "1. スポーツ");
+
+		List<CompletableFuture<String>> results = List.of(
+				batcher.submit("野球", "alice", Deadline.NONE),
+				batcher.submit("選挙", "alice", Deadline.NONE));
+
+		assertEquals(List.of("スポーツ", "政治"), values(results));
+		assertEquals(List.of(AnalysisPrompts.batch(List.of("野球", "選挙")), AnalysisPrompts.single("野球"),
+				AnalysisPrompts.single("選挙")), prompts);
+		assertEquals(2, batcher.stats().fallbacks());
+	}
+
+	@Test
+	void unknownLabelFallsBackToSingleCallForThatInputOnly() throws Exception {
+		batcher = batcher(2, "1. スポーツ\n2. Politics");
+
+		List<CompletableFuture<String>> results = List.of(
+				batcher.submit("野球", "alice", Deadline.NONE),
+				batcher.submit("選挙", "alice", Deadline.NONE));
+
+		assertEquals(List.of("スポーツ", "政治"), values(results));
+		assertEquals(List.of(AnalysisPrompts.batch(List.of("野球", "選挙")), AnalysisPrompts.single("選挙")), prompts);
+		assertEquals(1, batcher.stats().fallbacks());
+	}
+
+	@Test
+	void requestsFromDifferentUsersAreNotBatchedTogether() throws Exception {
+		batcher = batcher(2, "1. スポーツ\n2. 経済");
+
+		CompletableFuture<String> alice1 = batcher.submit("野球", "alice", Deadline.NONE);
+		CompletableFuture<String> bob = batcher.submit("選挙", "bob", Deadline.NONE);
+		CompletableFuture<String> alice2 = batcher.submit("円安", "alice", Deadline.NONE);
+
+		assertEquals(List.of("スポーツ", "経済"), values(List.of(alice1, alice2)));
+		assertEquals(List.of(AnalysisPrompts.batch(List.of("野球", "円安"))), prompts);
+		// 他の利用者のバッチはウィンドウの経過まで送信しない
+		assertFalse(bob.isDone());
+	}
+
+	/**
+	 * バッチには batchReply を、個別の呼び出しには SINGLE_REPLIES の回答を返すバッチ処理を作成する
+	 * ウィンドウは十分に長くし、最大件数に達した時点の送信だけを確認する
+	 */
+	private AnalysisBatcher batcher(int maxSize, String batchReply) {
+		AnalysisProvider provider = mock(AnalysisProvider.class);
+		when(provider.generateContentAsync(anyString(), any())).thenAnswer(invocation -> {
+			String prompt = invocation.getArgument(0);
+			prompts.add(prompt);
+			return CompletableFuture.completedFuture(prompt.startsWith(AnalysisPrompts.single(""))
+					? SINGLE_REPLIES.get(AnalysisPrompts.inputsOf(prompt).get(0))
+					: batchReply);
+		});
+		return new AnalysisBatcher(provider, true, Duration.ofMinutes(1), maxSize);
+	}
+
+	private static List<String> values(List<CompletableFuture<String>> results) throws Exception {
+		CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+		return results.stream().map(CompletableFuture::join).toList();
+	}
+}
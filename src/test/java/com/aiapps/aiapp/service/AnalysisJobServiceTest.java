@@ -0,0 +1,251 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.aiapps.aiapp.dto.AnalysisJobStatus;
+import com.aiapps.aiapp.dto.AnalysisJobStatus.State;
+import com.aiapps.aiapp.dto.BulkAnalyzeResult;
+import com.aiapps.aiapp.exception.AiAppException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class AnalysisJobServiceTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final List<AnalysisJobService> services = new ArrayList<>();
+
+	@TempDir
+	Path root;
+
+	@AfterEach
+	void shutdown() {
+		services.forEach(AnalysisJobService::shutdown);
+	}
+
+	@Test
+	void submitRecordsInputErrorsAndAnalyzesTheRest() throws IOException {
+		AiService aiService = aiService();
+		when(aiService.getInputErrorMessage("bad")).thenReturn("入力エラー");
+		when(aiService.callGeminiApiAsync(anyString(), eq("alice")))
+				.thenReturn(CompletableFuture.completedFuture("スポーツ"));
+		AnalysisJobService service = start(aiService, Duration.ofDays(7));
+
+		AnalysisJobStatus submitted = service.submit(reader("野球\nbad\nサッカー\n"), "alice");
+		assertEquals(3, submitted.total());
+
+		await(() -> service.status(submitted.id(), "alice").state() == State.COMPLETED);
+		AnalysisJobStatus status = service.status(submitted.id(), "alice");
+		assertEquals(3, status.completed());
+		assertEquals(1, status.failed());
+		List<BulkAnalyzeResult> results = results(service, submitted.id());
+		assertEquals(List.of(1L, 2L, 3L), results.stream().map(BulkAnalyzeResult::line).sorted().toList());
+	}
+
+	@Test
+	void resumeTruncatesTornResultsTailAndAnalyzesRemainingInputs() throws IOException {
+		AiService first = aiService();
+		when(first.callGeminiApiAsync("野球", "alice")).thenReturn(CompletableFuture.completedFuture("スポーツ"));
+		// 2件目は完了しないまま停止する
+		when(first.callGeminiApiAsync("選挙", "alice")).thenReturn(new CompletableFuture<>());
+		AnalysisJobService stopped = start(first, Duration.ofDays(7));
+		String id = stopped.submit(reader("野球\n選挙\n"), "alice").id();
+		await(() -> stopped.status(id, "alice").completed() == 1);
+		stopped.shutdown();
+
+		// 書き込み途中で停止した行を模して、結果ファイルの末尾に不完全な行を残す
+		Files.writeString(root.resolve(id).resolve("results.ndjson"), "{\"line\":2,\"inp",
+				StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+		AiService second = aiService();
+		when(second.callGeminiApiAsync("選挙", "alice")).thenReturn(CompletableFuture.completedFuture("政治"));
+		AnalysisJobService resumed = start(second, Duration.ofDays(7));
+		await(() -> resumed.status(id, "alice") != null && resumed.status(id, "alice").state() == State.COMPLETED);
+
+		List<BulkAnalyzeResult> results = results(resumed, id);
+		assertEquals(2, results.size());
+		assertEquals("スポーツ", results.get(0).category());
+		assertEquals("政治", results.get(1).category());
+		verify(second, times(0)).callGeminiApiAsync("野球", "alice");
+	}
+
+	@Test
+	void cancelledJobDoesNotRecordLateResults() throws IOException {
+		AiService aiService = aiService();
+		CompletableFuture<String> pending = new CompletableFuture<>();
+		when(aiService.callGeminiApiAsync(anyString(), eq("alice"))).thenReturn(pending);
+		AnalysisJobService service = start(aiService, Duration.ofDays(7));
+		String id = service.submit(reader("野球\n"), "alice").id();
+		await(() -> service.status(id, "alice").state() == State.RUNNING);
+
+		assertEquals(State.CANCELLED, service.cancel(id, "alice").state());
+		pending.complete("スポーツ");
+
+		assertEquals(State.CANCELLED, service.status(id, "alice").state());
+		assertEquals(0, service.status(id, "alice").completed());
+		assertTrue(results(service, id).isEmpty());
+	}
+
+	@Test
+	void rejectedInputsAreRequeuedInsteadOfFailing() throws IOException {
+		AiService aiService = aiService();
+		when(aiService.callGeminiApiAsync("野球", "alice")).thenReturn(
+				CompletableFuture.failedFuture(new AiAppException(AdaptiveConcurrencyLimiter.MESSAGE_REJECTED)),
+				CompletableFuture.failedFuture(new AiAppException(FairShareScheduler.MESSAGE_REJECTED)),
+				CompletableFuture.completedFuture("スポーツ"));
+		AnalysisJobService service = start(aiService, Duration.ofDays(7));
+		String id = service.submit(reader("野球\n"), "alice").id();
+
+		await(() -> service.status(id, "alice").state() == State.COMPLETED);
+		assertEquals(0, service.status(id, "alice").failed());
+		assertEquals("スポーツ", results(service, id).get(0).category());
+		verify(aiService, times(3)).callGeminiApiAsync("野球", "alice");
+	}
+
+	@Test
+	void jobIsPausedUntilOwnersQuotaRefills() throws IOException {
+		UserQuotaLimiter quotaLimiter = new UserQuotaLimiter(true, 1, Duration.ofMillis(300), false, null,
+				Duration.ofMinutes(10));
+		AiService aiService = aiService();
+		// AiService と同じく、登録した利用者の利用回数を消費してから分析する
+		when(aiService.callGeminiApiAsync(anyString(), eq("alice"))).thenAnswer(invocation -> quotaLimiter.tryAcquire(invocation.getArgument(1))
+				? CompletableFuture.completedFuture("スポーツ")
+				: CompletableFuture.failedFuture(new AiAppException(UserQuotaLimiter.MESSAGE_EXCEEDED)));
+		AnalysisJobService service = start(aiService, Duration.ofDays(7), quotaLimiter);
+		long started = System.nanoTime();
+		String id = service.submit(reader("野球\n選挙\n円安\n"), "alice").id();
+
+		await(() -> service.status(id, "alice").state() == State.COMPLETED);
+		// 1回分ずつしか回復しないため、3件目の完了までに少なくとも2回分の回復を待つ
+		assertTrue(System.nanoTime() - started >= Duration.ofMillis(500).toNanos());
+		assertEquals(0, service.status(id, "alice").failed());
+		assertEquals(3, results(service, id).size());
+		// 止めている間は呼び出さない（拒否は回復1回につき同時実行数の分まで）
+		assertTrue(quotaLimiter.usage("alice").rejected() <= 2 * 4, quotaLimiter.usage("alice").toString());
+	}
+
+	@Test
+	void jobsAreVisibleOnlyToTheirOwnerAcrossRestart() throws IOException {
+		AiService first = aiService();
+		when(first.callGeminiApiAsync(anyString(), eq("alice"))).thenReturn(new CompletableFuture<>());
+		AnalysisJobService stopped = start(first, Duration.ofDays(7));
+		String id = stopped.submit(reader("野球\n"), "alice").id();
+		assertNull(stopped.status(id, "bob"));
+		assertNull(stopped.cancel(id, "bob"));
+		assertFalse(stopped.readResults(id, "bob", 0, 10, result -> {
+		}));
+		assertFalse(stopped.subscribe(id, "bob", status -> {
+		}));
+		stopped.shutdown();
+
+		// 再開後も登録した利用者が引き継がれる
+		AiService second = aiService();
+		when(second.callGeminiApiAsync(anyString(), eq("alice"))).thenReturn(new CompletableFuture<>());
+		AnalysisJobService resumed = start(second, Duration.ofDays(7));
+		await(() -> resumed.status(id, "alice") != null);
+		assertNull(resumed.status(id, "bob"));
+	}
+
+	@Test
+	void oversizedJobIsRejectedAndRemoved() throws IOException {
+		AnalysisJobService service = start(aiService(), Duration.ofDays(7));
+
+		// 行番号の上限（5行）を超える
+		AiAppException tooManyLines = assertThrows(AiAppException.class,
+				() -> service.submit(reader("1\n2\n3\n4\n5\n6\n"), "alice"));
+		assertEquals(AnalysisJobService.MESSAGE_TOO_LARGE, tooManyLines.getMessage());
+		// ファイルサイズの上限（1KB）を超える
+		AiAppException tooLarge = assertThrows(AiAppException.class,
+				() -> service.submit(reader("あ".repeat(300) + "\n"), "alice"));
+		assertEquals(AnalysisJobService.MESSAGE_TOO_LARGE, tooLarge.getMessage());
+
+		try (Stream<Path> dirs = Files.list(root)) {
+			assertEquals(0, dirs.count());
+		}
+	}
+
+	@Test
+	void finishedJobsArePurgedAfterRetention() throws IOException {
+		AiService aiService = aiService();
+		when(aiService.callGeminiApiAsync(anyString(), eq("alice")))
+				.thenReturn(CompletableFuture.completedFuture("スポーツ"));
+		AnalysisJobService service = start(aiService, Duration.ZERO);
+		String id = service.submit(reader("野球\n"), "alice").id();
+
+		// 一覧から外した後にファイルを削除する
+		await(() -> service.status(id, "alice") == null && Files.notExists(root.resolve(id)));
+	}
+
+	private AiService aiService() {
+		AiService aiService = mock(AiService.class);
+		when(aiService.getInputErrorMessage(anyString())).thenReturn("");
+		return aiService;
+	}
+
+	private AnalysisJobService start(AiService aiService, Duration retention) {
+		return start(aiService, retention,
+				new UserQuotaLimiter(false, 1, Duration.ofSeconds(1), false, null, Duration.ofMinutes(10)));
+	}
+
+	private AnalysisJobService start(AiService aiService, Duration retention, UserQuotaLimiter quotaLimiter) {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(64, 1, 256, 1000, Duration.ofSeconds(10));
+		AnalysisJobService service = new AnalysisJobService(aiService, limiter,
+				new FairShareScheduler(limiter, false, 0, "", 1), quotaLimiter, mapper, true, root, 4, 0.5, retention,
+				Duration.ofMillis(20), 5, DataSize.ofKilobytes(1));
+		services.add(service);
+		service.start();
+		return service;
+	}
+
+	private BulkInputReader reader(String text) {
+		return new BulkInputReader(new BufferedReader(new StringReader(text)), BulkInputReader.Format.CSV, mapper,
+				4096);
+	}
+
+	private static List<BulkAnalyzeResult> results(AnalysisJobService service, String id) throws IOException {
+		List<BulkAnalyzeResult> results = new ArrayList<>();
+		assertTrue(service.readResults(id, "alice", 0, Integer.MAX_VALUE, results::add));
+		results.sort((a, b) -> Long.compare(a.line(), b.line()));
+		return results;
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "条件を満たさないまま時間切れになりました");
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
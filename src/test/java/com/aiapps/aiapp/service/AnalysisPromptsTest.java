@@ -0,0 +1,57 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class AnalysisPromptsTest {
+
+	@Test
+	void batchPromptNumbersEachInputOnItsOwnLine() {
+		String prompt = AnalysisPrompts.batch(List.of("円安が進行", "新型スマホ\n発表"));
+		assertTrue(prompt.endsWith("\n1. 円安が進行\n2. 新型スマホ 発表"));
+	}
+
+	@Test
+	void parsesNumberedReplyInAnyOrder() {
+		List<String> labels = AnalysisPrompts.parseBatchReply("2. テクノロジー\n1．経済\n", 2);
+		assertEquals(List.of("経済", "テクノロジー"), labels);
+	}
+
+	@Test
+	void unknownLabelIsReturnedAsNull() {
+		List<String> labels = AnalysisPrompts.parseBatchReply("1. 経済\n2. Technology", 2);
+		assertEquals(Arrays.asList("経済", null), labels);
+	}
+
+	@Test
+	void missingOrDuplicateLinesAreMalformed() {
+		assertNull(AnalysisPrompts.parseBatchReply("1. 経済", 2));
+		assertNull(AnalysisPrompts.parseBatchReply("1. 経済\n1. 政治", 2));
+		assertNull(AnalysisPrompts.parseBatchReply("1. 経済\n3. 政治", 2));
+	}
+
+	@Test
+	void inputsCanBeRecoveredFromPrompts() {
+		assertEquals(List.of("円安が進行"), AnalysisPrompts.inputsOf(AnalysisPrompts.single("円安が進行")));
+		assertEquals(List.of("円安が進行", "新型スマホ 発表"),
+				AnalysisPrompts.inputsOf(AnalysisPrompts.batch(List.of("円安が進行", "新型スマホ\n発表"))));
+	}
+
+	@Test
+	void promptsCarryOnlyInputsAndTheirCount() {
+		String single = AnalysisPrompts.single("円安が進行");
+		String batch = AnalysisPrompts.batch(List.of("a", "b", "c"));
+		// 分類指示は systemInstruction で送るため、入力ごとのプロンプトには含めない
+		assertFalse(single.contains(AnalysisPrompts.LABELS.get(0)));
+		assertFalse(batch.contains(AnalysisPrompts.LABELS.get(0)));
+		assertEquals(1, AnalysisPrompts.inputCount(single));
+		assertEquals(3, AnalysisPrompts.inputCount(batch));
+	}
+}
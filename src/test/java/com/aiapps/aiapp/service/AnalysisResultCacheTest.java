@@ -0,0 +1,49 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class AnalysisResultCacheTest {
+
+	@Test
+	void normalizeFoldsWidthAndWhitespace() {
+		assertEquals("AI 新製品 発表", AnalysisInputNormalizer.normalize("　ＡＩ　新製品\n\n発表 "));
+		assertEquals("テクノロジー", AnalysisInputNormalizer.normalize("ﾃｸﾉﾛｼﾞｰ"));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntry() {
+		AnalysisResultCache cache = new AnalysisResultCache(true, 2, Duration.ofHours(1));
+		cache.put("a", "スポーツ");
+		cache.put("b", "政治");
+		// aを参照してbを最も古いエントリにする
+		assertEquals("スポーツ", cache.get("a"));
+		cache.put("c", "経済");
+
+		assertNull(cache.get("b"));
+		assertEquals("経済", cache.get("c"));
+		AnalysisResultCache.Stats stats = cache.stats();
+		assertEquals(2, stats.hits());
+		assertEquals(1, stats.misses());
+		assertEquals(1, stats.evictions());
+	}
+
+	@Test
+	void expiredEntryIsMiss() {
+		AnalysisResultCache cache = new AnalysisResultCache(true, 10, Duration.ZERO);
+		cache.put("a", "スポーツ");
+		assertNull(cache.get("a"));
+		assertEquals(1, cache.stats().evictions());
+	}
+
+	@Test
+	void disabledCacheNeverHits() {
+		AnalysisResultCache cache = new AnalysisResultCache(false, 10, Duration.ofHours(1));
+		cache.put("a", "スポーツ");
+		assertNull(cache.get("a"));
+	}
+}
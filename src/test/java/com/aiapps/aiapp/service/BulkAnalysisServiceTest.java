@@ -0,0 +1,48 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BulkAnalysisServiceTest {
+
+	@Test
+	void runtimeErrorInListenerStopsReadingAndIsReported() {
+		AiService aiService = mock(AiService.class);
+		when(aiService.getInputErrorMessage(anyString())).thenReturn("");
+		when(aiService.callGeminiApiAsync(anyString(), eq("alice")))
+				.thenReturn(CompletableFuture.completedFuture("スポーツ"));
+		BulkAnalysisService service = new BulkAnalysisService(aiService, 1);
+		AtomicInteger notified = new AtomicInteger();
+
+		// 完了済みの SseEmitter への送信を模して、1件目の通知で実行時例外を投げる
+		IOException e = assertThrows(IOException.class, () -> service.analyzeAll(reader("野球\n選挙\n円安\n"), "alice",
+				result -> {
+					notified.incrementAndGet();
+					throw new IllegalStateException("ResponseBodyEmitter has already completed");
+				}));
+
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+		// 失敗の後は入力を読み進めず、通知もしない
+		assertEquals(1, notified.get());
+	}
+
+	private static BulkInputReader reader(String text) {
+		return new BulkInputReader(new BufferedReader(new StringReader(text)), BulkInputReader.Format.CSV,
+				new ObjectMapper(), 4096);
+	}
+}
@@ -0,0 +1,45 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BulkInputReaderTest {
+
+	@Test
+	void linesOverTheLimitAreSkippedAsErrors() throws IOException {
+		BulkInputReader reader = reader(BulkInputReader.Format.CSV, "野球\n" + "あ".repeat(100) + "\nサッカー\n", 10);
+
+		assertEquals(new BulkInputReader.Item(1, "野球", null), reader.next());
+		BulkInputReader.Item tooLong = reader.next();
+		assertEquals(2, tooLong.line());
+		assertNull(tooLong.input());
+		assertEquals("エラー：1行は10文字以内にしてください。", tooLong.error());
+		// 超えた行の残りは読み捨て、次の行から読み込みを続ける
+		assertEquals(new BulkInputReader.Item(3, "サッカー", null), reader.next());
+		assertNull(reader.next());
+	}
+
+	@Test
+	void acceptsCrLfAndMissingTrailingNewline() throws IOException {
+		BulkInputReader reader = reader(BulkInputReader.Format.NDJSON,
+				"{\"input\":\"野球\"}\r\n\r\n\"選挙\"\r{\"input\":\"円安\"}", 100);
+
+		assertEquals(new BulkInputReader.Item(1, "野球", null), reader.next());
+		assertEquals(new BulkInputReader.Item(3, "選挙", null), reader.next());
+		assertEquals(new BulkInputReader.Item(4, "円安", null), reader.next());
+		assertNull(reader.next());
+	}
+
+	private static BulkInputReader reader(BulkInputReader.Format format, String text, int maxLineLength) {
+		return new BulkInputReader(new BufferedReader(new StringReader(text)), format, new ObjectMapper(),
+				maxLineLength);
+	}
+}
@@ -0,0 +1,196 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClassificationStoreTest {
+
+	private final List<ClassificationStore> stores = new ArrayList<>();
+
+	@TempDir
+	Path root;
+
+	@AfterEach
+	void shutdown() {
+		stores.forEach(ClassificationStore::shutdown);
+	}
+
+	@Test
+	void resultsAreReadFromFileAfterRestart() {
+		ClassificationStore first = open(100);
+		first.append("野球", "スポーツ", "gemini");
+		first.append("選挙", "政治", "gemini");
+		first.append("野球", "娯楽", "gemini");
+		first.shutdown();
+
+		ClassificationStore second = open(100);
+		assertEquals("娯楽", second.find("野球"));
+		assertEquals("政治", second.find("選挙"));
+		assertNull(second.find("円安"));
+		assertEquals(2, second.size());
+	}
+
+	@Test
+	void tornTailIsTruncatedAndAppendsContinue() throws IOException {
+		ClassificationStore first = open(100);
+		first.append("野球", "スポーツ", "gemini");
+		first.shutdown();
+		long size = Files.size(file());
+
+		// 書き込み途中で停止したレコード（長さのみ書き込まれ、ペイロードが欠けている）
+		Files.write(file(), ByteBuffer.allocate(6).putInt(40).putShort((short) 1).array(), StandardOpenOption.APPEND);
+
+		ClassificationStore second = open(100);
+		assertEquals("スポーツ", second.find("野球"));
+		assertEquals(size, Files.size(file()));
+		second.append("選挙", "政治", "gemini");
+		second.shutdown();
+
+		ClassificationStore third = open(100);
+		assertEquals("スポーツ", third.find("野球"));
+		assertEquals("政治", third.find("選挙"));
+	}
+
+	@Test
+	void recordWithCrcMismatchIsDiscarded() throws IOException {
+		ClassificationStore first = open(100);
+		first.append("野球", "スポーツ", "gemini");
+		first.shutdown();
+		long size = Files.size(file());
+		ClassificationStore second = open(100);
+		second.append("選挙", "政治", "gemini");
+		second.shutdown();
+
+		// 2件目のペイロードの末尾（入力文字列）を1バイト書き換える
+		try (FileChannel ch = FileChannel.open(file(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long position = ch.size() - Integer.BYTES - 1;
+			ByteBuffer b = ByteBuffer.allocate(1);
+			ch.read(b, position);
+			ch.write(ByteBuffer.wrap(new byte[] { (byte) (b.get(0) ^ 0xff) }), position);
+		}
+
+		ClassificationStore third = open(100);
+		assertEquals("スポーツ", third.find("野球"));
+		assertNull(third.find("選挙"));
+		assertEquals(size, Files.size(file()));
+	}
+
+	@Test
+	void indexIsBoundedAndKeepsMostRecentlyWritten() {
+		ClassificationStore store = open(2);
+		store.append("野球", "スポーツ", "gemini");
+		store.append("選挙", "政治", "gemini");
+		store.append("野球", "スポーツ", "gemini");
+		store.append("円安", "経済", "gemini");
+
+		assertEquals(2, store.size());
+		assertNull(store.find("選挙"));
+		assertEquals("スポーツ", store.find("野球"));
+		assertEquals("経済", store.find("円安"));
+	}
+
+	@Test
+	void findDoesNotReadFileBeforeWarmUp() throws IOException {
+		ClassificationStore first = open(100);
+		first.append("野球", "スポーツ", "gemini");
+		first.shutdown();
+
+		// 索引の再構築はウォームアップで行い、検索の呼び出し元では行わない
+		ClassificationStore second = create(100);
+		assertNull(second.find("野球"));
+		assertEquals(0, second.size());
+		second.load();
+		assertEquals("スポーツ", second.find("野球"));
+	}
+
+	@Test
+	void compactionKeepsOnlyLatestResults() throws IOException {
+		ClassificationStore store = open(100);
+		store.append("選挙", "政治", "gemini");
+		for (int i = 0; i < 1000; i++) {
+			store.append("野球", i % 2 == 0 ? "娯楽" : "スポーツ", "gemini");
+		}
+		store.shutdown();
+		ClassificationStore reopened = open(100);
+		assertEquals("スポーツ", reopened.find("野球"));
+		long before = Files.size(file());
+
+		// 索引の件数に対してレコードが多いため、最新の2件だけで作り直す
+		reopened.compactIfNeeded();
+		assertEquals("スポーツ", reopened.find("野球"));
+		assertEquals("政治", reopened.find("選挙"));
+		long after = Files.size(file());
+		assertTrue(after < before / 100, before + " -> " + after);
+
+		reopened.append("円安", "経済", "gemini");
+		reopened.shutdown();
+		ClassificationStore restarted = open(100);
+		assertEquals("スポーツ", restarted.find("野球"));
+		assertEquals("政治", restarted.find("選挙"));
+		assertEquals("経済", restarted.find("円安"));
+		assertEquals(3, restarted.size());
+	}
+
+	@Test
+	void appendsDuringCompactionAreKept() throws Exception {
+		ClassificationStore store = open(1000);
+		for (int i = 0; i < 1000; i++) {
+			store.append("野球", "スポーツ", "gemini");
+		}
+		// 新しいファイルの作成と並行して追記する
+		Thread writer = Thread.ofPlatform().start(() -> {
+			for (int i = 0; i < 200; i++) {
+				store.append("入力" + i, "政治", "gemini");
+			}
+		});
+		store.compactIfNeeded();
+		writer.join();
+
+		for (int i = 0; i < 200; i++) {
+			assertEquals("政治", store.find("入力" + i));
+		}
+		assertEquals("スポーツ", store.find("野球"));
+		store.shutdown();
+		ClassificationStore restarted = open(1000);
+		assertEquals(201, restarted.size());
+		assertEquals("政治", restarted.find("入力199"));
+	}
+
+	private ClassificationStore open(int maxEntries) {
+		ClassificationStore store = create(maxEntries);
+		try {
+			store.load();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return store;
+	}
+
+	private ClassificationStore create(int maxEntries) {
+		ClassificationStore store = new ClassificationStore(new AnalysisResultCache(false, 0, Duration.ZERO),
+				new NearDuplicateIndex(false, 0.9, 1, 3, 4), new LocalPreClassifier(false, 1.0, Long.MAX_VALUE, 0),
+				true, file(), Duration.ofDays(30), Duration.ofHours(1), maxEntries);
+		stores.add(store);
+		return store;
+	}
+
+	private Path file() {
+		return root.resolve("classifications.db");
+	}
+}
@@ -0,0 +1,102 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+class FairShareSchedulerTest {
+
+	// 同時に実行できるのは1件だけにする
+	private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0, Duration.ofSeconds(1));
+	private final List<String> started = new CopyOnWriteArrayList<>();
+	private final CompletableFuture<String> blocker = new CompletableFuture<>();
+
+	@Test
+	void userWhoArrivesLaterIsNotQueuedBehindHeavyUser() throws Exception {
+		FairShareScheduler scheduler = new FairShareScheduler(limiter, true, 10, "", 1);
+		scheduler.submit("a", Deadline.NONE, () -> blocker);
+		List<CompletableFuture<String>> results = List.of(
+				scheduler.submit("a", Deadline.NONE, task("a1")),
+				scheduler.submit("a", Deadline.NONE, task("a2")),
+				scheduler.submit("a", Deadline.NONE, task("a3")),
+				scheduler.submit("b", Deadline.NONE, task("b1")));
+		assertEquals(new FairShareScheduler.Share(1, 3), scheduler.share("a"));
+		assertTrue(scheduler.hasWaitingUsers());
+
+		blocker.complete("blocker");
+		for (CompletableFuture<String> result : results) {
+			result.get(1, TimeUnit.SECONDS);
+		}
+		assertEquals(List.of("b1", "a1", "a2", "a3"), started);
+		assertEquals(0, scheduler.stats().inFlight());
+		assertEquals(0, scheduler.stats().queued());
+	}
+
+	@Test
+	void heavierWeightGetsProportionallyMoreTurns() throws Exception {
+		FairShareScheduler scheduler = new FairShareScheduler(limiter, true, 10, "a:2", 1);
+		scheduler.submit("c", Deadline.NONE, () -> blocker);
+		List<CompletableFuture<String>> results = List.of(
+				scheduler.submit("a", Deadline.NONE, task("a1")),
+				scheduler.submit("a", Deadline.NONE, task("a2")),
+				scheduler.submit("a", Deadline.NONE, task("a3")),
+				scheduler.submit("a", Deadline.NONE, task("a4")),
+				scheduler.submit("b", Deadline.NONE, task("b1")),
+				scheduler.submit("b", Deadline.NONE, task("b2")));
+
+		blocker.complete("blocker");
+		for (CompletableFuture<String> result : results) {
+			result.get(1, TimeUnit.SECONDS);
+		}
+		// 重み2の利用者は重み1の利用者の2倍の割合で実行される（開始時刻が同じ場合は到着順）
+		assertEquals(List.of("a1", "b1", "a2", "a3", "b2", "a4"), started);
+	}
+
+	@Test
+	void rejectsWhenUserQueueIsFull() {
+		FairShareScheduler scheduler = new FairShareScheduler(limiter, true, 1, "", 1);
+		scheduler.submit("a", Deadline.NONE, () -> blocker);
+		scheduler.submit("a", Deadline.NONE, task("a1"));
+
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> scheduler.submit("a", Deadline.NONE, task("a2")).get(1, TimeUnit.SECONDS));
+		assertEquals(FairShareScheduler.MESSAGE_REJECTED, e.getCause().getMessage());
+		assertEquals(1, scheduler.stats().rejected());
+		// 他の利用者の待機には影響しない
+		scheduler.submit("b", Deadline.NONE, task("b1"));
+		assertEquals(2, scheduler.stats().queued());
+	}
+
+	@Test
+	void expiredRequestIsDroppedInsteadOfStarted() throws Exception {
+		FairShareScheduler scheduler = new FairShareScheduler(limiter, true, 10, "", 1);
+		scheduler.submit("a", Deadline.NONE, () -> blocker);
+		CompletableFuture<String> expired = scheduler.submit("b", Deadline.after(Duration.ofMillis(1)), task("b1"));
+		CompletableFuture<String> waiting = scheduler.submit("c", Deadline.NONE, task("c1"));
+		Thread.sleep(20);
+
+		blocker.complete("blocker");
+		ExecutionException e = assertThrows(ExecutionException.class, () -> expired.get(1, TimeUnit.SECONDS));
+		assertEquals(Deadline.MESSAGE_EXCEEDED, e.getCause().getMessage());
+		assertEquals("c1", waiting.get(1, TimeUnit.SECONDS));
+		assertEquals(List.of("c1"), started);
+		assertEquals(1, scheduler.stats().expired());
+	}
+
+	private Supplier<CompletableFuture<String>> task(String name) {
+		return () -> {
+			started.add(name);
+			return CompletableFuture.completedFuture(name);
+		};
+	}
+}
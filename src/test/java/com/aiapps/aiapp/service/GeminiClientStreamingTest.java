@@ -0,0 +1,122 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.aiapps.aiapp.exception.AiAppException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class GeminiClientStreamingTest {
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final List<String> chunks = new CopyOnWriteArrayList<>();
+	private final CountDownLatch stalled = new CountDownLatch(1);
+	private HttpServer server;
+	private UpstreamHttpClient http;
+
+	@AfterEach
+	void stop() {
+		stalled.countDown();
+		if (http != null) {
+			http.shutdown();
+		}
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void doesNotRetryAfterChunkWasEmitted() throws IOException {
+		GeminiClient client = client(exchange -> {
+			// 1件目の断片を送った後、応答の途中で止まる（試行の時間切れは再試行の対象）
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream out = exchange.getResponseBody();
+			out.write(event("スポ"));
+			out.flush();
+			try {
+				stalled.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.close();
+		});
+
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> client.streamGenerateContentAsync("Input: 野球", Deadline.NONE, chunks::add)
+						.get(10, TimeUnit.SECONDS));
+		assertInstanceOf(AiAppException.class, e.getCause());
+		assertEquals(1, requests.get());
+		assertEquals(List.of("スポ"), chunks);
+	}
+
+	@Test
+	void retriesWhenFailingBeforeFirstChunk() throws Exception {
+		GeminiClient client = client(exchange -> {
+			if (requests.get() == 1) {
+				byte[] body = "{\"error\":{\"code\":503}}".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(503, body.length);
+				exchange.getResponseBody().write(body);
+			} else {
+				exchange.sendResponseHeaders(200, 0);
+				exchange.getResponseBody().write(event("スポ"));
+				exchange.getResponseBody().write(event("ーツ"));
+			}
+			exchange.close();
+		});
+
+		assertEquals("スポーツ", client.streamGenerateContentAsync("Input: 野球", Deadline.NONE, chunks::add)
+				.get(10, TimeUnit.SECONDS));
+		assertEquals(2, requests.get());
+		assertEquals(List.of("スポ", "ーツ"), chunks);
+	}
+
+	private GeminiClient client(Handler handler) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			requests.incrementAndGet();
+			exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+			handler.handle(exchange);
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+
+		AnalysisMetrics metrics = new AnalysisMetrics(new SimpleMeterRegistry());
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8, 100, Duration.ofSeconds(10));
+		UpstreamCallGuard guard = new UpstreamCallGuard(limiter, metrics, 3, Duration.ofMillis(1),
+				Duration.ofMillis(1), Duration.ZERO, Duration.ofMillis(500), false, 0.95, Duration.ZERO, 0.0);
+		http = new UpstreamHttpClient(HttpClient.Version.HTTP_1_1, Duration.ofSeconds(5), false,
+				Duration.ofMinutes(5), 0, Duration.ZERO);
+		return new GeminiClient(guard, http, metrics, "test", "http://127.0.0.1:" + server.getAddress().getPort(),
+				16, 0);
+	}
+
+	private static byte[] event(String text) {
+		return ("data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + text + "\"}]}}]}\n\n")
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private interface Handler {
+		void handle(HttpExchange exchange) throws IOException;
+	}
+}
@@ -0,0 +1,78 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.aiapps.aiapp.exception.AiAppException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class GeminiJsonCodecTest {
+
+	@Test
+	void requestEscapesQuotesBackslashesAndControlCharacters() throws Exception {
+		String prompt = "分類して: \"C:\\temp\"\n\tタブ\u0001";
+		byte[] body = GeminiJsonCodec.encodeRequest(prompt, "指示", 16, 0);
+		String text = new ObjectMapper().readTree(body)
+				.path("contents").get(0).path("parts").get(0).path("text").asText();
+		assertEquals(prompt, text);
+	}
+
+	@Test
+	void requestSeparatesInstructionAndCapsOutput() throws Exception {
+		JsonNode inline = new ObjectMapper().readTree(GeminiJsonCodec.encodeRequest("Input: 円安", "指示", 16, 0));
+		assertEquals("指示", inline.path("systemInstruction").path("parts").get(0).path("text").asText());
+		assertEquals(16, inline.path("generationConfig").path("maxOutputTokens").asInt());
+		assertEquals(1, inline.path("generationConfig").path("candidateCount").asInt());
+		assertEquals(0, inline.path("generationConfig").path("thinkingConfig").path("thinkingBudget").asInt());
+
+		// 思考予算が負の場合はモデルの既定に任せる
+		JsonNode defaults = new ObjectMapper().readTree(GeminiJsonCodec.encodeRequest("Input: 円安", null, 16, -1));
+		assertTrue(defaults.path("systemInstruction").isMissingNode());
+		assertTrue(defaults.path("generationConfig").path("thinkingConfig").isMissingNode());
+	}
+
+	@Test
+	void decodesFirstCandidateTextAndSkipsOtherFields() {
+		String json = """
+				{"promptFeedback":{"blockReason":null},
+				 "candidates":[{"index":0,"safetyRatings":[{"category":"x","probability":"LOW"}],
+				   "content":{"role":"model","parts":[{"thought":true},{"text":"ignored"}]}},
+				   {"content":{"parts":[{"text":"2nd"}]}}]}
+				""";
+		// parts[0] に text がない場合は空文字
+		assertEquals("", GeminiJsonCodec.decodeText(json.getBytes(StandardCharsets.UTF_8)));
+
+		String normal = "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"経済\"}],\"role\":\"model\"}}],"
+				+ "\"usageMetadata\":{\"totalTokenCount\":3}}";
+		assertEquals("経済", GeminiJsonCodec.decodeText(normal.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void decodesUsageMetadataAfterSkippedCandidates() {
+		String json = """
+				{"candidates":[{"content":{"parts":[{"text":"経済"}]},"safetyRatings":[{"x":1}]},
+				   {"content":{"parts":[{"text":"2nd"}]}}],
+				 "usageMetadata":{"promptTokenCount":120,"cachedContentTokenCount":100,"candidatesTokenCount":2,
+				   "thoughtsTokenCount":0,"totalTokenCount":122,
+				   "promptTokensDetails":[{"modality":"TEXT","tokenCount":120}]},
+				 "modelVersion":"gemini-2.5-flash"}
+				""";
+		GeminiJsonCodec.Reply reply = GeminiJsonCodec.decodeReply(json.getBytes(StandardCharsets.UTF_8));
+		assertEquals("経済", reply.text());
+		assertEquals(new GeminiJsonCodec.Usage(120, 100, 2, 0, 122), reply.usage());
+	}
+
+	@Test
+	void missingCandidatesIsAnError() {
+		assertThrows(AiAppException.class,
+				() -> GeminiJsonCodec.decodeText("{\"candidates\":[]}".getBytes(StandardCharsets.UTF_8)));
+		assertThrows(AiAppException.class,
+				() -> GeminiJsonCodec.decodeText("not json".getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,112 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.aiapps.aiapp.exception.AiAppException;
+
+class InFlightRequestCoalescerTest {
+
+	private final InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(true);
+	private final AtomicInteger calls = new AtomicInteger();
+	private final CompletableFuture<String> upstream = new CompletableFuture<>();
+
+	@Test
+	void concurrentIdenticalRequestsShareOneCall() throws Exception {
+		List<CompletableFuture<String>> results = executeConcurrently("野球", 16);
+
+		assertEquals(1, calls.get());
+		assertEquals(1, coalescer.stats().leaders());
+		assertEquals(15, coalescer.stats().followers());
+		assertEquals(1, coalescer.stats().inFlight());
+		results.forEach(result -> assertFalse(result.isDone()));
+
+		upstream.complete("スポーツ");
+		for (CompletableFuture<String> result : results) {
+			assertEquals("スポーツ", result.get(1, TimeUnit.SECONDS));
+		}
+		assertEquals(0, coalescer.stats().inFlight());
+	}
+
+	@Test
+	void failureReachesEveryWaiter() throws Exception {
+		List<CompletableFuture<String>> results = executeConcurrently("野球", 8);
+		AiAppException failure = new AiAppException("CONNECT_ERROR");
+
+		upstream.completeExceptionally(failure);
+		for (CompletableFuture<String> result : results) {
+			ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+			assertSame(failure, e.getCause());
+		}
+		assertEquals(1, calls.get());
+		assertEquals(0, coalescer.stats().inFlight());
+	}
+
+	@Test
+	void cancellingOneWaiterDoesNotAffectOthers() throws Exception {
+		CompletableFuture<String> first = coalescer.execute("野球", this::call);
+		CompletableFuture<String> second = coalescer.execute("野球", this::call);
+
+		first.cancel(true);
+		upstream.complete("スポーツ");
+		assertEquals("スポーツ", second.get(1, TimeUnit.SECONDS));
+		assertFalse(upstream.isCancelled());
+	}
+
+	@Test
+	void differentKeysAndLaterRequestsCallAgain() throws Exception {
+		coalescer.execute("野球", this::call);
+		coalescer.execute("選挙", this::call);
+		assertEquals(2, calls.get());
+
+		upstream.complete("スポーツ");
+		// 完了後に到着した同じ入力は相乗りせず、新たに処理する
+		coalescer.execute("野球", this::call);
+		assertEquals(3, calls.get());
+	}
+
+	private CompletableFuture<String> call() {
+		calls.incrementAndGet();
+		return upstream;
+	}
+
+	/**
+	 * 同じキーの呼び出しを複数のスレッドから同時に行う
+	 */
+	private List<CompletableFuture<String>> executeConcurrently(String key, int count) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(count);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<CompletableFuture<String>>> submitted = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				submitted.add(executor.submit(() -> {
+					start.await();
+					return coalescer.execute(key, this::call);
+				}));
+			}
+			start.countDown();
+			List<CompletableFuture<String>> results = new ArrayList<>();
+			for (Future<CompletableFuture<String>> future : submitted) {
+				results.add(future.get(5, TimeUnit.SECONDS));
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyTrackerTest {
+
+	@Test
+	void noPercentileUntilMinSamples() {
+		LatencyTracker tracker = new LatencyTracker(0.95, 10);
+		for (int i = 0; i < 9; i++) {
+			tracker.record(100);
+		}
+		assertEquals(-1, tracker.percentileNanos());
+		tracker.record(100);
+		assertEquals(100, tracker.percentileNanos());
+	}
+
+	@Test
+	void percentileOfRecordedSamples() {
+		LatencyTracker tracker = new LatencyTracker(0.95, 100);
+		for (int i = 1; i <= 100; i++) {
+			tracker.record(i);
+		}
+		assertEquals(95, tracker.percentileNanos());
+	}
+
+	@Test
+	void expectedExcessAveragesSlowerSamples() {
+		LatencyTracker tracker = new LatencyTracker(0.5, 1);
+		tracker.record(10);
+		tracker.record(30);
+		tracker.record(50);
+		// 20を超えた30と50の超過分（10と30）の平均
+		assertEquals(20, tracker.expectedExcessNanos(20));
+		assertEquals(0, tracker.expectedExcessNanos(50));
+	}
+}
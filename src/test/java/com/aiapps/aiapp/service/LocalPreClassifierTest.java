@@ -0,0 +1,87 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class LocalPreClassifierTest {
+
+	@Test
+	void answersOnlyAfterMinSamples() {
+		LocalPreClassifier classifier = new LocalPreClassifier(true, 0.9, 20, 0);
+		for (int i = 0; i < 9; i++) {
+			classifier.learn("野球の試合", "スポーツ");
+			classifier.learn("選挙の結果", "政治");
+		}
+		classifier.learn("野球の試合", "スポーツ");
+
+		// 学習件数が19件のうちは回答しない
+		assertNull(classifier.classify("野球の試合"));
+		assertEquals(1, classifier.stats().fallthroughs());
+
+		classifier.learn("選挙の結果", "政治");
+		assertEquals("スポーツ", classifier.classify("野球の試合"));
+		assertEquals("政治", classifier.classify("選挙の結果"));
+		assertEquals(2, classifier.stats().hits());
+		assertEquals(20, classifier.stats().trainedSamples());
+	}
+
+	@Test
+	void lowConfidenceIsLeftToGemini() {
+		LocalPreClassifier classifier = trained(new LocalPreClassifier(true, 0.9, 1, 0));
+
+		// 学習した文字を含まない入力は、どのカテゴリーとも決められない
+		assertNull(classifier.classify("円安"));
+		assertEquals(1, classifier.stats().fallthroughs());
+
+		// しきい値を満たすことのない設定では回答しない
+		LocalPreClassifier strict = trained(new LocalPreClassifier(true, 1.1, 1, 0));
+		assertNull(strict.classify("野球の試合"));
+		assertEquals(0, strict.stats().hits());
+	}
+
+	@Test
+	void auditSendsConfidentInputsToGemini() {
+		LocalPreClassifier classifier = trained(new LocalPreClassifier(true, 0.9, 1, 1.0));
+
+		assertNull(classifier.classify("野球の試合"));
+		assertEquals(1, classifier.stats().audits());
+		assertEquals(0, classifier.stats().hits());
+		assertEquals(0, classifier.stats().fallthroughs());
+	}
+
+	@Test
+	void disabledClassifierStillLearnsButNeverAnswers() {
+		LocalPreClassifier classifier = trained(new LocalPreClassifier(false, 0.9, 1, 0));
+
+		assertNull(classifier.classify("野球の試合"));
+		assertEquals("スポーツ", classifier.predict("野球の試合").label());
+		assertEquals(0, classifier.stats().fallthroughs());
+	}
+
+	@Test
+	void observeCountsAgreementOnlyForConfidentPredictions() {
+		LocalPreClassifier classifier = trained(new LocalPreClassifier(false, 0.9, 1, 0));
+
+		classifier.observe("野球の試合", "スポーツ");
+		classifier.observe("選挙の結果", "スポーツ");
+		// 確信度の低い予測と、カテゴリー一覧にない回答は計上しない
+		classifier.observe("円安", "経済");
+		classifier.observe("野球の試合", "Sports");
+
+		LocalPreClassifier.Stats stats = classifier.stats();
+		assertEquals(1, stats.agreements());
+		assertEquals(1, stats.disagreements());
+		// 学習するのはカテゴリー一覧にある回答のみ
+		assertEquals(23, stats.trainedSamples());
+	}
+
+	private static LocalPreClassifier trained(LocalPreClassifier classifier) {
+		for (int i = 0; i < 10; i++) {
+			classifier.learn("野球の試合", "スポーツ");
+			classifier.learn("選挙の結果", "政治");
+		}
+		return classifier;
+	}
+}
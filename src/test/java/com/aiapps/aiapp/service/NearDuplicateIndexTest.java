@@ -0,0 +1,52 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class NearDuplicateIndexTest {
+
+	@Test
+	void reusesLabelOfNearDuplicateInput() {
+		NearDuplicateIndex index = new NearDuplicateIndex(true, 0.9, 100, 3, 4);
+		index.observe("日本代表がワールドカップ予選で勝利し本大会出場を決めた", "スポーツ");
+
+		// 句読点・記号の違いは無視し、1文字程度の違いは類似とみなす
+		assertEquals("スポーツ", index.lookup("日本代表が、ワールドカップ予選で勝利し本大会出場を決めた！"));
+		assertEquals("スポーツ", index.lookup("日本代表がワールドカップ予選で勝利し本大会出場を決める"));
+		assertNull(index.lookup("中央銀行が政策金利の引き上げを発表した"));
+
+		NearDuplicateIndex.Stats stats = index.stats();
+		assertEquals(3, stats.lookups());
+		assertEquals(2, stats.nearHits());
+	}
+
+	@Test
+	void ignoresShortInputAndUnknownLabel() {
+		NearDuplicateIndex index = new NearDuplicateIndex(true, 0.9, 100, 3, 4);
+		index.observe("株価", "経済");
+		index.observe("中央銀行が政策金利の引き上げを発表した", "不明");
+
+		assertNull(index.lookup("株価"));
+		assertNull(index.lookup("中央銀行が政策金利の引き上げを発表した"));
+		assertEquals(0, index.stats().size());
+	}
+
+	@Test
+	void evictsOldestEntryWhenFull() {
+		NearDuplicateIndex index = new NearDuplicateIndex(true, 0.9, 2, 3, 4);
+		index.observe("日本代表がワールドカップ予選で勝利した", "スポーツ");
+		index.observe("中央銀行が政策金利の引き上げを発表した", "経済");
+		// 同じ入力は上書きし、件数は増えない
+		index.observe("中央銀行が政策金利の引き上げを発表した", "ビジネス");
+		index.observe("新しいスマートフォンに生成AIが搭載された", "テクノロジー");
+
+		assertNull(index.lookup("日本代表がワールドカップ予選で勝利した"));
+		assertEquals("ビジネス", index.lookup("中央銀行が政策金利の引き上げを発表した"));
+		assertEquals("テクノロジー", index.lookup("新しいスマートフォンに生成AIが搭載された"));
+		NearDuplicateIndex.Stats stats = index.stats();
+		assertEquals(2, stats.size());
+		assertEquals(1, stats.evictions());
+	}
+}
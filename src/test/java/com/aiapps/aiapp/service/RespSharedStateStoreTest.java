@@ -0,0 +1,252 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RespSharedStateStoreTest {
+
+	private StandInServer server;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = new StandInServer(null);
+	}
+
+	@AfterEach
+	void stopServer() throws IOException {
+		server.close();
+	}
+
+	@Test
+	void putGetAndDeleteBinaryValue() {
+		RespSharedStateStore store = store(null);
+		// 区切りの CRLF を含むバイト列もそのまま保存できる
+		byte[] value = { 0, '\r', '\n', (byte) 0xff, 'a' };
+		store.put("session:1", value, Duration.ofMinutes(1));
+
+		assertArrayEquals(value, store.get("session:1"));
+		assertArrayEquals(value, server.values.get("test:session:1"));
+		store.delete("session:1");
+		assertNull(store.get("session:1"));
+		store.shutdown();
+	}
+
+	@Test
+	void valueExpiresAfterTtl() throws InterruptedException {
+		RespSharedStateStore store = store(null);
+		store.put("result:a", "スポーツ".getBytes(StandardCharsets.UTF_8), Duration.ofMillis(50));
+		assertEquals("スポーツ", new String(store.get("result:a"), StandardCharsets.UTF_8));
+
+		Thread.sleep(100);
+		assertNull(store.get("result:a"));
+		store.shutdown();
+	}
+
+	@Test
+	void reconnectsWhenPooledConnectionWasClosed() {
+		RespSharedStateStore store = store(null);
+		store.put("a", new byte[] { 1 }, Duration.ofMinutes(1));
+		// サーバーの再起動・アイドル切断を模して、プールされた接続を切断する
+		server.dropConnections();
+
+		assertArrayEquals(new byte[] { 1 }, store.get("a"));
+		store.shutdown();
+	}
+
+	@Test
+	void authenticatesWithPassword() throws IOException {
+		server.close();
+		server = new StandInServer("secret");
+
+		assertThrows(UncheckedIOException.class, () -> store("wrong").get("a"));
+		RespSharedStateStore store = store("secret");
+		store.put("a", new byte[] { 1 }, Duration.ofMinutes(1));
+		assertArrayEquals(new byte[] { 1 }, store.get("a"));
+		store.shutdown();
+	}
+
+	@Test
+	void failsWhenServerIsUnavailable() throws IOException {
+		RespSharedStateStore store = store(null);
+		server.close();
+
+		assertThrows(UncheckedIOException.class, () -> store.get("a"));
+	}
+
+	private RespSharedStateStore store(String password) {
+		return new RespSharedStateStore("127.0.0.1", server.port(), password, 0, 2, Duration.ofSeconds(2), "test:");
+	}
+
+	/**
+	 * テスト用の Redis 互換サーバー（PING・AUTH・GET・SET PX・DEL のみ）
+	 */
+	private static final class StandInServer implements AutoCloseable {
+
+		final Map<String, byte[]> values = new ConcurrentHashMap<>();
+		private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+		private final List<Socket> clients = new CopyOnWriteArrayList<>();
+		private final ServerSocket serverSocket;
+		private final Thread acceptor;
+		private final String password;
+
+		StandInServer(String password) throws IOException {
+			this.password = password;
+			this.serverSocket = new ServerSocket(0);
+			this.acceptor = new Thread(this::accept, "resp-stand-in");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		int port() {
+			return serverSocket.getLocalPort();
+		}
+
+		void dropConnections() {
+			for (Socket client : clients) {
+				try {
+					client.close();
+				} catch (IOException e) {
+					// 切断済み
+				}
+			}
+			clients.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+			// accept() の待機中に閉じた場合、待機が終わるまでポートは解放されないため終了を待つ
+			try {
+				acceptor.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			dropConnections();
+		}
+
+		private void accept() {
+			while (!serverSocket.isClosed()) {
+				try {
+					Socket client = serverSocket.accept();
+					clients.add(client);
+					Thread handler = new Thread(() -> serve(client), "resp-stand-in-client");
+					handler.setDaemon(true);
+					handler.start();
+				} catch (IOException e) {
+					return;
+				}
+			}
+		}
+
+		private void serve(Socket client) {
+			boolean authenticated = password == null;
+			try (client) {
+				InputStream in = new BufferedInputStream(client.getInputStream());
+				OutputStream out = new BufferedOutputStream(client.getOutputStream());
+				while (true) {
+					List<byte[]> command = readCommand(in);
+					if (command == null) {
+						return;
+					}
+					String name = new String(command.get(0), StandardCharsets.UTF_8).toUpperCase();
+					if (name.equals("AUTH")) {
+						authenticated = password.equals(new String(command.get(1), StandardCharsets.UTF_8));
+						write(out, authenticated ? "+OK\r\n" : "-WRONGPASS invalid password\r\n");
+					} else if (!authenticated) {
+						write(out, "-NOAUTH Authentication required.\r\n");
+					} else if (name.equals("PING")) {
+						write(out, "+PONG\r\n");
+					} else if (name.equals("SET")) {
+						String key = key(command);
+						values.put(key, command.get(2));
+						long ttl = Long.parseLong(new String(command.get(4), StandardCharsets.UTF_8));
+						expiries.put(key, System.currentTimeMillis() + ttl);
+						write(out, "+OK\r\n");
+					} else if (name.equals("GET")) {
+						String key = key(command);
+						Long expiresAt = expiries.get(key);
+						if (expiresAt != null && expiresAt <= System.currentTimeMillis()) {
+							values.remove(key);
+							expiries.remove(key);
+						}
+						byte[] value = values.get(key);
+						if (value == null) {
+							write(out, "$-1\r\n");
+						} else {
+							write(out, "$" + value.length + "\r\n");
+							out.write(value);
+							write(out, "\r\n");
+						}
+					} else if (name.equals("DEL")) {
+						expiries.remove(key(command));
+						write(out, ":" + (values.remove(key(command)) != null ? 1 : 0) + "\r\n");
+					} else {
+						write(out, "-ERR unknown command\r\n");
+					}
+					out.flush();
+				}
+			} catch (IOException e) {
+				// クライアントの切断
+			}
+		}
+
+		private static String key(List<byte[]> command) {
+			return new String(command.get(1), StandardCharsets.UTF_8);
+		}
+
+		private static List<byte[]> readCommand(InputStream in) throws IOException {
+			int type = in.read();
+			if (type != '*') {
+				return null;
+			}
+			int count = Integer.parseInt(readLine(in));
+			List<byte[]> args = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				in.read(); // '$'
+				int length = Integer.parseInt(readLine(in));
+				args.add(in.readNBytes(length));
+				in.readNBytes(2);
+			}
+			return args;
+		}
+
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\r') {
+				if (c == -1) {
+					throw new IOException("切断されました");
+				}
+				line.append((char) c);
+			}
+			in.read();
+			return line.toString();
+		}
+
+		private static void write(OutputStream out, String reply) throws IOException {
+			out.write(reply.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
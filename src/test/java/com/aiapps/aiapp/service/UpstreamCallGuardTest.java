@@ -0,0 +1,163 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.aiapps.aiapp.exception.UpstreamApiException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UpstreamCallGuardTest {
+
+	private final AnalysisMetrics metrics = new AnalysisMetrics(new SimpleMeterRegistry());
+	private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 8, 100,
+			Duration.ofSeconds(10));
+	private final AtomicInteger calls = new AtomicInteger();
+
+	@Test
+	void retriesRetryableStatusUntilSuccess() throws Exception {
+		UpstreamCallGuard guard = guard(3, Duration.ofSeconds(5), false);
+
+		String result = guard.execute(() -> calls.incrementAndGet() < 3
+				? CompletableFuture.failedFuture(upstreamError(500, null))
+				: CompletableFuture.completedFuture("スポーツ"), Deadline.NONE, true).get(5, TimeUnit.SECONDS);
+
+		assertEquals("スポーツ", result);
+		assertEquals(3, calls.get());
+		assertEquals(2, guard.stats().retries());
+	}
+
+	@Test
+	void givesUpAfterMaxAttempts() {
+		UpstreamCallGuard guard = guard(3, Duration.ofSeconds(5), false);
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> guard.execute(() -> {
+			calls.incrementAndGet();
+			return CompletableFuture.failedFuture(upstreamError(502, null));
+		}, Deadline.NONE, true).get(5, TimeUnit.SECONDS));
+
+		assertInstanceOf(UpstreamApiException.class, e.getCause());
+		assertEquals(3, calls.get());
+		assertEquals(1, guard.stats().exhausted());
+	}
+
+	@Test
+	void doesNotRetryClientErrorsOrLongRetryAfter() {
+		UpstreamCallGuard guard = guard(3, Duration.ofSeconds(5), false);
+
+		assertThrows(ExecutionException.class, () -> guard.execute(() -> {
+			calls.incrementAndGet();
+			return CompletableFuture.failedFuture(upstreamError(400, null));
+		}, Deadline.NONE, true).get(5, TimeUnit.SECONDS));
+		assertEquals(1, calls.get());
+
+		// 待機時間の指定が再試行の上限（1秒）より長い場合は、待たずに呼び出し元へ返す
+		assertThrows(ExecutionException.class, () -> guard.execute(() -> {
+			calls.incrementAndGet();
+			return CompletableFuture.failedFuture(upstreamError(429, Duration.ofMinutes(1)));
+		}, Deadline.NONE, true).get(5, TimeUnit.SECONDS));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	void doesNotRetryWhenCallerForbidsIt() {
+		UpstreamCallGuard guard = guard(3, Duration.ofSeconds(5), false);
+
+		assertThrows(ExecutionException.class, () -> guard.execute(() -> {
+			calls.incrementAndGet();
+			return CompletableFuture.failedFuture(upstreamError(503, null));
+		}, Deadline.NONE, false, () -> false).get(5, TimeUnit.SECONDS));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void attemptTimeoutIsRetriedAndHalvesLimit() {
+		UpstreamCallGuard guard = guard(2, Duration.ofMillis(50), false);
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> guard.execute(() -> {
+			calls.incrementAndGet();
+			return new CompletableFuture<String>();
+		}, Deadline.NONE, true).get(5, TimeUnit.SECONDS));
+
+		assertEquals(UpstreamCallGuard.MESSAGE_ATTEMPT_TIMEOUT, e.getCause().getMessage());
+		assertEquals(2, calls.get());
+		// 許可の返却は呼び出し元への通知と前後するため、返却を待ってから確認する
+		await(() -> limiter.stats().inFlight() == 0);
+		assertEquals(2, guard.stats().timeouts());
+		// 時間切れは混雑として扱う（引き下げは1秒に1回まで）
+		assertEquals(4, limiter.stats().limit());
+	}
+
+	@Test
+	void slowAttemptIsHedgedAndLoserCancelled() throws Exception {
+		UpstreamCallGuard guard = guard(1, Duration.ofSeconds(5), true);
+		warmUp(guard);
+
+		CompletableFuture<String> slow = new CompletableFuture<>();
+		String result = guard.execute(() -> calls.incrementAndGet() == 1
+				? slow
+				: CompletableFuture.completedFuture("スポーツ"), Deadline.NONE, true).get(5, TimeUnit.SECONDS);
+
+		assertEquals("スポーツ", result);
+		assertEquals(2, calls.get());
+		// 元の試行の取り消しは呼び出し元への通知の後に行われる
+		await(() -> slow.isCancelled() && limiter.stats().inFlight() == 0);
+		assertEquals(1, guard.stats().hedges());
+		assertEquals(1, guard.stats().hedgeWins());
+	}
+
+	@Test
+	void nonHedgeableCallIsNotDuplicated() {
+		UpstreamCallGuard guard = guard(1, Duration.ofMillis(200), true);
+		warmUp(guard);
+
+		assertThrows(ExecutionException.class, () -> guard.execute(() -> {
+			calls.incrementAndGet();
+			return new CompletableFuture<String>();
+		}, Deadline.NONE, false).get(5, TimeUnit.SECONDS));
+		assertEquals(1, calls.get());
+		assertEquals(0, guard.stats().hedges());
+	}
+
+	private UpstreamCallGuard guard(int maxAttempts, Duration attemptTimeout, boolean hedgeEnabled) {
+		return new UpstreamCallGuard(limiter, metrics, maxAttempts, Duration.ofMillis(1), Duration.ofMillis(1),
+				Duration.ofSeconds(1), attemptTimeout, hedgeEnabled, 0.5, Duration.ofMillis(20), 1.0);
+	}
+
+	/**
+	 * ヘッジの待ち時間を算出できるよう、即座に応答する呼び出しを記録する
+	 */
+	private static void warmUp(UpstreamCallGuard guard) {
+		for (int i = 0; i < 100; i++) {
+			guard.execute(() -> CompletableFuture.completedFuture("x"), Deadline.NONE, false).join();
+		}
+	}
+
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "条件を満たさないまま時間切れになりました");
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private static UpstreamApiException upstreamError(int status, Duration retryAfter) {
+		return new UpstreamApiException("APIエラー : " + status, status, retryAfter);
+	}
+}
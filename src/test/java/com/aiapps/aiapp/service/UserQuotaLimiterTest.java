@@ -0,0 +1,88 @@
+package com.aiapps.aiapp.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UserQuotaLimiterTest {
+
+	@TempDir
+	Path root;
+
+	@Test
+	void allowsBurstUpToCapacityThenRejects() {
+		UserQuotaLimiter limiter = new UserQuotaLimiter(true, 3, Duration.ofMinutes(1), false, null, Duration.ofMinutes(10));
+
+		assertTrue(limiter.tryAcquire("a"));
+		assertTrue(limiter.tryAcquire("a"));
+		assertTrue(limiter.tryAcquire("a"));
+		assertFalse(limiter.tryAcquire("a"));
+
+		UserQuotaLimiter.Usage usage = limiter.usage("a");
+		assertEquals(0, usage.remaining());
+		assertEquals(3, usage.used());
+		assertEquals(1, usage.rejected());
+		assertTrue(usage.nextRefillMillis() > 0 && usage.nextRefillMillis() <= 60_000);
+		// 利用者ごとに独立しており、利用者を特定できない呼び出しは制限しない
+		assertTrue(limiter.tryAcquire("b"));
+		assertTrue(limiter.tryAcquire(null));
+	}
+
+	@Test
+	void refillsOneTokenPerInterval() throws InterruptedException {
+		UserQuotaLimiter limiter = new UserQuotaLimiter(true, 2, Duration.ofMillis(500), false, null, Duration.ofMinutes(10));
+		assertTrue(limiter.tryAcquire("a"));
+		assertTrue(limiter.tryAcquire("a"));
+		assertFalse(limiter.tryAcquire("a"));
+
+		Thread.sleep(limiter.usage("a").nextRefillMillis() + 20);
+		assertEquals(1, limiter.usage("a").remaining());
+		assertTrue(limiter.tryAcquire("a"));
+		assertFalse(limiter.tryAcquire("a"));
+
+		Thread.sleep(limiter.usage("a").fullRefillMillis() + 20);
+		assertEquals(2, limiter.usage("a").remaining());
+	}
+
+	@Test
+	void sweepRemovesOnlyFullBuckets() throws InterruptedException {
+		UserQuotaLimiter limiter = new UserQuotaLimiter(true, 2, Duration.ofMillis(500), false, null,
+				Duration.ofMinutes(10));
+		assertTrue(limiter.tryAcquire("a"));
+		Thread.sleep(limiter.usage("a").fullRefillMillis() + 20);
+		assertTrue(limiter.tryAcquire("b"));
+		assertTrue(limiter.tryAcquire("b"));
+
+		// 満杯に戻った "a" だけを削除し、回復途中の "b" は残す
+		assertEquals(1, limiter.sweep());
+		assertEquals(1, limiter.stats().users());
+		assertEquals(0, limiter.usage("a").used());
+		assertEquals(2, limiter.usage("b").used());
+
+		// 削除後の利用は新しいバケットで数える
+		assertTrue(limiter.tryAcquire("a"));
+		assertTrue(limiter.tryAcquire("a"));
+		assertFalse(limiter.tryAcquire("a"));
+		assertEquals(2, limiter.stats().users());
+	}
+
+	@Test
+	void exhaustedBucketSurvivesRestart() {
+		Path path = root.resolve("quotas.properties");
+		UserQuotaLimiter before = new UserQuotaLimiter(true, 2, Duration.ofMinutes(1), true, path, Duration.ofMinutes(10));
+		assertTrue(before.tryAcquire("a"));
+		assertTrue(before.tryAcquire("a"));
+		before.save();
+
+		UserQuotaLimiter after = new UserQuotaLimiter(true, 2, Duration.ofMinutes(1), true, path, Duration.ofMinutes(10));
+		after.load();
+		assertFalse(after.tryAcquire("a"));
+		assertTrue(after.tryAcquire("b"));
+	}
+}